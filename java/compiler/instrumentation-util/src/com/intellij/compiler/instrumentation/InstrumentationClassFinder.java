@@ -11,10 +11,14 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 /**
+ * Class lookups may be performed concurrently, so a single finder may be shared by several threads instrumenting different classes.
+ *
  * @author Eugene Zhuravlev
  *         Date: 2/16/12
  */
@@ -22,13 +26,12 @@ public class InstrumentationClassFinder {
   private static final PseudoClass[] EMPTY_PSEUDOCLASS_ARRAY = new PseudoClass[0];
   private static final String CLASS_RESOURCE_EXTENSION = ".class";
   private static final URL[] URL_EMPTY_ARRAY = new URL[0];
-  private final Map<String, PseudoClass> myLoaded = new HashMap<String, PseudoClass>(); // className -> class object
+  private final ConcurrentMap<String, PseudoClass> myLoaded = new ConcurrentHashMap<String, PseudoClass>(); // className -> class object
   private final ClassFinderClasspath myPlatformClasspath;
   private final ClassFinderClasspath myClasspath;
   private final URL[] myPlatformUrls;
   private final URL[] myClasspathUrls;
-  private ClassLoader myLoader;
-  private byte[] myBuffer;
+  private volatile ClassLoader myLoader;
 
   public InstrumentationClassFinder(final URL[] cp) {
     this(URL_EMPTY_ARRAY, cp);
@@ -90,7 +93,6 @@ public class InstrumentationClassFinder {
     myPlatformClasspath.releaseResources();
     myClasspath.releaseResources();
     myLoaded.clear();
-    myBuffer = null;
     myLoader = null;
   }
 
@@ -105,7 +107,7 @@ public class InstrumentationClassFinder {
 
     if (is == null) {
       if (aClass == null) {
-        myLoaded.put(internalName, PseudoClass.NULL_OBJ);
+        myLoaded.putIfAbsent(internalName, PseudoClass.NULL_OBJ);
       }
       // ensure presentable class name in error message
       throw new ClassNotFoundException("Class not found: " + name.replace('/', '.')) {
@@ -118,8 +120,9 @@ public class InstrumentationClassFinder {
 
     try {
       final PseudoClass result = loadPseudoClass(is);
-      myLoaded.put(internalName, result);
-      return result;
+      // another thread might have loaded the same class meanwhile; keep the first instance
+      final PseudoClass existing = myLoaded.putIfAbsent(internalName, result);
+      return existing != null && existing != PseudoClass.NULL_OBJ ? existing : result;
     }
     finally {
       is.close();
@@ -142,7 +145,7 @@ public class InstrumentationClassFinder {
     }
     finally {
       if (aClass == null && bytes == null) {
-        myLoaded.put(internalName, PseudoClass.NULL_OBJ);
+        myLoaded.putIfAbsent(internalName, PseudoClass.NULL_OBJ);
       }
     }
     return bytes;
@@ -460,7 +463,7 @@ public class InstrumentationClassFinder {
       return null;
     }
 
-    public void releaseResources() {
+    public synchronized void releaseResources() {
       for (Loader loader : myLoaders) {
         loader.releaseResources();
       }
@@ -646,7 +649,7 @@ public class InstrumentationClassFinder {
         myURL = url;
       }
 
-      public void releaseResources() {
+      public synchronized void releaseResources() {
         final ZipFile zipFile = myZipFile;
         if (zipFile != null) {
           myZipFile = null;
@@ -659,7 +662,7 @@ public class InstrumentationClassFinder {
         }
       }
 
-      private ZipFile acquireZipFile() throws IOException {
+      private synchronized ZipFile acquireZipFile() throws IOException {
         ZipFile zipFile = myZipFile;
         if (zipFile == null) {
           zipFile = doGetZipFile();
@@ -806,11 +809,7 @@ public class InstrumentationClassFinder {
   }
 
   public byte[] loadBytes(InputStream stream) {
-    byte[] buf = myBuffer;
-    if (buf == null) {
-      buf = new byte[512];
-      myBuffer = buf;
-    }
+    final byte[] buf = new byte[512];
 
     final ByteArrayOutputStream result = new ByteArrayOutputStream();
     try {
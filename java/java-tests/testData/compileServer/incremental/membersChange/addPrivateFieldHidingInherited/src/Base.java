@@ -0,0 +1,3 @@
+class Base {
+  int field = 1;
+}
\ No newline at end of file
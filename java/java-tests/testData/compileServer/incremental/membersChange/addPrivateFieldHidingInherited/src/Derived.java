@@ -0,0 +1,2 @@
+class Derived extends Base {
+}
\ No newline at end of file
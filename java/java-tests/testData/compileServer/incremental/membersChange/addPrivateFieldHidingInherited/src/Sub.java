@@ -0,0 +1,5 @@
+class Sub extends Derived {
+  int value() {
+    return field;
+  }
+}
\ No newline at end of file
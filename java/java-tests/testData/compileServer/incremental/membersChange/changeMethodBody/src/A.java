@@ -0,0 +1,5 @@
+public class A {
+  public int get() {
+    return 1;
+  }
+}
\ No newline at end of file
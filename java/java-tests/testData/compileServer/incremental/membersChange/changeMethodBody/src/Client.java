@@ -0,0 +1,5 @@
+public class Client {
+  int value() {
+    return new A().get();
+  }
+}
\ No newline at end of file
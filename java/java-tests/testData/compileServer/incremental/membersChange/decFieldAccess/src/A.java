@@ -0,0 +1,3 @@
+class A {
+  int field;
+}
\ No newline at end of file
@@ -0,0 +1,5 @@
+class B {
+  int value(A a) {
+    return a.field;
+  }
+}
\ No newline at end of file
@@ -27,4 +27,12 @@ public interface GlobalOptions {
   String COMPILE_PARALLEL_MAX_THREADS_OPTION = "compile.parallel.max.threads";
   String REBUILD_ON_DEPENDENCY_CHANGE_OPTION = "rebuild.on.dependency.change";
   String LOG_DIR_OPTION = "log.dir";
+  /**
+   * Location of the shared compilation output cache: either a local directory path or an http(s) URL
+   */
+  String COMPILE_OUTPUT_CACHE_OPTION = "compile.output.cache";
+  /**
+   * If set to true, timing spans of each build are written to a Chrome trace file under the build data storage root
+   */
+  String BUILD_TRACE_OPTION = "compile.trace";
 }
@@ -93,10 +93,17 @@ public class JavaBuilderUtil {
           affectedBeforeDif.addAll(allAffectedFiles);
 
           final ModulesBasedFileFilter moduleBasedFilter = new ModulesBasedFileFilter(context, chunk);
-          final boolean incremental = globalMappings.differentiateOnIncrementalMake(
-            delta, removedPaths, filesToCompile, allCompiledFiles, allAffectedFiles, moduleBasedFilter,
-            CONSTANT_SEARCH_SERVICE.get(context)
-          );
+          final boolean incremental;
+          final BuildTrace.Span span = BuildTrace.getInstance(context).startSpan(BuildTrace.DEPENDENCIES_CATEGORY, "Differentiate on incremental make");
+          try {
+            incremental = globalMappings.differentiateOnIncrementalMake(
+              delta, removedPaths, filesToCompile, allCompiledFiles, allAffectedFiles, moduleBasedFilter,
+              CONSTANT_SEARCH_SERVICE.get(context)
+            );
+          }
+          finally {
+            span.finish();
+          }
 
           if (LOG.isDebugEnabled()) {
             LOG.debug("Differentiate Results:");
@@ -154,13 +161,25 @@ public class JavaBuilderUtil {
         }
         else {
           if (!errorsDetected) { // makes sense only if we are going to integrate changes
-            globalMappings.differentiateOnNonIncrementalMake(delta, removedPaths, filesToCompile);
+            final BuildTrace.Span span = BuildTrace.getInstance(context).startSpan(BuildTrace.DEPENDENCIES_CATEGORY, "Differentiate on non-incremental make");
+            try {
+              globalMappings.differentiateOnNonIncrementalMake(delta, removedPaths, filesToCompile);
+            }
+            finally {
+              span.finish();
+            }
           }
         }
       }
       else {
         if (!errorsDetected) { // makes sense only if we are going to integrate changes
-          globalMappings.differentiateOnRebuild(delta);
+          final BuildTrace.Span span = BuildTrace.getInstance(context).startSpan(BuildTrace.DEPENDENCIES_CATEGORY, "Differentiate on rebuild");
+          try {
+            globalMappings.differentiateOnRebuild(delta);
+          }
+          finally {
+            span.finish();
+          }
         }
       }
 
@@ -174,7 +193,13 @@ public class JavaBuilderUtil {
 
       context.processMessage(new ProgressMessage("Updating dependency information... [" + chunk.getName() + "]"));
 
-      globalMappings.integrate(delta);
+      final BuildTrace.Span span = BuildTrace.getInstance(context).startSpan(BuildTrace.DEPENDENCIES_CATEGORY, "Integrate");
+      try {
+        globalMappings.integrate(delta);
+      }
+      finally {
+        span.finish();
+      }
 
       return additionalPassRequired;
     }
@@ -118,10 +118,20 @@ public class BuildRunner {
                        MessageHandler msgHandler,
                        BuildType buildType,
                        List<TargetTypeBuildScope> scopes, final boolean includeDependenciesToScope) throws Exception {
+    runBuild(pd, cs, constantSearch, msgHandler, buildType, scopes, includeDependenciesToScope, BuildTrace.DISABLED);
+  }
+
+  public void runBuild(ProjectDescriptor pd,
+                       CanceledStatus cs,
+                       @Nullable Callbacks.ConstantAffectionResolver constantSearch,
+                       MessageHandler msgHandler,
+                       BuildType buildType,
+                       List<TargetTypeBuildScope> scopes, final boolean includeDependenciesToScope,
+                       @NotNull BuildTrace trace) throws Exception {
     for (int attempt = 0; attempt < 2; attempt++) {
       final boolean forceClean = myForceCleanCaches && myFilePaths.isEmpty();
       final CompileScope compileScope = createCompilationScope(pd, scopes, myFilePaths, forceClean, includeDependenciesToScope);
-      final IncProjectBuilder builder = new IncProjectBuilder(pd, BuilderRegistry.getInstance(), myBuilderParams, cs, constantSearch, Utils.IS_TEST_MODE);
+      final IncProjectBuilder builder = new IncProjectBuilder(pd, BuilderRegistry.getInstance(), myBuilderParams, cs, constantSearch, Utils.IS_TEST_MODE, trace);
       builder.addMessageHandler(msgHandler);
       try {
         switch (buildType) {
@@ -31,6 +31,7 @@ import org.jetbrains.jps.api.*;
 import org.jetbrains.jps.builders.*;
 import org.jetbrains.jps.builders.java.JavaModuleBuildTargetType;
 import org.jetbrains.jps.builders.java.dependencyView.Callbacks;
+import org.jetbrains.jps.incremental.BuildTrace;
 import org.jetbrains.jps.incremental.MessageHandler;
 import org.jetbrains.jps.incremental.TargetTypeRegistry;
 import org.jetbrains.jps.incremental.Utils;
@@ -194,11 +195,20 @@ final class BuildSession implements Runnable, CanceledStatus {
     }
 
     final BuildFSState fsState = new BuildFSState(false);
+    final BuildTrace trace = BuildTrace.create();
     try {
-      final ProjectDescriptor pd = myBuildRunner.load(msgHandler, dataStorageRoot, fsState);
+      final BuildTrace.Span loadingSpan = trace.startSpan(BuildTrace.MODEL_CATEGORY, "Project loading");
+      final ProjectDescriptor pd;
+      try {
+        pd = myBuildRunner.load(msgHandler, dataStorageRoot, fsState);
+      }
+      finally {
+        loadingSpan.finish();
+      }
       TimingLog.LOG.debug("Project descriptor loaded");
       myProjectDescriptor = pd;
       if (fsStateStream != null) {
+        final BuildTrace.Span fsStateSpan = trace.startSpan(BuildTrace.FS_CATEGORY, "FS state loading");
         try {
           try {
             fsState.load(fsStateStream, pd.getModel(), pd.getBuildRootIndex());
@@ -207,6 +217,7 @@ final class BuildSession implements Runnable, CanceledStatus {
           }
           finally {
             fsStateStream.close();
+            fsStateSpan.finish();
           }
         }
         catch (Throwable e) {
@@ -221,11 +232,18 @@ final class BuildSession implements Runnable, CanceledStatus {
       // ensure events from controller are processed after FSState initialization
       myEventsProcessor.startProcessing();
 
-      myBuildRunner.runBuild(pd, cs, myConstantSearch, msgHandler, myBuildType, myScopes, false);
+      myBuildRunner.runBuild(pd, cs, myConstantSearch, msgHandler, myBuildType, myScopes, false, trace);
       TimingLog.LOG.debug("Build finished");
     }
     finally {
-      saveData(fsState, dataStorageRoot);
+      final BuildTrace.Span savingSpan = trace.startSpan(BuildTrace.STORAGE_CATEGORY, "Saving caches");
+      try {
+        saveData(fsState, dataStorageRoot);
+      }
+      finally {
+        savingSpan.finish();
+      }
+      trace.finish(dataStorageRoot, msgHandler);
     }
   }
 
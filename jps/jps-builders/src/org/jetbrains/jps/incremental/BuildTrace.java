@@ -0,0 +1,287 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jps.api.GlobalOptions;
+import org.jetbrains.jps.incremental.messages.BuildMessage;
+import org.jetbrains.jps.incremental.messages.CompilerMessage;
+
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects timing spans of a build session and writes them to a file in Chrome trace event format, which can be opened
+ * with chrome://tracing. Tracing is enabled with the {@link GlobalOptions#BUILD_TRACE_OPTION} system property; when it's disabled
+ * {@link #startSpan} returns a no-op span, so callers don't need to check whether tracing is on.
+ * <p/>
+ * The trace of the current build is attached to its {@link CompileContext}, use {@link #getInstance(CompileContext)} to obtain it.
+ */
+public class BuildTrace {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.BuildTrace");
+  public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(GlobalOptions.BUILD_TRACE_OPTION, "false"));
+  public static final String MODEL_CATEGORY = "model";
+  public static final String FS_CATEGORY = "fs";
+  public static final String BUILD_CATEGORY = "build";
+  public static final String BUILDER_CATEGORY = "builder";
+  public static final String JAVAC_CATEGORY = "javac";
+  public static final String DEPENDENCIES_CATEGORY = "dependencies";
+  public static final String STORAGE_CATEGORY = "storage";
+  private static final String TRACE_DIRECTORY_NAME = "trace";
+  private static final int MAX_TRACE_FILES = 10;
+  private static final int SUMMARY_ITEMS_LIMIT = 8;
+  private static final Span NULL_SPAN = new Span(null, "", "");
+  public static final BuildTrace DISABLED = new BuildTrace(false);
+  private static final GlobalContextKey<BuildTrace> KEY = GlobalContextKey.create("_build_trace_");
+
+  private final boolean myEnabled;
+  private final long myStartNanos = System.nanoTime();
+  private final Queue<Event> myEvents = new ConcurrentLinkedQueue<Event>();
+
+  BuildTrace(boolean enabled) {
+    myEnabled = enabled;
+  }
+
+  /**
+   * @return a new trace if tracing is enabled, {@link #DISABLED} otherwise
+   */
+  @NotNull
+  public static BuildTrace create() {
+    return ENABLED ? new BuildTrace(true) : DISABLED;
+  }
+
+  @NotNull
+  public static BuildTrace getInstance(@NotNull CompileContext context) {
+    return KEY.get(context, DISABLED);
+  }
+
+  void attachTo(@NotNull CompileContext context) {
+    KEY.set(context, this);
+  }
+
+  @NotNull
+  public Span startSpan(@NotNull String category, @NotNull String name) {
+    return myEnabled ? new Span(this, category, name) : NULL_SPAN;
+  }
+
+  /**
+   * Writes the collected trace to a new file under {@code dataStorageRoot} and reports where time was spent to {@code handler}.
+   */
+  public void finish(@NotNull File dataStorageRoot, @NotNull MessageHandler handler) {
+    if (myEvents.isEmpty()) {
+      return;
+    }
+
+    final File traceDir = new File(dataStorageRoot, TRACE_DIRECTORY_NAME);
+    final File traceFile = new File(traceDir, "build-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()) + ".json");
+    try {
+      FileUtil.createParentDirs(traceFile);
+      write(traceFile);
+      deleteOldTraces(traceDir);
+      handler.processMessage(new CompilerMessage("", BuildMessage.Kind.INFO, getSummary() + "; trace written to " + traceFile.getPath()));
+    }
+    catch (IOException e) {
+      LOG.info("Cannot write build trace to " + traceFile.getPath(), e);
+    }
+  }
+
+  void addEvent(String category, String name, long threadId, String threadName, long startMicros, long durationMicros) {
+    myEvents.add(new Event(category, name, threadId, threadName, startMicros, durationMicros));
+  }
+
+  /**
+   * Spans are nested, so the summary reports self time of every span, i.e. its duration minus durations of the spans directly
+   * nested in it on the same thread; this way the same time is never counted twice.
+   */
+  String getSummary() {
+    final Map<String, long[]> totals = new HashMap<String, long[]>();
+    for (Map.Entry<Event, Long> entry : computeSelfTimes().entrySet()) {
+      final Event event = entry.getKey();
+      final String key = BUILDER_CATEGORY.equals(event.myCategory) ? event.myName : event.myCategory;
+      long[] total = totals.get(key);
+      if (total == null) {
+        total = new long[2];
+        totals.put(key, total);
+      }
+      total[0] += entry.getValue();
+      total[1]++;
+    }
+
+    final List<Map.Entry<String, long[]>> entries = new ArrayList<Map.Entry<String, long[]>>(totals.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<String, long[]>>() {
+      @Override
+      public int compare(Map.Entry<String, long[]> o1, Map.Entry<String, long[]> o2) {
+        return o1.getValue()[0] < o2.getValue()[0] ? 1 : o1.getValue()[0] == o2.getValue()[0] ? 0 : -1;
+      }
+    });
+
+    final StringBuilder summary = new StringBuilder("Build time by activity: ");
+    for (int i = 0; i < entries.size() && i < SUMMARY_ITEMS_LIMIT; i++) {
+      final Map.Entry<String, long[]> entry = entries.get(i);
+      if (i > 0) {
+        summary.append(", ");
+      }
+      summary.append(entry.getKey()).append(" ").append(entry.getValue()[0] / 1000).append(" ms");
+      if (entry.getValue()[1] > 1) {
+        summary.append(" (").append(entry.getValue()[1]).append(" times)");
+      }
+    }
+    return summary.toString();
+  }
+
+  private Map<Event, Long> computeSelfTimes() {
+    final Map<Long, List<Event>> eventsByThread = new HashMap<Long, List<Event>>();
+    for (Event event : myEvents) {
+      List<Event> events = eventsByThread.get(event.myThreadId);
+      if (events == null) {
+        events = new ArrayList<Event>();
+        eventsByThread.put(event.myThreadId, events);
+      }
+      events.add(event);
+    }
+
+    final Map<Event, Long> selfTimes = new IdentityHashMap<Event, Long>();
+    for (List<Event> events : eventsByThread.values()) {
+      // enclosing spans go before the spans nested in them
+      Collections.sort(events, new Comparator<Event>() {
+        @Override
+        public int compare(Event o1, Event o2) {
+          if (o1.myStartMicros != o2.myStartMicros) {
+            return o1.myStartMicros < o2.myStartMicros ? -1 : 1;
+          }
+          return o1.myDurationMicros > o2.myDurationMicros ? -1 : o1.myDurationMicros == o2.myDurationMicros ? 0 : 1;
+        }
+      });
+      final Stack<Event> enclosing = new Stack<Event>();
+      for (Event event : events) {
+        while (!enclosing.isEmpty() && enclosing.peek().getEndMicros() <= event.myStartMicros) {
+          enclosing.pop();
+        }
+        if (!enclosing.isEmpty()) {
+          final Event parent = enclosing.peek();
+          selfTimes.put(parent, Math.max(0, selfTimes.get(parent) - event.myDurationMicros));
+        }
+        selfTimes.put(event, event.myDurationMicros);
+        enclosing.push(event);
+      }
+    }
+    return selfTimes;
+  }
+
+  private void write(File file) throws IOException {
+    final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    try {
+      writer.write("{\"traceEvents\":[\n");
+      final Map<Long, String> threadNames = new LinkedHashMap<Long, String>();
+      boolean first = true;
+      for (Event event : myEvents) {
+        threadNames.put(event.myThreadId, event.myThreadName);
+        if (!first) {
+          writer.write(",\n");
+        }
+        first = false;
+        writer.write("{\"ph\":\"X\",\"pid\":1,\"tid\":" + event.myThreadId + ",\"ts\":" + event.myStartMicros + ",\"dur\":" +
+                     event.myDurationMicros + ",\"cat\":" + quote(event.myCategory) + ",\"name\":" + quote(event.myName) + "}");
+      }
+      for (Map.Entry<Long, String> entry : threadNames.entrySet()) {
+        writer.write(",\n{\"ph\":\"M\",\"pid\":1,\"tid\":" + entry.getKey() + ",\"name\":\"thread_name\",\"args\":{\"name\":" +
+                     quote(entry.getValue()) + "}}");
+      }
+      writer.write("\n]}\n");
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  private static String quote(String s) {
+    final StringBuilder result = new StringBuilder(s.length() + 2).append('"');
+    for (int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        result.append('\\').append(c);
+      }
+      else if (c < ' ') {
+        result.append(String.format("\\u%04x", (int)c));
+      }
+      else {
+        result.append(c);
+      }
+    }
+    return result.append('"').toString();
+  }
+
+  private static void deleteOldTraces(File traceDir) {
+    final File[] files = traceDir.listFiles();
+    if (files == null || files.length <= MAX_TRACE_FILES) {
+      return;
+    }
+    // file names contain timestamps, so alphabetical order is chronological
+    Arrays.sort(files);
+    for (int i = 0; i < files.length - MAX_TRACE_FILES; i++) {
+      FileUtil.delete(files[i]);
+    }
+  }
+
+  public static class Span {
+    @Nullable private final BuildTrace myTrace;
+    private final String myCategory;
+    private final String myName;
+    private final long myStartNanos;
+
+    private Span(@Nullable BuildTrace trace, String category, String name) {
+      myTrace = trace;
+      myCategory = category;
+      myName = name;
+      myStartNanos = trace != null ? System.nanoTime() : 0;
+    }
+
+    public void finish() {
+      if (myTrace != null) {
+        final Thread thread = Thread.currentThread();
+        myTrace.addEvent(myCategory, myName, thread.getId(), thread.getName(), (myStartNanos - myTrace.myStartNanos) / 1000,
+                         (System.nanoTime() - myStartNanos) / 1000);
+      }
+    }
+  }
+
+  private static class Event {
+    private final String myCategory;
+    private final String myName;
+    private final long myThreadId;
+    private final String myThreadName;
+    private final long myStartMicros;
+    private final long myDurationMicros;
+
+    private Event(String category, String name, long threadId, String threadName, long startMicros, long durationMicros) {
+      myCategory = category;
+      myName = name;
+      myThreadId = threadId;
+      myThreadName = threadName;
+      myStartMicros = startMicros;
+      myDurationMicros = durationMicros;
+    }
+
+    private long getEndMicros() {
+      return myStartMicros + myDurationMicros;
+    }
+  }
+}
@@ -35,7 +35,7 @@ public class CompiledClass extends UserDataHolderBase{
   @Nullable
   private final String myClassName;
   @NotNull
-  private BinaryContent myContent;
+  private volatile BinaryContent myContent;
 
   private boolean myIsDirty = false;
 
@@ -47,6 +47,7 @@ import org.jetbrains.jps.builders.logging.ProjectBuilderLogger;
 import org.jetbrains.jps.builders.storage.SourceToOutputMapping;
 import org.jetbrains.jps.cmdline.BuildRunner;
 import org.jetbrains.jps.cmdline.ProjectDescriptor;
+import org.jetbrains.jps.incremental.cache.BuildOutputCache;
 import org.jetbrains.jps.incremental.fs.BuildFSState;
 import org.jetbrains.jps.incremental.java.ExternalJavacDescriptor;
 import org.jetbrains.jps.incremental.messages.*;
@@ -111,9 +112,17 @@ public class IncProjectBuilder {
   private final float myTotalTargetsWork;
   private final int myTotalModuleLevelBuilderCount;
   private final List<Future> myAsyncTasks = Collections.synchronizedList(new ArrayList<Future>());
+  @Nullable private final BuildOutputCache myOutputCache;
+  private final BuildTrace myTrace;
 
   public IncProjectBuilder(ProjectDescriptor pd, BuilderRegistry builderRegistry, Map<String, String> builderParams, CanceledStatus cs,
                            @Nullable Callbacks.ConstantAffectionResolver constantSearch, final boolean isTestMode) {
+    this(pd, builderRegistry, builderParams, cs, constantSearch, isTestMode, BuildTrace.DISABLED);
+  }
+
+  public IncProjectBuilder(ProjectDescriptor pd, BuilderRegistry builderRegistry, Map<String, String> builderParams, CanceledStatus cs,
+                           @Nullable Callbacks.ConstantAffectionResolver constantSearch, final boolean isTestMode,
+                           @NotNull BuildTrace trace) {
     myProjectDescriptor = pd;
     myBuilderRegistry = builderRegistry;
     myBuilderParams = builderParams;
@@ -122,6 +131,8 @@ public class IncProjectBuilder {
     myTotalTargetsWork = pd.getBuildTargetIndex().getAllTargets().size();
     myTotalModuleLevelBuilderCount = builderRegistry.getModuleLevelBuilderCount();
     myIsTestMode = isTestMode;
+    myOutputCache = BuildOutputCache.createFromSystemProperties();
+    myTrace = trace;
   }
 
   public void addMessageHandler(MessageHandler handler) {
@@ -291,11 +302,27 @@ public class IncProjectBuilder {
     context.processMessage(new CompilerMessage("", BuildMessage.Kind.INFO, message.toString()));
   }
 
+  private void flushMemoryCaches(ProjectDescriptor pd) {
+    final BuildTrace.Span span = myTrace.startSpan(BuildTrace.STORAGE_CATEGORY, "Flushing memory caches");
+    try {
+      pd.dataManager.flush(true);
+    }
+    finally {
+      span.finish();
+    }
+  }
+
   private static void flushContext(CompileContext context) {
     if (context != null) {
       final ProjectDescriptor pd = context.getProjectDescriptor();
-      pd.timestamps.getStorage().force();
-      pd.dataManager.flush(false);
+      final BuildTrace.Span span = BuildTrace.getInstance(context).startSpan(BuildTrace.STORAGE_CATEGORY, "Flushing caches");
+      try {
+        pd.timestamps.getStorage().force();
+        pd.dataManager.flush(false);
+      }
+      finally {
+        span.finish();
+      }
     }
     final ExternalJavacDescriptor descriptor = ExternalJavacDescriptor.KEY.get(context);
     if (descriptor != null) {
@@ -330,13 +357,26 @@ public class IncProjectBuilder {
       builder.buildStarted(context);
     }
 
+    final BuildTrace.Span buildSpan = myTrace.startSpan(BuildTrace.BUILD_CATEGORY, "Build");
     try {
       if (context.isProjectRebuild() || forceCleanCaches) {
-        cleanOutputRoots(context);
+        final BuildTrace.Span cleanSpan = myTrace.startSpan(BuildTrace.FS_CATEGORY, "Cleaning output roots");
+        try {
+          cleanOutputRoots(context);
+        }
+        finally {
+          cleanSpan.finish();
+        }
       }
 
       context.processMessage(new ProgressMessage("Running 'before' tasks"));
-      runTasks(context, myBuilderRegistry.getBeforeTasks());
+      final BuildTrace.Span beforeTasksSpan = myTrace.startSpan(BuildTrace.BUILD_CATEGORY, "'before' tasks");
+      try {
+        runTasks(context, myBuilderRegistry.getBeforeTasks());
+      }
+      finally {
+        beforeTasksSpan.finish();
+      }
       TimingLog.LOG.debug("'before' tasks finished");
 
       context.processMessage(new ProgressMessage("Checking sources"));
@@ -344,8 +384,18 @@ public class IncProjectBuilder {
       TimingLog.LOG.debug("Building targets finished");
 
       context.processMessage(new ProgressMessage("Running 'after' tasks"));
-      runTasks(context, myBuilderRegistry.getAfterTasks());
+      final BuildTrace.Span afterTasksSpan = myTrace.startSpan(BuildTrace.BUILD_CATEGORY, "'after' tasks");
+      try {
+        runTasks(context, myBuilderRegistry.getAfterTasks());
+      }
+      finally {
+        afterTasksSpan.finish();
+      }
       TimingLog.LOG.debug("'after' tasks finished");
+
+      if (myOutputCache != null) {
+        myOutputCache.reportStatistics(context);
+      }
     }
     finally {
       for (TargetBuilder builder : myBuilderRegistry.getTargetBuilders()) {
@@ -355,6 +405,7 @@ public class IncProjectBuilder {
         builder.buildFinished(context);
       }
       context.processMessage(new ProgressMessage("Finished, saving caches..."));
+      buildSpan.finish();
     }
 
   }
@@ -395,6 +446,7 @@ public class IncProjectBuilder {
     // in make mode it is critical to traverse file system as fast as possible, so we choose speed over memory savings
     myProjectDescriptor.setFSCache(context.isProjectRebuild() ? FSCache.NO_CACHE : new FSCache());
     JavaBuilderUtil.CONSTANT_SEARCH_SERVICE.set(context, myConstantSearch);
+    myTrace.attachTo(context);
     return context;
   }
 
@@ -584,7 +636,7 @@ public class IncProjectBuilder {
           finally {
             context.updateCompilationStartStamp();
             pd.dataManager.closeSourceToOutputStorages(Collections.singleton(chunk));
-            pd.dataManager.flush(true);
+            flushMemoryCaches(pd);
           }
         }
       }
@@ -733,7 +785,7 @@ public class IncProjectBuilder {
             finally {
               myContext.updateCompilationStartStamp();
               myProjectDescriptor.dataManager.closeSourceToOutputStorages(Collections.singletonList(task.getChunk()));
-              myProjectDescriptor.dataManager.flush(true);
+              flushMemoryCaches(myProjectDescriptor);
             }
           }
           catch (Throwable e) {
@@ -795,7 +847,17 @@ public class IncProjectBuilder {
 
     final BuildTarget<?> target = targets.iterator().next();
     if (target instanceof ModuleBuildTarget) {
-      return runModuleLevelBuilders(context, new ModuleChunk(Collections.singleton((ModuleBuildTarget)target)));
+      final ModuleBuildTarget moduleTarget = (ModuleBuildTarget)target;
+      final BuildOutputCache.Fingerprint fingerprint = myOutputCache != null? myOutputCache.computeFingerprint(context, moduleTarget) : null;
+      if (fingerprint != null && myOutputCache.restore(context, fingerprint)) {
+        updateDoneFraction(context, 1.0f);
+        return true;
+      }
+      final boolean doneSomething = runModuleLevelBuilders(context, new ModuleChunk(Collections.singleton(moduleTarget)));
+      if (fingerprint != null && !Utils.errorsDetected(context) && !context.getCancelStatus().isCanceled()) {
+        myOutputCache.store(context, fingerprint);
+      }
+      return doneSomething;
     }
 
     // In general the set of files corresponding to changed source file may be different
@@ -805,7 +867,13 @@ public class IncProjectBuilder {
     
     final List<TargetBuilder<?, ?>> builders = BuilderRegistry.getInstance().getTargetBuilders();
     for (TargetBuilder<?, ?> builder : builders) {
-      BuildOperations.buildTarget(target, context, builder);
+      final BuildTrace.Span builderSpan = myTrace.startSpan(BuildTrace.BUILDER_CATEGORY, builder.getPresentableName());
+      try {
+        BuildOperations.buildTarget(target, context, builder);
+      }
+      finally {
+        builderSpan.finish();
+      }
       updateDoneFraction(context, 1.0f / builders.size());
     }
     return true;
@@ -831,12 +899,19 @@ public class IncProjectBuilder {
 
   private void buildTargetsChunk(CompileContext context, final BuildTargetChunk chunk) throws ProjectBuildException {
     boolean doneSomething;
+    final BuildTrace.Span chunkSpan = myTrace.startSpan(BuildTrace.BUILD_CATEGORY, chunk.toString());
     try {
       sendBuildingTargetMessages(chunk.getTargets(), BuildingTargetProgressMessage.Event.STARTED);
       Utils.ERRORS_DETECTED_KEY.set(context, Boolean.FALSE);
 
-      for (BuildTarget<?> target : chunk.getTargets()) {
-        BuildOperations.ensureFSStateInitialized(context, target);
+      final BuildTrace.Span scanningSpan = myTrace.startSpan(BuildTrace.FS_CATEGORY, "Scanning sources");
+      try {
+        for (BuildTarget<?> target : chunk.getTargets()) {
+          BuildOperations.ensureFSStateInitialized(context, target);
+        }
+      }
+      finally {
+        scanningSpan.finish();
       }
 
       doneSomething = processDeletedPaths(context, chunk.getTargets());
@@ -889,6 +964,7 @@ public class IncProjectBuilder {
         Utils.REMOVED_SOURCES_KEY.set(context, null);
       }
       sendBuildingTargetMessages(chunk.getTargets(), BuildingTargetProgressMessage.Event.FINISHED);
+      chunkSpan.finish();
     }
   }
 
@@ -1084,7 +1160,14 @@ public class IncProjectBuilder {
 
           for (ModuleLevelBuilder builder : builders) {
             processDeletedPaths(context, chunk.getTargets());
-            final ModuleLevelBuilder.ExitCode buildResult = builder.build(context, chunk, dirtyFilesHolder, outputConsumer);
+            final BuildTrace.Span builderSpan = myTrace.startSpan(BuildTrace.BUILDER_CATEGORY, builder.getPresentableName());
+            final ModuleLevelBuilder.ExitCode buildResult;
+            try {
+              buildResult = builder.build(context, chunk, dirtyFilesHolder, outputConsumer);
+            }
+            finally {
+              builderSpan.finish();
+            }
 
             doneSomething |= (buildResult != ModuleLevelBuilder.ExitCode.NOTHING_DONE);
 
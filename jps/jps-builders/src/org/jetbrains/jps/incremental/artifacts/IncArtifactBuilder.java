@@ -105,12 +105,14 @@ public class IncArtifactBuilder extends TargetBuilder<ArtifactRootDescriptor, Ar
       }
 
       final Set<String> changedOutputPaths = new THashSet<String>(FileUtil.PATH_HASHING_STRATEGY);
+      final Set<String> changedSourcePaths = new THashSet<String>(FileUtil.PATH_HASHING_STRATEGY);
       //noinspection SynchronizationOnLocalVariableOrMethodParameter
       holder.processDirtyFiles(new FileProcessor<ArtifactRootDescriptor, ArtifactBuildTarget>() {
         @Override
         public boolean apply(ArtifactBuildTarget target, File file, ArtifactRootDescriptor root) throws IOException {
           int rootIndex = root.getRootIndex();
           String sourcePath = FileUtil.toSystemIndependentName(file.getPath());
+          changedSourcePaths.add(sourcePath);
           addFileToProcess(filesToProcess, rootIndex, sourcePath, deletedFiles);
           final Collection<String> outputPaths = srcOutMapping.getOutputs(sourcePath);
           if (outputPaths != null) {
@@ -129,56 +131,74 @@ public class IncArtifactBuilder extends TargetBuilder<ArtifactRootDescriptor, Ar
         }
       });
 
-      BuildOperations.cleanOutputsCorrespondingToChangedFiles(context, holder);
-      for (String outputPath : changedOutputPaths) {
-        outSrcMapping.remove(outputPath);
+      final Map<String, File> previousJars = copyJarsToUpdate(target, context, filesToDelete.keySet());
+      try {
+        BuildOperations.cleanOutputsCorrespondingToChangedFiles(context, holder);
+        for (String outputPath : changedOutputPaths) {
+          outSrcMapping.remove(outputPath);
+        }
+        if (filesToDelete.isEmpty() && filesToProcess.isEmpty()) {
+          return;
+        }
+
+        deleteOutdatedFiles(filesToDelete, context, srcOutMapping, outSrcMapping);
+        context.checkCanceled();
+
+        buildArtifact(target, context, outputConsumer, outSrcMapping, filesToProcess, previousJars, changedSourcePaths);
       }
-      if (filesToDelete.isEmpty() && filesToProcess.isEmpty()) {
-        return;
+      finally {
+        for (File jarCopy : previousJars.values()) {
+          FileUtil.delete(jarCopy);
+        }
       }
+    }
+    catch (IOException e) {
+      throw new ProjectBuildException(e);
+    }
+  }
 
-      deleteOutdatedFiles(filesToDelete, context, srcOutMapping, outSrcMapping);
-      context.checkCanceled();
+  private static void buildArtifact(ArtifactBuildTarget target, CompileContext context, BuildOutputConsumer outputConsumer,
+                                    ArtifactOutputToSourceMapping outSrcMapping, TIntObjectHashMap<Set<String>> filesToProcess,
+                                    Map<String, File> previousJars, Set<String> changedSourcePaths)
+    throws IOException, ProjectBuildException {
+    final ProjectDescriptor pd = context.getProjectDescriptor();
+    final JpsArtifact artifact = target.getArtifact();
 
-      context.processMessage(new ProgressMessage("Building artifact '" + artifact.getName() + "': copying files..."));
-      final Set<JarInfo> changedJars = new THashSet<JarInfo>();
-      for (ArtifactRootDescriptor descriptor : pd.getBuildRootIndex().getTargetRoots(target, context)) {
-        context.checkCanceled();
-        final Set<String> sourcePaths = filesToProcess.get(descriptor.getRootIndex());
-        if (sourcePaths == null) continue;
+    context.processMessage(new ProgressMessage("Building artifact '" + artifact.getName() + "': copying files..."));
+    final Set<JarInfo> changedJars = new THashSet<JarInfo>();
+    for (ArtifactRootDescriptor descriptor : pd.getBuildRootIndex().getTargetRoots(target, context)) {
+      context.checkCanceled();
+      final Set<String> sourcePaths = filesToProcess.get(descriptor.getRootIndex());
+      if (sourcePaths == null) continue;
 
-        for (String sourcePath : sourcePaths) {
-          if (!descriptor.getFilter().shouldBeCopied(sourcePath, pd)) {
-            if (LOG.isDebugEnabled()) {
-              LOG.debug("File " + sourcePath + " will be skipped because it isn't accepted by filter");
-            }
-            continue;
+      for (String sourcePath : sourcePaths) {
+        if (!descriptor.getFilter().shouldBeCopied(sourcePath, pd)) {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("File " + sourcePath + " will be skipped because it isn't accepted by filter");
           }
-          DestinationInfo destination = descriptor.getDestinationInfo();
-          if (destination instanceof ExplodedDestinationInfo) {
-            descriptor.copyFromRoot(sourcePath, descriptor.getRootIndex(), destination.getOutputPath(), context,
-                                    outputConsumer, outSrcMapping);
-          }
-          else {
-            List<ArtifactOutputToSourceMapping.SourcePathAndRootIndex> sources = outSrcMapping.getState(destination.getOutputFilePath());
-            if (sources == null || sources.size() > 0 && sources.get(0).getRootIndex() == descriptor.getRootIndex()) {
-              outSrcMapping.update(destination.getOutputFilePath(),
-                                   Collections.<ArtifactOutputToSourceMapping.SourcePathAndRootIndex>emptyList());
-              changedJars.add(((JarDestinationInfo)destination).getJarInfo());
-            }
+          continue;
+        }
+        DestinationInfo destination = descriptor.getDestinationInfo();
+        if (destination instanceof ExplodedDestinationInfo) {
+          descriptor.copyFromRoot(sourcePath, descriptor.getRootIndex(), destination.getOutputPath(), context,
+                                  outputConsumer, outSrcMapping);
+        }
+        else {
+          List<ArtifactOutputToSourceMapping.SourcePathAndRootIndex> sources = outSrcMapping.getState(destination.getOutputFilePath());
+          if (sources == null || sources.size() > 0 && sources.get(0).getRootIndex() == descriptor.getRootIndex()) {
+            outSrcMapping.update(destination.getOutputFilePath(),
+                                 Collections.<ArtifactOutputToSourceMapping.SourcePathAndRootIndex>emptyList());
+            changedJars.add(((JarDestinationInfo)destination).getJarInfo());
           }
         }
       }
-      context.checkCanceled();
-
-      JarsBuilder builder = new JarsBuilder(changedJars, context, outputConsumer, outSrcMapping);
-      builder.buildJars();
-      runArtifactTasks(context, artifact, ArtifactBuildTaskProvider.ArtifactBuildPhase.FINISHING_BUILD);
-      runArtifactTasks(context, artifact, ArtifactBuildTaskProvider.ArtifactBuildPhase.POST_PROCESSING);
-    }
-    catch (IOException e) {
-      throw new ProjectBuildException(e);
     }
+    context.checkCanceled();
+
+    JarsBuilder builder = new JarsBuilder(changedJars, context, outputConsumer, outSrcMapping, previousJars, changedSourcePaths);
+    builder.buildJars();
+    runArtifactTasks(context, artifact, ArtifactBuildTaskProvider.ArtifactBuildPhase.FINISHING_BUILD);
+    runArtifactTasks(context, artifact, ArtifactBuildTaskProvider.ArtifactBuildPhase.POST_PROCESSING);
   }
 
   private static void runArtifactTasks(CompileContext context, JpsArtifact artifact, ArtifactBuildTaskProvider.ArtifactBuildPhase phase)
@@ -191,6 +211,40 @@ public class IncArtifactBuilder extends TargetBuilder<ArtifactRootDescriptor, Ar
     }
   }
 
+  /**
+   * Copies existing jars which will be rebuilt to temporary files before the outdated outputs are deleted, so {@link JarsBuilder} will be
+   * able to update them in place instead of packing all the entries again.
+   */
+  private static Map<String, File> copyJarsToUpdate(ArtifactBuildTarget target, CompileContext context, Set<String> outputsToDelete)
+    throws IOException {
+    if (outputsToDelete.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    final Set<String> jarPaths = new THashSet<String>(FileUtil.PATH_HASHING_STRATEGY);
+    for (ArtifactRootDescriptor descriptor : context.getProjectDescriptor().getBuildRootIndex().getTargetRoots(target, context)) {
+      DestinationInfo destination = descriptor.getDestinationInfo();
+      while (destination instanceof JarDestinationInfo) {
+        destination = ((JarDestinationInfo)destination).getJarInfo().getDestination();
+      }
+      if (destination != descriptor.getDestinationInfo()) {
+        jarPaths.add(FileUtil.toSystemIndependentName(destination.getOutputPath()));
+      }
+    }
+
+    final Map<String, File> copies = new HashMap<String, File>();
+    for (String outputPath : outputsToDelete) {
+      final String jarPath = FileUtil.toSystemIndependentName(outputPath);
+      final File jarFile = new File(jarPath);
+      if (jarPaths.contains(jarPath) && !copies.containsKey(jarPath) && jarFile.isFile()) {
+        final File copy = FileUtil.createTempFile("artifactCompiler", ".jar");
+        FileUtil.copy(jarFile, copy);
+        copies.put(jarPath, copy);
+      }
+    }
+    return copies;
+  }
+
   private static void addFileToProcess(TIntObjectHashMap<Set<String>> filesToProcess,
                                        final int rootIndex,
                                        final String path,
@@ -23,10 +23,14 @@ import com.intellij.openapi.util.io.FileSystemUtil;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.ArrayUtil;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.graph.CachingSemiGraph;
 import com.intellij.util.graph.DFSTBuilder;
 import com.intellij.util.graph.GraphGenerator;
 import com.intellij.util.io.ZipUtil;
+import com.intellij.util.io.zip.JBZipEntry;
+import com.intellij.util.io.zip.JBZipFile;
 import gnu.trove.THashSet;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
@@ -41,9 +45,14 @@ import org.jetbrains.jps.incremental.artifacts.instructions.*;
 import org.jetbrains.jps.incremental.messages.BuildMessage;
 import org.jetbrains.jps.incremental.messages.CompilerMessage;
 import org.jetbrains.jps.incremental.messages.ProgressMessage;
+import org.jetbrains.jps.service.SharedThreadPool;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
@@ -55,16 +64,32 @@ import java.util.zip.ZipOutputStream;
  */
 public class JarsBuilder {
   private static final Logger LOG = Logger.getInstance("#com.intellij.compiler.impl.packagingCompiler.JarsBuilder");
+  private static final int MAX_BUILDER_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
   private final Set<JarInfo> myJarsToBuild;
   private final CompileContext myContext;
   private Map<JarInfo, File> myBuiltJars;
   private final BuildOutputConsumer myOutputConsumer;
   private final ArtifactOutputToSourceMapping myOutSrcMapping;
+  private final Map<String, File> myPreviousJars;
+  private final Set<String> myChangedSourcePaths;
 
   public JarsBuilder(Set<JarInfo> jarsToBuild, CompileContext context, BuildOutputConsumer outputConsumer,
                      ArtifactOutputToSourceMapping outSrcMapping) {
+    this(jarsToBuild, context, outputConsumer, outSrcMapping, Collections.<String, File>emptyMap(), Collections.<String>emptySet());
+  }
+
+  /**
+   * @param previousJars       copies of the jars produced by the previous build which were deleted as outdated, keyed by system-independent
+   *                           output paths. Such jars (as well as jars still existing in the output) are updated in place instead of
+   *                           packing all their entries again
+   * @param changedSourcePaths system-independent paths of source files changed since the previous build
+   */
+  public JarsBuilder(Set<JarInfo> jarsToBuild, CompileContext context, BuildOutputConsumer outputConsumer,
+                     ArtifactOutputToSourceMapping outSrcMapping, Map<String, File> previousJars, Set<String> changedSourcePaths) {
     myOutputConsumer = outputConsumer;
     myOutSrcMapping = outSrcMapping;
+    myPreviousJars = previousJars;
+    myChangedSourcePaths = changedSourcePaths;
     DependentJarsEvaluator evaluator = new DependentJarsEvaluator();
     for (JarInfo jarInfo : jarsToBuild) {
       evaluator.addJarWithDependencies(jarInfo);
@@ -81,11 +106,13 @@ public class JarsBuilder {
       return false;
     }
 
-    myBuiltJars = new HashMap<JarInfo, File>();
+    myBuiltJars = new ConcurrentHashMap<JarInfo, File>();
     try {
-      for (JarInfo jar : sortedJars) {
+      for (List<JarInfo> jars : groupIndependentJars(sortedJars)) {
         myContext.checkCanceled();
-        buildJar(jar);
+        for (PackedJar packedJar : buildJars(jars)) {
+          registerPackedJar(packedJar);
+        }
       }
 
       myContext.processMessage(new ProgressMessage("Copying archives..."));
@@ -134,22 +161,153 @@ public class JarsBuilder {
     return jars;
   }
 
-  private void buildJar(final JarInfo jar) throws IOException {
-    final String emptyArchiveMessage = "Archive '" + jar.getPresentableDestination() + "' doesn't contain files so it won't be created";
-    if (jar.getContent().isEmpty()) {
-      myContext.processMessage(new CompilerMessage(IncArtifactBuilder.BUILDER_NAME, BuildMessage.Kind.WARNING, emptyArchiveMessage));
+  /**
+   * Splits sorted jars into groups which can be built concurrently: each jar is placed into a group after the groups containing jars
+   * nested into it.
+   */
+  private static List<List<JarInfo>> groupIndependentJars(JarInfo[] sortedJars) {
+    final Map<JarInfo, Integer> levels = new HashMap<JarInfo, Integer>();
+    final List<List<JarInfo>> groups = new ArrayList<List<JarInfo>>();
+    for (JarInfo jar : sortedJars) {
+      final Integer level = levels.get(jar);
+      final int jarLevel = level != null ? level : 0;
+      while (groups.size() <= jarLevel) {
+        groups.add(new ArrayList<JarInfo>());
+      }
+      groups.get(jarLevel).add(jar);
+
+      final DestinationInfo destination = jar.getDestination();
+      if (destination instanceof JarDestinationInfo) {
+        final JarInfo outerJar = ((JarDestinationInfo)destination).getJarInfo();
+        final Integer outerLevel = levels.get(outerJar);
+        if (outerLevel == null || outerLevel <= jarLevel) {
+          levels.put(outerJar, jarLevel + 1);
+        }
+      }
+    }
+    return groups;
+  }
+
+  private List<PackedJar> buildJars(List<JarInfo> jars) throws IOException, ProjectBuildException {
+    final List<PackedJar> result = new ArrayList<PackedJar>(jars.size());
+    if (jars.size() == 1 || MAX_BUILDER_THREADS == 1) {
+      for (JarInfo jar : jars) {
+        myContext.checkCanceled();
+        ContainerUtil.addIfNotNull(buildJar(jar), result);
+      }
+      return result;
+    }
+
+    final BoundedTaskExecutor executor = new BoundedTaskExecutor(SharedThreadPool.getInstance(), MAX_BUILDER_THREADS);
+    final List<Future<PackedJar>> futures = new ArrayList<Future<PackedJar>>(jars.size());
+    for (final JarInfo jar : jars) {
+      futures.add(executor.submit(new Callable<PackedJar>() {
+        @Override
+        public PackedJar call() throws Exception {
+          myContext.checkCanceled();
+          return buildJar(jar);
+        }
+      }));
+    }
+
+    Throwable error = null;
+    for (Future<PackedJar> future : futures) {
+      // wait for all the tasks even if some of them failed: temporary files are deleted after this method returns
+      try {
+        ContainerUtil.addIfNotNull(future.get(), result);
+      }
+      catch (ExecutionException e) {
+        if (error == null) {
+          error = e.getCause();
+        }
+      }
+      catch (InterruptedException e) {
+        if (error == null) {
+          error = e;
+        }
+      }
+    }
+    if (error instanceof IOException) {
+      throw (IOException)error;
+    }
+    if (error instanceof ProjectBuildException) {
+      throw (ProjectBuildException)error;
+    }
+    if (error != null) {
+      throw new ProjectBuildException(error);
+    }
+    return result;
+  }
+
+  private void registerPackedJar(PackedJar packedJar) throws IOException {
+    for (Pair<Integer, String> source : packedJar.mySources) {
+      myOutSrcMapping.appendData(packedJar.myOutputPath, source.getFirst(), source.getSecond());
+    }
+    if (!packedJar.myCreated) {
       return;
     }
 
+    final ProjectBuilderLogger logger = myContext.getLoggingManager().getProjectBuilderLogger();
+    if (logger.isEnabled()) {
+      logger.logCompiledPaths(packedJar.myPackedFilePaths, IncArtifactBuilder.BUILDER_NAME, "Packing files:");
+    }
+    myOutputConsumer.registerOutputFile(new File(packedJar.myOutputPath), packedJar.myPackedFilePaths);
+  }
+
+  /**
+   * Called concurrently for independent jars, so it must not touch storages or the output consumer directly: all the data required to
+   * register the built jar is collected in the returned {@link PackedJar}.
+   */
+  @Nullable
+  private PackedJar buildJar(final JarInfo jar) throws IOException {
+    if (jar.getContent().isEmpty()) {
+      myContext.processMessage(new CompilerMessage(IncArtifactBuilder.BUILDER_NAME, BuildMessage.Kind.WARNING, getEmptyArchiveMessage(jar)));
+      return null;
+    }
+
     myContext.processMessage(new ProgressMessage("Building " + jar.getPresentableDestination() + "..."));
+    if (jar.getDestination() instanceof ExplodedDestinationInfo) {
+      final String outputPath = FileUtil.toSystemIndependentName(jar.getDestination().getOutputFilePath());
+      File previousJar = myPreviousJars.get(outputPath);
+      final File outputFile = new File(outputPath);
+      if (previousJar == null && outputFile.isFile()) {
+        previousJar = FileUtil.createTempFile("artifactCompiler", ".jar");
+        FileUtil.copy(outputFile, previousJar);
+      }
+      if (previousJar != null && previousJar.isFile()) {
+        final PackedJar packedJar = packJar(jar, previousJar, true);
+        if (packedJar != null) {
+          return packedJar;
+        }
+        FileUtil.delete(previousJar);
+        LOG.debug("Cannot update " + jar.getPresentableDestination() + " incrementally, it will be rebuilt from scratch");
+      }
+    }
+
     File jarFile = FileUtil.createTempFile("artifactCompiler", "tmp");
-    myBuiltJars.put(jar, jarFile);
+    return packJar(jar, jarFile, false);
+  }
 
-    FileUtil.createParentDirs(jarFile);
+  /**
+   * @return {@code null} if {@code update} is {@code true} and {@code jarFile} cannot be updated in place
+   */
+  @Nullable
+  private PackedJar packJar(JarInfo jar, File jarFile, boolean update) throws IOException {
     final String targetJarPath = jar.getDestination().getOutputFilePath();
-    List<String> packedFilePaths = new ArrayList<String>();
-    Manifest manifest = loadManifest(jar, packedFilePaths);
-    final JarOutputStream jarOutputStream = createJarOutputStream(jarFile, manifest);
+    final PackedJar packedJar = new PackedJar(targetJarPath);
+    Manifest manifest = loadManifest(jar, packedJar.myPackedFilePaths);
+    final JarEntryWriter writer;
+    if (update) {
+      writer = JarUpdater.open(jarFile, manifest, myChangedSourcePaths);
+      if (writer == null) {
+        return null;
+      }
+    }
+    else {
+      FileUtil.createParentDirs(jarFile);
+      writer = new JarStreamWriter(createJarOutputStream(jarFile, manifest));
+    }
+    myBuiltJars.put(jar, jarFile);
 
     final THashSet<String> writtenPaths = new THashSet<String>();
     try {
@@ -163,22 +321,20 @@ public class JarsBuilder {
           final ArtifactRootDescriptor descriptor = (ArtifactRootDescriptor)pair.getSecond();
           final int rootIndex = descriptor.getRootIndex();
           if (descriptor instanceof FileBasedArtifactRootDescriptor) {
-            addFileToJar(jarOutputStream, jarFile, descriptor.getRootFile(), descriptor.getFilter(), relativePath, targetJarPath, writtenPaths,
-                         packedFilePaths, rootIndex);
+            addFileToJar(writer, jarFile, descriptor.getRootFile(), descriptor.getFilter(), relativePath, writtenPaths, packedJar, rootIndex);
           }
           else {
             final String filePath = FileUtil.toSystemIndependentName(descriptor.getRootFile().getAbsolutePath());
-            packedFilePaths.add(filePath);
-            myOutSrcMapping.appendData(targetJarPath, rootIndex, filePath);
-            extractFileAndAddToJar(jarOutputStream, (JarBasedArtifactRootDescriptor)descriptor, relativePath, writtenPaths);
+            packedJar.myPackedFilePaths.add(filePath);
+            packedJar.mySources.add(Pair.create(rootIndex, filePath));
+            extractFileAndAddToJar(writer, (JarBasedArtifactRootDescriptor)descriptor, relativePath, writtenPaths);
           }
         }
         else {
           JarInfo nestedJar = (JarInfo)pair.getSecond();
           File nestedJarFile = myBuiltJars.get(nestedJar);
           if (nestedJarFile != null) {
-            addFileToJar(jarOutputStream, jarFile, nestedJarFile, SourceFileFilter.ALL, relativePath, targetJarPath, writtenPaths,
-                         packedFilePaths, -1);
+            addFileToJar(writer, jarFile, nestedJarFile, SourceFileFilter.ALL, relativePath, writtenPaths, packedJar, -1);
           }
           else {
             LOG.debug("nested jar file " + relativePath + " for " + jar.getPresentableDestination() + " not found");
@@ -187,21 +343,17 @@ public class JarsBuilder {
       }
 
       if (writtenPaths.isEmpty()) {
-        myContext.processMessage(new CompilerMessage(IncArtifactBuilder.BUILDER_NAME, BuildMessage.Kind.WARNING, emptyArchiveMessage));
-        return;
+        myContext.processMessage(new CompilerMessage(IncArtifactBuilder.BUILDER_NAME, BuildMessage.Kind.WARNING, getEmptyArchiveMessage(jar)));
+        return packedJar;
       }
 
-      final ProjectBuilderLogger logger = myContext.getLoggingManager().getProjectBuilderLogger();
-      if (logger.isEnabled()) {
-        logger.logCompiledPaths(packedFilePaths, IncArtifactBuilder.BUILDER_NAME, "Packing files:");
-      }
-      myOutputConsumer.registerOutputFile(new File(targetJarPath), packedFilePaths);
-
+      packedJar.myCreated = true;
+      return packedJar;
     }
     finally {
       if (writtenPaths.isEmpty()) {
         try {
-          jarOutputStream.close();
+          writer.close();
         }
         catch (IOException ignored) {
         }
@@ -209,11 +361,15 @@ public class JarsBuilder {
         myBuiltJars.remove(jar);
       }
       else {
-        jarOutputStream.close();
+        writer.close();
       }
     }
   }
 
+  private static String getEmptyArchiveMessage(JarInfo jar) {
+    return "Archive '" + jar.getPresentableDestination() + "' doesn't contain files so it won't be created";
+  }
+
   private static JarOutputStream createJarOutputStream(File jarFile, @Nullable Manifest manifest) throws IOException {
     final BufferedOutputStream outputStream = new BufferedOutputStream(new FileOutputStream(jarFile));
     if (manifest != null) {
@@ -278,54 +434,43 @@ public class JarsBuilder {
     }
   }
 
-  private static void extractFileAndAddToJar(final JarOutputStream jarOutputStream, final JarBasedArtifactRootDescriptor root,
+  private static void extractFileAndAddToJar(final JarEntryWriter writer, final JarBasedArtifactRootDescriptor root,
                                              final String relativeOutputPath, final Set<String> writtenPaths)
     throws IOException {
     final long timestamp = FileSystemUtil.lastModified(root.getRootFile());
     root.processEntries(new JarBasedArtifactRootDescriptor.EntryProcessor() {
       @Override
       public void process(@Nullable InputStream inputStream, @NotNull String relativePath, ZipEntry entry) throws IOException {
-        String pathInJar = addParentDirectories(jarOutputStream, writtenPaths, JpsArtifactPathUtil
-          .appendToPath(relativeOutputPath, relativePath));
+        String pathInJar = addParentDirectories(writer, writtenPaths, JpsArtifactPathUtil.appendToPath(relativeOutputPath, relativePath));
 
         if (inputStream == null) {
-          addDirectoryEntry(jarOutputStream, pathInJar + "/", writtenPaths);
+          addDirectoryEntry(writer, pathInJar + "/", writtenPaths);
         }
         else if (writtenPaths.add(pathInJar)) {
-          ZipEntry newEntry = new ZipEntry(pathInJar);
-          newEntry.setTime(timestamp);
-          if (entry.getMethod() == ZipEntry.STORED) {
-            newEntry.setMethod(ZipEntry.STORED);
-            newEntry.setSize(entry.getSize());
-            newEntry.setCrc(entry.getCrc());
-          }
-          jarOutputStream.putNextEntry(newEntry);
-          FileUtil.copy(inputStream, jarOutputStream);
-          jarOutputStream.closeEntry();
+          writer.addEntry(pathInJar, entry, inputStream, timestamp);
         }
       }
     });
 
   }
 
-  private void addFileToJar(final @NotNull JarOutputStream jarOutputStream, final @NotNull File jarFile, @NotNull File file,
-                            SourceFileFilter filter, @NotNull String relativePath, String targetJarPath,
-                            final @NotNull Set<String> writtenPaths, List<String> packedFilePaths, final int rootIndex) throws IOException {
+  private void addFileToJar(final @NotNull JarEntryWriter writer, final @NotNull File jarFile, @NotNull File file,
+                            SourceFileFilter filter, @NotNull String relativePath, final @NotNull Set<String> writtenPaths,
+                            @NotNull PackedJar packedJar, final int rootIndex) throws IOException {
     if (!file.exists() || FileUtil.isAncestor(file, jarFile, false)) {
       return;
     }
 
-    relativePath = addParentDirectories(jarOutputStream, writtenPaths, relativePath);
-    addFileOrDirRecursively(jarOutputStream, file, filter, relativePath, targetJarPath, writtenPaths, packedFilePaths, rootIndex);
+    relativePath = addParentDirectories(writer, writtenPaths, relativePath);
+    addFileOrDirRecursively(writer, file, filter, relativePath, writtenPaths, packedJar, rootIndex);
   }
 
-  private void addFileOrDirRecursively(@NotNull ZipOutputStream jarOutputStream,
+  private void addFileOrDirRecursively(@NotNull JarEntryWriter writer,
                                        @NotNull File file,
                                        SourceFileFilter filter,
                                        @NotNull String relativePath,
-                                       String targetJarPath,
                                        @NotNull Set<String> writtenItemRelativePaths,
-                                       List<String> packedFilePaths,
+                                       @NotNull PackedJar packedJar,
                                        int rootIndex) throws IOException {
     final String filePath = FileUtil.toSystemIndependentName(file.getAbsolutePath());
     if (!filter.accept(filePath) || !filter.shouldBeCopied(filePath, myContext.getProjectDescriptor())) {
@@ -335,29 +480,31 @@ public class JarsBuilder {
     if (file.isDirectory()) {
       final String directoryPath = relativePath.length() == 0 ? "" : relativePath + "/";
       if (!directoryPath.isEmpty()) {
-        addDirectoryEntry(jarOutputStream, directoryPath, writtenItemRelativePaths);
+        addDirectoryEntry(writer, directoryPath, writtenItemRelativePaths);
       }
       final File[] children = file.listFiles();
       if (children != null) {
         for (File child : children) {
-          addFileOrDirRecursively(jarOutputStream, child, filter, directoryPath + child.getName(), targetJarPath, writtenItemRelativePaths,
-                                  packedFilePaths, rootIndex);
+          addFileOrDirRecursively(writer, child, filter, directoryPath + child.getName(), writtenItemRelativePaths, packedJar, rootIndex);
         }
       }
       return;
     }
 
-    final boolean added = ZipUtil.addFileToZip(jarOutputStream, file, relativePath, writtenItemRelativePaths, null);
+    final boolean added = writtenItemRelativePaths.add(relativePath);
+    if (added) {
+      writer.addFile(file, filePath, relativePath);
+    }
     if (rootIndex != -1) {
-      myOutSrcMapping.appendData(targetJarPath, rootIndex, filePath);
+      packedJar.mySources.add(Pair.create(rootIndex, filePath));
       if (added) {
-        packedFilePaths.add(filePath);
+        packedJar.myPackedFilePaths.add(filePath);
       }
     }
   }
 
 
-  private static String addParentDirectories(JarOutputStream jarOutputStream, Set<String> writtenPaths, String relativePath) throws IOException {
+  private static String addParentDirectories(JarEntryWriter writer, Set<String> writtenPaths, String relativePath) throws IOException {
     while (StringUtil.startsWithChar(relativePath, '/')) {
       relativePath = relativePath.substring(1);
     }
@@ -365,22 +512,17 @@ public class JarsBuilder {
     while (i != -1) {
       String prefix = relativePath.substring(0, i+1);
       if (prefix.length() > 1) {
-        addDirectoryEntry(jarOutputStream, prefix, writtenPaths);
+        addDirectoryEntry(writer, prefix, writtenPaths);
       }
       i = relativePath.indexOf('/', i + 1);
     }
     return relativePath;
   }
 
-  private static void addDirectoryEntry(final ZipOutputStream output, @NonNls final String relativePath, Set<String> writtenPaths) throws IOException {
+  private static void addDirectoryEntry(final JarEntryWriter writer, @NonNls final String relativePath, Set<String> writtenPaths) throws IOException {
     if (!writtenPaths.add(relativePath)) return;
 
-    ZipEntry e = new ZipEntry(relativePath);
-    e.setMethod(ZipEntry.STORED);
-    e.setSize(0);
-    e.setCrc(0);
-    output.putNextEntry(e);
-    output.closeEntry();
+    writer.addDirectory(relativePath);
   }
 
   private class JarsGraph implements GraphGenerator.SemiGraph<JarInfo> {
@@ -397,4 +539,193 @@ public class JarsBuilder {
       return ins.iterator();
     }
   }
+
+  private static class PackedJar {
+    private final String myOutputPath;
+    private final List<String> myPackedFilePaths = new ArrayList<String>();
+    private final List<Pair<Integer, String>> mySources = new ArrayList<Pair<Integer, String>>();
+    private boolean myCreated;
+
+    private PackedJar(String outputPath) {
+      myOutputPath = outputPath;
+    }
+  }
+
+  private interface JarEntryWriter {
+    void addDirectory(@NotNull String pathInJar) throws IOException;
+
+    void addFile(@NotNull File file, @NotNull String filePath, @NotNull String pathInJar) throws IOException;
+
+    void addEntry(@NotNull String pathInJar, @NotNull ZipEntry sourceEntry, @NotNull InputStream content, long timestamp) throws IOException;
+
+    void close() throws IOException;
+  }
+
+  private static class JarStreamWriter implements JarEntryWriter {
+    private final ZipOutputStream myOutput;
+
+    private JarStreamWriter(ZipOutputStream output) {
+      myOutput = output;
+    }
+
+    @Override
+    public void addDirectory(@NotNull String pathInJar) throws IOException {
+      ZipEntry e = new ZipEntry(pathInJar);
+      e.setMethod(ZipEntry.STORED);
+      e.setSize(0);
+      e.setCrc(0);
+      myOutput.putNextEntry(e);
+      myOutput.closeEntry();
+    }
+
+    @Override
+    public void addFile(@NotNull File file, @NotNull String filePath, @NotNull String pathInJar) throws IOException {
+      ZipUtil.addFileToZip(myOutput, file, pathInJar, null, null);
+    }
+
+    @Override
+    public void addEntry(@NotNull String pathInJar, @NotNull ZipEntry sourceEntry, @NotNull InputStream content, long timestamp)
+      throws IOException {
+      ZipEntry newEntry = new ZipEntry(pathInJar);
+      newEntry.setTime(timestamp);
+      if (sourceEntry.getMethod() == ZipEntry.STORED) {
+        newEntry.setMethod(ZipEntry.STORED);
+        newEntry.setSize(sourceEntry.getSize());
+        newEntry.setCrc(sourceEntry.getCrc());
+      }
+      myOutput.putNextEntry(newEntry);
+      FileUtil.copy(content, myOutput);
+      myOutput.closeEntry();
+    }
+
+    @Override
+    public void close() throws IOException {
+      myOutput.close();
+    }
+  }
+
+  /**
+   * Updates a jar produced by the previous build in place. Entries of unchanged files are kept as is, new and modified entries are appended
+   * to the end of the file and the central directory is rewritten when the jar is closed.
+   */
+  private static class JarUpdater implements JarEntryWriter {
+    private static final int ZIP_TIME_PRECISION = 2000;
+    private static final int ENTRY_HEADERS_SIZE = 30 + 46;
+    private final JBZipFile myZipFile;
+    private final Set<String> myChangedSourcePaths;
+    private final Set<String> myStaleEntries = new THashSet<String>();
+    private int myUpdatedEntriesCount;
+
+    private JarUpdater(JBZipFile zipFile, Set<String> changedSourcePaths) {
+      myZipFile = zipFile;
+      myChangedSourcePaths = changedSourcePaths;
+      for (JBZipEntry entry : zipFile.getEntries()) {
+        myStaleEntries.add(entry.getName());
+      }
+      myStaleEntries.remove(JarFile.MANIFEST_NAME);
+    }
+
+    @Nullable
+    public static JarUpdater open(File jarFile, @Nullable Manifest manifest, Set<String> changedSourcePaths) {
+      JBZipFile zipFile = null;
+      try {
+        zipFile = new JBZipFile(jarFile);
+        if (hasTooMuchGarbage(zipFile, jarFile.length()) || !isManifestUpToDate(zipFile, manifest)) {
+          zipFile.close();
+          return null;
+        }
+        return new JarUpdater(zipFile, changedSourcePaths);
+      }
+      catch (IOException e) {
+        LOG.debug(e);
+        if (zipFile != null) {
+          try {
+            zipFile.close();
+          }
+          catch (IOException ignored) {
+          }
+        }
+        return null;
+      }
+    }
+
+    /**
+     * Replaced entries aren't removed from the file, so it's cheaper to rebuild a jar from scratch if it mostly consists of them.
+     */
+    private static boolean hasTooMuchGarbage(JBZipFile zipFile, long fileLength) {
+      long liveBytes = 0;
+      for (JBZipEntry entry : zipFile.getEntries()) {
+        liveBytes += entry.getCompressedSize() + 2 * entry.getName().length() + ENTRY_HEADERS_SIZE;
+      }
+      return fileLength - liveBytes > liveBytes;
+    }
+
+    /**
+     * The manifest must be the first entry in the jar, so the jar cannot be updated in place if the manifest was changed.
+     */
+    private static boolean isManifestUpToDate(JBZipFile zipFile, @Nullable Manifest manifest) throws IOException {
+      final JBZipEntry entry = zipFile.getEntry(JarFile.MANIFEST_NAME);
+      if (manifest == null || entry == null) {
+        return manifest == null && entry == null;
+      }
+      final ByteArrayOutputStream content = new ByteArrayOutputStream();
+      manifest.write(content);
+      return Arrays.equals(content.toByteArray(), entry.getData());
+    }
+
+    @Override
+    public void addDirectory(@NotNull String pathInJar) throws IOException {
+      if (!myStaleEntries.remove(pathInJar)) {
+        writeEntry(pathInJar, ArrayUtil.EMPTY_BYTE_ARRAY, System.currentTimeMillis(), ZipEntry.STORED);
+      }
+    }
+
+    @Override
+    public void addFile(@NotNull File file, @NotNull String filePath, @NotNull String pathInJar) throws IOException {
+      final long timestamp = file.lastModified();
+      if (myStaleEntries.remove(pathInJar) && !myChangedSourcePaths.contains(filePath)) {
+        JBZipEntry entry = myZipFile.getEntry(pathInJar);
+        if (entry.getSize() == file.length() && isSameTime(entry.getTime(), timestamp)) {
+          return;
+        }
+      }
+      final byte[] content = FileUtil.loadFileBytes(file);
+      writeEntry(pathInJar, content, timestamp, content.length == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED);
+    }
+
+    @Override
+    public void addEntry(@NotNull String pathInJar, @NotNull ZipEntry sourceEntry, @NotNull InputStream content, long timestamp)
+      throws IOException {
+      if (myStaleEntries.remove(pathInJar)) {
+        JBZipEntry entry = myZipFile.getEntry(pathInJar);
+        if (entry.getSize() == sourceEntry.getSize() && isSameTime(entry.getTime(), timestamp)) {
+          return;
+        }
+      }
+      writeEntry(pathInJar, FileUtil.loadBytes(content), timestamp,
+                 sourceEntry.getMethod() == ZipEntry.STORED ? ZipEntry.STORED : ZipEntry.DEFLATED);
+    }
+
+    private void writeEntry(String pathInJar, byte[] content, long timestamp, int method) throws IOException {
+      final JBZipEntry entry = myZipFile.getOrCreateEntry(pathInJar);
+      entry.setMethod(method);
+      entry.setData(content, timestamp);
+      myUpdatedEntriesCount++;
+    }
+
+    private static boolean isSameTime(long entryTime, long fileTime) {
+      return Math.abs(entryTime - fileTime) < ZIP_TIME_PRECISION;
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (String path : myStaleEntries) {
+        myZipFile.getEntry(path).erase();
+      }
+      if (LOG.isDebugEnabled()) {
+        LOG.debug(myUpdatedEntriesCount + " entries updated, " + myStaleEntries.size() + " entries removed");
+      }
+      myZipFile.close();
+    }
+  }
 }
@@ -0,0 +1,503 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.cache;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.asm4.ClassReader;
+import org.jetbrains.jps.ModuleChunk;
+import org.jetbrains.jps.ProjectPaths;
+import org.jetbrains.jps.api.GlobalOptions;
+import org.jetbrains.jps.builders.DirtyFilesHolder;
+import org.jetbrains.jps.builders.FileProcessor;
+import org.jetbrains.jps.builders.impl.BuildOutputConsumerImpl;
+import org.jetbrains.jps.builders.impl.DirtyFilesHolderBase;
+import org.jetbrains.jps.builders.java.JavaBuilderUtil;
+import org.jetbrains.jps.builders.java.JavaSourceRootDescriptor;
+import org.jetbrains.jps.builders.java.dependencyView.Callbacks;
+import org.jetbrains.jps.builders.java.dependencyView.Mappings;
+import org.jetbrains.jps.builders.storage.SourceToOutputMapping;
+import org.jetbrains.jps.cmdline.ProjectDescriptor;
+import org.jetbrains.jps.incremental.CompileContext;
+import org.jetbrains.jps.incremental.FSOperations;
+import org.jetbrains.jps.incremental.ModuleBuildTarget;
+import org.jetbrains.jps.incremental.java.JavaBuilder;
+import org.jetbrains.jps.incremental.messages.BuildMessage;
+import org.jetbrains.jps.incremental.messages.CompilerMessage;
+import org.jetbrains.jps.incremental.messages.ProgressMessage;
+import org.jetbrains.jps.model.JpsDummyElement;
+import org.jetbrains.jps.model.java.JpsJavaExtensionService;
+import org.jetbrains.jps.model.java.JpsJavaSdkType;
+import org.jetbrains.jps.model.java.compiler.JpsJavaCompilerConfiguration;
+import org.jetbrains.jps.model.library.sdk.JpsSdk;
+import org.jetbrains.jps.model.module.JpsModule;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Shared cache of module compilation outputs. Outputs of a module target are looked up by a key computed from
+ * the contents of all its sources, its compilation classpath and compiler options, so the cache can be shared
+ * between machines and checkouts located at different paths.
+ * <p/>
+ * The cache is consulted only for targets which are going to be compiled from scratch (project rebuild,
+ * forced build or a target that was never compiled before), which covers fresh checkouts and CI agents.
+ * Directories from the classpath are identified by keys of the targets which produced them in the current session,
+ * so a target depending on a module whose output was not produced or restored in this session is compiled as usual.
+ */
+public class BuildOutputCache {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.cache.BuildOutputCache");
+  private static final int VERSION = 1;
+  private static final String MANIFEST_ENTRY = "manifest.txt";
+  private static final String OUTPUT_ENTRY_PREFIX = "out/";
+
+  private final BuildOutputCacheStore myStore;
+  private final Map<String, String> myOutputDirKeys = new ConcurrentHashMap<String, String>();
+  private final Map<String, String> myJarDigests = new ConcurrentHashMap<String, String>();
+  private final AtomicInteger myRestoredCount = new AtomicInteger();
+  private final AtomicInteger myStoredCount = new AtomicInteger();
+
+  public BuildOutputCache(@NotNull BuildOutputCacheStore store) {
+    myStore = store;
+  }
+
+  @Nullable
+  public static BuildOutputCache createFromSystemProperties() {
+    final String location = System.getProperty(GlobalOptions.COMPILE_OUTPUT_CACHE_OPTION);
+    if (StringUtil.isEmptyOrSpaces(location)) {
+      return null;
+    }
+    final String trimmed = location.trim();
+    if (trimmed.startsWith("http://") || trimmed.startsWith("https://")) {
+      return new BuildOutputCache(new HttpBuildOutputCacheStore(trimmed));
+    }
+    return new BuildOutputCache(new LocalBuildOutputCacheStore(new File(trimmed)));
+  }
+
+  /**
+   * @return fingerprint of the target's inputs or null if the cache cannot be used for the target in the current state
+   */
+  @Nullable
+  public Fingerprint computeFingerprint(CompileContext context, ModuleBuildTarget target) throws IOException {
+    final ProjectDescriptor pd = context.getProjectDescriptor();
+    final JpsModule module = target.getModule();
+    final File outputDir = target.getOutputDir();
+    if (outputDir == null) {
+      return null;
+    }
+    final JpsJavaCompilerConfiguration compilerConfig =
+      JpsJavaExtensionService.getInstance().getOrCreateCompilerConfiguration(pd.getProject());
+    if (compilerConfig.getAnnotationProcessingProfile(module).isEnabled()) {
+      return null;
+    }
+    if (!context.isProjectRebuild() && !context.getScope().isBuildForced(target) &&
+        pd.dataManager.getSourceToOutputMap(target).getSourcesIterator().hasNext()) {
+      return null; // target was compiled before, incremental make will be faster
+    }
+
+    final List<JavaSourceRootDescriptor> roots = pd.getBuildRootIndex().getTargetRoots(target, context);
+    final Map<File, String> relativePaths = new THashMap<File, String>(FileUtil.FILE_HASHING_STRATEGY);
+    FSOperations.processFilesToRecompile(context, target, new FileProcessor<JavaSourceRootDescriptor, ModuleBuildTarget>() {
+      @Override
+      public boolean apply(ModuleBuildTarget target, File file, JavaSourceRootDescriptor root) throws IOException {
+        final int rootIndex = roots.indexOf(root);
+        final String relative = FileUtil.getRelativePath(root.getRootFile(), file);
+        if (rootIndex >= 0 && !root.isTemp && relative != null) {
+          relativePaths.put(file, rootIndex + "/" + FileUtil.toSystemIndependentName(relative));
+        }
+        return true;
+      }
+    });
+    if (relativePaths.isEmpty()) {
+      return null;
+    }
+
+    final MessageDigest digest = createDigest();
+    update(digest, "jps-output-cache:" + VERSION);
+    update(digest, target.getTargetType().getTypeId());
+    update(digest, compilerConfig.getJavaCompilerId());
+    update(digest, System.getProperty("java.version"));
+    update(digest, String.valueOf(compilerConfig.isAddNotNullAssertions()));
+    final JpsSdk<JpsDummyElement> sdk = module.getSdk(JpsJavaSdkType.INSTANCE);
+    update(digest, sdk != null? sdk.getVersionString() : "");
+    final ModuleChunk chunk = new ModuleChunk(Collections.singleton(target));
+    for (String option : JavaBuilder.getCompilationOptions(context, chunk)) {
+      update(digest, option);
+    }
+
+    final String ownOutput = FileUtil.toSystemIndependentName(outputDir.getAbsolutePath());
+    final List<File> classpath = new ArrayList<File>(ProjectPaths.getPlatformCompilationClasspath(chunk, false));
+    classpath.addAll(ProjectPaths.getCompilationClasspath(chunk, false));
+    for (File file : classpath) {
+      final String path = FileUtil.toSystemIndependentName(file.getAbsolutePath());
+      if (path.equals(ownOutput)) {
+        continue;
+      }
+      if (file.isDirectory()) {
+        final String key = myOutputDirKeys.get(path);
+        if (key == null) {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Output cache is not used for " + target.getPresentableName() + ": unknown classpath directory " + path);
+          }
+          return null;
+        }
+        update(digest, key);
+      }
+      else if (file.isFile()) {
+        update(digest, file.getName());
+        update(digest, getJarDigest(path, file));
+      }
+    }
+
+    final List<File> sources = new ArrayList<File>(relativePaths.keySet());
+    Collections.sort(sources, new Comparator<File>() {
+      @Override
+      public int compare(File o1, File o2) {
+        return relativePaths.get(o1).compareTo(relativePaths.get(o2));
+      }
+    });
+    final byte[] buffer = new byte[16 * 1024];
+    for (File source : sources) {
+      update(digest, relativePaths.get(source));
+      updateWithContent(digest, source, buffer);
+    }
+    return new Fingerprint(toHex(digest.digest()), target, outputDir, relativePaths);
+  }
+
+  /**
+   * Unpacks the cached outputs into the target's output directory and registers them in the source-to-output mapping
+   * and in the dependency mappings, exactly as if they were produced by the compiler.
+   * @return true if outputs were restored from the cache, false if the entry is missing or cannot be used
+   */
+  public boolean restore(final CompileContext context, Fingerprint fingerprint) {
+    final File entryFile;
+    try {
+      entryFile = FileUtil.createTempFile("jps-output-cache", ".zip", true);
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      return false;
+    }
+    try {
+      if (!myStore.fetch(fingerprint.getKey(), entryFile)) {
+        return false;
+      }
+      context.processMessage(new ProgressMessage("Restoring compiled classes from cache... [" + fingerprint.getTarget().getPresentableName() + "]"));
+      restoreFromEntry(context, fingerprint, entryFile);
+      myOutputDirKeys.put(FileUtil.toSystemIndependentName(fingerprint.getOutputDir().getAbsolutePath()), fingerprint.getKey());
+      myRestoredCount.incrementAndGet();
+      LOG.info("Compiled output of " + fingerprint.getTarget().getPresentableName() + " restored from cache " + myStore + ", key " + fingerprint.getKey());
+      return true;
+    }
+    catch (IOException e) {
+      LOG.info("Cannot restore " + fingerprint.getTarget().getPresentableName() + " from output cache", e);
+      return false;
+    }
+    finally {
+      FileUtil.delete(entryFile);
+    }
+  }
+
+  private static void restoreFromEntry(final CompileContext context, Fingerprint fingerprint, File entryFile) throws IOException {
+    final ModuleBuildTarget target = fingerprint.getTarget();
+    final Map<String, File> sourcesByRelativePath = new HashMap<String, File>();
+    for (Map.Entry<File, String> entry : fingerprint.myRelativePaths.entrySet()) {
+      sourcesByRelativePath.put(entry.getValue(), entry.getKey());
+    }
+
+    final File outputDir = fingerprint.getOutputDir();
+    final Map<File, List<String>> outputsBySource = new THashMap<File, List<String>>(FileUtil.FILE_HASHING_STRATEGY);
+    final ZipFile zip = new ZipFile(entryFile);
+    try {
+      final ZipEntry manifestEntry = zip.getEntry(MANIFEST_ENTRY);
+      if (manifestEntry == null) {
+        throw new IOException("Cache entry " + fingerprint.getKey() + " has no manifest");
+      }
+      final BufferedReader reader = new BufferedReader(new InputStreamReader(zip.getInputStream(manifestEntry), "UTF-8"));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          final List<String> parts = StringUtil.split(line, "\t");
+          if (parts.isEmpty()) {
+            continue;
+          }
+          final File source = sourcesByRelativePath.get(parts.get(0));
+          if (source == null) {
+            throw new IOException("Cache entry " + fingerprint.getKey() + " refers to unknown source " + parts.get(0));
+          }
+          final List<String> outputs = parts.subList(1, parts.size());
+          for (String output : outputs) {
+            checkInsideOutputDir(outputDir, output);
+          }
+          outputsBySource.put(source, outputs);
+        }
+      }
+      finally {
+        reader.close();
+      }
+
+      // entries may come from a remote cache, so all of them are checked before anything is written
+      final Map<ZipEntry, File> outputFiles = new LinkedHashMap<ZipEntry, File>();
+      final Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        final ZipEntry entry = entries.nextElement();
+        final String name = entry.getName();
+        if (entry.isDirectory() || !name.startsWith(OUTPUT_ENTRY_PREFIX)) {
+          continue;
+        }
+        outputFiles.put(entry, checkInsideOutputDir(outputDir, name.substring(OUTPUT_ENTRY_PREFIX.length())));
+      }
+
+      for (Map.Entry<ZipEntry, File> entry : outputFiles.entrySet()) {
+        final File outputFile = entry.getValue();
+        FileUtil.createParentDirs(outputFile);
+        final InputStream in = zip.getInputStream(entry.getKey());
+        try {
+          final OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile));
+          try {
+            FileUtil.copy(in, out);
+          }
+          finally {
+            out.close();
+          }
+        }
+        finally {
+          in.close();
+        }
+      }
+    }
+    finally {
+      zip.close();
+    }
+
+    final ProjectDescriptor pd = context.getProjectDescriptor();
+    final Mappings delta = pd.dataManager.getMappings().createDelta();
+    final Callbacks.Backend callback = delta.getCallback();
+    final BuildOutputConsumerImpl outputConsumer = new BuildOutputConsumerImpl(target, context);
+    final Collection<File> javaSources = new ArrayList<File>();
+    for (File source : fingerprint.myRelativePaths.keySet()) {
+      if (JavaBuilder.JAVA_SOURCES_FILTER.accept(source)) {
+        javaSources.add(source);
+      }
+      final List<String> outputs = outputsBySource.get(source);
+      if (outputs == null) {
+        continue;
+      }
+      final String sourcePath = FileUtil.toSystemIndependentName(source.getPath());
+      for (String relativeOutput : outputs) {
+        final File outputFile = new File(outputDir, relativeOutput);
+        outputConsumer.registerOutputFile(outputFile, Collections.singleton(source.getPath()));
+        if (relativeOutput.endsWith(".class")) {
+          callback.associate(FileUtil.toSystemIndependentName(outputFile.getPath()), sourcePath, new ClassReader(FileUtil.loadFileBytes(outputFile)));
+        }
+      }
+    }
+
+    final ModuleChunk chunk = new ModuleChunk(Collections.singleton(target));
+    final DirtyFilesHolder<JavaSourceRootDescriptor, ModuleBuildTarget> dirtyFilesHolder =
+      new DirtyFilesHolderBase<JavaSourceRootDescriptor, ModuleBuildTarget>(context) {
+        @Override
+        public void processDirtyFiles(@NotNull FileProcessor<JavaSourceRootDescriptor, ModuleBuildTarget> processor) throws IOException {
+          FSOperations.processFilesToRecompile(context, chunk, processor);
+        }
+      };
+    try {
+      JavaBuilderUtil.updateMappings(context, delta, dirtyFilesHolder, chunk, javaSources, javaSources);
+    }
+    finally {
+      JavaBuilderUtil.cleanupChunkResources(context);
+    }
+    outputConsumer.fireFileGeneratedEvent();
+  }
+
+  /**
+   * @return the file the relative path points to
+   * @throws IOException if the path points outside of the output directory, e.g. contains '..'; the whole cache entry is rejected then
+   */
+  @NotNull
+  static File checkInsideOutputDir(@NotNull File outputDir, @NotNull String relativePath) throws IOException {
+    final File file = new File(outputDir, relativePath);
+    final File canonicalDir = outputDir.getCanonicalFile();
+    if (relativePath.length() == 0 || !FileUtil.isAncestor(canonicalDir, file.getCanonicalFile(), true)) {
+      throw new IOException("Cache entry refers to " + relativePath + " outside of output directory " + outputDir.getPath());
+    }
+    return file;
+  }
+
+  /**
+   * Packs outputs of a successfully compiled target and puts them into the cache
+   */
+  public void store(CompileContext context, Fingerprint fingerprint) {
+    final ModuleBuildTarget target = fingerprint.getTarget();
+    final String outputDirPath = FileUtil.toSystemIndependentName(fingerprint.getOutputDir().getPath());
+    File entryFile = null;
+    try {
+      final SourceToOutputMapping mapping = context.getProjectDescriptor().dataManager.getSourceToOutputMap(target);
+      final StringBuilder manifest = new StringBuilder();
+      final Set<String> outputs = new LinkedHashSet<String>();
+      for (Map.Entry<File, String> entry : fingerprint.myRelativePaths.entrySet()) {
+        final Collection<String> sourceOutputs = mapping.getOutputs(entry.getKey().getPath());
+        if (sourceOutputs == null || sourceOutputs.isEmpty()) {
+          continue;
+        }
+        manifest.append(entry.getValue());
+        for (String output : sourceOutputs) {
+          final String relative = FileUtil.getRelativePath(outputDirPath, FileUtil.toSystemIndependentName(output), '/');
+          if (relative == null || relative.startsWith("../")) {
+            LOG.debug("Output cache: " + output + " is outside of " + outputDirPath + ", not caching " + target.getPresentableName());
+            return;
+          }
+          manifest.append('\t').append(relative);
+          outputs.add(relative);
+        }
+        manifest.append('\n');
+      }
+
+      entryFile = FileUtil.createTempFile("jps-output-cache", ".zip", true);
+      final ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(entryFile)));
+      try {
+        zip.putNextEntry(new ZipEntry(MANIFEST_ENTRY));
+        zip.write(manifest.toString().getBytes("UTF-8"));
+        zip.closeEntry();
+        for (String relative : outputs) {
+          final File outputFile = new File(fingerprint.getOutputDir(), relative);
+          if (!outputFile.isFile()) {
+            LOG.debug("Output cache: " + outputFile.getPath() + " does not exist, not caching " + target.getPresentableName());
+            return;
+          }
+          zip.putNextEntry(new ZipEntry(OUTPUT_ENTRY_PREFIX + relative));
+          zip.write(FileUtil.loadFileBytes(outputFile));
+          zip.closeEntry();
+        }
+      }
+      finally {
+        zip.close();
+      }
+      myStore.store(fingerprint.getKey(), entryFile);
+      myOutputDirKeys.put(FileUtil.toSystemIndependentName(fingerprint.getOutputDir().getAbsolutePath()), fingerprint.getKey());
+      myStoredCount.incrementAndGet();
+    }
+    catch (IOException e) {
+      LOG.info("Cannot store " + target.getPresentableName() + " in output cache", e);
+    }
+    finally {
+      if (entryFile != null) {
+        FileUtil.delete(entryFile);
+      }
+    }
+  }
+
+  public void reportStatistics(CompileContext context) {
+    final int restored = myRestoredCount.get();
+    final int stored = myStoredCount.get();
+    if (restored > 0 || stored > 0) {
+      final String message = "Compilation output cache: " + restored + " target(s) restored, " + stored + " target(s) stored";
+      LOG.info(message);
+      context.processMessage(new CompilerMessage("", BuildMessage.Kind.INFO, message));
+    }
+  }
+
+  private String getJarDigest(String path, File file) throws IOException {
+    String digest = myJarDigests.get(path);
+    if (digest == null) {
+      final MessageDigest md = createDigest();
+      updateWithContent(md, file, new byte[64 * 1024]);
+      digest = toHex(md.digest());
+      myJarDigests.put(path, digest);
+    }
+    return digest;
+  }
+
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e); // should never happen for sha1
+    }
+  }
+
+  private static void update(MessageDigest digest, String value) {
+    try {
+      digest.update(value.getBytes("UTF-8"));
+      digest.update((byte)0);
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void updateWithContent(MessageDigest digest, File file, byte[] buffer) throws IOException {
+    final InputStream in = new FileInputStream(file);
+    try {
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    final StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return builder.toString();
+  }
+
+  public static class Fingerprint {
+    private final String myKey;
+    private final ModuleBuildTarget myTarget;
+    private final File myOutputDir;
+    private final Map<File, String> myRelativePaths;
+
+    private Fingerprint(String key, ModuleBuildTarget target, File outputDir, Map<File, String> relativePaths) {
+      myKey = key;
+      myTarget = target;
+      myOutputDir = outputDir;
+      myRelativePaths = relativePaths;
+    }
+
+    @NotNull
+    public String getKey() {
+      return myKey;
+    }
+
+    @NotNull
+    public ModuleBuildTarget getTarget() {
+      return myTarget;
+    }
+
+    @NotNull
+    public File getOutputDir() {
+      return myOutputDir;
+    }
+  }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.cache;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Content-addressed storage for packed compilation outputs. Entries are immutable: once stored under some key
+ * the entry is never changed, so implementations are free to ignore repeated stores for the same key.
+ */
+public interface BuildOutputCacheStore {
+  /**
+   * @return true if the entry was found and copied into the destination file, false if there is no such entry
+   */
+  boolean fetch(@NotNull String key, @NotNull File destination) throws IOException;
+
+  void store(@NotNull String key, @NotNull File entry) throws IOException;
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.cache;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Talks to a plain HTTP server: entries are fetched with GET and uploaded with PUT to {@code <base url>/<key>.zip}
+ */
+public class HttpBuildOutputCacheStore implements BuildOutputCacheStore {
+  private static final int TIMEOUT = 10 * 1000;
+  private final String myBaseUrl;
+
+  public HttpBuildOutputCacheStore(@NotNull String baseUrl) {
+    myBaseUrl = baseUrl.endsWith("/")? baseUrl : baseUrl + "/";
+  }
+
+  @Override
+  public boolean fetch(@NotNull String key, @NotNull File destination) throws IOException {
+    final HttpURLConnection connection = openConnection(key);
+    try {
+      final int responseCode = connection.getResponseCode();
+      if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+        return false;
+      }
+      if (responseCode != HttpURLConnection.HTTP_OK) {
+        throw new IOException("Unexpected response from " + connection.getURL() + ": " + responseCode);
+      }
+      final InputStream in = connection.getInputStream();
+      try {
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(destination));
+        try {
+          FileUtil.copy(in, out);
+        }
+        finally {
+          out.close();
+        }
+      }
+      finally {
+        in.close();
+      }
+      return true;
+    }
+    finally {
+      connection.disconnect();
+    }
+  }
+
+  @Override
+  public void store(@NotNull String key, @NotNull File entry) throws IOException {
+    final HttpURLConnection connection = openConnection(key);
+    try {
+      connection.setRequestMethod("PUT");
+      connection.setDoOutput(true);
+      connection.setFixedLengthStreamingMode((int)entry.length());
+      final OutputStream out = connection.getOutputStream();
+      try {
+        final InputStream in = new BufferedInputStream(new FileInputStream(entry));
+        try {
+          FileUtil.copy(in, out);
+        }
+        finally {
+          in.close();
+        }
+      }
+      finally {
+        out.close();
+      }
+      final int responseCode = connection.getResponseCode();
+      if (responseCode / 100 != 2) {
+        throw new IOException("Failed to upload " + connection.getURL() + ": " + responseCode);
+      }
+    }
+    finally {
+      connection.disconnect();
+    }
+  }
+
+  private HttpURLConnection openConnection(String key) throws IOException {
+    final HttpURLConnection connection = (HttpURLConnection)new URL(myBaseUrl + key + ".zip").openConnection();
+    connection.setConnectTimeout(TIMEOUT);
+    connection.setReadTimeout(TIMEOUT);
+    connection.setUseCaches(false);
+    return connection;
+  }
+
+  @Override
+  public String toString() {
+    return myBaseUrl;
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.cache;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Keeps cache entries in a local (possibly network-mounted) directory, two-level layout by key prefix.
+ */
+public class LocalBuildOutputCacheStore implements BuildOutputCacheStore {
+  private final File myRoot;
+
+  public LocalBuildOutputCacheStore(@NotNull File root) {
+    myRoot = root;
+  }
+
+  @Override
+  public boolean fetch(@NotNull String key, @NotNull File destination) throws IOException {
+    final File entry = getEntryFile(key);
+    if (!entry.isFile()) {
+      return false;
+    }
+    FileUtil.copy(entry, destination);
+    return true;
+  }
+
+  @Override
+  public void store(@NotNull String key, @NotNull File entry) throws IOException {
+    final File target = getEntryFile(key);
+    if (target.exists()) {
+      return;
+    }
+    final File dir = target.getParentFile();
+    FileUtil.createDirectory(dir);
+    // write under a temporary name first, so that concurrent readers never see partially written entries
+    final File temp = FileUtil.createTempFile(dir, key, ".tmp", true, false);
+    try {
+      FileUtil.copy(entry, temp);
+      if (!temp.renameTo(target) && !target.exists()) {
+        throw new IOException("Cannot rename " + temp.getPath() + " to " + target.getPath());
+      }
+    }
+    finally {
+      FileUtil.delete(temp);
+    }
+  }
+
+  private File getEntryFile(String key) {
+    return new File(new File(myRoot, key.substring(0, 2)), key + ".zip");
+  }
+
+  @Override
+  public String toString() {
+    return myRoot.getPath();
+  }
+}
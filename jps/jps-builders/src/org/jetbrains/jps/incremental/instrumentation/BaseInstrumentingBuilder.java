@@ -19,6 +19,7 @@ import com.intellij.compiler.instrumentation.InstrumentationClassFinder;
 import com.intellij.compiler.instrumentation.InstrumenterClassWriter;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Key;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.asm4.ClassReader;
 import org.jetbrains.asm4.ClassWriter;
@@ -27,8 +28,17 @@ import org.jetbrains.jps.incremental.BinaryContent;
 import org.jetbrains.jps.incremental.BuilderCategory;
 import org.jetbrains.jps.incremental.CompileContext;
 import org.jetbrains.jps.incremental.CompiledClass;
+import org.jetbrains.jps.incremental.ProjectBuildException;
 import org.jetbrains.jps.incremental.messages.BuildMessage;
 import org.jetbrains.jps.incremental.messages.CompilerMessage;
+import org.jetbrains.jps.service.SharedThreadPool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author Eugene Zhuravlev
@@ -36,6 +46,8 @@ import org.jetbrains.jps.incremental.messages.CompilerMessage;
  */
 public abstract class BaseInstrumentingBuilder extends ClassProcessingBuilder {
   private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.instrumentation.BaseInstrumentingBuilder");
+  private static final int MIN_CLASSES_TO_INSTRUMENT_IN_PARALLEL = 16;
+  private static final int MAX_INSTRUMENTING_THREADS = Runtime.getRuntime().availableProcessors();
   // every instance of builder must have its own marker!
   private final Key<Boolean> IS_INSTRUMENTED_KEY = Key.create("_instrumentation_marker_" + getPresentableName());
 
@@ -44,38 +56,96 @@ public abstract class BaseInstrumentingBuilder extends ClassProcessingBuilder {
   }
 
   @Override
-  protected final ExitCode performBuild(CompileContext context, ModuleChunk chunk, InstrumentationClassFinder finder, OutputConsumer outputConsumer) {
-    ExitCode exitCode = ExitCode.NOTHING_DONE;
-    for (CompiledClass compiledClass : outputConsumer.getCompiledClasses().values()) {
-      final BinaryContent originalContent = compiledClass.getContent();
-      final ClassReader reader = new ClassReader(originalContent.getBuffer(), originalContent.getOffset(), originalContent.getLength());
-      final int version = getClassFileVersion(reader);
-      if (IS_INSTRUMENTED_KEY.get(compiledClass, Boolean.FALSE) || !canInstrument(compiledClass, version)) {
-        // do not instrument the same content twice
-        continue;
+  protected final ExitCode performBuild(final CompileContext context, ModuleChunk chunk, final InstrumentationClassFinder finder, OutputConsumer outputConsumer)
+    throws ProjectBuildException {
+    final Collection<CompiledClass> compiledClasses = outputConsumer.getCompiledClasses().values();
+    if (compiledClasses.size() < MIN_CLASSES_TO_INSTRUMENT_IN_PARALLEL || !canInstrumentInParallel()) {
+      boolean instrumented = false;
+      for (CompiledClass compiledClass : compiledClasses) {
+        instrumented |= instrumentClass(context, finder, compiledClass);
       }
-      final ClassWriter writer = new InstrumenterClassWriter(getAsmClassWriterFlags(version), finder);
-      try {
-        final BinaryContent instrumented = instrument(context, compiledClass, reader, writer, finder);
-        if (instrumented != null) {
-          compiledClass.setContent(instrumented);
-          finder.cleanCachedData(compiledClass.getClassName());
-          IS_INSTRUMENTED_KEY.set(compiledClass, Boolean.TRUE);
-          exitCode = ExitCode.OK;
+      return instrumented ? ExitCode.OK : ExitCode.NOTHING_DONE;
+    }
+
+    final AtomicBoolean instrumented = new AtomicBoolean(false);
+    final BoundedTaskExecutor executor = new BoundedTaskExecutor(SharedThreadPool.getInstance(), MAX_INSTRUMENTING_THREADS);
+    final List<Future<?>> tasks = new ArrayList<Future<?>>(compiledClasses.size());
+    for (final CompiledClass compiledClass : compiledClasses) {
+      tasks.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          if (!context.getCancelStatus().isCanceled() && instrumentClass(context, finder, compiledClass)) {
+            instrumented.set(true);
+          }
         }
+      }));
+    }
+    Throwable failure = null;
+    for (Future<?> task : tasks) {
+      try {
+        task.get();
       }
-      catch (Throwable e) {
-        LOG.info(e);
-        final String message = e.getMessage();
-        if (message != null) {
-          context.processMessage(new CompilerMessage(getPresentableName(), BuildMessage.Kind.ERROR, message, compiledClass.getSourceFile().getPath()));
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        for (Future<?> t : tasks) {
+          t.cancel(false);
         }
-        else {
-          context.processMessage(new CompilerMessage(getPresentableName(), e));
+        throw new ProjectBuildException(getPresentableName() + " was interrupted", e);
+      }
+      catch (ExecutionException e) {
+        // wait for the remaining tasks anyway, so that no worker modifies compiled classes after the builder has finished
+        if (failure == null) {
+          failure = e.getCause();
         }
       }
     }
-    return exitCode;
+    if (failure != null) {
+      throw new ProjectBuildException(getPresentableName() + " failed", failure);
+    }
+    return instrumented.get() ? ExitCode.OK : ExitCode.NOTHING_DONE;
+  }
+
+  /**
+   * @return true if the class was instrumented
+   */
+  private boolean instrumentClass(CompileContext context, InstrumentationClassFinder finder, CompiledClass compiledClass) {
+    final BinaryContent originalContent = compiledClass.getContent();
+    final ClassReader reader = new ClassReader(originalContent.getBuffer(), originalContent.getOffset(), originalContent.getLength());
+    final int version = getClassFileVersion(reader);
+    if (IS_INSTRUMENTED_KEY.get(compiledClass, Boolean.FALSE) || !canInstrument(compiledClass, version)) {
+      // do not instrument the same content twice
+      return false;
+    }
+    final ClassWriter writer = new InstrumenterClassWriter(getAsmClassWriterFlags(version), finder);
+    try {
+      final BinaryContent instrumented = instrument(context, compiledClass, reader, writer, finder);
+      if (instrumented != null) {
+        compiledClass.setContent(instrumented);
+        finder.cleanCachedData(compiledClass.getClassName());
+        IS_INSTRUMENTED_KEY.set(compiledClass, Boolean.TRUE);
+        return true;
+      }
+    }
+    catch (Throwable e) {
+      LOG.info(e);
+      final String message = e.getMessage();
+      if (message != null) {
+        context.processMessage(new CompilerMessage(getPresentableName(), BuildMessage.Kind.ERROR, message, compiledClass.getSourceFile().getPath()));
+      }
+      else {
+        context.processMessage(new CompilerMessage(getPresentableName(), e));
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Override to return true if {@link #instrument} doesn't depend on any shared mutable state, so classes of a chunk may be instrumented
+   * concurrently. The {@link InstrumentationClassFinder} passed to {@link #instrument} is safe to use from several threads.
+   * Parallel instrumentation is used only for chunks with many compiled classes.
+   */
+  protected boolean canInstrumentInParallel() {
+    return false;
   }
 
   protected abstract boolean canInstrument(CompiledClass compiledClass, int classFileVersion);
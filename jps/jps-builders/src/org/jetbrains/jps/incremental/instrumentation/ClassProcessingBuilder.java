@@ -105,7 +105,8 @@ public abstract class ClassProcessingBuilder extends ModuleLevelBuilder {
     return Collections.emptyList();
   }
 
-  protected abstract ExitCode performBuild(CompileContext context, ModuleChunk chunk, InstrumentationClassFinder finder, OutputConsumer outputConsumer);
+  protected abstract ExitCode performBuild(CompileContext context, ModuleChunk chunk, InstrumentationClassFinder finder, OutputConsumer outputConsumer)
+    throws ProjectBuildException;
 
 
   // utility methods
@@ -59,6 +59,11 @@ public class NotNullInstrumentingBuilder extends BaseInstrumentingBuilder{
     return JpsJavaExtensionService.getInstance().getOrCreateCompilerConfiguration(pd.getProject()).isAddNotNullAssertions();
   }
 
+  @Override
+  protected boolean canInstrumentInParallel() {
+    return true;
+  }
+
   @Override
   protected boolean canInstrument(CompiledClass compiledClass, int classFileVersion) {
     return classFileVersion >= Opcodes.V1_5;
@@ -275,10 +275,12 @@ public class JavaBuilder extends ModuleLevelBuilder {
               LOG.debug("  " + file.getAbsolutePath());
             }
           }
+          final BuildTrace.Span javacSpan = BuildTrace.getInstance(context).startSpan(BuildTrace.JAVAC_CATEGORY, "javac " + chunkName);
           try {
             compiledOk = compileJava(context, chunk, files, classpath, platformCp, srcPath, diagnosticSink, outputSink);
           }
           finally {
+            javacSpan.finish();
             // heuristic: incorrect paths data recovery, so that the next make should not contain non-existing sources in 'recompile' list
             for (File file : diagnosticSink.getFilesWithErrors()) {
               if (!file.exists()) {
@@ -530,6 +532,13 @@ public class JavaBuilder extends ModuleLevelBuilder {
     return cached;
   }
 
+  /**
+   * @return javac options for the chunk with annotation processing disabled
+   */
+  public static List<String> getCompilationOptions(CompileContext context, ModuleChunk chunk) {
+    return getCompilationOptions(context, chunk, null);
+  }
+
   private static List<String> getCompilationOptions(CompileContext context, ModuleChunk chunk, @Nullable ProcessorConfigProfile profile) {
     List<String> cached = JAVAC_OPTIONS.get(context);
     if (cached == null) {
@@ -56,6 +56,10 @@ public class MemberChangeTest extends IncrementalTestCase {
     doTest();
   }
 
+  public void testAddPrivateFieldHidingInherited() {
+    doTest();
+  }
+
   public void testAddHidingMethod() {
     doTest();
   }
@@ -199,4 +203,12 @@ public class MemberChangeTest extends IncrementalTestCase {
   public void testAddMethod() {
     doTest();
   }
+
+  public void testChangeMethodBody() {
+    doTest();
+  }
+
+  public void testDecFieldAccess() {
+    doTest();
+  }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.builders.java;
+
+import org.jetbrains.jps.builders.JpsBuildTestCase;
+import org.jetbrains.jps.model.java.JpsJavaExtensionService;
+import org.jetbrains.jps.model.module.JpsModule;
+import org.jetbrains.jps.util.JpsPathUtil;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+public class NotNullInstrumentationTest extends JpsBuildTestCase {
+  private static final int CLASS_COUNT = 40;
+
+  public void testInstrumentManyClasses() throws Exception {
+    createFile("src/org/jetbrains/annotations/NotNull.java", "package org.jetbrains.annotations;\n" +
+                                                           "public @interface NotNull {}");
+    // enough classes for the chunk to be instrumented in parallel; each class extends the previous one,
+    // so instrumenting threads look up each other's classes
+    for (int i = 0; i < CLASS_COUNT; i++) {
+      String superClass = i > 0 ? " extends A" + (i - 1) : "";
+      createFile("src/A" + i + ".java", "public class A" + i + superClass + " {\n" +
+                                        "  public String foo" + i + "(@org.jetbrains.annotations.NotNull String s) { return s; }\n" +
+                                        "}");
+    }
+    JpsModule module = addModule("m", getAbsolutePath("src"));
+    rebuildAll();
+
+    String outputUrl = JpsJavaExtensionService.getInstance().getOutputUrl(module, false);
+    assertNotNull(outputUrl);
+    URLClassLoader loader = new URLClassLoader(new URL[]{new File(JpsPathUtil.urlToPath(outputUrl)).toURI().toURL()}, null);
+    for (int i = 0; i < CLASS_COUNT; i++) {
+      Class<?> aClass = loader.loadClass("A" + i);
+      Method method = aClass.getMethod("foo" + i, String.class);
+      Object instance = aClass.newInstance();
+      assertEquals("a", method.invoke(instance, "a"));
+      try {
+        method.invoke(instance, new Object[]{null});
+        fail("A" + i + " is not instrumented");
+      }
+      catch (InvocationTargetException e) {
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+      }
+    }
+  }
+}
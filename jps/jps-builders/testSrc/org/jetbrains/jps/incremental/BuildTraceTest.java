@@ -0,0 +1,102 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.PathUtil;
+import org.jetbrains.jps.api.CanceledStatus;
+import org.jetbrains.jps.builders.BuildResult;
+import org.jetbrains.jps.builders.CompileScopeTestBuilder;
+import org.jetbrains.jps.builders.JpsBuildTestCase;
+import org.jetbrains.jps.cmdline.ProjectDescriptor;
+import org.jetbrains.jps.incremental.messages.BuildMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BuildTraceTest extends JpsBuildTestCase {
+  private BuildTrace myTrace;
+
+  public void testSummaryReportsSelfTime() {
+    BuildTrace trace = new BuildTrace(true);
+    trace.addEvent(BuildTrace.BUILD_CATEGORY, "Build", 1, "main", 0, 100000);
+    trace.addEvent(BuildTrace.BUILDER_CATEGORY, "java", 1, "main", 10000, 80000);
+    trace.addEvent(BuildTrace.JAVAC_CATEGORY, "javac m", 1, "main", 20000, 60000);
+    trace.addEvent(BuildTrace.DEPENDENCIES_CATEGORY, "Integrate", 1, "main", 80000, 5000);
+    // the same span on another thread overlaps the spans above in time, but isn't nested into them
+    trace.addEvent(BuildTrace.JAVAC_CATEGORY, "javac n", 2, "worker", 30000, 40000);
+    assertEquals("Build time by activity: javac 100 ms (2 times), build 20 ms, java 15 ms, dependencies 5 ms", trace.getSummary());
+  }
+
+  public void testDisabledTraceDoesNotRecordSpans() throws IOException {
+    BuildTrace.DISABLED.startSpan(BuildTrace.BUILD_CATEGORY, "Build").finish();
+    File dir = FileUtil.createTempDirectory("trace", null);
+    List<BuildMessage> messages = collectMessages(BuildTrace.DISABLED, dir);
+    assertEmpty(messages);
+    assertFalse(new File(dir, "trace").exists());
+  }
+
+  public void testTraceIsAttachedToCompileContext() throws IOException {
+    String file = createFile("src/A.java", "public class A {}");
+    addModule("m", PathUtil.getParentPath(file));
+    myTrace = new BuildTrace(true);
+    rebuildAll();
+
+    File dir = FileUtil.createTempDirectory("trace", null);
+    List<BuildMessage> messages = collectMessages(myTrace, dir);
+    assertEquals(1, messages.size());
+    assertTrue(messages.get(0).getMessageText(), messages.get(0).getMessageText().startsWith("Build time by activity: "));
+    File[] traces = new File(dir, "trace").listFiles();
+    assertNotNull(traces);
+    assertEquals(1, traces.length);
+    String text = FileUtil.loadFile(traces[0]);
+    assertTrue(text, text.contains("\"name\":\"Build\""));
+    assertTrue(text, text.contains("\"name\":\"Scanning sources\""));
+    assertTrue(text, text.contains("\"cat\":\"javac\""));
+    assertTrue(text, text.contains("\"name\":\"Integrate\""));
+  }
+
+  @Override
+  protected BuildResult doBuild(ProjectDescriptor descriptor, CompileScopeTestBuilder scopeBuilder) {
+    if (myTrace == null) {
+      return super.doBuild(descriptor, scopeBuilder);
+    }
+    IncProjectBuilder builder = new IncProjectBuilder(descriptor, BuilderRegistry.getInstance(), myBuildParams, CanceledStatus.NULL, null,
+                                                      true, myTrace);
+    BuildResult result = new BuildResult();
+    builder.addMessageHandler(result);
+    try {
+      builder.build(scopeBuilder.build(), false);
+    }
+    catch (RebuildRequestedException e) {
+      throw new RuntimeException(e);
+    }
+    return result;
+  }
+
+  private static List<BuildMessage> collectMessages(BuildTrace trace, File dataStorageRoot) {
+    final List<BuildMessage> messages = new ArrayList<BuildMessage>();
+    trace.finish(dataStorageRoot, new MessageHandler() {
+      @Override
+      public void processMessage(BuildMessage msg) {
+        messages.add(msg);
+      }
+    });
+    return messages;
+  }
+}
@@ -105,6 +105,29 @@ public class IncrementalArtifactBuildingTest extends ArtifactBuilderTestCase {
     buildAllAndAssertUpToDate();
   }
 
+  public void testUpdateNestedArchives() {
+    String file1 = createFile("dir1/a.txt", "a");
+    createFile("dir1/sub/b.txt", "b");
+    String file2 = createFile("dir2/c.txt", "c");
+    JpsArtifact a = addArtifact("a", archive("a.war")
+      .archive("x.jar").parentDirCopy(file1).end()
+      .archive("y.jar").parentDirCopy(file2));
+    buildAll();
+    assertOutput(a, fs().archive("a.war")
+      .archive("x.jar").file("a.txt", "a").dir("sub").file("b.txt", "b").end().end()
+      .archive("y.jar").file("c.txt", "c"));
+
+    change(file1, "aaa");
+    createFile("dir1/sub/d.txt", "d");
+    delete(file2);
+    createFile("dir2/e.txt", "e");
+    buildAll();
+    assertOutput(a, fs().archive("a.war")
+      .archive("x.jar").file("a.txt", "aaa").dir("sub").file("b.txt", "b").file("d.txt", "d").end().end()
+      .archive("y.jar").file("e.txt", "e"));
+    buildAllAndAssertUpToDate();
+  }
+
   public void testNonExistentFileRoot() throws IOException {
     String file = getAbsolutePath("a.txt");
     JpsArtifact a = addArtifact(root().fileCopy(file));
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.cache;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.PathUtil;
+import org.jetbrains.jps.api.GlobalOptions;
+import org.jetbrains.jps.builders.JpsBuildTestCase;
+import org.jetbrains.jps.incremental.java.JavaBuilder;
+import org.jetbrains.jps.model.java.JpsJavaExtensionService;
+import org.jetbrains.jps.model.module.JpsModule;
+import org.jetbrains.jps.util.JpsPathUtil;
+
+import java.io.*;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static com.intellij.util.io.TestFileSystemBuilder.fs;
+
+public class BuildOutputCacheTest extends JpsBuildTestCase {
+  private File myCacheDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCacheDir = FileUtil.createTempDirectory("output-cache", null);
+    System.setProperty(GlobalOptions.COMPILE_OUTPUT_CACHE_OPTION, myCacheDir.getAbsolutePath());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    System.clearProperty(GlobalOptions.COMPILE_OUTPUT_CACHE_OPTION);
+    FileUtil.delete(myCacheDir);
+    super.tearDown();
+  }
+
+  public void testRestoreOutputOnFreshBuild() {
+    String a = createFile("src/A.java", "public class A { B b; }");
+    createFile("src/B.java", "public class B {}");
+    JpsModule module = addModule("m", PathUtil.getParentPath(a));
+    makeAll().assertSuccessful();
+    assertCompiled(JavaBuilder.BUILDER_NAME, "src/A.java", "src/B.java");
+
+    // emulate a fresh checkout: neither build caches nor compiled classes exist
+    FileUtil.delete(myDataStorageRoot);
+    FileUtil.delete(getOutputDir(module));
+    makeAll().assertSuccessful();
+    assertCompiled(JavaBuilder.BUILDER_NAME);
+    assertOutput(module, fs().file("A.class").file("B.class"));
+
+    // restored classes must be known to the incremental make
+    change(a, "public class A { }");
+    makeAll().assertSuccessful();
+    assertCompiled(JavaBuilder.BUILDER_NAME, "src/A.java");
+  }
+
+  public void testDoNotRestoreChangedSources() {
+    String a = createFile("src/A.java", "public class A {}");
+    JpsModule module = addModule("m", PathUtil.getParentPath(a));
+    makeAll().assertSuccessful();
+
+    FileUtil.delete(myDataStorageRoot);
+    FileUtil.delete(getOutputDir(module));
+    change(a, "public class A { int i; }");
+    makeAll().assertSuccessful();
+    assertCompiled(JavaBuilder.BUILDER_NAME, "src/A.java");
+  }
+
+  public void testRejectEntryWithPathOutsideOfOutputDir() throws IOException {
+    String a = createFile("src/A.java", "public class A {}");
+    JpsModule module = addModule("m", PathUtil.getParentPath(a));
+    makeAll().assertSuccessful();
+
+    File outputDir = getOutputDir(module);
+    File escaped = new File(outputDir.getParentFile(), "escaped.txt");
+    File[] prefixDirs = myCacheDir.listFiles();
+    assertNotNull(prefixDirs);
+    assertEquals(1, prefixDirs.length);
+    File[] entries = prefixDirs[0].listFiles();
+    assertNotNull(entries);
+    assertEquals(1, entries.length);
+    addZipEntry(entries[0], "out/../escaped.txt", "malicious");
+
+    FileUtil.delete(myDataStorageRoot);
+    FileUtil.delete(outputDir);
+    makeAll().assertSuccessful();
+    assertCompiled(JavaBuilder.BUILDER_NAME, "src/A.java");
+    assertFalse(escaped.exists());
+  }
+
+  public void testCheckInsideOutputDir() throws IOException {
+    File outputDir = new File(myCacheDir, "output");
+    assertEquals(new File(outputDir, "a/B.class"), BuildOutputCache.checkInsideOutputDir(outputDir, "a/B.class"));
+    for (String path : new String[]{"../B.class", "a/../../B.class", ""}) {
+      try {
+        BuildOutputCache.checkInsideOutputDir(outputDir, path);
+        fail(path);
+      }
+      catch (IOException ignored) { }
+    }
+  }
+
+  private static void addZipEntry(File zipFile, String name, String content) throws IOException {
+    File copy = new File(zipFile.getPath() + ".copy");
+    ZipFile zip = new ZipFile(zipFile);
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(copy));
+    try {
+      Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        out.putNextEntry(new ZipEntry(entry.getName()));
+        InputStream in = zip.getInputStream(entry);
+        try {
+          FileUtil.copy(in, out);
+        }
+        finally {
+          in.close();
+        }
+        out.closeEntry();
+      }
+      out.putNextEntry(new ZipEntry(name));
+      out.write(content.getBytes("UTF-8"));
+      out.closeEntry();
+    }
+    finally {
+      out.close();
+      zip.close();
+    }
+    FileUtil.rename(copy, zipFile);
+  }
+
+  private static File getOutputDir(JpsModule module) {
+    String outputUrl = JpsJavaExtensionService.getInstance().getOutputUrl(module, false);
+    assertNotNull(outputUrl);
+    return new File(JpsPathUtil.urlToPath(outputUrl));
+  }
+}
@@ -67,9 +67,11 @@ enum {
 };
 
 bool init_inotify();
+// the callback receives IN_Q_OVERFLOW either with a path of a subtree which cannot be watched,
+// or with NULL path when the event queue has overflowed and some events were lost
 void set_inotify_callback(void (* callback)(const char*, int));
 int get_inotify_fd();
-int watch(const char* root, array* mounts);
+int watch(const char* root, array* mounts, array* unwatchable);
 void unwatch(int id);
 bool process_inotify_input();
 void close_inotify();
@@ -57,6 +57,9 @@ static void (* callback)(const char*, int) = NULL;
 static char event_buf[EVENT_BUF_LEN];
 
 static char path_buf[2 * PATH_MAX];
+// when the watch limit is reached during a walk, the rest of the walk is skipped, and only the nearest watched ancestor
+// of the skipped directories is reported - this is the length of its path in path_buf
+static int unwatched_len = 0;
 
 static void read_watch_descriptors_count();
 static void watch_limit_reached();
@@ -233,6 +236,16 @@ static void rm_watch(int wd, bool update_parent) {
 }
 
 
+static bool has_subdirs(DIR* dir) {
+  struct dirent* entry;
+  while ((entry = readdir(dir)) != NULL) {
+    if (entry->d_type == DT_DIR && strcmp(entry->d_name, ".") != 0 && strcmp(entry->d_name, "..") != 0) {
+      return true;
+    }
+  }
+  return false;
+}
+
 static int walk_tree(int path_len, watch_node* parent, bool recursive, array* mounts) {
   for (int j=0; j<array_size(mounts); j++) {
     char* mount = array_get(mounts, j);
@@ -258,6 +271,17 @@ static int walk_tree(int path_len, watch_node* parent, bool recursive, array* mo
 
   int id = add_watch(path_len, parent);
 
+  if (id == ERR_CONTINUE && limit_reached && parent != NULL) {
+    // out of watch descriptors - keep the part of the tree which is already watched and
+    // report the parent of this directory instead of giving up on the whole root
+    userlog(LOG_INFO, "watch limit reached at %s", path_buf);
+    unwatched_len = parent->path_len;
+    if (dir != NULL) {
+      closedir(dir);
+    }
+    return ERR_IGNORE;
+  }
+
   if (dir == NULL) {
     return id;
   }
@@ -284,14 +308,38 @@ static int walk_tree(int path_len, watch_node* parent, bool recursive, array* mo
       id = subdir_id;
       break;
     }
+
+    if (unwatched_len > 0) {
+      // no other subdirectory can be watched either, so don't try them one by one;
+      // if there are some, this directory covers them and the already reported descendant
+      if (unwatched_len != path_len && has_subdirs(dir)) {
+        unwatched_len = path_len;
+      }
+      break;
+    }
   }
 
   closedir(dir);
   return id;
 }
 
+static bool report_unwatched(array* unwatchable) {
+  if (unwatched_len > 0) {
+    path_buf[unwatched_len] = '\0';
+    unwatched_len = 0;
+    userlog(LOG_INFO, "watch limit reached, partially watched: %s", path_buf);
+    if (unwatchable != NULL) {
+      CHECK_NULL(array_push(unwatchable, strdup(path_buf)), false);
+    }
+    else if (callback != NULL) {
+      (*callback)(path_buf, IN_Q_OVERFLOW);
+    }
+  }
+  return true;
+}
+
 
-int watch(const char* root, array* mounts) {
+int watch(const char* root, array* mounts, array* unwatchable) {
   bool recursive = true;
   if (root[0] == '|') {
     root++;
@@ -328,7 +376,14 @@ int watch(const char* root, array* mounts) {
 
   memcpy(path_buf, root, path_len);
   path_buf[path_len] = '\0';
-  return walk_tree(path_len, NULL, recursive, mounts);
+  int id = walk_tree(path_len, NULL, recursive, mounts);
+  if (id < 0) {
+    unwatched_len = 0;  // the whole root is reported by the caller
+  }
+  if (!report_unwatched(unwatchable)) {
+    return ERR_ABORT;
+  }
+  return id;
 }
 
 
@@ -361,6 +416,7 @@ static bool process_inotify_event(struct inotify_event* event) {
 
   if (is_dir && event->mask & (IN_CREATE | IN_MOVED_TO)) {
     int result = walk_tree(path_len, node, true, NULL);
+    report_unwatched(NULL);
     if (result < 0 && result != ERR_IGNORE && result != ERR_CONTINUE) {
       return false;
     }
@@ -398,6 +454,9 @@ bool process_inotify_input() {
     }
     if (event->mask & IN_Q_OVERFLOW) {
       userlog(LOG_INFO, "event queue overflow");
+      if (callback != NULL) {
+        (*callback)(NULL, IN_Q_OVERFLOW);
+      }
       continue;
     }
 
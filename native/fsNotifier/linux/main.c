@@ -36,7 +36,7 @@
 #define LOG_ENV_ERROR "error"
 #define LOG_ENV_OFF "off"
 
-#define VERSION "20130715.1353"
+#define VERSION "20131004.1610"
 #define VERSION_MSG "fsnotifier " VERSION "\n"
 
 #define USAGE_MSG \
@@ -84,6 +84,7 @@ static void report_event(const char* event, const char* path);
 static void output(const char* format, ...);
 static void check_missing_roots();
 static void check_root_removal(const char*);
+static void report_overflow();
 
 
 int main(int argc, char** argv) {
@@ -380,7 +381,7 @@ static bool register_roots(array* new_roots, array* unwatchable, array* mounts)
       continue;
     }
 
-    int id = watch(new_root, inner_mounts);
+    int id = watch(new_root, inner_mounts, unwatchable);
     array_delete(inner_mounts);
 
     if (id >= 0 || id == ERR_MISSING) {
@@ -435,6 +436,16 @@ static array* unwatchable_mounts() {
 
 
 static void inotify_callback(const char* path, int event) {
+  if (event & IN_Q_OVERFLOW) {
+    if (path != NULL) {
+      report_event("RECDIRTY", path);
+    }
+    else {
+      report_overflow();
+    }
+    return;
+  }
+
   if (event & (IN_CREATE | IN_MOVED_TO)) {
     report_event("CREATE", path);
     report_event("CHANGE", path);
@@ -508,7 +519,7 @@ static void check_missing_roots() {
     if (root->id < 0) {
       char* unflattened = UNFLATTEN(root->path);
       if (stat(unflattened, &st) == 0) {
-        root->id = watch(root->path, NULL);
+        root->id = watch(root->path, NULL, NULL);
         userlog(LOG_INFO, "root restored: %s\n", root->path);
         report_event("CREATE", unflattened);
         report_event("CHANGE", unflattened);
@@ -528,3 +539,13 @@ static void check_root_removal(const char* path) {
     }
   }
 }
+
+static void report_overflow() {
+  // events are lost, but only registered roots could have produced them - ask to refresh just these subtrees
+  for (int i=0; i<array_size(roots); i++) {
+    watch_root* root = array_get(roots, i);
+    if (root->id >= 0) {
+      report_event(root->path[0] == '|' ? "DIRTY" : "RECDIRTY", UNFLATTEN(root->path));
+    }
+  }
+}
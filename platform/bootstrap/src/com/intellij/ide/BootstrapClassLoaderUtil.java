@@ -62,7 +62,7 @@ public class BootstrapClassLoaderUtil extends ClassUtilCore {
     addAdditionalClassPath(classpath);
     UrlClassLoader newClassLoader = UrlClassLoader.build()
       .urls(filterClassPath(classpath))
-      .allowLock().useCache().get();
+      .allowLock().useCache().usePersistentIndex().get();
 
     // prepare plugins
     if (updatePlugins && !isLoadingOfExternalPluginsDisabled()) {
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.components;
+
+/**
+ * A project component whose {@link #projectOpened()} is not needed to show the project and so may be postponed.<p>
+ * Such components are still created together with the project, but their <code>projectOpened()</code> is invoked as a
+ * post-startup activity, after the project frame is shown and the startup activities have finished, instead of synchronously
+ * while the project is being opened. If the component is also {@link com.intellij.openapi.project.DumbAware}, this happens
+ * right after startup, otherwise when indices become available.<p>
+ * Other components must not rely on the work done in <code>projectOpened()</code> of such a component. If the project is closed
+ * before the deferred <code>projectOpened()</code> has been invoked, <code>projectClosed()</code> is not invoked either.
+ * In unit test mode <code>projectOpened()</code> is invoked synchronously, as for ordinary project components.
+ */
+public interface DeferredProjectComponent extends ProjectComponent {
+}
@@ -124,7 +124,9 @@ public class IdeaPluginDescriptorImpl implements IdeaPluginDescriptor {
   }
 
   public static void internJDOMElement(@NotNull Element rootElement) {
-    JDOMUtil.internElement(rootElement, ourInterner);
+    synchronized (ourInterner) {
+      JDOMUtil.internElement(rootElement, ourInterner);
+    }
   }
 
   public void readExternal(@NotNull Document document, @NotNull URL url) throws InvalidDataException, FileNotFoundException {
@@ -50,7 +50,7 @@ public class PluginClassLoader extends UrlClassLoader {
                            PluginId pluginId,
                            String version,
                            File pluginRoot) {
-    super(build().urls(urls).allowLock().useCache());
+    super(build().urls(urls).allowLock().useCache().usePersistentIndex());
     myParents = parents;
     myPluginId = pluginId;
     myPluginVersion = version;
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.ide.startup;
+
+import com.intellij.openapi.extensions.PluginId;
+import com.intellij.openapi.util.text.StringUtil;
+import gnu.trove.TObjectLongHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Collects the time spent in the steps of the application startup (loading plugin descriptors, initializing application
+ * components) and of opening a project (<code>projectOpened()</code> of project components, startup and post-startup activities),
+ * grouped by startup phase, so that the slowest of them can be found in the log.
+ * <p/>
+ * Times of the steps with the same name in a phase are summed up.
+ */
+public class StartupProfiler {
+  public enum Phase {
+    PLUGIN_DESCRIPTORS_LOADED("plugin descriptors loaded"),
+    APPLICATION_COMPONENTS_INITIALIZED("application components initialized"),
+    PLUGINS_LOADED("plugins loaded (descriptors and application components)"),
+    PROJECT_OPENED("project components opened"),
+    STARTUP_ACTIVITIES("startup activities"),
+    POST_STARTUP_ACTIVITIES("post-startup activities"),
+    DEFERRED_PROJECT_OPENED("deferred project components opened");
+
+    private final String myPresentableName;
+
+    Phase(@NotNull String presentableName) {
+      myPresentableName = presentableName;
+    }
+
+    @Override
+    public String toString() {
+      return myPresentableName;
+    }
+  }
+
+  private static final int SLOWEST_STEPS_TO_REPORT = 5;
+  private static final long MIN_REPORTED_STEP_MS = 10;
+  private static final String CORE_PLUGIN = "core";
+
+  private static final StartupProfiler ourApplicationProfiler = new StartupProfiler();
+
+  private final Map<Phase, TObjectLongHashMap<String>> mySteps = new EnumMap<Phase, TObjectLongHashMap<String>>(Phase.class); // guarded by this
+
+  // sum of self times of the steps measured on the thread, used to subtract the nested ones
+  private final ThreadLocal<long[]> mySelfTimes = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[1];
+    }
+  };
+
+  /**
+   * @return the profiler of the application startup, reported once the application is loaded
+   */
+  @NotNull
+  public static StartupProfiler getApplicationProfiler() {
+    return ourApplicationProfiler;
+  }
+
+  public void measure(@NotNull Phase phase, @NotNull String name, @NotNull Runnable runnable) {
+    long start = System.nanoTime();
+    try {
+      runnable.run();
+    }
+    finally {
+      recordNanos(phase, name, System.nanoTime() - start);
+    }
+  }
+
+  public void record(@NotNull Phase phase, @NotNull String name, long ms) {
+    recordNanos(phase, name, ms * 1000000);
+  }
+
+  public synchronized void recordNanos(@NotNull Phase phase, @NotNull String name, long nanos) {
+    TObjectLongHashMap<String> steps = mySteps.get(phase);
+    if (steps == null) {
+      mySteps.put(phase, steps = new TObjectLongHashMap<String>());
+    }
+    if (!steps.adjustValue(name, nanos)) {
+      steps.put(name, nanos);
+    }
+  }
+
+  /**
+   * Records a step of a plugin, and adds its time to the plugin in the {@link Phase#PLUGINS_LOADED} phase.
+   */
+  public synchronized void recordPluginStep(@NotNull Phase phase, @NotNull String name, @Nullable PluginId pluginId, long nanos) {
+    recordNanos(phase, name, nanos);
+    recordNanos(Phase.PLUGINS_LOADED, pluginId != null ? pluginId.getIdString() : CORE_PLUGIN, nanos);
+  }
+
+  /**
+   * Starts measuring a step which may contain other measured steps, e.g. a component created while initializing another one
+   * (as its constructor dependency).
+   *
+   * @return a mark to pass to {@link #stopSelfTimed}
+   */
+  public long startSelfTimed() {
+    return mySelfTimes.get()[0];
+  }
+
+  /**
+   * @return the time spent in the step since <code>startNanos</code> minus the time of the steps nested in it
+   */
+  public long stopSelfTimed(long startNanos, long mark) {
+    long[] selfTimes = mySelfTimes.get();
+    long self = System.nanoTime() - startNanos - (selfTimes[0] - mark);
+    selfTimes[0] += self;
+    return self;
+  }
+
+  /**
+   * Builds a report of the steps recorded so far, one line per phase with the total time and the slowest steps,
+   * and forgets them.
+   *
+   * @return the report, or {@code null} when nothing has been recorded since the last call
+   */
+  @Nullable
+  public synchronized String buildReport() {
+    if (mySteps.isEmpty()) return null;
+
+    StringBuilder report = new StringBuilder();
+    for (Map.Entry<Phase, TObjectLongHashMap<String>> entry : mySteps.entrySet()) {
+      final TObjectLongHashMap<String> steps = entry.getValue();
+      List<String> names = new ArrayList<String>(steps.size());
+      long total = 0;
+      for (Object name : steps.keys()) {
+        names.add((String)name);
+        total += steps.get((String)name);
+      }
+      Collections.sort(names, new Comparator<String>() {
+        @Override
+        public int compare(String o1, String o2) {
+          long t1 = steps.get(o1);
+          long t2 = steps.get(o2);
+          return t1 > t2 ? -1 : t1 == t2 ? 0 : 1;
+        }
+      });
+
+      if (report.length() > 0) report.append('\n');
+      report.append(entry.getKey()).append(": ").append(total / 1000000).append(" ms, ").append(names.size()).append(' ').append(StringUtil.pluralize("step", names.size()));
+
+      int reported = 0;
+      for (String name : names) {
+        long ms = steps.get(name) / 1000000;
+        if (reported == SLOWEST_STEPS_TO_REPORT || ms < MIN_REPORTED_STEP_MS) break;
+        report.append(reported++ == 0 ? "; slowest: " : ", ").append(name).append(" (").append(ms).append(" ms)");
+      }
+    }
+    mySteps.clear();
+    return report.toString();
+  }
+
+  /**
+   * Forgets the steps recorded so far without reporting them.
+   */
+  public synchronized void reset() {
+    mySteps.clear();
+  }
+}
@@ -16,6 +16,7 @@
 package com.intellij.openapi.components.impl;
 
 import com.intellij.diagnostic.PluginException;
+import com.intellij.ide.startup.StartupProfiler;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.*;
 import com.intellij.openapi.components.ex.ComponentManagerEx;
@@ -381,6 +382,14 @@ public abstract class ComponentManagerImpl extends UserDataHolderBase implements
     return LOG.isDebugEnabled();
   }
 
+  /**
+   * @return the profiler to record initialization times of the components to, or null if they are not profiled
+   */
+  @Nullable
+  protected StartupProfiler getStartupProfiler() {
+    return null;
+  }
+
   protected class ComponentsRegistry {
     private final Map<Class, Object> myInterfaceToLockMap = new THashMap<Class, Object>();
     private final Map<Class, Class> myInterfaceToClassMap = new THashMap<Class, Class>();
@@ -526,6 +535,8 @@ public abstract class ComponentManagerImpl extends UserDataHolderBase implements
           Object componentInstance = null;
           try {
             long startTime = myInitialized ? 0 : System.nanoTime();
+            StartupProfiler profiler = myInitialized ? null : getStartupProfiler();
+            long profilerMark = profiler != null ? profiler.startSelfTimed() : 0;
 
             componentInstance = super.getComponentInstance(picoContainer);
 
@@ -552,6 +563,11 @@ public abstract class ComponentManagerImpl extends UserDataHolderBase implements
                 if (ms > 10 && logSlowComponents()) {
                   LOG.info(componentInstance.getClass().getName() + " initialized in " + ms + " ms");
                 }
+                if (profiler != null) {
+                  profiler.recordPluginStep(StartupProfiler.Phase.APPLICATION_COMPONENTS_INITIALIZED, componentInstance.getClass().getName(),
+                                            myConfig.pluginDescriptor != null ? myConfig.pluginDescriptor.getPluginId() : null,
+                                            profiler.stopSelfTimed(startTime, profilerMark));
+                }
               }
               finally {
                 myInitializing = false;
@@ -26,8 +26,10 @@ import com.intellij.notification.NotificationType;
 import com.intellij.notification.Notifications;
 import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.newvfs.ManagingFS;
+import com.intellij.util.CompressionUtil;
 import com.intellij.util.Consumer;
 import com.intellij.util.io.storage.AbstractStorage;
 import gnu.trove.TIntHashSet;
@@ -35,24 +37,36 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.event.HyperlinkEvent;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.MessageFormat;
 
 public class ChangeListStorageImpl implements ChangeListStorage {
-  private static final int VERSION = 5;
+  private static final int VERSION = 6;
+  // the last version with uncompressed change sets: such storages are converted rather than rebuilt
+  private static final int UNCOMPRESSED_VERSION = 5;
+  // stored while the records are being converted in place: if the conversion is interrupted, the storage is rebuilt
+  static final int CONVERTING_VERSION = -UNCOMPRESSED_VERSION;
   private static final String STORAGE_FILE = "changes";
 
   private final File myStorageDir;
+  private final long myFSTimestamp;
   private LocalHistoryStorage myStorage;
   private long myLastId;
 
   private boolean isCompletelyBroken = false;
 
   public ChangeListStorageImpl(File storageDir) throws IOException {
+    this(storageDir, getVFSTimestamp());
+  }
+
+  ChangeListStorageImpl(File storageDir, long fsTimestamp) throws IOException {
     myStorageDir = storageDir;
+    myFSTimestamp = fsTimestamp;
     initStorage(myStorageDir);
   }
 
@@ -61,11 +75,14 @@ public class ChangeListStorageImpl implements ChangeListStorage {
 
     LocalHistoryStorage result = new LocalHistoryStorage(path);
 
-    long fsTimestamp = getVFSTimestamp();
+    long fsTimestamp = myFSTimestamp;
 
     int storedVersion = result.getVersion();
-    boolean versionMismatch = storedVersion != VERSION;
     boolean timestampMismatch = result.getFSTimestamp() != fsTimestamp;
+    if (storedVersion == UNCOMPRESSED_VERSION && !timestampMismatch) {
+      storedVersion = compressRecords(result);
+    }
+    boolean versionMismatch = storedVersion != VERSION;
     if (versionMismatch || timestampMismatch) {
       if (versionMismatch) {
         LocalHistoryLog.LOG.info(MessageFormat.format(
@@ -85,6 +102,52 @@ public class ChangeListStorageImpl implements ChangeListStorage {
     myStorage = result;
   }
 
+  /**
+   * Rewrites the change sets of the storage of the previous version compressed, keeping their ids, order and timestamps.
+   * Returns the resulting version of the storage: if the conversion fails, the storage is left to be rebuilt.
+   */
+  private static int compressRecords(LocalHistoryStorage storage) {
+    TIntHashSet visited = new TIntHashSet();
+    try {
+      // some records may be already compressed and some not if the conversion doesn't finish, so mark the storage first
+      storage.setVersion(CONVERTING_VERSION);
+      storage.force();
+
+      int each = storage.getFirstRecord();
+      while (each != 0) {
+        if (!visited.add(each)) throw new IOException("Recursive records found");
+        DataInputStream in = storage.readStream(each);
+        byte[] bytes;
+        try {
+          bytes = FileUtil.loadBytes(in);
+        }
+        finally {
+          in.close();
+        }
+        writeCompressed(storage, each, bytes, bytes.length);
+        each = storage.getNextRecord(each);
+      }
+      storage.setVersion(VERSION);
+      storage.force();
+      LocalHistoryLog.LOG.info(MessageFormat.format("local history converted from version {0} to {1}", UNCOMPRESSED_VERSION, VERSION));
+      return VERSION;
+    }
+    catch (IOException e) {
+      LocalHistoryLog.LOG.info("cannot convert local history", e);
+      return CONVERTING_VERSION;
+    }
+  }
+
+  private static void writeCompressed(LocalHistoryStorage storage, int id, byte[] bytes, int length) throws IOException {
+    AbstractStorage.StorageDataOutput out = storage.writeStream(id, true);
+    try {
+      CompressionUtil.writeCompressed(out, bytes, length);
+    }
+    finally {
+      out.close();
+    }
+  }
+
   private static long getVFSTimestamp() {
     return ManagingFS.getInstance().getCreationTimestamp();
   }
@@ -196,25 +259,28 @@ public class ChangeListStorageImpl implements ChangeListStorage {
   @NotNull
   private ChangeSetHolder doReadBlock(int id) throws IOException {
     DataInputStream in = myStorage.readStream(id);
+    byte[] bytes;
     try {
-      return new ChangeSetHolder(id, new ChangeSet(in));
+      bytes = CompressionUtil.readCompressed(in);
     }
     finally {
       in.close();
     }
+    return new ChangeSetHolder(id, new ChangeSet(new DataInputStream(new ByteArrayInputStream(bytes))));
   }
 
   public synchronized void writeNextSet(ChangeSet changeSet) {
     if (isCompletelyBroken) return;
 
     try {
-      AbstractStorage.StorageDataOutput out = myStorage.writeStream(myStorage.createNextRecord(), true);
-      try {
-        changeSet.write(out);
-      }
-      finally {
-        out.close();
-      }
+      // change sets are compressed: they mostly consist of paths, which are well compressible,
+      // and walking the history reads all of them
+      BufferExposingByteArrayOutputStream bytes = new BufferExposingByteArrayOutputStream();
+      DataOutputStream data = new DataOutputStream(bytes);
+      changeSet.write(data);
+      data.flush();
+
+      writeCompressed(myStorage, myStorage.createNextRecord(), bytes.getInternalBuffer(), bytes.size());
       myStorage.setLastId(myLastId);
       myStorage.force();
     }
@@ -16,6 +16,7 @@
 package com.intellij.ide.startup;
 
 import com.intellij.ide.caches.CacheUpdater;
+import com.intellij.openapi.components.DeferredProjectComponent;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.startup.StartupManager;
 import org.jetbrains.annotations.NotNull;
@@ -38,6 +39,24 @@ public abstract class StartupManagerEx extends StartupManager {
    */
   public abstract void registerCacheUpdater(@NotNull CacheUpdater updater);
 
+  /**
+   * @return the profiler which records the time spent in the steps of opening the project
+   */
+  @NotNull
+  public abstract StartupProfiler getProfiler();
+
+  /**
+   * Schedules <code>projectOpened()</code> of the component to be invoked after startup, see {@link DeferredProjectComponent}.
+   */
+  public abstract void registerDeferredProjectComponent(@NotNull DeferredProjectComponent component);
+
+  /**
+   * Prevents the deferred <code>projectOpened()</code> of the component from being invoked, e.g. because the project is closing.
+   *
+   * @return true if <code>projectOpened()</code> of the registered deferred component hasn't been invoked yet
+   */
+  public abstract boolean cancelDeferredProjectComponent(@NotNull DeferredProjectComponent component);
+
   public static StartupManagerEx getInstanceEx(Project project) {
     return (StartupManagerEx)getInstance(project);
   }
@@ -17,9 +17,11 @@ package com.intellij.ide.startup.impl;
 
 import com.intellij.ide.caches.CacheUpdater;
 import com.intellij.ide.startup.StartupManagerEx;
+import com.intellij.ide.startup.StartupProfiler;
 import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationBundle;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.DeferredProjectComponent;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.extensions.Extensions;
 import com.intellij.openapi.progress.ProcessCanceledException;
@@ -44,10 +46,7 @@ import com.intellij.util.ui.UIUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.TestOnly;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
 
 public class StartupManagerImpl extends StartupManagerEx {
   private static final Logger LOG = Logger.getInstance("#com.intellij.ide.startup.impl.StartupManagerImpl");
@@ -60,6 +59,8 @@ public class StartupManagerImpl extends StartupManagerEx {
   private boolean myPostStartupActivitiesPassed = false; // guarded by this
 
   private final List<CacheUpdater> myCacheUpdaters = new LinkedList<CacheUpdater>();
+  private final Set<DeferredProjectComponent> myPendingDeferredComponents = new HashSet<DeferredProjectComponent>(); // guarded by this
+  private final StartupProfiler myProfiler = new StartupProfiler();
   private volatile boolean myPreStartupActivitiesPassed = false;
   private volatile boolean myStartupActivitiesRunning = false;
   private volatile boolean myStartupActivitiesPassed = false;
@@ -94,6 +95,48 @@ public class StartupManagerImpl extends StartupManagerEx {
     myCacheUpdaters.add(updater);
   }
 
+  @NotNull
+  @Override
+  public StartupProfiler getProfiler() {
+    return myProfiler;
+  }
+
+  @Override
+  public synchronized void registerDeferredProjectComponent(@NotNull final DeferredProjectComponent component) {
+    myPendingDeferredComponents.add(component);
+    String name = component.getClass().getName();
+    final Runnable runnable;
+    if (DumbService.isDumbAware(component)) {
+      runnable = new DumbAwareProfiledActivity(StartupProfiler.Phase.DEFERRED_PROJECT_OPENED, name) {
+        @Override
+        protected void doRun() {
+          openDeferredProjectComponent(component);
+        }
+      };
+    }
+    else {
+      runnable = new ProfiledActivity(StartupProfiler.Phase.DEFERRED_PROJECT_OPENED, name) {
+        @Override
+        protected void doRun() {
+          openDeferredProjectComponent(component);
+        }
+      };
+    }
+    registerPostStartupActivity(runnable);
+  }
+
+  @Override
+  public synchronized boolean cancelDeferredProjectComponent(@NotNull DeferredProjectComponent component) {
+    return myPendingDeferredComponents.remove(component);
+  }
+
+  private void openDeferredProjectComponent(@NotNull DeferredProjectComponent component) {
+    synchronized (this) {
+      if (myProject.isDisposed() || !myPendingDeferredComponents.remove(component)) return;
+    }
+    component.projectOpened();
+  }
+
   @Override
   public boolean startupActivityRunning() {
     return myStartupActivitiesRunning;
@@ -114,11 +157,11 @@ public class StartupManagerImpl extends StartupManagerEx {
       public void run() {
         HeavyProcessLatch.INSTANCE.processStarted();
         try {
-          runActivities(myPreStartupActivities);
+          runActivities(myPreStartupActivities, StartupProfiler.Phase.STARTUP_ACTIVITIES);
           myPreStartupActivitiesPassed = true;
 
           myStartupActivitiesRunning = true;
-          runActivities(myStartupActivities);
+          runActivities(myStartupActivities, StartupProfiler.Phase.STARTUP_ACTIVITIES);
 
           myStartupActivitiesRunning = false;
 
@@ -140,8 +183,9 @@ public class StartupManagerImpl extends StartupManagerEx {
     final List<Runnable> dumbAwareActivities = new ArrayList<Runnable>();
     final List<Runnable> normalActivities = new ArrayList<Runnable>();
     for (final StartupActivity extension : extensions) {
-      final Runnable runnable = new Runnable() {
-        public void run() {
+      final Runnable runnable = new ProfiledActivity(StartupProfiler.Phase.POST_STARTUP_ACTIVITIES, extension.getClass().getName()) {
+        @Override
+        protected void doRun() {
           if (!myProject.isDisposed()) {
             extension.runActivity(myProject);
           }
@@ -155,13 +199,13 @@ public class StartupManagerImpl extends StartupManagerEx {
       }
     }
 
-    runActivities(dumbAwareActivities);
+    runActivities(dumbAwareActivities, StartupProfiler.Phase.POST_STARTUP_ACTIVITIES);
 
     if (!normalActivities.isEmpty()) {
       DumbService.getInstance(myProject).runWhenSmart(new Runnable() {
         public void run() {
           if (!myProject.isDisposed()) {
-            runActivities(normalActivities);
+            runActivities(normalActivities, StartupProfiler.Phase.POST_STARTUP_ACTIVITIES);
           }
         }
       });
@@ -173,16 +217,21 @@ public class StartupManagerImpl extends StartupManagerEx {
 
     if (myPostStartupActivitiesPassed) return;
 
-    runActivities(myDumbAwarePostStartupActivities);
+    runActivities(myDumbAwarePostStartupActivities, StartupProfiler.Phase.POST_STARTUP_ACTIVITIES);
     DumbService.getInstance(myProject).runWhenSmart(new Runnable() {
       public void run() {
         //noinspection SynchronizeOnThis
         synchronized (StartupManagerImpl.this) {
           app.assertIsDispatchThread();
           if (myProject.isDisposed()) return;
-          runActivities(myDumbAwarePostStartupActivities); // they can register activities while in the dumb mode
-          runActivities(myNotDumbAwarePostStartupActivities);
+          runActivities(myDumbAwarePostStartupActivities, StartupProfiler.Phase.POST_STARTUP_ACTIVITIES); // they can register activities while in the dumb mode
+          runActivities(myNotDumbAwarePostStartupActivities, StartupProfiler.Phase.POST_STARTUP_ACTIVITIES);
           myPostStartupActivitiesPassed = true;
+
+          String report = myProfiler.buildReport();
+          if (report != null && !app.isUnitTestMode()) {
+            LOG.info("Project " + myProject.getName() + " opened:\n" + report);
+          }
         }
       }
     });
@@ -249,14 +298,19 @@ public class StartupManagerImpl extends StartupManagerEx {
     }
   }
 
-  private static void runActivities(@NotNull List<Runnable> activities) {
+  private void runActivities(@NotNull List<Runnable> activities, @NotNull StartupProfiler.Phase phase) {
     final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
     while (!activities.isEmpty()) {
       final Runnable runnable = activities.remove(0);
       if (indicator != null) indicator.checkCanceled();
 
       try {
-        runnable.run();
+        if (runnable instanceof ProfiledActivity) {
+          runnable.run();
+        }
+        else {
+          myProfiler.measure(phase, runnable.getClass().getName(), runnable);
+        }
       }
       catch (ProcessCanceledException e) {
         throw e;
@@ -274,15 +328,17 @@ public class StartupManagerImpl extends StartupManagerEx {
 
     final Runnable runnable;
     if (DumbService.isDumbAware(action)) {
-      runnable = new DumbAwareRunnable() {
-        public void run() {
+      runnable = new DumbAwareProfiledActivity(StartupProfiler.Phase.POST_STARTUP_ACTIVITIES, action.getClass().getName()) {
+        @Override
+        protected void doRun() {
           action.run();
         }
       };
     }
     else {
-      runnable = new Runnable() {
-        public void run() {
+      runnable = new ProfiledActivity(StartupProfiler.Phase.POST_STARTUP_ACTIVITIES, action.getClass().getName()) {
+        @Override
+        protected void doRun() {
           action.run();
         }
       };
@@ -311,6 +367,8 @@ public class StartupManagerImpl extends StartupManagerEx {
     myDumbAwarePostStartupActivities.clear();
     myNotDumbAwarePostStartupActivities.clear();
     myCacheUpdaters.clear();
+    myPendingDeferredComponents.clear();
+    myProfiler.reset();
   }
 
   @TestOnly
@@ -325,4 +383,41 @@ public class StartupManagerImpl extends StartupManagerEx {
       prepareForNextTest();
     }
   }
+
+  /**
+   * An activity wrapper which reports its time to the profiler under the name of the wrapped activity
+   * rather than under the name of the wrapper class.
+   */
+  private abstract class ProfiledActivity implements Runnable {
+    private final StartupProfiler.Phase myPhase;
+    private final String myName;
+
+    private ProfiledActivity(@NotNull StartupProfiler.Phase phase, @NotNull String name) {
+      myPhase = phase;
+      myName = name;
+    }
+
+    @Override
+    public final void run() {
+      myProfiler.measure(myPhase, myName, new Runnable() {
+        @Override
+        public void run() {
+          doRun();
+        }
+      });
+    }
+
+    protected abstract void doRun();
+
+    @Override
+    public String toString() {
+      return myName;
+    }
+  }
+
+  private abstract class DumbAwareProfiledActivity extends ProfiledActivity implements DumbAware {
+    private DumbAwareProfiledActivity(@NotNull StartupProfiler.Phase phase, @NotNull String name) {
+      super(phase, name);
+    }
+  }
 }
@@ -94,4 +94,10 @@ public interface ApplicationEx extends Application {
    * @return true if action was run while holding the lock, false if was unable to get the lock and action was not run
    */
   boolean tryRunReadAction(@NotNull Runnable action);
+
+  /**
+   * @return true if some thread has requested a write action which is waiting for the running read actions to finish;
+   * long read actions should stop and restart later to let it proceed
+   */
+  boolean isWriteActionPending();
 }
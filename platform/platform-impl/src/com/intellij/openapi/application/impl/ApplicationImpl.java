@@ -23,6 +23,7 @@ import com.intellij.ide.*;
 import com.intellij.ide.plugins.IdeaPluginDescriptor;
 import com.intellij.ide.plugins.PluginManager;
 import com.intellij.ide.plugins.PluginManagerCore;
+import com.intellij.ide.startup.StartupProfiler;
 import com.intellij.idea.StartupUtil;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.*;
@@ -79,17 +80,16 @@ import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @SuppressWarnings({"AssignmentToStaticFieldFromInstanceMethod"})
 public class ApplicationImpl extends ComponentManagerImpl implements ApplicationEx {
   private static final Logger LOG = Logger.getInstance("#com.intellij.application.impl.ApplicationImpl");
   private final ModalityState MODALITY_STATE_NONE = ModalityState.NON_MODAL;
 
-  // about writer preference: the way the j.u.c.l.ReentrantReadWriteLock.NonfairSync is implemented, the
-  // writer thread will be always at the queue head and therefore, j.u.c.l.ReentrantReadWriteLock.NonfairSync.readerShouldBlock()
-  // will return true if the write action is pending, exactly as we need
-  private final ReentrantReadWriteLock myLock = new ReentrantReadWriteLock(false);
+  // readers are blocked while the write action is pending, and read actions don't contend on a shared counter
+  private final ReadMostlyRWLock myLock = new ReadMostlyRWLock();
+  // set before the write action listeners are notified so no new non-blocking read actions start after that
+  private volatile boolean myWriteActionPending;
 
   private final ModalityInvokator myInvokator = new ModalityInvokatorImpl();
 
@@ -530,6 +530,11 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
       HeavyProcessLatch.INSTANCE.processFinished();
     }
     myLoaded = true;
+    // application components are initialized now
+    String report = StartupProfiler.getApplicationProfiler().buildReport();
+    if (report != null && !isUnitTestMode()) {
+      LOG.info("Application loaded:\n" + report);
+    }
 
     createLocatorFile();
   }
@@ -915,7 +920,7 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
     else {
       assertReadActionAllowed();
       try {
-        myLock.readLock().lockInterruptibly();
+        myLock.readLockInterruptibly();
       }
       catch (InterruptedException e) {
         throw new RuntimeInterruptedException(e);
@@ -924,7 +929,7 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
         action.run();
       }
       finally {
-        myLock.readLock().unlock();
+        myLock.readUnlock();
       }
     }
   }
@@ -936,7 +941,7 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
     else {
       assertReadActionAllowed();
       try {
-        myLock.readLock().lockInterruptibly();
+        myLock.readLockInterruptibly();
       }
       catch (InterruptedException e) {
         throw new RuntimeInterruptedException(e);
@@ -945,7 +950,7 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
         return computation.compute();
       }
       finally {
-        myLock.readLock().unlock();
+        myLock.readUnlock();
       }
     }
   }
@@ -958,7 +963,7 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
     else {
       assertReadActionAllowed();
       try {
-        myLock.readLock().lockInterruptibly();
+        myLock.readLockInterruptibly();
       }
       catch (InterruptedException e) {
         throw new RuntimeInterruptedException(e);
@@ -967,7 +972,7 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
         return computation.compute();
       }
       finally {
-        myLock.readLock().unlock();
+        myLock.readUnlock();
       }
     }
   }
@@ -1153,13 +1158,7 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
 
     if (mustAcquire) {
       LOG.assertTrue(myTestModeFlag || !Thread.holdsLock(PsiLock.LOCK), "Thread must not hold PsiLock while performing readAction");
-      try {
-        // timed version of tryLock() respects fairness unlike the no-args method
-        if (!myLock.readLock().tryLock(0, TimeUnit.MILLISECONDS)) return false;
-      }
-      catch (InterruptedException e) {
-        throw new RuntimeInterruptedException(e);
-      }
+      if (myWriteActionPending || !myLock.tryReadLock()) return false;
     }
 
     try {
@@ -1167,7 +1166,7 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
     }
     finally {
       if (mustAcquire) {
-        myLock.readLock().unlock();
+        myLock.readUnlock();
       }
     }
     return true;
@@ -1229,13 +1228,18 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
       clazz = _clazz;
       assertCanRunWriteAction();
 
+      boolean outermost = !isWriteAccessAllowed();
+      if (outermost) {
+        myWriteActionPending = true;
+      }
       ActivityTracker.getInstance().inc();
-      fireBeforeWriteActionStart(_clazz);
       final AtomicBoolean stopped = new AtomicBoolean(false);
 
       LOG.assertTrue(isWriteAccessAllowed() || !Thread.holdsLock(PsiLock.LOCK), "Thread must not hold PsiLock while performing writeAction");
       try {
-        if (!myLock.writeLock().tryLock()) {
+        fireBeforeWriteActionStart(_clazz);
+
+        if (!myLock.tryWriteLock()) {
           if (ourDumpThreadsOnLongWriteActionWaiting > 0) {
             executeOnPooledThread(new Runnable() {
               @Override
@@ -1249,13 +1253,18 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
               }
             });
           }
-          myLock.writeLock().lockInterruptibly();
+          myLock.writeLockInterruptibly();
         }
         acquired();
       }
       catch (InterruptedException e) {
         throw new RuntimeInterruptedException(e);
       }
+      finally {
+        if (outermost) {
+          myWriteActionPending = false;
+        }
+      }
       stopped.set(true);
 
       myWriteActionsStack.push(_clazz);
@@ -1271,7 +1280,7 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
         myWriteActionsStack.pop();
       }
       finally {
-        myLock.writeLock().unlock();
+        myLock.writeUnlock();
         released();
       }
     }
@@ -1319,7 +1328,7 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
     private ReadAccessToken() {
       assertReadActionAllowed();
       try {
-        myLock.readLock().lockInterruptibly();
+        myLock.readLockInterruptibly();
         acquired();
       }
       catch (InterruptedException e) {
@@ -1329,7 +1338,7 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
 
     @Override
     public void finish() {
-      myLock.readLock().unlock();
+      myLock.readUnlock();
       released();
     }
   }
@@ -1344,9 +1353,14 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
                    "Write access is allowed inside write-action only (see com.intellij.openapi.application.Application.runWriteAction())");
   }
 
+  @Override
+  public boolean isWriteActionPending() {
+    return myWriteActionPending;
+  }
+
   @Override
   public boolean isWriteAccessAllowed() {
-    return myLock.writeLock().isHeldByCurrentThread();
+    return myLock.isWriteLockedByCurrentThread();
   }
 
   public void editorPaintStart() {
@@ -1485,6 +1499,12 @@ public class ApplicationImpl extends ComponentManagerImpl implements Application
     return super.logSlowComponents() || ApplicationInfoImpl.getShadowInstance().isEAP();
   }
 
+  @Override
+  protected StartupProfiler getStartupProfiler() {
+    // components created after the application is loaded are not a part of the startup
+    return myLoaded ? null : StartupProfiler.getApplicationProfiler();
+  }
+
   @TestOnly
   public void setDisposeInProgress(boolean disposeInProgress) {
     myDisposeInProgress = disposeInProgress;
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.application.impl;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Read-write lock optimised for the application lock usage pattern: plenty of short read actions from many threads
+ * and rare write actions from the single event dispatch thread.
+ * <p/>
+ * Each reader thread owns a slot with its own "read requested" flag, so acquiring the read lock while no writer is pending
+ * is just a volatile write and a volatile read of thread-confined and read-mostly data, without CAS on a shared counter.
+ * The writer raises the "write requested" flag (readers coming after that wait until the write lock is released,
+ * so writers are preferred exactly as with the non-fair {@link java.util.concurrent.locks.ReentrantReadWriteLock})
+ * and then waits until all the reader slots are released.
+ * <p/>
+ * The read lock is not reentrant for readers blocked by a pending writer, callers are supposed to check
+ * {@link #getReadHoldCount()} before acquiring it; the write lock is reentrant.
+ */
+class ReadMostlyRWLock {
+  private final List<Reader> myReaders = new CopyOnWriteArrayList<Reader>();
+  private final ThreadLocal<Reader> myReader = new ThreadLocal<Reader>() {
+    @Override
+    protected Reader initialValue() {
+      return new Reader(Thread.currentThread());
+    }
+  };
+
+  private volatile boolean myWriteRequested;
+  private volatile Thread myWriteThread;
+  private int myWriteHoldCount; // accessed from the write thread only
+
+  private static class Reader {
+    private final WeakReference<Thread> myThread;
+    private volatile boolean myReadRequested;
+    private int myHoldCount; // accessed from the owner thread only
+    private boolean myRegistered;
+
+    private Reader(@NotNull Thread thread) {
+      myThread = new WeakReference<Thread>(thread);
+    }
+
+    private boolean isAlive() {
+      Thread thread = myThread.get();
+      return thread != null && thread.isAlive();
+    }
+  }
+
+  public int getReadHoldCount() {
+    return myReader.get().myHoldCount;
+  }
+
+  public void readLockInterruptibly() throws InterruptedException {
+    Reader reader = getReader();
+    if (reader.myHoldCount > 0 || myWriteThread == Thread.currentThread()) {
+      reader.myHoldCount++;
+      return;
+    }
+
+    while (!tryAcquireRead(reader)) {
+      synchronized (this) {
+        while (myWriteRequested) {
+          wait();
+        }
+      }
+    }
+    reader.myHoldCount++;
+  }
+
+  public boolean tryReadLock() {
+    Reader reader = getReader();
+    if (reader.myHoldCount > 0 || myWriteThread == Thread.currentThread()) {
+      reader.myHoldCount++;
+      return true;
+    }
+
+    if (!tryAcquireRead(reader)) return false;
+    reader.myHoldCount++;
+    return true;
+  }
+
+  public void readUnlock() {
+    Reader reader = myReader.get();
+    assert reader.myHoldCount > 0 : "Read lock is not held by " + Thread.currentThread();
+    if (--reader.myHoldCount > 0) return;
+
+    reader.myReadRequested = false;
+    if (myWriteRequested) {
+      Thread writeThread = myWriteThread;
+      if (writeThread != null) {
+        LockSupport.unpark(writeThread);
+      }
+    }
+  }
+
+  public boolean isWriteLockedByCurrentThread() {
+    return myWriteThread == Thread.currentThread();
+  }
+
+  public void writeLockInterruptibly() throws InterruptedException {
+    if (reenterWrite()) return;
+
+    synchronized (this) {
+      while (myWriteRequested) {
+        wait();
+      }
+      startWrite();
+    }
+
+    try {
+      for (Reader reader : myReaders) {
+        while (reader.myReadRequested) {
+          LockSupport.park(this);
+          if (Thread.interrupted()) {
+            throw new InterruptedException();
+          }
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      cancelWrite();
+      throw e;
+    }
+  }
+
+  public boolean tryWriteLock() {
+    if (reenterWrite()) return true;
+
+    synchronized (this) {
+      if (myWriteRequested) return false;
+      startWrite();
+    }
+
+    for (Reader reader : myReaders) {
+      if (reader.myReadRequested) {
+        cancelWrite();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public void writeUnlock() {
+    assert isWriteLockedByCurrentThread() : "Write lock is not held by " + Thread.currentThread();
+    if (--myWriteHoldCount > 0) return;
+    cancelWrite();
+  }
+
+  private boolean tryAcquireRead(@NotNull Reader reader) {
+    // the writer raises myWriteRequested and then checks myReadRequested of every reader, while the reader does the opposite;
+    // both flags are volatile, so at least one of the sides sees the other one and backs off
+    reader.myReadRequested = true;
+    if (!myWriteRequested) return true;
+
+    reader.myReadRequested = false;
+    Thread writeThread = myWriteThread;
+    if (writeThread != null) {
+      LockSupport.unpark(writeThread);
+    }
+    return false;
+  }
+
+  @NotNull
+  private Reader getReader() {
+    Reader reader = myReader.get();
+    if (!reader.myRegistered) {
+      reader.myRegistered = true;
+      myReaders.add(reader);
+    }
+    return reader;
+  }
+
+  private boolean reenterWrite() {
+    if (isWriteLockedByCurrentThread()) {
+      myWriteHoldCount++;
+      return true;
+    }
+    return false;
+  }
+
+  // must be called under this monitor
+  private void startWrite() {
+    myWriteThread = Thread.currentThread();
+    myWriteHoldCount = 1;
+    myWriteRequested = true;
+
+    for (Reader reader : myReaders) {
+      if (!reader.isAlive()) {
+        myReaders.remove(reader);
+      }
+    }
+  }
+
+  private void cancelWrite() {
+    synchronized (this) {
+      myWriteHoldCount = 0;
+      myWriteThread = null;
+      myWriteRequested = false;
+      notifyAll();
+    }
+  }
+}
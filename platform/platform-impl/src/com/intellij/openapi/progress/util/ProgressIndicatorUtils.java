@@ -1,5 +1,5 @@
 /*
- * Copyright 2000-2011 JetBrains s.r.o.
+ * Copyright 2000-2013 JetBrains s.r.o.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,9 @@ import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationAdapter;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ex.ApplicationEx;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import org.jetbrains.annotations.NotNull;
@@ -67,4 +70,87 @@ public class ProgressIndicatorUtils {
       application.removeApplicationListener(listener);
     }
   }
+
+  /**
+   * Runs the action in a read action which is cancelled (via its progress indicator) as soon as a write action is requested.
+   * Doesn't wait for the read lock: if a write action is pending or running, the action isn't started at all.
+   *
+   * @return true if the action has completed, false if it wasn't started or was cancelled because of a write action
+   */
+  public static boolean runInReadActionWithWriteActionPriority(@NotNull final Runnable action) {
+    return runInReadActionWithWriteActionPriority(action, new ProgressIndicatorBase());
+  }
+
+  private static boolean runInReadActionWithWriteActionPriority(@NotNull final Runnable action,
+                                                                @NotNull final ProgressIndicator progressIndicator) {
+    final ApplicationEx application = (ApplicationEx)ApplicationManager.getApplication();
+    final ApplicationAdapter listener = new ApplicationAdapter() {
+      @Override
+      public void beforeWriteActionStart(Object action) {
+        progressIndicator.cancel();
+      }
+    };
+    final boolean[] completed = {false};
+    application.addApplicationListener(listener);
+    try {
+      // the write action may have been requested before the listener was added
+      if (application.isWriteActionPending()) return false;
+
+      ProgressManager.getInstance().runProcess(new Runnable() {
+        @Override
+        public void run() {
+          completed[0] = application.tryRunReadAction(action);
+        }
+      }, progressIndicator);
+    }
+    catch (ProcessCanceledException ignore) {
+    }
+    finally {
+      application.removeApplicationListener(listener);
+    }
+    return completed[0] && !progressIndicator.isCanceled();
+  }
+
+  public static void scheduleWithWriteActionPriority(@NotNull ReadTask task) {
+    scheduleWithWriteActionPriority(new ProgressIndicatorBase(), task);
+  }
+
+  /**
+   * Runs the task on a pooled thread in a read action with write action priority (see {@link #runInReadActionWithWriteActionPriority(Runnable)}).
+   * If a write action interrupts it, {@link ReadTask#onCanceled(ProgressIndicator)} is invoked on the event dispatch thread
+   * after the write action has finished. Cancelling the given indicator stops the task for good.
+   */
+  public static void scheduleWithWriteActionPriority(@NotNull final ProgressIndicator progressIndicator, @NotNull final ReadTask task) {
+    ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+      @Override
+      public void run() {
+        if (progressIndicator.isCanceled()) return;
+
+        // a fresh indicator for every attempt, since the one cancelled by a write action can't be reused
+        final ProgressIndicator attemptIndicator = new ProgressIndicatorBase() {
+          @Override
+          public boolean isCanceled() {
+            return super.isCanceled() || progressIndicator.isCanceled();
+          }
+        };
+        boolean completed = runInReadActionWithWriteActionPriority(new Runnable() {
+          @Override
+          public void run() {
+            task.computeInReadAction(attemptIndicator);
+          }
+        }, attemptIndicator);
+
+        if (!completed && !progressIndicator.isCanceled()) {
+          ApplicationManager.getApplication().invokeLater(new Runnable() {
+            @Override
+            public void run() {
+              if (!progressIndicator.isCanceled()) {
+                task.onCanceled(progressIndicator);
+              }
+            }
+          }, ModalityState.any());
+        }
+      }
+    });
+  }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.progress.util;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A computation performed in a background read action which gives way to write actions:
+ * it's cancelled as soon as a write action is requested and restarted after that.
+ *
+ * @see ProgressIndicatorUtils#scheduleWithWriteActionPriority(ReadTask)
+ */
+public abstract class ReadTask {
+  /**
+   * Performs the computation. Is invoked inside a read action and under the given progress indicator,
+   * so it should call {@link ProgressIndicator#checkCanceled()} often enough to stop promptly when a write action comes.
+   * May be invoked several times if previous attempts were cancelled.
+   */
+  public abstract void computeInReadAction(@NotNull ProgressIndicator indicator);
+
+  /**
+   * Is invoked on the event dispatch thread when the computation was cancelled by a write action.
+   * The default implementation restarts the computation; override to restart it only if it's still needed.
+   */
+  public void onCanceled(@NotNull ProgressIndicator indicator) {
+    ProgressIndicatorUtils.scheduleWithWriteActionPriority(indicator, this);
+  }
+}
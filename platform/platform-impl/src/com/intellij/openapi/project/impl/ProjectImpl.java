@@ -20,6 +20,7 @@ import com.intellij.ide.RecentProjectsManagerBase;
 import com.intellij.ide.plugins.IdeaPluginDescriptor;
 import com.intellij.ide.plugins.PluginManager;
 import com.intellij.ide.startup.StartupManagerEx;
+import com.intellij.ide.startup.StartupProfiler;
 import com.intellij.notification.*;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ApplicationNamesInfo;
@@ -27,6 +28,7 @@ import com.intellij.openapi.application.PathMacros;
 import com.intellij.openapi.application.ex.ApplicationEx;
 import com.intellij.openapi.application.ex.ApplicationManagerEx;
 import com.intellij.openapi.application.impl.ApplicationInfoImpl;
+import com.intellij.openapi.components.DeferredProjectComponent;
 import com.intellij.openapi.components.ExtensionAreas;
 import com.intellij.openapi.components.ProjectComponent;
 import com.intellij.openapi.components.StorageScheme;
@@ -62,6 +64,7 @@ import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 import org.picocontainer.*;
 import org.picocontainer.defaults.CachingComponentAdapter;
 import org.picocontainer.defaults.ConstructorInjectionComponentAdapter;
@@ -94,6 +97,9 @@ public class ProjectImpl extends ComponentManagerImpl implements ProjectEx {
 
   public static Key<Long> CREATION_TIME = Key.create("ProjectImpl.CREATION_TIME");
 
+  // deferred project components are opened in projectOpened() in tests, unless a test checks the deferral itself
+  private static volatile boolean ourDeferComponentsInTests;
+
   protected ProjectImpl(@NotNull ProjectManagerImpl manager, @NotNull String filePath, boolean isOptimiseTestLoadSpeed, String projectName) {
     super(ApplicationManager.getApplication(), "Project "+(projectName == null ? filePath : projectName));
     putUserData(CREATION_TIME, System.nanoTime());
@@ -413,11 +419,27 @@ public class ProjectImpl extends ComponentManagerImpl implements ProjectEx {
     TimedReference.disposeTimed();
   }
 
+  @TestOnly
+  public static void setDeferComponentsInTests(boolean defer) {
+    ourDeferComponentsInTests = defer;
+  }
+
   private void projectOpened() {
+    final StartupManagerEx startupManager = StartupManagerEx.getInstanceEx(this);
+    final boolean deferAllowed = !ApplicationManager.getApplication().isUnitTestMode() || ourDeferComponentsInTests;
     final ProjectComponent[] components = getComponents(ProjectComponent.class);
-    for (ProjectComponent component : components) {
+    for (final ProjectComponent component : components) {
+      if (deferAllowed && component instanceof DeferredProjectComponent) {
+        startupManager.registerDeferredProjectComponent((DeferredProjectComponent)component);
+        continue;
+      }
       try {
-        component.projectOpened();
+        startupManager.getProfiler().measure(StartupProfiler.Phase.PROJECT_OPENED, component.getClass().getName(), new Runnable() {
+          @Override
+          public void run() {
+            component.projectOpened();
+          }
+        });
       }
       catch (Throwable e) {
         LOG.error(component.toString(), e);
@@ -426,9 +448,14 @@ public class ProjectImpl extends ComponentManagerImpl implements ProjectEx {
   }
 
   private void projectClosed() {
+    StartupManagerEx startupManager = StartupManagerEx.getInstanceEx(this);
     List<ProjectComponent> components = new ArrayList<ProjectComponent>(Arrays.asList(getComponents(ProjectComponent.class)));
     Collections.reverse(components);
     for (ProjectComponent component : components) {
+      if (component instanceof DeferredProjectComponent &&
+          startupManager.cancelDeferredProjectComponent((DeferredProjectComponent)component)) {
+        continue; // was never opened
+      }
       try {
         component.projectClosed();
       }
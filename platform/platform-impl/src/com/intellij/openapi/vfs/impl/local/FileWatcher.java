@@ -523,10 +523,18 @@ public class FileWatcher {
     }
 
     private void reset() {
-      VirtualFile[] localRoots = myManagingFS.getLocalRoots();
+      List<String> recursiveWatchRoots = myRecursiveWatchRoots;
+      List<String> flatWatchRoots = myFlatWatchRoots;
       synchronized (myLock) {
-        for (VirtualFile root : localRoots) {
-          myDirtyPaths.dirtyPathsRecursive.add(root.getPresentableUrl());
+        if (recursiveWatchRoots.isEmpty() && flatWatchRoots.isEmpty()) {
+          for (VirtualFile root : myManagingFS.getLocalRoots()) {
+            myDirtyPaths.dirtyPathsRecursive.add(root.getPresentableUrl());
+          }
+        }
+        else {
+          // only watched subtrees could have missed events, there is no need to rescan the whole file system
+          myDirtyPaths.dirtyPathsRecursive.addAll(recursiveWatchRoots);
+          myDirtyPaths.dirtyDirectories.addAll(flatWatchRoots);
         }
       }
       notifyOnEvent();
@@ -79,6 +79,8 @@ public class VirtualDirectoryImpl extends VirtualFileSystemEntry {
    */
   private VirtualFileSystemEntry[] myChildren = EMPTY_ARRAY;
 
+  private static final int MIN_CHILDREN_TO_MERGE = 16;
+
   public VirtualDirectoryImpl(@NonNls @NotNull final String name,
                               @Nullable final VirtualDirectoryImpl parent,
                               @NotNull final NewVirtualFileSystem fs,
@@ -649,6 +651,87 @@ public class VirtualDirectoryImpl extends VirtualFileSystemEntry {
     assertConsistency(myChildren, ignoreCase, file);
   }
 
+  /**
+   * Same as {@link #removeChild(VirtualFile)} for each of the removed files followed by {@link #addChild(VirtualFileSystemEntry)}
+   * for each of the added children, but the sorted children array is merged once instead of being copied for each file,
+   * which matters when thousands of files are created or deleted in a directory at once.
+   */
+  public synchronized void updateChildren(@NotNull List<VirtualFile> removed, @NotNull List<VirtualFileSystemEntry> added) {
+    if (removed.size() + added.size() < MIN_CHILDREN_TO_MERGE) {
+      for (VirtualFile file : removed) {
+        removeChild(file);
+      }
+      for (VirtualFileSystemEntry child : added) {
+        addChild(child);
+      }
+      return;
+    }
+
+    final boolean ignoreCase = !getFileSystem().isCaseSensitive();
+    java.util.Comparator<String> nameComparator = new java.util.Comparator<String>() {
+      @Override
+      public int compare(String name1, String name2) {
+        return compareNames(name1, name2, ignoreCase);
+      }
+    };
+    String[] removedNames = new String[removed.size()];
+    for (int i = 0; i < removedNames.length; i++) {
+      removedNames[i] = removed.get(i).getName();
+    }
+    Arrays.sort(removedNames, nameComparator);
+    VirtualFileSystemEntry[] addedChildren = added.toArray(new VirtualFileSystemEntry[added.size()]);
+    Arrays.sort(addedChildren, new java.util.Comparator<VirtualFileSystemEntry>() {
+      @Override
+      public int compare(VirtualFileSystemEntry o1, VirtualFileSystemEntry o2) {
+        return compareNames(o1.getName(), o2.getName(), ignoreCase);
+      }
+    });
+
+    VirtualFileSystemEntry[] array = myChildren;
+    int adoptedStart = getAdoptedChildrenStart();
+    List<VirtualFileSystemEntry> result = new ArrayList<VirtualFileSystemEntry>(array.length + addedChildren.length);
+
+    // real children: the existing ones without the removed names, merged with the added ones (an existing child is kept as is)
+    int r = 0;
+    int a = 0;
+    for (int i = 0; i < adoptedStart; i++) {
+      VirtualFileSystemEntry child = array[i];
+      String name = child.getName();
+      while (r < removedNames.length && compareNames(removedNames[r], name, ignoreCase) < 0) r++;
+      if (r < removedNames.length && compareNames(removedNames[r], name, ignoreCase) == 0) continue;
+      while (a < addedChildren.length && compareNames(addedChildren[a].getName(), name, ignoreCase) < 0) {
+        result.add(addedChildren[a++]);
+      }
+      if (a < addedChildren.length && compareNames(addedChildren[a].getName(), name, ignoreCase) == 0) a++;
+      result.add(child);
+    }
+    while (a < addedChildren.length) {
+      result.add(addedChildren[a++]);
+    }
+
+    // adopted children: the existing ones and the removed names (if not all children are loaded) without the added names
+    List<String> adoptedNames = new ArrayList<String>(array.length - adoptedStart + removedNames.length);
+    for (int i = adoptedStart; i < array.length; i++) {
+      adoptedNames.add(array[i].getName());
+    }
+    if (!allChildrenLoaded()) {
+      adoptedNames.addAll(Arrays.asList(removedNames));
+      Collections.sort(adoptedNames, nameComparator);
+    }
+    a = 0;
+    String previous = null;
+    for (String name : adoptedNames) {
+      if (previous != null && compareNames(previous, name, ignoreCase) == 0) continue;
+      previous = name;
+      while (a < addedChildren.length && compareNames(addedChildren[a].getName(), name, ignoreCase) < 0) a++;
+      if (a < addedChildren.length && compareNames(addedChildren[a].getName(), name, ignoreCase) == 0) continue;
+      result.add(new AdoptedChild(name));
+    }
+
+    myChildren = result.toArray(new VirtualFileSystemEntry[result.size()]);
+    assertConsistency(myChildren, ignoreCase, removed, added);
+  }
+
   private void removeFromArray(int index) {
     myChildren = ArrayUtil.remove(myChildren, index, new ArrayFactory<VirtualFileSystemEntry>() {
       @NotNull
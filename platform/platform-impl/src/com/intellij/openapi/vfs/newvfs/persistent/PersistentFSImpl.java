@@ -851,19 +851,27 @@ public class PersistentFSImpl extends PersistentFS implements ApplicationCompone
     if (hasRemovedChildren) clearIdCache();
     VirtualDirectoryImpl parentImpl = (VirtualDirectoryImpl)parent;
 
+    List<VirtualFile> removed = new ArrayList<VirtualFile>();
+    List<VirtualFileSystemEntry> added = new ArrayList<VirtualFileSystemEntry>();
     for (int i = 0, len = childrenIdsUpdated.size(); i < len; ++i) {
       final int childId = childrenIdsUpdated.get(i);
       final VirtualFile childFile = childrenToBeUpdated.get(i);
 
       if (childId > 0) {
-        parentImpl.addChild((VirtualFileSystemEntry)childFile);
+        added.add((VirtualFileSystemEntry)childFile);
       }
       else {
         FSRecords.deleteRecordRecursively(-childId);
-        parentImpl.removeChild(childFile);
-        invalidateSubtree(childFile);
+        removed.add(childFile);
       }
     }
+
+    // merge all the changes into the children array at once instead of copying it for every created or deleted file
+    parentImpl.updateChildren(removed, added);
+
+    for (VirtualFile childFile : removed) {
+      invalidateSubtree(childFile);
+    }
   }
 
   @Override
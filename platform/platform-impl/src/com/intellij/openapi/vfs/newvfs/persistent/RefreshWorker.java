@@ -30,12 +30,16 @@ import com.intellij.openapi.vfs.newvfs.events.*;
 import com.intellij.openapi.vfs.newvfs.impl.FakeVirtualFile;
 import com.intellij.openapi.vfs.newvfs.impl.VirtualDirectoryImpl;
 import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import com.intellij.util.containers.OpenTHashSet;
-import com.intellij.util.containers.Queue;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import static com.intellij.openapi.diagnostic.LogUtil.debug;
 import static com.intellij.util.containers.ContainerUtil.newTroveSet;
@@ -46,14 +50,19 @@ import static com.intellij.util.containers.ContainerUtil.newTroveSet;
 public class RefreshWorker {
   private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.vfs.newvfs.persistent.RefreshWorker");
 
+  // files of one level of the tree are checked in parallel, if there are enough of them
+  private static final int MAX_PARALLEL_SCANS = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+  private static final int MIN_FILES_PER_SCAN = 64;
+  private static final BoundedTaskExecutor ourScanExecutor = new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, MAX_PARALLEL_SCANS);
+
   private final boolean myIsRecursive;
-  private final Queue<Pair<NewVirtualFile, FileAttributes>> myRefreshQueue = new Queue<Pair<NewVirtualFile, FileAttributes>>(100);
+  private final NewVirtualFile myRefreshRoot;
   private final List<VFileEvent> myEvents = new ArrayList<VFileEvent>();
   private volatile boolean myCancelled = false;
 
   public RefreshWorker(@NotNull NewVirtualFile refreshRoot, boolean isRecursive) {
     myIsRecursive = isRecursive;
-    myRefreshQueue.addLast(Pair.create(refreshRoot, (FileAttributes)null));
+    myRefreshRoot = refreshRoot;
   }
 
   @NotNull
@@ -66,7 +75,7 @@ public class RefreshWorker {
   }
 
   public void scan() {
-    NewVirtualFile root = myRefreshQueue.pullFirst().first;
+    NewVirtualFile root = myRefreshRoot;
     boolean rootDirty = root.isDirty();
     debug(LOG, "root=%s dirty=%b", root, rootDirty);
     if (!rootDirty) return;
@@ -74,7 +83,7 @@ public class RefreshWorker {
     NewVirtualFileSystem fs = root.getFileSystem();
     FileAttributes rootAttributes = fs.getAttributes(root);
     if (rootAttributes == null) {
-      scheduleDeletion(root);
+      scheduleDeletion(myEvents, root);
       root.markClean();
       return;
     }
@@ -82,20 +91,84 @@ public class RefreshWorker {
       fs = PersistentFS.replaceWithNativeFS(fs);
     }
 
-    myRefreshQueue.addLast(Pair.create(root, rootAttributes));
     try {
-      processQueue(fs, PersistentFS.getInstance());
+      processQueue(fs, PersistentFS.getInstance(), Pair.create(root, rootAttributes));
     }
     catch (RefreshCancelledException e) {
       LOG.debug("refresh cancelled");
     }
   }
 
-  private void processQueue(NewVirtualFileSystem fs, PersistentFS persistence) throws RefreshCancelledException {
-    while (!myRefreshQueue.isEmpty()) {
+  /**
+   * The tree is walked level by level (as before, breadth-first): the files of a large level are split into chunks which are checked
+   * on pooled threads, and the events and the files of the next level are collected in the original order,
+   * so the result doesn't depend on the number of threads.
+   */
+  private void processQueue(final NewVirtualFileSystem fs, final PersistentFS persistence, Pair<NewVirtualFile, FileAttributes> root)
+    throws RefreshCancelledException {
+    List<Pair<NewVirtualFile, FileAttributes>> level = Collections.singletonList(root);
+    while (!level.isEmpty()) {
+      checkCancelled();
+
+      int chunks = Math.min(MAX_PARALLEL_SCANS, level.size() / MIN_FILES_PER_SCAN);
+      if (chunks <= 1) {
+        List<Pair<NewVirtualFile, FileAttributes>> nextLevel = new ArrayList<Pair<NewVirtualFile, FileAttributes>>();
+        processFiles(fs, persistence, level, myEvents, nextLevel);
+        level = nextLevel;
+        continue;
+      }
+
+      List<Future<List<Pair<NewVirtualFile, FileAttributes>>>> futures = new ArrayList<Future<List<Pair<NewVirtualFile, FileAttributes>>>>();
+      final List<List<VFileEvent>> events = new ArrayList<List<VFileEvent>>();
+      int chunkSize = (level.size() + chunks - 1) / chunks;
+      for (int start = 0; start < level.size(); start += chunkSize) {
+        final List<Pair<NewVirtualFile, FileAttributes>> chunk = level.subList(start, Math.min(start + chunkSize, level.size()));
+        final List<VFileEvent> chunkEvents = new ArrayList<VFileEvent>();
+        events.add(chunkEvents);
+        futures.add(ourScanExecutor.submit(new Callable<List<Pair<NewVirtualFile, FileAttributes>>>() {
+          @Override
+          public List<Pair<NewVirtualFile, FileAttributes>> call() {
+            List<Pair<NewVirtualFile, FileAttributes>> nextLevel = new ArrayList<Pair<NewVirtualFile, FileAttributes>>();
+            processFiles(fs, persistence, chunk, chunkEvents, nextLevel);
+            return nextLevel;
+          }
+        }));
+      }
+
+      List<Pair<NewVirtualFile, FileAttributes>> nextLevel = new ArrayList<Pair<NewVirtualFile, FileAttributes>>();
+      for (int i = 0; i < futures.size(); i++) {
+        nextLevel.addAll(waitFor(futures.get(i)));
+        myEvents.addAll(events.get(i));
+      }
+      level = nextLevel;
+    }
+  }
+
+  private List<Pair<NewVirtualFile, FileAttributes>> waitFor(Future<List<Pair<NewVirtualFile, FileAttributes>>> future) {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      cancel();
+      throw new RefreshCancelledException();
+    }
+    catch (ExecutionException e) {
+      cancel(); // stops the other chunks
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+      if (cause instanceof Error) throw (Error)cause;
+      throw new RuntimeException(cause);
+    }
+  }
+
+  private void processFiles(NewVirtualFileSystem fs,
+                            PersistentFS persistence,
+                            List<Pair<NewVirtualFile, FileAttributes>> files,
+                            List<VFileEvent> events,
+                            List<Pair<NewVirtualFile, FileAttributes>> nextLevel) throws RefreshCancelledException {
+    for (Pair<NewVirtualFile, FileAttributes> pair : files) {
       checkCancelled();
 
-      Pair<NewVirtualFile, FileAttributes> pair = myRefreshQueue.pullFirst();
       NewVirtualFile file = pair.first;
       boolean fileDirty = file.isDirty();
       debug(LOG, "file=%s dirty=%b", file, fileDirty);
@@ -103,12 +176,12 @@ public class RefreshWorker {
 
       FileAttributes attributes = pair.second != null ? pair.second : fs.getAttributes(file);
       if (attributes == null) {
-        scheduleDeletion(file);
+        scheduleDeletion(events, file);
         continue;
       }
 
       NewVirtualFile parent = file.getParent();
-      if (parent != null && checkAndScheduleFileTypeChange(parent, file, attributes)) {
+      if (parent != null && checkAndScheduleFileTypeChange(events, parent, file, attributes)) {
         // ignore everything else
         file.markClean();
         continue ;
@@ -131,14 +204,14 @@ public class RefreshWorker {
           debug(LOG, "current=%s +%s -%s", currentNames, newNames, deletedNames);
 
           for (String name : deletedNames) {
-            scheduleDeletion(file.findChild(name));
+            scheduleDeletion(events, file.findChild(name));
           }
 
           for (String name : newNames) {
             checkCancelled();
             FileAttributes childAttributes = fs.getAttributes(new FakeVirtualFile(file, name));
             if (childAttributes != null) {
-              scheduleCreation(file, name, childAttributes.isDirectory(), false);
+              scheduleCreation(events, file, name, childAttributes.isDirectory(), false);
             }
             else {
               LOG.warn("[+] fs=" + fs + " dir=" + file + " name=" + name);
@@ -150,12 +223,12 @@ public class RefreshWorker {
             if (!deletedNames.contains(child.getName())) {
               FileAttributes childAttributes = fs.getAttributes(child);
               if (childAttributes != null) {
-                checkAndScheduleChildRefresh(file, child, childAttributes);
-                checkAndScheduleFileNameChange(actualNames, child);
+                checkAndScheduleChildRefresh(events, nextLevel, file, child, childAttributes);
+                checkAndScheduleFileNameChange(events, actualNames, child);
               }
               else {
                 LOG.warn("[x] fs=" + fs + " dir=" + file + " name=" + child.getName());
-                scheduleDeletion(child);
+                scheduleDeletion(events, child);
               }
             }
           }
@@ -172,11 +245,11 @@ public class RefreshWorker {
             checkCancelled();
             FileAttributes childAttributes = fs.getAttributes(child);
             if (childAttributes != null) {
-              checkAndScheduleChildRefresh(file, child, childAttributes);
-              checkAndScheduleFileNameChange(actualNames, child);
+              checkAndScheduleChildRefresh(events, nextLevel, file, child, childAttributes);
+              checkAndScheduleFileNameChange(events, actualNames, child);
             }
             else {
-              scheduleDeletion(child);
+              scheduleDeletion(events, child);
             }
           }
 
@@ -189,7 +262,7 @@ public class RefreshWorker {
             VirtualFile fake = new FakeVirtualFile(file, name);
             FileAttributes childAttributes = fs.getAttributes(fake);
             if (childAttributes != null) {
-              scheduleCreation(file, name, childAttributes.isDirectory(), false);
+              scheduleCreation(events, file, name, childAttributes.isDirectory(), false);
             }
           }
         }
@@ -201,21 +274,21 @@ public class RefreshWorker {
         long upToDateLength = attributes.length;
 
         if (currentTimestamp != upToDateTimestamp || currentLength != upToDateLength) {
-          scheduleUpdateContent(file);
+          scheduleUpdateContent(events, file);
         }
       }
 
       boolean currentWritable = persistence.isWritable(file);
       boolean upToDateWritable = attributes.isWritable();
       if (currentWritable != upToDateWritable) {
-        scheduleAttributeChange(file, VirtualFile.PROP_WRITABLE, currentWritable, upToDateWritable);
+        scheduleAttributeChange(events, file, VirtualFile.PROP_WRITABLE, currentWritable, upToDateWritable);
       }
 
       if (SystemInfo.isWindows) {
         boolean currentHidden = file.is(VFileProperty.HIDDEN);
         boolean upToDateHidden = attributes.isHidden();
         if (currentHidden != upToDateHidden) {
-          scheduleAttributeChange(file, VirtualFile.PROP_HIDDEN, currentHidden, upToDateHidden);
+          scheduleAttributeChange(events, file, VirtualFile.PROP_HIDDEN, currentHidden, upToDateHidden);
         }
       }
 
@@ -224,7 +297,7 @@ public class RefreshWorker {
         String upToDateTarget = fs.resolveSymLink(file);
         String upToDateVfsTarget = upToDateTarget != null ? FileUtil.toSystemIndependentName(upToDateTarget) : null;
         if (!Comparing.equal(currentTarget, upToDateVfsTarget)) {
-          scheduleAttributeChange(file, VirtualFile.PROP_SYMLINK_TARGET, currentTarget, upToDateVfsTarget);
+          scheduleAttributeChange(events, file, VirtualFile.PROP_SYMLINK_TARGET, currentTarget, upToDateVfsTarget);
         }
       }
 
@@ -234,12 +307,14 @@ public class RefreshWorker {
     }
   }
 
-  private void checkAndScheduleFileNameChange(@Nullable OpenTHashSet<String> actualNames, VirtualFile child) {
+  private static void checkAndScheduleFileNameChange(@NotNull List<VFileEvent> events,
+                                                     @Nullable OpenTHashSet<String> actualNames,
+                                                     VirtualFile child) {
     if (actualNames != null) {
       String currentName = child.getName();
       String actualName = actualNames.get(currentName);
       if (actualName != null && !currentName.equals(actualName)) {
-        scheduleAttributeChange(child, VirtualFile.PROP_NAME, currentName, actualName);
+        scheduleAttributeChange(events, child, VirtualFile.PROP_NAME, currentName, actualName);
       }
     }
   }
@@ -252,20 +327,23 @@ public class RefreshWorker {
     }
   }
 
-  private void checkAndScheduleChildRefresh(@NotNull VirtualFile parent,
+  private void checkAndScheduleChildRefresh(@NotNull List<VFileEvent> events,
+                                            @NotNull List<Pair<NewVirtualFile, FileAttributes>> nextLevel,
+                                            @NotNull VirtualFile parent,
                                             @NotNull VirtualFile child,
                                             @NotNull FileAttributes childAttributes) {
-    if (!checkAndScheduleFileTypeChange(parent, child, childAttributes)) {
+    if (!checkAndScheduleFileTypeChange(events, parent, child, childAttributes)) {
       boolean upToDateIsDirectory = childAttributes.isDirectory();
       if (myIsRecursive || !upToDateIsDirectory) {
-        myRefreshQueue.addLast(Pair.create((NewVirtualFile)child, childAttributes));
+        nextLevel.add(Pair.create((NewVirtualFile)child, childAttributes));
       }
     }
   }
 
-  private boolean checkAndScheduleFileTypeChange(@NotNull VirtualFile parent,
-                                                 @NotNull VirtualFile child,
-                                                 @NotNull FileAttributes childAttributes) {
+  private static boolean checkAndScheduleFileTypeChange(@NotNull List<VFileEvent> events,
+                                                        @NotNull VirtualFile parent,
+                                                        @NotNull VirtualFile child,
+                                                        @NotNull FileAttributes childAttributes) {
     boolean currentIsDirectory = child.isDirectory();
     boolean currentIsSymlink = child.is(VFileProperty.SYMLINK);
     boolean currentIsSpecial = child.is(VFileProperty.SPECIAL);
@@ -274,33 +352,41 @@ public class RefreshWorker {
     boolean upToDateIsSpecial = childAttributes.isSpecial();
 
     if (currentIsDirectory != upToDateIsDirectory || currentIsSymlink != upToDateIsSymlink || currentIsSpecial != upToDateIsSpecial) {
-      scheduleDeletion(child);
-      scheduleCreation(parent, child.getName(), upToDateIsDirectory, true);
+      scheduleDeletion(events, child);
+      scheduleCreation(events, parent, child.getName(), upToDateIsDirectory, true);
       return true;
     }
 
     return false;
   }
 
-  private void scheduleAttributeChange(@NotNull VirtualFile file, @NotNull String property, Object current, Object upToDate) {
+  private static void scheduleAttributeChange(@NotNull List<VFileEvent> events,
+                                              @NotNull VirtualFile file,
+                                              @NotNull String property,
+                                              Object current,
+                                              Object upToDate) {
     debug(LOG, "update '%s' file=%s", property, file);
-    myEvents.add(new VFilePropertyChangeEvent(null, file, property, current, upToDate, true));
+    events.add(new VFilePropertyChangeEvent(null, file, property, current, upToDate, true));
   }
 
-  private void scheduleUpdateContent(@NotNull VirtualFile file) {
+  private static void scheduleUpdateContent(@NotNull List<VFileEvent> events, @NotNull VirtualFile file) {
     debug(LOG, "update file=%s", file);
-    myEvents.add(new VFileContentChangeEvent(null, file, file.getModificationStamp(), -1, true));
+    events.add(new VFileContentChangeEvent(null, file, file.getModificationStamp(), -1, true));
   }
 
-  private void scheduleCreation(@NotNull VirtualFile parent, @NotNull String childName, boolean isDirectory, boolean isReCreation) {
+  private static void scheduleCreation(@NotNull List<VFileEvent> events,
+                                       @NotNull VirtualFile parent,
+                                       @NotNull String childName,
+                                       boolean isDirectory,
+                                       boolean isReCreation) {
     debug(LOG, "create parent=%s name=%s dir=%b", parent, childName, isDirectory);
-    myEvents.add(new VFileCreateEvent(null, parent, childName, isDirectory, true, isReCreation));
+    events.add(new VFileCreateEvent(null, parent, childName, isDirectory, true, isReCreation));
   }
 
-  private void scheduleDeletion(@Nullable VirtualFile file) {
+  private static void scheduleDeletion(@NotNull List<VFileEvent> events, @Nullable VirtualFile file) {
     if (file != null) {
       debug(LOG, "delete file=%s", file);
-      myEvents.add(new VFileDeleteEvent(null, file, true));
+      events.add(new VFileDeleteEvent(null, file, true));
     }
   }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.history.core;
+
+import com.intellij.history.core.changes.ChangeSet;
+import com.intellij.history.core.changes.CreateFileChange;
+import com.intellij.history.core.changes.StructuralChange;
+import com.intellij.openapi.util.Clock;
+import com.intellij.util.Consumer;
+import com.intellij.util.io.storage.AbstractStorage;
+import gnu.trove.TIntHashSet;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ChangeListStorageImplTest extends TempDirTestCase {
+  private static final long FS_TIMESTAMP = 123;
+
+  private ChangeListStorageImpl myStorage;
+
+  @After
+  public void tearDown() {
+    if (myStorage != null) myStorage.close();
+    Clock.reset();
+  }
+
+  @Test
+  public void testChangeSetsSurviveReopening() throws IOException {
+    myStorage = new ChangeListStorageImpl(myTempDir, FS_TIMESTAMP);
+    writeChangeSet("one", "dir/one");
+    writeChangeSet("two", "dir/two");
+    writeChangeSet("three", "dir/three");
+    reopen(FS_TIMESTAMP);
+
+    assertEquals(Arrays.asList("three", "two", "one"), readNames());
+    ChangeSet last = myStorage.readPrevious(-1, new TIntHashSet()).changeSet;
+    assertEquals("dir/three", ((StructuralChange)last.getFirstChange()).getPath());
+    assertEquals(4, myStorage.nextId());
+  }
+
+  @Test
+  public void testStorageIsRebuiltWhenFileSystemIsRebuilt() throws IOException {
+    myStorage = new ChangeListStorageImpl(myTempDir, FS_TIMESTAMP);
+    writeChangeSet("one", "dir/one");
+    reopen(FS_TIMESTAMP + 1);
+
+    assertEquals(0, readNames().size());
+  }
+
+  @Test
+  public void testPurgeRemovesObsoleteChangeSets() throws IOException {
+    myStorage = new ChangeListStorageImpl(myTempDir, FS_TIMESTAMP);
+    for (int i = 1; i <= 4; i++) {
+      Clock.setTime(i * 1000);
+      writeChangeSet("set" + i, "file" + i);
+    }
+
+    final List<String> purged = new ArrayList<String>();
+    myStorage.purge(1500, 10000, new Consumer<ChangeSet>() {
+      @Override
+      public void consume(ChangeSet changeSet) {
+        purged.add(changeSet.getName());
+      }
+    });
+    assertEquals(Arrays.asList("set2", "set1"), purged);
+    assertEquals(Arrays.asList("set4", "set3"), readNames());
+
+    reopen(FS_TIMESTAMP);
+    assertEquals(Arrays.asList("set4", "set3"), readNames());
+  }
+
+  @Test
+  public void testUncompressedStorageIsConverted() throws IOException {
+    String path = myTempDir.getPath() + "/changes";
+    LocalHistoryStorage old = new LocalHistoryStorage(path);
+    old.setVersion(5);
+    old.setFSTimestamp(FS_TIMESTAMP);
+    for (String name : Arrays.asList("one", "two")) {
+      ChangeSet changeSet = createChangeSet(name, "dir/" + name);
+      AbstractStorage.StorageDataOutput out = old.writeStream(old.createNextRecord(), true);
+      try {
+        changeSet.write(out);
+      }
+      finally {
+        out.close();
+      }
+    }
+    old.setLastId(2);
+    old.dispose();
+
+    myStorage = new ChangeListStorageImpl(myTempDir, FS_TIMESTAMP);
+    assertEquals(Arrays.asList("two", "one"), readNames());
+    writeChangeSet("three", "dir/three");
+    reopen(FS_TIMESTAMP);
+    assertEquals(Arrays.asList("three", "two", "one"), readNames());
+  }
+
+  @Test
+  public void testStorageIsRebuiltAfterInterruptedConversion() throws IOException {
+    myStorage = new ChangeListStorageImpl(myTempDir, FS_TIMESTAMP);
+    writeChangeSet("one", "dir/one");
+    myStorage.close();
+
+    LocalHistoryStorage storage = new LocalHistoryStorage(myTempDir.getPath() + "/changes");
+    storage.setVersion(ChangeListStorageImpl.CONVERTING_VERSION);
+    storage.dispose();
+
+    myStorage = new ChangeListStorageImpl(myTempDir, FS_TIMESTAMP);
+    assertEquals(0, readNames().size());
+    writeChangeSet("two", "dir/two");
+    reopen(FS_TIMESTAMP);
+    assertEquals(Arrays.asList("two"), readNames());
+  }
+
+  private void reopen(long fsTimestamp) throws IOException {
+    myStorage.close();
+    myStorage = new ChangeListStorageImpl(myTempDir, fsTimestamp);
+  }
+
+  private void writeChangeSet(String name, String path) {
+    myStorage.writeNextSet(createChangeSet(name, path));
+  }
+
+  private ChangeSet createChangeSet(String name, String path) {
+    ChangeSet result = new ChangeSet(myStorage == null ? nextId() : myStorage.nextId(), Clock.getTime());
+    result.setName(name);
+    result.addChange(new CreateFileChange(nextId(), path));
+    return result;
+  }
+
+  private List<String> readNames() {
+    List<String> result = new ArrayList<String>();
+    TIntHashSet recursionGuard = new TIntHashSet();
+    ChangeSetHolder each = myStorage.readPrevious(-1, recursionGuard);
+    while (each != null) {
+      result.add(each.changeSet.getName());
+      each = myStorage.readPrevious(each.id, recursionGuard);
+    }
+    return result;
+  }
+}
@@ -1,9 +1,16 @@
 package com.intellij.ide.plugins;
 
 import com.intellij.openapi.application.ex.PathManagerEx;
+import com.intellij.openapi.extensions.PluginId;
+import com.intellij.openapi.util.io.FileUtil;
 import junit.framework.TestCase;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * @author Dmitry Avdeev
@@ -18,4 +25,36 @@ public class PluginDescriptorTest extends TestCase {
     IdeaPluginDescriptorImpl descriptor = PluginManager.loadDescriptorFromJar(file);
     assertNotNull(descriptor);
   }
+
+  public void testLoadingDescriptorsFromDirectory() throws Exception {
+    File pluginsDir = FileUtil.createTempDirectory("plugins", null);
+    try {
+      for (int i = 0; i < 10; i++) {
+        createPlugin(pluginsDir, "plugin" + i, "test.plugin" + i, "1.0");
+      }
+      createPlugin(pluginsDir, "old", "test.duplicate", "1.0");
+      createPlugin(pluginsDir, "new", "test.duplicate", "2.0");
+      assertTrue(new File(pluginsDir, "not-a-plugin").mkdir());
+
+      List<IdeaPluginDescriptorImpl> result = new ArrayList<IdeaPluginDescriptorImpl>();
+      PluginManagerCore.loadDescriptors(pluginsDir.getPath(), result, null, 13);
+
+      assertEquals(11, result.size());
+      Set<PluginId> ids = new HashSet<PluginId>();
+      for (IdeaPluginDescriptorImpl descriptor : result) {
+        assertTrue(ids.add(descriptor.getPluginId()));
+        if (descriptor.getPluginId() == PluginId.getId("test.duplicate")) {
+          assertEquals("2.0", descriptor.getVersion());
+        }
+      }
+    }
+    finally {
+      FileUtil.delete(pluginsDir);
+    }
+  }
+
+  private static void createPlugin(File pluginsDir, String dirName, String id, String version) throws IOException {
+    File descriptor = new File(pluginsDir, dirName + "/" + PluginManagerCore.META_INF + "/" + PluginManagerCore.PLUGIN_XML);
+    FileUtil.writeToFile(descriptor, "<idea-plugin><id>" + id + "</id><name>" + id + "</name><version>" + version + "</version></idea-plugin>");
+  }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.ide.startup;
+
+import com.intellij.openapi.components.ComponentConfig;
+import com.intellij.openapi.components.DeferredProjectComponent;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ex.ProjectManagerEx;
+import com.intellij.openapi.project.impl.ProjectImpl;
+import com.intellij.testFramework.PlatformTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+
+/**
+ * Opens and closes a real project with deferral of project components enabled, which is otherwise disabled in tests.
+ */
+public class DeferredProjectComponentOpeningTest extends PlatformTestCase {
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    ProjectImpl.setDeferComponentsInTests(true);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    ProjectImpl.setDeferComponentsInTests(false);
+    super.tearDown();
+  }
+
+  public void testComponentIsOpenedAfterStartupActivitiesAndClosed() throws Exception {
+    Project project = createProject(new File(createTempDirectory(), "deferred.ipr"), getClass().getName() + "." + getName());
+    ComponentConfig config = new ComponentConfig();
+    config.setImplementationClass(MyComponent.class.getName());
+    ((ProjectImpl)project).registerComponent(config);
+    MyComponent component = project.getComponent(MyComponent.class);
+    assertNotNull(component);
+
+    try {
+      assertTrue(ProjectManagerEx.getInstanceEx().openProject(project));
+      assertEquals(1, component.myOpened);
+      assertTrue("opened before startup activities", component.myOpenedAfterStartup);
+    }
+    finally {
+      ProjectManagerEx.getInstanceEx().closeAndDispose(project);
+    }
+    assertEquals(1, component.myClosed);
+  }
+
+  public static class MyComponent implements DeferredProjectComponent {
+    private final Project myProject;
+    int myOpened;
+    int myClosed;
+    boolean myOpenedAfterStartup;
+
+    @SuppressWarnings("UnusedDeclaration")
+    public MyComponent(Project project) {
+      myProject = project;
+    }
+
+    @Override
+    public void projectOpened() {
+      myOpened++;
+      myOpenedAfterStartup = StartupManagerEx.getInstanceEx(myProject).startupActivityPassed();
+    }
+
+    @Override
+    public void projectClosed() {
+      myClosed++;
+    }
+
+    @Override
+    public void initComponent() {
+    }
+
+    @Override
+    public void disposeComponent() {
+    }
+
+    @NotNull
+    @Override
+    public String getComponentName() {
+      return getClass().getName();
+    }
+  }
+}
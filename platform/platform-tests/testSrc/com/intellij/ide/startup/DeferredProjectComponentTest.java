@@ -0,0 +1,90 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.ide.startup;
+
+import com.intellij.ide.startup.impl.StartupManagerImpl;
+import com.intellij.openapi.components.DeferredProjectComponent;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.testFramework.LightPlatformTestCase;
+import org.jetbrains.annotations.NotNull;
+
+public class DeferredProjectComponentTest extends LightPlatformTestCase {
+  public void testProjectOpenedAfterStartup() {
+    StartupManagerImpl startupManager = new StartupManagerImpl(getProject());
+    MyComponent component = new MyComponent();
+    MyDumbAwareComponent dumbAwareComponent = new MyDumbAwareComponent();
+    startupManager.registerDeferredProjectComponent(component);
+    startupManager.registerDeferredProjectComponent(dumbAwareComponent);
+    assertEquals(0, component.myOpened);
+    assertEquals(0, dumbAwareComponent.myOpened);
+
+    startupManager.runPostStartupActivities();
+    assertEquals(1, component.myOpened);
+    assertEquals(1, dumbAwareComponent.myOpened);
+
+    // already opened: projectClosed() must be invoked for it
+    assertFalse(startupManager.cancelDeferredProjectComponent(component));
+    assertFalse(startupManager.cancelDeferredProjectComponent(dumbAwareComponent));
+  }
+
+  public void testProjectClosedBeforeDeferredOpen() {
+    StartupManagerImpl startupManager = new StartupManagerImpl(getProject());
+    MyComponent component = new MyComponent();
+    startupManager.registerDeferredProjectComponent(component);
+
+    // never opened: projectClosed() is skipped, and projectOpened() must not come afterwards
+    assertTrue(startupManager.cancelDeferredProjectComponent(component));
+    assertFalse(startupManager.cancelDeferredProjectComponent(component));
+
+    startupManager.runPostStartupActivities();
+    assertEquals(0, component.myOpened);
+  }
+
+  public void testUnregisteredComponentIsNotPending() {
+    StartupManagerImpl startupManager = new StartupManagerImpl(getProject());
+    assertFalse(startupManager.cancelDeferredProjectComponent(new MyComponent()));
+  }
+
+  private static class MyComponent implements DeferredProjectComponent {
+    int myOpened;
+
+    @Override
+    public void projectOpened() {
+      myOpened++;
+    }
+
+    @Override
+    public void projectClosed() {
+    }
+
+    @Override
+    public void initComponent() {
+    }
+
+    @Override
+    public void disposeComponent() {
+    }
+
+    @NotNull
+    @Override
+    public String getComponentName() {
+      return getClass().getName();
+    }
+  }
+
+  private static class MyDumbAwareComponent extends MyComponent implements DumbAware {
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.ide.startup;
+
+import com.intellij.openapi.extensions.PluginId;
+import junit.framework.TestCase;
+
+public class StartupProfilerTest extends TestCase {
+  public void testNothingRecorded() {
+    assertNull(new StartupProfiler().buildReport());
+  }
+
+  public void testReportListsSlowestStepsPerPhase() {
+    StartupProfiler profiler = new StartupProfiler();
+    profiler.record(StartupProfiler.Phase.PROJECT_OPENED, "fast", 1);
+    profiler.record(StartupProfiler.Phase.PROJECT_OPENED, "slow", 300);
+    profiler.record(StartupProfiler.Phase.PROJECT_OPENED, "medium", 20);
+    profiler.record(StartupProfiler.Phase.POST_STARTUP_ACTIVITIES, "activity", 50);
+
+    assertEquals("project components opened: 321 ms, 3 steps; slowest: slow (300 ms), medium (20 ms)\n" +
+                 "post-startup activities: 50 ms, 1 step; slowest: activity (50 ms)",
+                 profiler.buildReport());
+    assertNull(profiler.buildReport());
+  }
+
+  public void testPluginStepsAreSummedUpPerPlugin() {
+    StartupProfiler profiler = new StartupProfiler();
+    PluginId plugin = PluginId.getId("plugin");
+    profiler.recordPluginStep(StartupProfiler.Phase.PLUGIN_DESCRIPTORS_LOADED, "plugin", plugin, 20 * 1000000L);
+    profiler.recordPluginStep(StartupProfiler.Phase.APPLICATION_COMPONENTS_INITIALIZED, "Component", plugin, 30 * 1000000L);
+    profiler.recordPluginStep(StartupProfiler.Phase.APPLICATION_COMPONENTS_INITIALIZED, "CoreComponent", null, 15 * 1000000L);
+
+    assertEquals("plugin descriptors loaded: 20 ms, 1 step; slowest: plugin (20 ms)\n" +
+                 "application components initialized: 45 ms, 2 steps; slowest: Component (30 ms), CoreComponent (15 ms)\n" +
+                 "plugins loaded (descriptors and application components): 65 ms, 2 steps; slowest: plugin (50 ms), core (15 ms)",
+                 profiler.buildReport());
+  }
+
+  public void testNestedStepsAreNotCountedTwice() throws InterruptedException {
+    StartupProfiler profiler = new StartupProfiler();
+    long outerStart = System.nanoTime();
+    long outerMark = profiler.startSelfTimed();
+    long innerStart = System.nanoTime();
+    long innerMark = profiler.startSelfTimed();
+    Thread.sleep(50);
+    long inner = profiler.stopSelfTimed(innerStart, innerMark);
+    long outer = profiler.stopSelfTimed(outerStart, outerMark);
+
+    assertTrue(String.valueOf(inner), inner >= 50 * 1000000L);
+    assertTrue(String.valueOf(outer), outer < 50 * 1000000L);
+  }
+
+  public void testReset() {
+    StartupProfiler profiler = new StartupProfiler();
+    profiler.record(StartupProfiler.Phase.STARTUP_ACTIVITIES, "activity", 50);
+    profiler.reset();
+    assertNull(profiler.buildReport());
+  }
+
+  public void testMeasureRecordsFailedSteps() {
+    StartupProfiler profiler = new StartupProfiler();
+    try {
+      profiler.measure(StartupProfiler.Phase.STARTUP_ACTIVITIES, "failing", new Runnable() {
+        @Override
+        public void run() {
+          throw new IllegalStateException();
+        }
+      });
+      fail();
+    }
+    catch (IllegalStateException ignored) { }
+
+    String report = profiler.buildReport();
+    assertNotNull(report);
+    assertTrue(report, report.startsWith("startup activities: "));
+    assertTrue(report, report.contains("1 step"));
+  }
+}
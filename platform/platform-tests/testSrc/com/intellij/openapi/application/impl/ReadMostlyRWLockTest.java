@@ -0,0 +1,172 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.application.impl;
+
+import com.intellij.util.TimeoutUtil;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ReadMostlyRWLockTest extends TestCase {
+  private final ReadMostlyRWLock myLock = new ReadMostlyRWLock();
+
+  public void testReentrancy() throws Exception {
+    myLock.readLockInterruptibly();
+    myLock.readLockInterruptibly();
+    assertEquals(2, myLock.getReadHoldCount());
+    myLock.readUnlock();
+    myLock.readUnlock();
+    assertEquals(0, myLock.getReadHoldCount());
+
+    myLock.writeLockInterruptibly();
+    assertTrue(myLock.tryWriteLock());
+    myLock.readLockInterruptibly();
+    myLock.readUnlock();
+    myLock.writeUnlock();
+    assertTrue(myLock.isWriteLockedByCurrentThread());
+    myLock.writeUnlock();
+    assertFalse(myLock.isWriteLockedByCurrentThread());
+  }
+
+  public void testWriterWaitsForReader() throws Exception {
+    final CountDownLatch readStarted = new CountDownLatch(1);
+    final CountDownLatch readFinish = new CountDownLatch(1);
+    final AtomicBoolean reading = new AtomicBoolean();
+    Thread reader = new Thread("reader") {
+      @Override
+      public void run() {
+        try {
+          myLock.readLockInterruptibly();
+          reading.set(true);
+          readStarted.countDown();
+          readFinish.await();
+          reading.set(false);
+          myLock.readUnlock();
+        }
+        catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    reader.start();
+    assertTrue(readStarted.await(10, TimeUnit.SECONDS));
+    assertFalse(myLock.tryWriteLock());
+
+    Thread releaser = new Thread("releaser") {
+      @Override
+      public void run() {
+        TimeoutUtil.sleep(100);
+        readFinish.countDown();
+      }
+    };
+    releaser.start();
+    myLock.writeLockInterruptibly();
+    assertFalse(reading.get());
+    myLock.writeUnlock();
+    reader.join();
+    releaser.join();
+  }
+
+  public void testPendingWriterBlocksNewReaders() throws Exception {
+    myLock.readLockInterruptibly();
+
+    final CountDownLatch written = new CountDownLatch(1);
+    Thread writer = new Thread("writer") {
+      @Override
+      public void run() {
+        try {
+          myLock.writeLockInterruptibly();
+          myLock.writeUnlock();
+          written.countDown();
+        }
+        catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    writer.start();
+    while (writer.getState() != Thread.State.WAITING) {
+      TimeoutUtil.sleep(1);
+    }
+
+    final AtomicReference<Boolean> acquired = new AtomicReference<Boolean>();
+    Thread reader = new Thread("reader") {
+      @Override
+      public void run() {
+        acquired.set(myLock.tryReadLock());
+      }
+    };
+    reader.start();
+    reader.join();
+    assertEquals(Boolean.FALSE, acquired.get());
+
+    myLock.readUnlock();
+    assertTrue(written.await(10, TimeUnit.SECONDS));
+    writer.join();
+  }
+
+  public void testManyReadersAndWriter() throws Exception {
+    final int[] data = new int[2];
+    final AtomicInteger inconsistencies = new AtomicInteger();
+    final AtomicBoolean stop = new AtomicBoolean();
+    List<Thread> readers = new ArrayList<Thread>();
+    for (int i = 0; i < Math.max(4, Runtime.getRuntime().availableProcessors()); i++) {
+      Thread reader = new Thread("reader " + i) {
+        @Override
+        public void run() {
+          try {
+            while (!stop.get()) {
+              myLock.readLockInterruptibly();
+              try {
+                if (data[0] != data[1]) inconsistencies.incrementAndGet();
+              }
+              finally {
+                myLock.readUnlock();
+              }
+            }
+          }
+          catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      readers.add(reader);
+      reader.start();
+    }
+
+    for (int i = 0; i < 10000; i++) {
+      myLock.writeLockInterruptibly();
+      try {
+        data[0]++;
+        data[1]++;
+      }
+      finally {
+        myLock.writeUnlock();
+      }
+    }
+    stop.set(true);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    assertEquals(0, inconsistencies.get());
+  }
+}
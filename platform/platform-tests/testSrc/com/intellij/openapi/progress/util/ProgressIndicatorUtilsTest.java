@@ -0,0 +1,94 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.progress.util;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.util.EmptyRunnable;
+import com.intellij.testFramework.LightPlatformTestCase;
+import com.intellij.util.TimeoutUtil;
+import com.intellij.util.ui.UIUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ProgressIndicatorUtilsTest extends LightPlatformTestCase {
+  public void testWriteActionCancelsAndRestartsReadTask() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final AtomicInteger attempts = new AtomicInteger();
+    final AtomicBoolean finished = new AtomicBoolean();
+
+    ProgressIndicatorUtils.scheduleWithWriteActionPriority(new ReadTask() {
+      @Override
+      public void computeInReadAction(@NotNull ProgressIndicator indicator) {
+        if (attempts.incrementAndGet() == 1) {
+          started.countDown();
+          while (true) {
+            TimeoutUtil.sleep(1);
+            indicator.checkCanceled();
+          }
+        }
+        finished.set(true);
+      }
+    });
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+
+    long start = System.currentTimeMillis();
+    ApplicationManager.getApplication().runWriteAction(EmptyRunnable.getInstance());
+    assertTrue(System.currentTimeMillis() - start < 5000);
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!finished.get() && System.currentTimeMillis() < deadline) {
+      UIUtil.dispatchAllInvocationEvents();
+      TimeoutUtil.sleep(10);
+    }
+    assertTrue(finished.get());
+    assertEquals(2, attempts.get());
+  }
+
+  public void testNotStartedWhileWriteActionRuns() {
+    final AtomicBoolean ran = new AtomicBoolean();
+    ApplicationManager.getApplication().runWriteAction(new Runnable() {
+      @Override
+      public void run() {
+        final AtomicBoolean completed = new AtomicBoolean(true);
+        Thread thread = new Thread("read action") {
+          @Override
+          public void run() {
+            completed.set(ProgressIndicatorUtils.runInReadActionWithWriteActionPriority(new Runnable() {
+              @Override
+              public void run() {
+                ran.set(true);
+              }
+            }));
+          }
+        };
+        thread.start();
+        try {
+          thread.join();
+        }
+        catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        assertFalse(completed.get());
+      }
+    });
+    assertFalse(ran.get());
+  }
+}
@@ -395,6 +395,34 @@ public class VfsUtilTest extends PlatformLangTestCase {
 
   }
 
+  public void testRefreshManyCreatedAndDeletedChildren() throws IOException {
+    File tempDir = new WriteAction<File>() {
+      @Override
+      protected void run(Result<File> result) throws Throwable {
+        File res = createTempDirectory();
+        result.setResult(res);
+      }
+    }.execute().getResultObject();
+    final VirtualFile vDir = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(tempDir);
+    assertNotNull(vDir);
+    assertNull(vDir.findChild("2500.txt"));
+
+    for (int i = 0; i < 5000; i++) {
+      assertTrue(new File(tempDir, i + ".txt").createNewFile());
+    }
+    vDir.refresh(false, true);
+    assertEquals(5000, vDir.getChildren().length);
+    assertNotNull(vDir.findChild("2500.txt"));
+
+    for (int i = 0; i < 5000; i += 2) {
+      assertTrue(new File(tempDir, i + ".txt").delete());
+    }
+    vDir.refresh(false, true);
+    assertEquals(2500, vDir.getChildren().length);
+    assertNull(vDir.findChild("2500.txt"));
+    assertNotNull(vDir.findChild("2501.txt"));
+  }
+
   public void testFindRootWithDenormalizedPath() {
     File tempDir = new WriteAction<File>() {
       @Override
@@ -120,4 +120,9 @@ public class MockApplicationEx extends MockApplication implements ApplicationEx
   public boolean tryRunReadAction(@NotNull Runnable runnable) {
     return false;
   }
+
+  @Override
+  public boolean isWriteActionPending() {
+    return false;
+  }
 }
@@ -54,10 +54,18 @@ public class Diff {
     int[] ints2 = enumerator.enumerate(objects2, startShift, endCut);
     Reindexer reindexer = new Reindexer();
     int[][] discarded = reindexer.discardUnique(ints1, ints2);
-    IntLCS intLCS = new IntLCS(discarded[0], discarded[1]);
-    intLCS.execute();
     ChangeBuilder builder = new ChangeBuilder(startShift);
-    reindexer.reindex(intLCS.getPaths(), builder);
+    try {
+      IntLCS intLCS = new IntLCS(discarded[0], discarded[1]);
+      intLCS.execute();
+      reindexer.reindex(intLCS.getPaths(), builder);
+    }
+    catch (FilesTooBigForDiffException e) {
+      LOG.debug("Too many changes for the minimal diff, falling back to patience diff: " + objects1.length + " vs " + objects2.length);
+      PatienceIntLCS patienceLCS = new PatienceIntLCS(discarded[0], discarded[1]);
+      patienceLCS.execute();
+      reindexer.reindex(patienceLCS.getChanges(), builder);
+    }
     return builder.getFirstChange();
   }
 
@@ -45,9 +45,13 @@ class IntLCS {
   }
 
   public int execute() throws FilesTooBigForDiffException {
+    // the number of visited diagonals is limited as well as the number of encoded steps, since it is quadratic in the edit distance
+    long diagonalsLeft = FilesTooBigForDiffException.MAX_BUFFER_LEN;
     for (int d =0; d <= myMaxX + myMaxY; d++) {
       int minDiag = -calcBound(myMaxY, d);
       int maxDiag = calcBound(myMaxX, d);
+      diagonalsLeft -= (maxDiag - minDiag) / 2 + 1;
+      if (diagonalsLeft < 0) throw new FilesTooBigForDiffException(FilesTooBigForDiffException.MAX_BUFFER_LEN);
       if (d != 0)
         System.arraycopy(myPrevEnds, minDiag + myMaxY, myCurrentEnds, minDiag + myMaxY, maxDiag - minDiag);
        else {
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.diff;
+
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Builds a diff in linear memory, used when {@link IntLCS} can't fit its paths into the buffer (large files with many changes).
+ * <p/>
+ * Lines which occur exactly once in both ranges are matched first (patience diff), and the ranges between them are processed
+ * the same way; a range without such lines is split by the middle snake of Myers' linear space algorithm.
+ * If the edit distance of a range exceeds {@link #MAX_COST}, the whole range is considered changed: the result may be not minimal,
+ * but it is built in reasonable time for any input.
+ */
+class PatienceIntLCS {
+  private static final int MAX_COST = 4096;
+
+  private final int[] myFirst;
+  private final int[] mySecond;
+  private final boolean[] myChanges1;
+  private final boolean[] myChanges2;
+
+  // start1, end1, start2, end2 of ranges which are still to be processed
+  private final TIntArrayList myRanges = new TIntArrayList();
+
+  public PatienceIntLCS(int[] first, int[] second) {
+    myFirst = first;
+    mySecond = second;
+    myChanges1 = new boolean[first.length];
+    myChanges2 = new boolean[second.length];
+    Arrays.fill(myChanges1, true);
+    Arrays.fill(myChanges2, true);
+  }
+
+  public void execute() {
+    addRange(0, myFirst.length, 0, mySecond.length);
+    while (!myRanges.isEmpty()) {
+      int size = myRanges.size();
+      int end2 = myRanges.remove(size - 1);
+      int start2 = myRanges.remove(size - 2);
+      int end1 = myRanges.remove(size - 3);
+      int start1 = myRanges.remove(size - 4);
+      processRange(start1, end1, start2, end2);
+    }
+  }
+
+  /**
+   * @return for both arrays: true for elements which are changed, false for elements which are the part of the common subsequence
+   */
+  public boolean[][] getChanges() {
+    return new boolean[][]{myChanges1, myChanges2};
+  }
+
+  private void addRange(int start1, int end1, int start2, int end2) {
+    myRanges.add(start1);
+    myRanges.add(end1);
+    myRanges.add(start2);
+    myRanges.add(end2);
+  }
+
+  private void processRange(int start1, int end1, int start2, int end2) {
+    while (start1 < end1 && start2 < end2 && myFirst[start1] == mySecond[start2]) {
+      markEqual(start1++, start2++, 1);
+    }
+    while (start1 < end1 && start2 < end2 && myFirst[end1 - 1] == mySecond[end2 - 1]) {
+      markEqual(--end1, --end2, 1);
+    }
+    if (start1 == end1 || start2 == end2) return;
+
+    if (!splitByUniqueLines(start1, end1, start2, end2)) {
+      splitByMiddleSnake(start1, end1, start2, end2);
+    }
+  }
+
+  private boolean splitByUniqueLines(int start1, int end1, int start2, int end2) {
+    // value -> index of its only occurrence, or -1 if there are several occurrences
+    TIntIntHashMap unique1 = findUnique(myFirst, start1, end1);
+    TIntIntHashMap unique2 = findUnique(mySecond, start2, end2);
+
+    TIntArrayList candidates1 = new TIntArrayList();
+    TIntArrayList candidates2 = new TIntArrayList();
+    for (int i = start1; i < end1; i++) {
+      int value = myFirst[i];
+      if (unique1.get(value) == i && unique2.containsKey(value)) {
+        int j = unique2.get(value);
+        if (j >= 0) {
+          candidates1.add(i);
+          candidates2.add(j);
+        }
+      }
+    }
+    if (candidates1.isEmpty()) return false;
+
+    int[] anchors = longestIncreasingSubsequence(candidates2);
+    int prev1 = start1;
+    int prev2 = start2;
+    for (int anchor : anchors) {
+      int index1 = candidates1.get(anchor);
+      int index2 = candidates2.get(anchor);
+      addRange(prev1, index1, prev2, index2);
+      markEqual(index1, index2, 1);
+      prev1 = index1 + 1;
+      prev2 = index2 + 1;
+    }
+    addRange(prev1, end1, prev2, end2);
+    return true;
+  }
+
+  private static TIntIntHashMap findUnique(int[] values, int start, int end) {
+    TIntIntHashMap result = new TIntIntHashMap(end - start);
+    for (int i = start; i < end; i++) {
+      int value = values[i];
+      result.put(value, result.containsKey(value) ? -1 : i);
+    }
+    return result;
+  }
+
+  /**
+   * @return indices of the elements which form the longest increasing subsequence of the given values (patience sorting)
+   */
+  private static int[] longestIncreasingSubsequence(TIntArrayList values) {
+    int size = values.size();
+    int[] tails = new int[size];
+    int[] previous = new int[size];
+    int length = 0;
+    for (int i = 0; i < size; i++) {
+      int value = values.get(i);
+      int low = 0;
+      int high = length;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (values.get(tails[middle]) < value) {
+          low = middle + 1;
+        }
+        else {
+          high = middle;
+        }
+      }
+      previous[i] = low > 0 ? tails[low - 1] : -1;
+      tails[low] = i;
+      if (low == length) length++;
+    }
+    int[] result = new int[length];
+    for (int i = length - 1, index = tails[length - 1]; i >= 0; i--, index = previous[index]) {
+      result[i] = index;
+    }
+    return result;
+  }
+
+  /**
+   * The ranges are trimmed, so the edit distance is at least 2 and both halves around the middle snake are smaller than the range.
+   */
+  private void splitByMiddleSnake(int start1, int end1, int start2, int end2) {
+    int n = end1 - start1;
+    int m = end2 - start2;
+    int delta = n - m;
+    boolean odd = (delta & 1) != 0;
+    int maxD = Math.min((n + m + 1) / 2, MAX_COST);
+    int offset = maxD + 1;
+    int[] forward = new int[2 * maxD + 3];
+    int[] backward = new int[2 * maxD + 3];
+
+    for (int d = 0; d <= maxD; d++) {
+      for (int k = -d; k <= d; k += 2) {
+        int x = k == -d || k != d && forward[offset + k - 1] < forward[offset + k + 1]
+                ? forward[offset + k + 1]
+                : forward[offset + k - 1] + 1;
+        int y = x - k;
+        int x0 = x;
+        int y0 = y;
+        while (x < n && y < m && myFirst[start1 + x] == mySecond[start2 + y]) {
+          x++;
+          y++;
+        }
+        forward[offset + k] = x;
+        int backwardK = delta - k;
+        if (odd && backwardK >= -(d - 1) && backwardK <= d - 1 && x + backward[offset + backwardK] >= n) {
+          split(start1, end1, start2, end2, start1 + x0, start2 + y0, x - x0);
+          return;
+        }
+      }
+      for (int k = -d; k <= d; k += 2) {
+        int x = k == -d || k != d && backward[offset + k - 1] < backward[offset + k + 1]
+                ? backward[offset + k + 1]
+                : backward[offset + k - 1] + 1;
+        int y = x - k;
+        int x0 = x;
+        while (x < n && y < m && myFirst[end1 - 1 - x] == mySecond[end2 - 1 - y]) {
+          x++;
+          y++;
+        }
+        backward[offset + k] = x;
+        int forwardK = delta - k;
+        if (!odd && forwardK >= -d && forwardK <= d && x + forward[offset + forwardK] >= n) {
+          split(start1, end1, start2, end2, end1 - x, end2 - y, x - x0);
+          return;
+        }
+      }
+    }
+    // too expensive: leave the whole range changed
+  }
+
+  private void split(int start1, int end1, int start2, int end2, int snakeStart1, int snakeStart2, int snakeLength) {
+    addRange(start1, snakeStart1, start2, snakeStart2);
+    markEqual(snakeStart1, snakeStart2, snakeLength);
+    addRange(snakeStart1 + snakeLength, end1, snakeStart2 + snakeLength, end2);
+  }
+
+  private void markEqual(int index1, int index2, int length) {
+    for (int i = 0; i < length; i++) {
+      myChanges1[index1 + i] = false;
+      myChanges2[index2 + i] = false;
+    }
+  }
+}
@@ -102,6 +102,27 @@ class Reindexer {
         }
       }
     });
+    buildChanges(changes1, changes2, builder);
+  }
+
+  /**
+   * Same as {@link #reindex(LinkedDiffPaths, LCSBuilder)} for the changes found in the discarded arrays by {@link PatienceIntLCS}.
+   */
+  public void reindex(boolean[][] discardedChanges, LCSBuilder builder) {
+    final boolean[] changes1 = new boolean[myOriginalLengths[0]];
+    final boolean[] changes2 = new boolean[myOriginalLengths[1]];
+    Arrays.fill(changes1, true);
+    Arrays.fill(changes2, true);
+    for (int i = 0; i < discardedChanges[0].length; i++) {
+      if (!discardedChanges[0][i]) changes1[myOldIndecies[0][i]] = false;
+    }
+    for (int i = 0; i < discardedChanges[1].length; i++) {
+      if (!discardedChanges[1][i]) changes2[myOldIndecies[1][i]] = false;
+    }
+    buildChanges(changes1, changes2, builder);
+  }
+
+  private static void buildChanges(boolean[] changes1, boolean[] changes2, LCSBuilder builder) {
     int x = 0;
     int y = 0;
     while (x < changes1.length && y < changes2.length) {
@@ -58,6 +58,7 @@ public class ClassPath {
 
   private final boolean myAcceptUnescapedUrls;
   private final boolean myPreloadJarContents;
+  @Nullable private final JarEntriesIndex myEntriesIndex;
 
   private static synchronized void printOrder(Loader loader, String url, Resource resource) {
     if (!ourOrderedUrls.add(url)) return;
@@ -107,10 +108,20 @@ public class ClassPath {
   }
 
   public ClassPath(List<URL> urls, boolean canLockJars, boolean canUseCache, boolean acceptUnescapedUrls, boolean preloadJarContents) {
+    this(urls, canLockJars, canUseCache, acceptUnescapedUrls, preloadJarContents, false);
+  }
+
+  public ClassPath(List<URL> urls,
+                   boolean canLockJars,
+                   boolean canUseCache,
+                   boolean acceptUnescapedUrls,
+                   boolean preloadJarContents,
+                   boolean usePersistentIndex) {
     myCanLockJars = canLockJars;
     myCanUseCache = canUseCache;
     myAcceptUnescapedUrls = acceptUnescapedUrls;
     myPreloadJarContents = preloadJarContents;
+    myEntriesIndex = canUseCache && usePersistentIndex ? JarEntriesIndex.getInstance() : null;
     push(urls);
   }
 
@@ -226,7 +237,7 @@ public class ClassPath {
       }
     }
     else {
-      JarLoader jarLoader = new JarLoader(url, myCanLockJars, index);
+      JarLoader jarLoader = new JarLoader(url, myCanLockJars, index, myEntriesIndex);
       if (myPreloadJarContents) {
         jarLoader.preLoadClasses();
       }
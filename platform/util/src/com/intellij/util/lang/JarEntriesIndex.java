@@ -0,0 +1,219 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.lang;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.ShutDownTracker;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.ThreeState;
+import gnu.trove.THashMap;
+import gnu.trove.THashSet;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Entry names of the jars on class loader classpaths, persisted between IDE runs so {@link ClasspathCache} can be filled
+ * without opening every jar at startup. Entries are validated by the length and the timestamp of the jar.
+ * <p/>
+ * The index doesn't hold the names longer than needed: loaded entries are handed over to the class path cache and forgotten,
+ * and only the entries which are new or changed since loading are kept until they are saved.
+ */
+class JarEntriesIndex {
+  private static final Logger LOG = Logger.getInstance(JarEntriesIndex.class);
+
+  @NonNls private static final String PROPERTY_DISABLED = "idea.classpath.index.disabled";
+  @NonNls private static final String INDEX_FILE_NAME = "jar.entries.index";
+  private static final int VERSION = 1;
+
+  private static JarEntriesIndex ourInstance;
+
+  private final File myFile;
+  private final Map<String, JarEntries> myLoadedJars = new THashMap<String, JarEntries>();
+  private final Map<String, JarEntries> myChangedJars = new THashMap<String, JarEntries>();
+  // jars which entries have changed since the index was loaded: they must not be restored from the file on save
+  private final Set<String> myRemovedJars = new THashSet<String>();
+
+  private static class JarEntries {
+    private final long myLength;
+    private final long myTimestamp;
+    private final String[] myNames;
+
+    private JarEntries(long length, long timestamp, @NotNull String[] names) {
+      myLength = length;
+      myTimestamp = timestamp;
+      myNames = names;
+    }
+  }
+
+  JarEntriesIndex(@NotNull File file) {
+    myFile = file;
+  }
+
+  @Nullable
+  static synchronized JarEntriesIndex getInstance() {
+    if (ourInstance == null && !Boolean.getBoolean(PROPERTY_DISABLED)) {
+      final JarEntriesIndex index = new JarEntriesIndex(new File(PathManager.getSystemPath(), "caches/" + INDEX_FILE_NAME));
+      index.load();
+      ShutDownTracker.getInstance().registerShutdownTask(new Runnable() {
+        @Override
+        public void run() {
+          index.save();
+        }
+      });
+      ourInstance = index;
+    }
+    return ourInstance;
+  }
+
+  /**
+   * @return entry names of the jar, or null if the jar is not indexed or has changed since it was indexed.
+   * The loaded names are not kept by the index after that, they are expected to be put into the class path cache.
+   */
+  @Nullable
+  synchronized String[] getEntries(@NotNull File jar) {
+    String path = jar.getPath();
+    JarEntries entries = myLoadedJars.remove(path);
+    if (entries == null) entries = myChangedJars.get(path);
+    if (entries == null) return null;
+
+    if (!isUpToDate(entries, jar)) {
+      myChangedJars.remove(path);
+      myRemovedJars.add(path);
+      return null;
+    }
+    return entries.myNames;
+  }
+
+  /**
+   * Tells whether the jar has the entry, without handing the names over.
+   */
+  @NotNull
+  synchronized ThreeState containsEntry(@NotNull File jar, @NotNull String name) {
+    String path = jar.getPath();
+    JarEntries entries = myLoadedJars.get(path);
+    if (entries == null) entries = myChangedJars.get(path);
+    if (entries == null || !isUpToDate(entries, jar)) return ThreeState.UNSURE;
+    return ArrayUtil.indexOf(entries.myNames, name) >= 0 ? ThreeState.YES : ThreeState.NO;
+  }
+
+  private static boolean isUpToDate(@NotNull JarEntries entries, @NotNull File jar) {
+    return entries.myLength == jar.length() && entries.myTimestamp == jar.lastModified();
+  }
+
+  synchronized void putEntries(@NotNull File jar, @NotNull String[] names) {
+    myChangedJars.put(jar.getPath(), new JarEntries(jar.length(), jar.lastModified(), names));
+  }
+
+  synchronized void load() {
+    if (!readEntries(myFile, myLoadedJars)) {
+      myLoadedJars.clear();
+    }
+  }
+
+  /**
+   * Writes the index merged with the current content of the file: jars not used in this session may be used by other classloaders
+   * or IDE instances sharing the system directory, so they are kept until they are changed or deleted.
+   */
+  synchronized void save() {
+    if (myChangedJars.isEmpty() && myRemovedJars.isEmpty()) return;
+
+    Map<String, JarEntries> jars = new THashMap<String, JarEntries>();
+    if (!readEntries(myFile, jars)) {
+      jars.clear();
+    }
+    for (String path : myRemovedJars) {
+      jars.remove(path);
+    }
+    jars.putAll(myChangedJars);
+    for (Iterator<String> iterator = jars.keySet().iterator(); iterator.hasNext(); ) {
+      if (!new File(iterator.next()).isFile()) {
+        iterator.remove();
+      }
+    }
+
+    File tempFile = new File(myFile.getPath() + ".tmp");
+    try {
+      FileUtil.createParentDirs(tempFile);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      try {
+        out.writeInt(VERSION);
+        out.writeInt(jars.size());
+        for (Map.Entry<String, JarEntries> entry : jars.entrySet()) {
+          JarEntries entries = entry.getValue();
+          out.writeUTF(entry.getKey());
+          out.writeLong(entries.myLength);
+          out.writeLong(entries.myTimestamp);
+          out.writeInt(entries.myNames.length);
+          for (String name : entries.myNames) {
+            out.writeUTF(name);
+          }
+        }
+      }
+      finally {
+        out.close();
+      }
+      FileUtil.delete(myFile);
+      FileUtil.rename(tempFile, myFile);
+      myChangedJars.clear();
+      myRemovedJars.clear();
+    }
+    catch (IOException e) {
+      LOG.info("Cannot write " + myFile + ": " + e);
+      FileUtil.delete(tempFile);
+    }
+  }
+
+  /**
+   * @return false if the file is corrupted, then the map may be filled partially
+   */
+  private static boolean readEntries(@NotNull File file, @NotNull Map<String, JarEntries> jars) {
+    if (!file.exists()) return true;
+
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+        if (in.readInt() != VERSION) return true;
+        int jarCount = in.readInt();
+        for (int i = 0; i < jarCount; i++) {
+          String path = in.readUTF();
+          long length = in.readLong();
+          long timestamp = in.readLong();
+          String[] names = new String[in.readInt()];
+          for (int j = 0; j < names.length; j++) {
+            names[j] = in.readUTF();
+          }
+          jars.put(path, new JarEntries(length, timestamp, names));
+        }
+      }
+      finally {
+        in.close();
+      }
+      return true;
+    }
+    catch (IOException e) {
+      LOG.info("Cannot read " + file + ": " + e);
+      return false;
+    }
+  }
+}
@@ -17,6 +17,8 @@ package com.intellij.util.lang;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.ThreeState;
 import com.intellij.util.TimedComputable;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
@@ -26,7 +28,9 @@ import sun.misc.Resource;
 import java.io.*;
 import java.lang.ref.SoftReference;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -34,6 +38,7 @@ class JarLoader extends Loader {
   private final URL myURL;
   private SoftReference<JarMemoryLoader> myMemoryLoader;
   private final boolean myCanLockJar;
+  @Nullable private final JarEntriesIndex myIndex;
   private static final boolean myDebugTime = false;
   private static int misses;
   private static int hits;
@@ -59,38 +64,36 @@ class JarLoader extends Loader {
   @NonNls private static final String FILE_PROTOCOL = "file";
   private static final long NS_THRESHOLD = 10000000;
 
-  JarLoader(URL url, boolean canLockJar, int index) throws IOException {
+  JarLoader(URL url, boolean canLockJar, int index, @Nullable JarEntriesIndex entriesIndex) throws IOException {
     super(new URL(JAR_PROTOCOL, "", -1, url + "!/"), index);
     myURL = url;
     myCanLockJar = canLockJar;
+    myIndex = entriesIndex;
   }
 
   void preLoadClasses() {
-    ZipFile zipFile = null;
+    // reads the jar as a stream, no need to open (and lock) the zip file
+    File file = getJarFile();
+    if (file == null || !file.isFile()) return;
+    // the index tells whether the jar has classes to preload, so other indexed jars are not opened at all
+    if (myIndex != null && myIndex.containsEntry(file, JarMemoryLoader.SIZE_ENTRY) == ThreeState.NO) return;
     try {
-      zipFile = acquireZipFile();
-      if (zipFile == null) return;
-      try {
-        File file = new File(zipFile.getName());
-        myMemoryLoader = new SoftReference<JarMemoryLoader>(JarMemoryLoader.load(file, getBaseURL()));
-      }
-      catch (Exception e) {
-        LOG.error(e);
-      }
+      myMemoryLoader = new SoftReference<JarMemoryLoader>(JarMemoryLoader.load(file, getBaseURL()));
     }
-    catch (Exception e) {
+    catch (IOException e) {
       // it happens :) eg tools.jar under MacOS
+      LOG.debug(e);
     }
-    finally {
-      try {
-        releaseZipFile(zipFile);
-      }
-      catch (IOException ignore) {
-
-      }
+    catch (Exception e) {
+      LOG.error(e);
     }
   }
 
+  @Nullable
+  private File getJarFile() {
+    return FILE_PROTOCOL.equals(myURL.getProtocol()) ? new File(FileUtil.unquote(myURL.getFile())) : null;
+  }
+
   @Nullable
   private ZipFile acquireZipFile() throws IOException {
     if (myCanLockJar) {
@@ -110,13 +113,13 @@ class JarLoader extends Loader {
 
   @Nullable
   private ZipFile doGetZipFile() throws IOException {
-    if (FILE_PROTOCOL.equals(myURL.getProtocol())) {
-      String s = FileUtil.unquote(myURL.getFile());
-      if (!new File(s).exists()) {
-        throw new FileNotFoundException(s);
+    File file = getJarFile();
+    if (file != null) {
+      if (!file.exists()) {
+        throw new FileNotFoundException(file.getPath());
       }
       else {
-        return new ZipFile(s);
+        return new ZipFile(file);
       }
     }
 
@@ -125,21 +128,34 @@ class JarLoader extends Loader {
 
   @Override
   void buildCache(final ClasspathCache cache) throws IOException {
-    ZipFile zipFile = null;
-    try {
-      zipFile = acquireZipFile();
-      if (zipFile == null) return;
-      final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+    File file = myIndex != null ? getJarFile() : null;
+    String[] names = file != null ? myIndex.getEntries(file) : null;
 
-      while (entries.hasMoreElements()) {
-        ZipEntry zipEntry = entries.nextElement();
-        String name = zipEntry.getName();
-        cache.addResourceEntry(name, this);
-        cache.addNameEntry(name, this);
+    if (names == null) {
+      // not indexed yet (or changed) - read the entries from the jar itself
+      ZipFile zipFile = null;
+      try {
+        zipFile = acquireZipFile();
+        if (zipFile == null) return;
+        List<String> entryNames = new ArrayList<String>(zipFile.size());
+        final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+          entryNames.add(entries.nextElement().getName());
+        }
+        names = ArrayUtil.toStringArray(entryNames);
+      }
+      finally {
+        releaseZipFile(zipFile);
+      }
+
+      if (file != null) {
+        myIndex.putEntries(file, names);
       }
     }
-    finally {
-      releaseZipFile(zipFile);
+
+    for (String name : names) {
+      cache.addResourceEntry(name, this);
+      cache.addNameEntry(name, this);
     }
   }
 
@@ -47,6 +47,7 @@ public class UrlClassLoader extends ClassLoader {
     private boolean myUseCache = false;
     private boolean myAcceptUnescaped = false;
     private boolean myPreload = true;
+    private boolean myUsePersistentIndex = false;
 
     private Builder() { }
 
@@ -59,6 +60,7 @@ public class UrlClassLoader extends ClassLoader {
     public Builder useCache(boolean useCache) { myUseCache = useCache; return this; }
     public Builder allowUnescaped() { myAcceptUnescaped = true; return this; }
     public Builder noPreload() { myPreload = false; return this; }
+    public Builder usePersistentIndex() { myUsePersistentIndex = true; return this; }
     public UrlClassLoader get() { return new UrlClassLoader(this); }
   }
 
@@ -109,7 +111,8 @@ public class UrlClassLoader extends ClassLoader {
         return internProtocol(url);
       }
     });
-    myClassPath = new ClassPath(myURLs, builder.myLockJars, builder.myUseCache, builder.myAcceptUnescaped, builder.myPreload);
+    myClassPath = new ClassPath(myURLs, builder.myLockJars, builder.myUseCache, builder.myAcceptUnescaped, builder.myPreload,
+                                builder.myUsePersistentIndex);
   }
 
   public static URL internProtocol(@NotNull URL url) {
@@ -31,7 +31,10 @@ public final class Message {
 
   public Message(@NotNull Topic topic, @NotNull Method listenerMethod, Object[] args) {
     myTopic = topic;
-    listenerMethod.setAccessible(true);
+    // proxies pass the same Method instances on every call, so the security check is done only once
+    if (!listenerMethod.isAccessible()) {
+      listenerMethod.setAccessible(true);
+    }
     myListenerMethod = listenerMethod;
     myArgs = args;
   }
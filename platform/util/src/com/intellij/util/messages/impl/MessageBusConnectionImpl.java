@@ -122,6 +122,11 @@ public class MessageBusConnectionImpl implements MessageBusConnection {
     }
   }
 
+  @NotNull
+  MessageBusImpl getBus() {
+    return myBus;
+  }
+
   void scheduleMessageDelivery(Message message) {
     myPendingMessages.get().offer(message);
   }
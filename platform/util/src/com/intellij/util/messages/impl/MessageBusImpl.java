@@ -1,5 +1,5 @@
 /*
- * Copyright 2000-2012 JetBrains s.r.o.
+ * Copyright 2000-2013 JetBrains s.r.o.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -33,6 +33,7 @@ import org.jetbrains.annotations.NotNull;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
@@ -48,6 +49,13 @@ public class MessageBusImpl implements MessageBus {
   private final ConcurrentMap<Topic, List<MessageBusConnectionImpl>> mySubscribers =
     new ConcurrentHashMap<Topic, List<MessageBusConnectionImpl>>();
   private final List<MessageBusImpl> myChildBuses = ContainerUtil.createLockFreeCopyOnWriteList();
+  // all the connections which receive messages posted to this bus (including the ones of parent or child buses, according
+  // to the topic broadcast direction), in delivery order; cleared on every subscription or bus hierarchy change
+  private final ConcurrentMap<Topic, MessageBusConnectionImpl[]> mySubscriberCache =
+    new ConcurrentHashMap<Topic, MessageBusConnectionImpl[]>();
+  private volatile int mySubscriptionModificationCount; // is used for the root bus only
+
+  private static final MessageBusConnectionImpl[] EMPTY_CONNECTIONS = new MessageBusConnectionImpl[0];
 
   private static final Object NA = new Object();
   private MessageBusImpl myParentBus;
@@ -79,11 +87,13 @@ public class MessageBusImpl implements MessageBus {
   private void notifyChildBusCreated(final MessageBusImpl childBus) {
     myChildBuses.add(childBus);
     LOG.assertTrue(childBus.myParentBus == this);
+    invalidateSubscriberCaches();
   }
 
   private void notifyChildBusDisposed(final MessageBusImpl childBus) {
     boolean removed = myChildBuses.remove(childBus);
     LOG.assertTrue(removed);
+    invalidateSubscriberCaches();
   }
 
   private static class DeliveryJob {
@@ -180,26 +190,70 @@ public class MessageBusImpl implements MessageBus {
 
   private void postMessage(Message message) {
     checkNotDisposed();
-    final Topic topic = message.getTopic();
+    for (MessageBusConnectionImpl subscriber : getTopicSubscribers(message.getTopic())) {
+      subscriber.getBus().myMessageQueue.get().offer(new DeliveryJob(subscriber, message));
+      subscriber.scheduleMessageDelivery(message);
+    }
+  }
+
+  @NotNull
+  private MessageBusConnectionImpl[] getTopicSubscribers(@NotNull Topic topic) {
+    MessageBusConnectionImpl[] result = mySubscriberCache.get(topic);
+    if (result == null) {
+      MessageBusImpl rootBus = getRootBus();
+      int modificationCount = rootBus.mySubscriptionModificationCount;
+
+      List<MessageBusConnectionImpl> subscribers = new ArrayList<MessageBusConnectionImpl>();
+      collectSubscribers(topic, subscribers);
+      result = subscribers.isEmpty() ? EMPTY_CONNECTIONS : subscribers.toArray(new MessageBusConnectionImpl[subscribers.size()]);
+
+      mySubscriberCache.put(topic, result);
+      if (rootBus.mySubscriptionModificationCount != modificationCount) {
+        // subscriptions have changed while collecting, the result may be stale
+        mySubscriberCache.remove(topic);
+      }
+    }
+    return result;
+  }
+
+  private void collectSubscribers(@NotNull Topic topic, @NotNull List<MessageBusConnectionImpl> result) {
     final List<MessageBusConnectionImpl> topicSubscribers = mySubscribers.get(topic);
     if (topicSubscribers != null) {
-      Queue<DeliveryJob> queue = myMessageQueue.get();
-      for (MessageBusConnectionImpl subscriber : topicSubscribers) {
-        queue.offer(new DeliveryJob(subscriber, message));
-        subscriber.scheduleMessageDelivery(message);
-      }
+      result.addAll(topicSubscribers);
     }
 
     Topic.BroadcastDirection direction = topic.getBroadcastDirection();
 
     if (direction == Topic.BroadcastDirection.TO_CHILDREN) {
       for (MessageBusImpl childBus : myChildBuses) {
-        childBus.postMessage(message);
+        childBus.collectSubscribers(topic, result);
       }
     }
 
     if (direction == Topic.BroadcastDirection.TO_PARENT && myParentBus != null) {
-      myParentBus.postMessage(message);
+      myParentBus.collectSubscribers(topic, result);
+    }
+  }
+
+  @NotNull
+  private MessageBusImpl getRootBus() {
+    MessageBusImpl bus = this;
+    while (bus.myParentBus != null) {
+      bus = bus.myParentBus;
+    }
+    return bus;
+  }
+
+  private void invalidateSubscriberCaches() {
+    MessageBusImpl rootBus = getRootBus();
+    rootBus.mySubscriptionModificationCount++;
+    rootBus.clearSubscriberCaches();
+  }
+
+  private void clearSubscriberCaches() {
+    mySubscriberCache.clear();
+    for (MessageBusImpl childBus : myChildBuses) {
+      childBus.clearSubscriberCaches();
     }
   }
 
@@ -244,12 +298,14 @@ public class MessageBusImpl implements MessageBus {
     }
 
     topicSubscribers.add(connection);
+    invalidateSubscriberCaches();
   }
 
   void notifyConnectionTerminated(final MessageBusConnectionImpl connection) {
     for (List<MessageBusConnectionImpl> topicSubscribers : mySubscribers.values()) {
       topicSubscribers.remove(connection);
     }
+    invalidateSubscriberCaches();
     if (myDisposed) return;
 
     final Iterator<DeliveryJob> i = myMessageQueue.get().iterator();
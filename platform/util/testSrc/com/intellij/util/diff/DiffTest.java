@@ -85,4 +85,25 @@ public class DiffTest extends TestCase {
     System.out.println("Duration: " +(System.currentTimeMillis() - start));
   }
 
+  public void testTooManyChangesForMinimalDiff() throws FilesTooBigForDiffException {
+    String[] first = new String[100000];
+    String[] second = new String[100000];
+    for (int i = 0; i < first.length; i++) {
+      first[i] = "insert into t values (" + (i % 7) + ");";
+      second[i] = "insert into t values (" + (i % 11) + ");";
+    }
+    Diff.Change change = Diff.buildChanges(first, second);
+    int index1 = 0;
+    int index2 = 0;
+    for (; change != null; change = change.link) {
+      assertEquals(change.line0 - index1, change.line1 - index2);
+      for (; index1 < change.line0; index1++, index2++) {
+        assertEquals(first[index1], second[index2]);
+      }
+      index1 += change.deleted;
+      index2 += change.inserted;
+    }
+    assertEquals(first.length - index1, second.length - index2);
+  }
+
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.diff;
+
+import gnu.trove.TIntArrayList;
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class PatienceIntLCSTest extends TestCase {
+  public void testUniqueLinesAreAnchors() {
+    boolean[][] changes = execute(new int[]{1, 2, 3, 4, 5}, new int[]{2, 1, 3, 5, 4});
+    assertEquals(3, countEqual(changes[0]));
+    assertFalse(changes[0][2]);
+    assertFalse(changes[1][2]);
+  }
+
+  public void testRepeatedLines() {
+    boolean[][] changes = execute(new int[]{1, 1, 2, 1, 1, 2}, new int[]{2, 1, 1, 2, 1});
+    assertEquals(4, countEqual(changes[0]));
+  }
+
+  public void testCompletelyDifferent() {
+    boolean[][] changes = execute(new int[]{1, 2, 1, 2}, new int[]{3, 4, 3});
+    assertEquals(0, countEqual(changes[0]));
+  }
+
+  public void testRandomInputsGiveCommonSubsequence() {
+    Random random = new Random(42);
+    for (int i = 0; i < 1000; i++) {
+      int[] first = randomArray(random, random.nextInt(30), 4);
+      int[] second = randomArray(random, random.nextInt(30), 4);
+      execute(first, second);
+    }
+  }
+
+  public void testManyRepeatedLinesInLinearTime() {
+    Random random = new Random(0);
+    int[] first = randomArray(random, 200000, 10);
+    int[] second = randomArray(random, 200000, 10);
+    long start = System.currentTimeMillis();
+    execute(first, second);
+    assertTrue(System.currentTimeMillis() - start < 10000);
+  }
+
+  private static boolean[][] execute(int[] first, int[] second) {
+    PatienceIntLCS lcs = new PatienceIntLCS(first, second);
+    lcs.execute();
+    boolean[][] changes = lcs.getChanges();
+    assertEquals(commonSubsequence(first, changes[0]), commonSubsequence(second, changes[1]));
+    return changes;
+  }
+
+  private static TIntArrayList commonSubsequence(int[] values, boolean[] changes) {
+    TIntArrayList result = new TIntArrayList();
+    for (int i = 0; i < values.length; i++) {
+      if (!changes[i]) result.add(values[i]);
+    }
+    return result;
+  }
+
+  private static int countEqual(boolean[] changes) {
+    int count = 0;
+    for (boolean changed : changes) {
+      if (!changed) count++;
+    }
+    return count;
+  }
+
+  private static int[] randomArray(Random random, int length, int maxValue) {
+    int[] result = new int[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = random.nextInt(maxValue);
+    }
+    return result;
+  }
+}
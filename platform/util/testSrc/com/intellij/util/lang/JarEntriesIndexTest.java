@@ -0,0 +1,204 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.lang;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.ThreeState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class JarEntriesIndexTest {
+  private File myTempDirectory;
+
+  @Before
+  public void setUp() throws Exception {
+    myTempDirectory = FileUtil.createTempDirectory("__", "__");
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.delete(myTempDirectory);
+  }
+
+  @Test
+  public void testEntriesSurviveRestart() throws IOException {
+    File jar = createJar("a.jar", "a/A.class", "a/b/res.txt");
+    File indexFile = new File(myTempDirectory, "index/jar.entries.index");
+
+    JarEntriesIndex index = new JarEntriesIndex(indexFile);
+    index.load();
+    assertNull(index.getEntries(jar));
+    index.putEntries(jar, new String[]{"a/A.class", "a/b/res.txt"});
+    index.save();
+    assertTrue(indexFile.exists());
+
+    JarEntriesIndex reloaded = new JarEntriesIndex(indexFile);
+    reloaded.load();
+    assertArrayEquals(new String[]{"a/A.class", "a/b/res.txt"}, reloaded.getEntries(jar));
+  }
+
+  @Test
+  public void testChangedJarIsNotTrusted() throws IOException {
+    File jar = createJar("a.jar", "a/A.class");
+    File indexFile = new File(myTempDirectory, "jar.entries.index");
+
+    JarEntriesIndex index = new JarEntriesIndex(indexFile);
+    index.putEntries(jar, new String[]{"a/A.class"});
+    index.save();
+
+    createJar("a.jar", "a/A.class", "a/B.class");
+    assertTrue(jar.setLastModified(jar.lastModified() + 2000));
+
+    JarEntriesIndex reloaded = new JarEntriesIndex(indexFile);
+    reloaded.load();
+    assertNull(reloaded.getEntries(jar));
+  }
+
+  @Test
+  public void testCorruptedIndexIsIgnored() throws IOException {
+    File jar = createJar("a.jar", "a/A.class");
+    File indexFile = new File(myTempDirectory, "jar.entries.index");
+    FileUtil.writeToFile(indexFile, new byte[]{0, 0, 0, 1, 0, 0, 0, 5, 1});
+
+    JarEntriesIndex index = new JarEntriesIndex(indexFile);
+    index.load();
+    assertNull(index.getEntries(jar));
+  }
+
+  @Test
+  public void testUnusedJarsSurviveSave() throws IOException {
+    File a = createJar("a.jar", "a/A.class");
+    File b = createJar("b.jar", "b/B.class");
+    File indexFile = new File(myTempDirectory, "jar.entries.index");
+
+    JarEntriesIndex index = new JarEntriesIndex(indexFile);
+    index.putEntries(a, new String[]{"a/A.class"});
+    index.putEntries(b, new String[]{"b/B.class"});
+    index.save();
+
+    JarEntriesIndex second = new JarEntriesIndex(indexFile);
+    second.load();
+    File c = createJar("c.jar", "c/C.class");
+    second.putEntries(c, new String[]{"c/C.class"});
+    second.save();
+
+    JarEntriesIndex reloaded = new JarEntriesIndex(indexFile);
+    reloaded.load();
+    assertArrayEquals(new String[]{"a/A.class"}, reloaded.getEntries(a));
+    assertArrayEquals(new String[]{"b/B.class"}, reloaded.getEntries(b));
+    assertArrayEquals(new String[]{"c/C.class"}, reloaded.getEntries(c));
+  }
+
+  @Test
+  public void testSaveMergesEntriesWrittenByAnotherIndex() throws IOException {
+    File a = createJar("a.jar", "a/A.class");
+    File b = createJar("b.jar", "b/B.class");
+    File indexFile = new File(myTempDirectory, "jar.entries.index");
+
+    JarEntriesIndex first = new JarEntriesIndex(indexFile);
+    first.load();
+    JarEntriesIndex second = new JarEntriesIndex(indexFile);
+    second.load();
+
+    first.putEntries(a, new String[]{"a/A.class"});
+    first.save();
+    second.putEntries(b, new String[]{"b/B.class"});
+    second.save();
+
+    JarEntriesIndex reloaded = new JarEntriesIndex(indexFile);
+    reloaded.load();
+    assertArrayEquals(new String[]{"a/A.class"}, reloaded.getEntries(a));
+    assertArrayEquals(new String[]{"b/B.class"}, reloaded.getEntries(b));
+  }
+
+  @Test
+  public void testDeletedAndChangedJarsAreDropped() throws IOException {
+    File a = createJar("a.jar", "a/A.class");
+    File b = createJar("b.jar", "b/B.class");
+    File c = createJar("c.jar", "c/C.class");
+    File indexFile = new File(myTempDirectory, "jar.entries.index");
+
+    JarEntriesIndex index = new JarEntriesIndex(indexFile);
+    index.putEntries(a, new String[]{"a/A.class"});
+    index.putEntries(b, new String[]{"b/B.class"});
+    index.putEntries(c, new String[]{"c/C.class"});
+    index.save();
+
+    assertTrue(FileUtil.delete(a));
+    createJar("b.jar", "b/B.class", "b/C.class");
+    assertTrue(b.setLastModified(b.lastModified() + 2000));
+
+    JarEntriesIndex second = new JarEntriesIndex(indexFile);
+    second.load();
+    assertNull(second.getEntries(b));
+    second.save();
+
+    createJar("a.jar", "a/A.class");
+    JarEntriesIndex reloaded = new JarEntriesIndex(indexFile);
+    reloaded.load();
+    assertNull(reloaded.getEntries(a));
+    assertNull(reloaded.getEntries(b));
+    assertArrayEquals(new String[]{"c/C.class"}, reloaded.getEntries(c));
+  }
+
+  @Test
+  public void testLoadedEntriesAreHandedOverOnce() throws IOException {
+    File a = createJar("a.jar", "a/A.class");
+    File indexFile = new File(myTempDirectory, "jar.entries.index");
+
+    JarEntriesIndex index = new JarEntriesIndex(indexFile);
+    index.putEntries(a, new String[]{JarMemoryLoader.SIZE_ENTRY, "a/A.class"});
+    index.save();
+
+    JarEntriesIndex reloaded = new JarEntriesIndex(indexFile);
+    reloaded.load();
+    assertEquals(ThreeState.YES, reloaded.containsEntry(a, JarMemoryLoader.SIZE_ENTRY));
+    assertEquals(ThreeState.NO, reloaded.containsEntry(a, "a/B.class"));
+    assertArrayEquals(new String[]{JarMemoryLoader.SIZE_ENTRY, "a/A.class"}, reloaded.getEntries(a));
+    assertNull(reloaded.getEntries(a));
+    assertEquals(ThreeState.UNSURE, reloaded.containsEntry(a, JarMemoryLoader.SIZE_ENTRY));
+
+    reloaded.save();
+    JarEntriesIndex third = new JarEntriesIndex(indexFile);
+    third.load();
+    assertArrayEquals(new String[]{JarMemoryLoader.SIZE_ENTRY, "a/A.class"}, third.getEntries(a));
+  }
+
+  private File createJar(String name, String... entries) throws IOException {
+    File jar = new File(myTempDirectory, name);
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+    try {
+      for (String entry : entries) {
+        out.putNextEntry(new ZipEntry(entry));
+        out.write(entry.getBytes());
+        out.closeEntry();
+      }
+    }
+    finally {
+      out.close();
+    }
+    return jar;
+  }
+}
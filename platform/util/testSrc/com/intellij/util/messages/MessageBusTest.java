@@ -197,6 +197,35 @@ public class MessageBusTest extends TestCase {
                  "C2T1Handler:t12");
   }
   
+  public void testSubscriptionChangesAfterPublishing() {
+    final MessageBusConnection c1 = myBus.connect();
+    c1.subscribe(TOPIC1, new T1Handler("c1"));
+    myBus.syncPublisher(TOPIC1).t11();
+
+    final MessageBusConnection c2 = myBus.connect();
+    c2.subscribe(TOPIC1, new T1Handler("c2"));
+    myBus.syncPublisher(TOPIC1).t11();
+
+    c1.disconnect();
+    myBus.syncPublisher(TOPIC1).t12();
+
+    assertEvents("c1:t11", "c1:t11", "c2:t11", "c2:t12");
+  }
+
+  public void testChildBusCreatedAfterPublishing() {
+    myBus.connect().subscribe(TOPIC1, new T1Handler("parent"));
+    myBus.syncPublisher(TOPIC1).t11();
+
+    MessageBus childBus = MessageBusFactory.newMessageBus("child", myBus);
+    childBus.connect().subscribe(TOPIC1, new T1Handler("child"));
+    myBus.syncPublisher(TOPIC1).t12();
+
+    childBus.dispose();
+    myBus.syncPublisher(TOPIC1).t11();
+
+    assertEvents("parent:t11", "parent:t12", "child:t12", "parent:t11");
+  }
+
   private void assertEvents(String... expected) {
     String joinExpected = StringUtil.join(expected, "\n");
     String joinActual = StringUtil.join(myLog, "\n");
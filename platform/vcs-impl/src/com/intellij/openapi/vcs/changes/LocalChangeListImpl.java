@@ -25,6 +25,8 @@ public class LocalChangeListImpl extends LocalChangeList {
 
   private final Project myProject;
   private Collection<Change> myChanges = new HashSet<Change>();
+  // myChanges is shared with copies of this list and should be copied before modification
+  private boolean myChangesShared;
   private Collection<Change> myReadChangesCache = null;
   private String myId;
   @NotNull private String myName;
@@ -127,7 +129,15 @@ public class LocalChangeListImpl extends LocalChangeList {
     return myData;
   }
 
+  private void unshareChanges() {
+    if (myChangesShared) {
+      myChanges = new HashSet<Change>(myChanges);
+      myChangesShared = false;
+    }
+  }
+
   void addChange(Change change) {
+    unshareChanges();
     myReadChangesCache = null;
     myChanges.add(change);
   }
@@ -135,6 +145,7 @@ public class LocalChangeListImpl extends LocalChangeList {
   Change removeChange(Change change) {
     for (Change localChange : myChanges) {
       if (localChange.equals(change)) {
+        unshareChanges();
         myChanges.remove(localChange);
         myReadChangesCache = null;
         return localChange;
@@ -154,6 +165,7 @@ public class LocalChangeListImpl extends LocalChangeList {
       if (scope == null || before != null && scope.belongsTo(before.getFile()) || after != null && scope.belongsTo(after.getFile())
         || isIgnoredChange(oldBoy, fileIndex)) {
         result.add(oldBoy);
+        unshareChanges();
         myChanges.remove(oldBoy);
         myReadChangesCache = null;
       }
@@ -263,17 +275,13 @@ public class LocalChangeListImpl extends LocalChangeList {
     copy.myIsReadOnly = myIsReadOnly;
     copy.myData = myData;
 
-    if (myChanges != null) {
-      copy.myChanges = new HashSet<Change>(myChanges);
-    }
-
-    if (myChangesBeforeUpdate != null) {
-      copy.myChangesBeforeUpdate = new OpenTHashSet<Change>((Collection<Change>)myChangesBeforeUpdate);
-    }
-
-    if (myReadChangesCache != null) {
-      copy.myReadChangesCache = new HashSet<Change>(myReadChangesCache);
-    }
+    // the sets are shared rather than copied: the changes are copied on the first modification of either list,
+    // the other two sets are never modified after creation
+    copy.myChanges = myChanges;
+    copy.myChangesShared = true;
+    myChangesShared = true;
+    copy.myChangesBeforeUpdate = myChangesBeforeUpdate;
+    copy.myReadChangesCache = myReadChangesCache;
 
     return copy;
   }
@@ -17,6 +17,7 @@ package com.intellij.openapi.vcs.ex;
 
 import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.command.undo.UndoConstants;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
@@ -41,6 +42,7 @@ import com.intellij.ui.EditorNotificationPanel;
 import com.intellij.util.diff.FilesTooBigForDiffException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
 import javax.swing.*;
 import java.util.ArrayList;
@@ -56,6 +58,8 @@ public class LineStatusTracker {
   private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.vcs.ex.LineStatusTracker");
   private static final Key<CanNotCalculateDiffPanel> PANEL_KEY = new Key<CanNotCalculateDiffPanel>("LineStatusTracker.CanNotCalculateDiffPanel");
 
+  private static final int MAX_LINES_TO_DIFF_SYNCHRONOUSLY = 5000;
+
   private final Object myLock = new Object();
   // true -> have contents
   private BaseLoadState myBaseLoaded;
@@ -78,6 +82,10 @@ public class LineStatusTracker {
   private FileEditorManager myFileEditorManager;
   private final VirtualFile myVirtualFile;
   private boolean myReleased = false;
+  // the ranges are being calculated in background (for large documents), see scheduleRangesRecalculation()
+  private long myPendingRecalculation;
+  private long myRecalculationCounter;
+  private int myMaxLinesToDiffSynchronously;
 
   private LineStatusTracker(final Document document, final Document upToDateDocument, final Project project, final VirtualFile virtualFile) {
     myVirtualFile = virtualFile;
@@ -92,6 +100,20 @@ public class LineStatusTracker {
     }
     myAnathemaThrown = false;
     myFileEditorManager = FileEditorManager.getInstance(myProject);
+    // tests expect the ranges right after the initialization, unless they check the background calculation explicitly
+    myMaxLinesToDiffSynchronously = myApplication.isUnitTestMode() ? Integer.MAX_VALUE : MAX_LINES_TO_DIFF_SYNCHRONOUSLY;
+  }
+
+  @TestOnly
+  void setMaxLinesToDiffSynchronously(int maxLines) {
+    myMaxLinesToDiffSynchronously = maxLines;
+  }
+
+  @TestOnly
+  boolean isRecalculationPending() {
+    synchronized (myLock) {
+      return myPendingRecalculation != 0;
+    }
   }
 
   public void initialize(@NotNull final String upToDateContent, @NotNull RevisionPack baseRevisionNumber) {
@@ -140,21 +162,76 @@ public class LineStatusTracker {
 
     synchronized (myLock) {
       removeAnathema();
+      if (myDocument.getLineCount() > myMaxLinesToDiffSynchronously) {
+        // the previous ranges are shown (and shifted by the document changes) until the new ones are calculated
+        scheduleRangesRecalculation();
+        return;
+      }
       removeHighlightersFromMarkupModel();
       try {
-        myRanges = new RangesBuilder(myDocument, myUpToDateDocument).getRanges();
+        installRanges(new RangesBuilder(myDocument, myUpToDateDocument).getRanges());
       }
       catch (FilesTooBigForDiffException e) {
-        myRanges.clear();
         installAnathema();
-        return;
-      }
-      for (final Range range : myRanges) {
-        range.setHighlighter(createHighlighter(range));
       }
     }
   }
 
+  private void installRanges(@NotNull List<Range> ranges) {
+    myRanges = ranges;
+    for (final Range range : myRanges) {
+      range.setHighlighter(createHighlighter(range));
+    }
+  }
+
+  /**
+   * Diffs snapshots of the documents on a pooled thread, so that a large document doesn't block the EDT.
+   * The ranges are published at once, if neither document has been changed meanwhile; otherwise the diff is restarted.
+   * Until the ranges are published, the previous ones are kept and only shifted by the document changes.
+   */
+  private void scheduleRangesRecalculation() {
+    final long recalculation = ++myRecalculationCounter;
+    myPendingRecalculation = recalculation;
+    final long documentStamp = myDocument.getModificationStamp();
+    final long upToDateStamp = myUpToDateDocument.getModificationStamp();
+    final List<String> lines = new DocumentWrapper(myDocument).getLines();
+    final List<String> upToDateLines = new DocumentWrapper(myUpToDateDocument).getLines();
+
+    myApplication.executeOnPooledThread(new Runnable() {
+      @Override
+      public void run() {
+        List<Range> ranges;
+        try {
+          ranges = new RangesBuilder(lines, upToDateLines, 0, 0).getRanges();
+        }
+        catch (FilesTooBigForDiffException e) {
+          ranges = null;
+        }
+        final List<Range> result = ranges;
+        myApplication.invokeLater(new Runnable() {
+          @Override
+          public void run() {
+            synchronized (myLock) {
+              if (myReleased || myPendingRecalculation != recalculation) return;
+              myPendingRecalculation = 0;
+              if (myDocument.getModificationStamp() != documentStamp || myUpToDateDocument.getModificationStamp() != upToDateStamp) {
+                reinstallRanges();
+                return;
+              }
+              removeHighlightersFromMarkupModel();
+              if (result == null) {
+                installAnathema();
+              }
+              else {
+                installRanges(result);
+              }
+            }
+          }
+        }, ModalityState.any());
+      }
+    });
+  }
+
   private void removeAnathema() {
     if (! myAnathemaThrown) return;
     myAnathemaThrown = false;
@@ -244,6 +321,7 @@ public class LineStatusTracker {
 
   private void removeHighlightersFromMarkupModel() {
     synchronized (myLock) {
+      myPendingRecalculation = 0;
       for (Range range : myRanges) {
         if (range.getHighlighter() != null) {
           range.getHighlighter().dispose();
@@ -305,6 +383,7 @@ public class LineStatusTracker {
           if (StringUtil.endsWithChar(e.getOldFragment(), '\n')) myLastChangedLine++;
 
           myLinesBeforeChange = myDocument.getLineNumber(e.getOffset() + e.getOldLength()) - myDocument.getLineNumber(e.getOffset());
+          if (myPendingRecalculation != 0) return;
 
           Range firstChangedRange = getLastRangeBeforeLine(myFirstChangedLine);
 
@@ -359,6 +438,12 @@ public class LineStatusTracker {
           int linesAfterChange = line - myDocument.getLineNumber(e.getOffset());
           int linesShift = linesAfterChange - myLinesBeforeChange;
 
+          if (myPendingRecalculation != 0) {
+            // the ranges will be recalculated anyway: just keep the highlighted ranges below the change in place
+            shiftRanges(getRangesAfter(myRanges, myLastChangedLine), linesShift);
+            return;
+          }
+
           List<Range> rangesAfterChange = getRangesAfter(myRanges, myLastChangedLine);
           List<Range> rangesBeforeChange = getRangesBefore(myRanges, myFirstChangedLine);
 
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes;
+
+import com.intellij.openapi.vcs.FilePathImpl;
+import com.intellij.openapi.vcs.history.VcsRevisionNumber;
+import com.intellij.testFramework.vcs.MockContentRevision;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+
+import static junit.framework.Assert.assertEquals;
+
+public class LocalChangeListImplTest {
+
+  @Test
+  public void copyIsNotAffectedByChangesOfOriginal() {
+    LocalChangeListImpl original = LocalChangeListImpl.createEmptyChangeListImpl(null, "list");
+    Change a = change("~/project/A.java");
+    Change b = change("~/project/B.java");
+    original.addChange(a);
+    original.addChange(b);
+
+    LocalChangeList copy = original.copy();
+    original.removeChange(a);
+    original.addChange(change("~/project/C.java"));
+
+    assertChanges(copy.getChanges(), a, b);
+    assertEquals(2, original.getChanges().size());
+  }
+
+  @Test
+  public void originalIsNotAffectedByChangesOfCopy() {
+    LocalChangeListImpl original = LocalChangeListImpl.createEmptyChangeListImpl(null, "list");
+    Change a = change("~/project/A.java");
+    original.addChange(a);
+
+    LocalChangeListImpl copy = (LocalChangeListImpl)original.copy();
+    copy.addChange(change("~/project/B.java"));
+    copy.removeChange(a);
+
+    assertChanges(original.getChanges(), a);
+    assertEquals(1, copy.getChanges().size());
+  }
+
+  @Test
+  public void copiesOfCopyAreIndependent() {
+    LocalChangeListImpl original = LocalChangeListImpl.createEmptyChangeListImpl(null, "list");
+    Change a = change("~/project/A.java");
+    original.addChange(a);
+
+    LocalChangeListImpl first = (LocalChangeListImpl)original.copy();
+    LocalChangeList second = first.copy();
+    first.removeChange(a);
+
+    assertChanges(original.getChanges(), a);
+    assertChanges(second.getChanges(), a);
+    assertEquals(0, first.getChanges().size());
+  }
+
+  private static void assertChanges(@NotNull Collection<Change> actual, @NotNull Change... expected) {
+    assertEquals(new HashSet<Change>(Arrays.asList(expected)), new HashSet<Change>(actual));
+  }
+
+  @NotNull
+  private static Change change(@NotNull String path) {
+    ContentRevision before = new MockContentRevision(new FilePathImpl(new File(path), false), VcsRevisionNumber.NULL);
+    ContentRevision after = new MockContentRevision(new FilePathImpl(new File(path), false), VcsRevisionNumber.NULL);
+    return new Change(before, after);
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.ex;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.vcs.history.VcsRevisionNumber;
+import com.intellij.testFramework.LightPlatformTestCase;
+import com.intellij.util.ui.UIUtil;
+
+import java.util.Arrays;
+
+public class LineStatusTrackerTest extends LightPlatformTestCase {
+
+  private static final String BASE = "a\nb\nc\nd\n";
+
+  private Document myDocument;
+  private LineStatusTracker myTracker;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    myDocument = EditorFactory.getInstance().createDocument("a\nB\nc\nD\n");
+    myTracker = LineStatusTracker.createOn(null, myDocument, getProject());
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    try {
+      myTracker.release();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testRangesAreCalculatedInBackground() throws Exception {
+    myTracker.setMaxLinesToDiffSynchronously(0);
+    myTracker.initialize(BASE, revision(1));
+    assertTrue(myTracker.isRecalculationPending());
+
+    waitForRecalculation();
+    assertEquals(Arrays.asList(new Range(1, 2, 1, 2, Range.MODIFIED), new Range(3, 4, 3, 4, Range.MODIFIED)), myTracker.getRanges());
+  }
+
+  public void testPreviousRangesAreShiftedUntilRecalculated() throws Exception {
+    myTracker.initialize(BASE, revision(1));
+    assertEquals(Arrays.asList(new Range(1, 2, 1, 2, Range.MODIFIED), new Range(3, 4, 3, 4, Range.MODIFIED)), myTracker.getRanges());
+
+    myTracker.setMaxLinesToDiffSynchronously(0);
+    myTracker.initialize(BASE, revision(2));
+    assertTrue(myTracker.isRecalculationPending());
+    assertEquals(2, myTracker.getRanges().size());
+
+    insertAtStart("x\n");
+    assertTrue(myTracker.isRecalculationPending());
+    assertEquals(Arrays.asList(new Range(2, 3, 1, 2, Range.MODIFIED), new Range(4, 5, 3, 4, Range.MODIFIED)), myTracker.getRanges());
+
+    // the result calculated for the document before the insertion is dropped, and the ranges are calculated again
+    waitForRecalculation();
+    assertEquals(Arrays.asList(new Range(0, 1, 0, 0, Range.INSERTED), new Range(2, 3, 1, 2, Range.MODIFIED),
+                               new Range(4, 5, 3, 4, Range.MODIFIED)), myTracker.getRanges());
+  }
+
+  public void testPendingRecalculationIsCancelledOnBulkUpdate() throws Exception {
+    myTracker.setMaxLinesToDiffSynchronously(0);
+    myTracker.initialize(BASE, revision(1));
+    myTracker.startBulkUpdate();
+    assertFalse(myTracker.isRecalculationPending());
+
+    myTracker.setMaxLinesToDiffSynchronously(Integer.MAX_VALUE);
+    myTracker.finishBulkUpdate();
+    UIUtil.dispatchAllInvocationEvents();
+    assertEquals(Arrays.asList(new Range(1, 2, 1, 2, Range.MODIFIED), new Range(3, 4, 3, 4, Range.MODIFIED)), myTracker.getRanges());
+  }
+
+  private void insertAtStart(final String text) {
+    new WriteCommandAction.Simple(getProject()) {
+      @Override
+      protected void run() throws Throwable {
+        myDocument.insertString(0, text);
+      }
+    }.execute();
+  }
+
+  private void waitForRecalculation() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (myTracker.isRecalculationPending()) {
+      assertTrue("The ranges are not calculated in time", System.currentTimeMillis() < deadline);
+      UIUtil.dispatchAllInvocationEvents();
+      Thread.sleep(10);
+    }
+  }
+
+  private static LineStatusTracker.RevisionPack revision(int number) {
+    return new LineStatusTracker.RevisionPack(number, new VcsRevisionNumber.Int(number));
+  }
+}
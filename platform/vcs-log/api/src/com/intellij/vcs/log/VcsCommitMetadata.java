@@ -0,0 +1,40 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * <p>All metadata of a commit (commit message, author, committer, etc.), but not the changes.</p>
+ * <p>It is much cheaper to read than {@link VcsFullCommitDetails} and is enough e.g. to filter commits by user or by text.</p>
+ * <p>An instance of this object can be obtained via
+ *    {@link VcsLogObjectsFactory#createCommitMetadata(Hash, List, long, VirtualFile, String, String, String, String, String, String, long)
+ *    VcsLogObjectsFactory#createCommitMetadata}</p>
+ */
+public interface VcsCommitMetadata extends VcsShortCommitDetails {
+
+  @NotNull
+  String getFullMessage();
+
+  @NotNull
+  VcsUser getCommitter();
+
+  long getCommitTime();
+
+}
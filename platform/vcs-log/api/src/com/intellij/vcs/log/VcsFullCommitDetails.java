@@ -16,17 +16,9 @@ import java.util.List;
  *
  * @author Kirill Likhodedov
  */
-public interface VcsFullCommitDetails extends VcsShortCommitDetails {
-
-  @NotNull
-  String getFullMessage();
+public interface VcsFullCommitDetails extends VcsCommitMetadata {
 
   @NotNull
   Collection<Change> getChanges();
 
-  @NotNull
-  VcsUser getCommitter();
-
-  long getCommitTime();
-
 }
@@ -26,6 +26,13 @@ public interface VcsLogObjectsFactory {
   VcsShortCommitDetails createShortDetails(@NotNull Hash hash, @NotNull List<Hash> parents, long timeStamp,
                                            VirtualFile root, @NotNull String subject, @NotNull String authorName, String authorEmail);
 
+  @NotNull
+  VcsCommitMetadata createCommitMetadata(@NotNull Hash hash, @NotNull List<Hash> parents, long authorTime, VirtualFile root,
+                                         @NotNull String subject,
+                                         @NotNull String authorName, @NotNull String authorEmail, @NotNull String message,
+                                         @NotNull String committerName,
+                                         @NotNull String committerEmail, long commitTime);
+
   @NotNull
   VcsFullCommitDetails createFullDetails(@NotNull Hash hash, @NotNull List<Hash> parents, long authorTime, VirtualFile root,
                                          @NotNull String subject,
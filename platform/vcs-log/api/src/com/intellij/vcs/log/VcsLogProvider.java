@@ -37,6 +37,12 @@ public interface VcsLogProvider {
   @NotNull
   List<? extends VcsShortCommitDetails> readShortDetails(@NotNull VirtualFile root, @NotNull List<String> hashes) throws VcsException;
 
+  /**
+   * Read metadata of the given commits from the VCS: everything but the changes, which are the most expensive part of full details.
+   */
+  @NotNull
+  List<? extends VcsCommitMetadata> readMetadata(@NotNull VirtualFile root, @NotNull List<String> hashes) throws VcsException;
+
   /**
    * Read full details of the given commits from the VCS.
    */
@@ -1,7 +1,9 @@
 package com.intellij.vcs.log.printmodel.impl;
 
+import com.intellij.util.containers.SLRUCache;
 import com.intellij.vcs.log.compressedlist.UpdateRequest;
 import com.intellij.vcs.log.graph.Graph;
+import com.intellij.vcs.log.graph.elements.GraphElement;
 import com.intellij.vcs.log.printmodel.*;
 import com.intellij.vcs.log.printmodel.layout.LayoutModel;
 import org.jetbrains.annotations.NotNull;
@@ -9,33 +11,67 @@ import org.jetbrains.annotations.NotNull;
 import java.util.List;
 
 /**
+ * Print cells are built on demand for the requested row only. The visible elements of a row are cached, so that painting
+ * the viewport (where each row needs its own elements and the elements of its neighbours) and scrolling back and forth
+ * don't regenerate layout rows again and again. The cache is dropped whenever the layout or the long edges mode changes.
+ *
  * @author erokhins
  */
 public class GraphPrintCellModelImpl implements GraphPrintCellModel {
+  private static final int VISIBLE_ROWS_CACHE_SIZE = 200;
+
   private final LayoutModel layoutModel;
   private final SelectController selectController;
   private boolean hideLongEdges = HIDE_LONG_EDGES_DEFAULT;
   private final CommitSelectController commitSelectController;
+  private final GraphElementsVisibilityController visibilityController;
+
+  private final SLRUCache<Integer, List<GraphElement>> visibleElementsCache =
+    new SLRUCache<Integer, List<GraphElement>>(VISIBLE_ROWS_CACHE_SIZE, VISIBLE_ROWS_CACHE_SIZE) {
+      @NotNull
+      @Override
+      public List<GraphElement> createValue(Integer rowIndex) {
+        return visibilityController.visibleElements(rowIndex);
+      }
+    };
 
   public GraphPrintCellModelImpl(Graph graph) {
     this.layoutModel = new LayoutModel(graph);
     this.selectController = new SelectController();
     this.commitSelectController = new CommitSelectController();
+    this.visibilityController = new GraphElementsVisibilityController(hideLongEdges, layoutModel);
+  }
+
+  @NotNull
+  private List<GraphElement> getVisibleElements(int rowIndex) {
+    return visibleElementsCache.get(rowIndex);
+  }
+
+  @NotNull
+  private PrePrintCellModel createPrePrintCellModel(int rowIndex) {
+    return new PrePrintCellModel(visibilityController, rowIndex, getVisibleElements(rowIndex), getVisibleElements(rowIndex + 1),
+                                 selectController, commitSelectController);
   }
 
   private List<ShortEdge> getUpEdges(int rowIndex) {
-    PrePrintCellModel prevPreModel = new PrePrintCellModel(hideLongEdges, layoutModel, rowIndex - 1, selectController,
-                                                           commitSelectController);
-    return prevPreModel.downShortEdges();
+    return createPrePrintCellModel(rowIndex - 1).downShortEdges();
   }
 
   public void recalculate(@NotNull UpdateRequest updateRequest) {
+    if (updateRequest == UpdateRequest.ID_UpdateRequest) {
+      return;
+    }
     layoutModel.recalculate(updateRequest);
+    visibleElementsCache.clear();
   }
 
   @Override
   public void setLongEdgeVisibility(boolean visibility) {
-    hideLongEdges = !visibility;
+    if (hideLongEdges != !visibility) {
+      hideLongEdges = !visibility;
+      visibilityController.setHideLongEdge(hideLongEdges);
+      visibleElementsCache.clear();
+    }
   }
 
   @Override
@@ -55,8 +91,7 @@ public class GraphPrintCellModelImpl implements GraphPrintCellModel {
 
   @NotNull
   public GraphPrintCell getGraphPrintCell(final int rowIndex) {
-    final PrePrintCellModel prePrintCellModel = new PrePrintCellModel(hideLongEdges, layoutModel, rowIndex, selectController,
-                                                                      commitSelectController);
+    final PrePrintCellModel prePrintCellModel = createPrePrintCellModel(rowIndex);
 
     return new GraphPrintCell() {
       @Override
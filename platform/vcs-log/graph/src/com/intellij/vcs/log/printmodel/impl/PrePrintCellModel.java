@@ -7,7 +7,6 @@ import com.intellij.vcs.log.printmodel.CommitSelectController;
 import com.intellij.vcs.log.printmodel.SelectController;
 import com.intellij.vcs.log.printmodel.ShortEdge;
 import com.intellij.vcs.log.printmodel.SpecialPrintElement;
-import com.intellij.vcs.log.printmodel.layout.LayoutModel;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
@@ -17,27 +16,24 @@ import java.util.*;
  */
 class PrePrintCellModel {
   private final GraphElementsVisibilityController visibilityController;
-  private List<GraphElement> visibleElementsInThisRow;
+  private final List<GraphElement> visibleElementsInThisRow;
+  private final List<GraphElement> visibleElementsInNextRow;
   private final int rowIndex;
   private final SelectController selectController;
   private final CommitSelectController commitSelectController;
 
-  public PrePrintCellModel(boolean hideLongEdge,
-                           @NotNull LayoutModel layoutModel,
+  public PrePrintCellModel(@NotNull GraphElementsVisibilityController visibilityController,
                            int rowIndex,
-                           @NotNull SelectController selectController, CommitSelectController commitSelectController) {
-    this.commitSelectController = commitSelectController;
-    visibilityController = new GraphElementsVisibilityController(hideLongEdge, layoutModel);
+                           @NotNull List<GraphElement> visibleElementsInThisRow,
+                           @NotNull List<GraphElement> visibleElementsInNextRow,
+                           @NotNull SelectController selectController,
+                           @NotNull CommitSelectController commitSelectController) {
+    this.visibilityController = visibilityController;
     this.rowIndex = rowIndex;
+    this.visibleElementsInThisRow = visibleElementsInThisRow;
+    this.visibleElementsInNextRow = visibleElementsInNextRow;
     this.selectController = selectController;
-    visibleElementsInThisRow = visibilityController.visibleElements(rowIndex);
-  }
-
-  public PrePrintCellModel(@NotNull LayoutModel layoutModel,
-                           int rowIndex,
-                           @NotNull SelectController selectController,
-                           CommitSelectController commitSelectController) {
-    this(true, layoutModel, rowIndex, selectController, commitSelectController);
+    this.commitSelectController = commitSelectController;
   }
 
   public int getCountCells() {
@@ -102,7 +98,7 @@ class PrePrintCellModel {
 
   @NotNull
   public List<ShortEdge> downShortEdges() {
-    GetterGraphElementPosition getter = new GetterGraphElementPosition(visibilityController.visibleElements(rowIndex + 1));
+    GetterGraphElementPosition getter = new GetterGraphElementPosition(visibleElementsInNextRow);
 
     List<ShortEdge> shortEdges = new ArrayList<ShortEdge>();
     // start with add shortEdges from Node
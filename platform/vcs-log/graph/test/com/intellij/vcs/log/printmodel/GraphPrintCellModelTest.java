@@ -0,0 +1,76 @@
+package com.intellij.vcs.log.printmodel;
+
+import com.intellij.vcs.log.VcsCommit;
+import com.intellij.vcs.log.VcsRef;
+import com.intellij.vcs.log.graph.Graph;
+import com.intellij.vcs.log.graph.GraphTestUtils;
+import com.intellij.vcs.log.parser.SimpleCommitListParser;
+import com.intellij.vcs.log.printmodel.impl.GraphPrintCellModelImpl;
+import com.intellij.vcs.log.printmodel.layout.LayoutModel;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+
+public class GraphPrintCellModelTest {
+  private static final String LOG = "a0|-a3 a1\n" +
+                                    "a1|-a2 a4\n" +
+                                    "a2|-a3 a5 a8\n" +
+                                    "a3|-a6\n" +
+                                    "a4|-a7\n" +
+                                    "a5|-a7\n" +
+                                    "a6|-a7\n" +
+                                    "a7|-\n" +
+                                    "a8|-";
+
+  private static Graph buildGraph() throws IOException {
+    List<VcsCommit> commits = new SimpleCommitListParser(new StringReader(LOG)).readAllCommits();
+    return GraphTestUtils.buildGraph(commits, Collections.<VcsRef>emptyList());
+  }
+
+  private static String toStr(GraphPrintCellModel model, int rowCount) {
+    StringBuilder s = new StringBuilder();
+    for (int row = 0; row < rowCount; row++) {
+      GraphPrintCell cell = model.getGraphPrintCell(row);
+      s.append(cell.countCell()).append(" ").append(cell.getUpEdges().size()).append(" ").append(cell.getDownEdges().size()).append("\n");
+    }
+    return s.toString();
+  }
+
+  @Test
+  public void cellsMatchLayout() throws IOException {
+    Graph graph = buildGraph();
+    LayoutModel layoutModel = new LayoutModel(graph);
+    GraphPrintCellModelImpl model = new GraphPrintCellModelImpl(graph);
+    model.setLongEdgeVisibility(true);
+
+    int rowCount = graph.getNodeRows().size();
+    for (int row = 0; row < rowCount; row++) {
+      GraphPrintCell cell = model.getGraphPrintCell(row);
+      assertEquals(layoutModel.getLayoutRows().get(row).getOrderedGraphElements().size(), cell.countCell());
+      if (row > 0) {
+        assertEquals(model.getGraphPrintCell(row - 1).getDownEdges().size(), cell.getUpEdges().size());
+      }
+    }
+  }
+
+  @Test
+  public void cachedCellsFollowLongEdgesMode() throws IOException {
+    Graph graph = buildGraph();
+    int rowCount = graph.getNodeRows().size();
+    GraphPrintCellModelImpl model = new GraphPrintCellModelImpl(graph);
+    GraphPrintCellModelImpl freshModel = new GraphPrintCellModelImpl(graph);
+
+    String initial = toStr(model, rowCount);
+    model.setLongEdgeVisibility(model.areLongEdgesHidden());
+    freshModel.setLongEdgeVisibility(freshModel.areLongEdgesHidden());
+    assertEquals(toStr(freshModel, rowCount), toStr(model, rowCount));
+
+    model.setLongEdgeVisibility(model.areLongEdgesHidden());
+    assertEquals(initial, toStr(model, rowCount));
+  }
+}
@@ -24,7 +24,13 @@ public class CommitDetailsGetter extends DataGetter<VcsFullCommitDetails> {
   @Override
   protected List<? extends VcsFullCommitDetails> readDetails(@NotNull VcsLogProvider logProvider, @NotNull VirtualFile root,
                                                          @NotNull List<String> hashes) throws VcsException {
-    return logProvider.readFullDetails(root, hashes);
+    List<? extends VcsFullCommitDetails> details = logProvider.readFullDetails(root, hashes);
+    myDataHolder.indexDetails(details);
+    VcsCommitDetailsStorage storage = myDataHolder.getDetailsStorage();
+    if (storage != null) {
+      storage.put(details);
+    }
+    return details;
   }
 
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log.data;
+
+import com.intellij.vcs.log.TimedVcsCommit;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * <p>The log of all roots {@link VcsLogMultiRepoJoiner joined} together.</p>
+ *
+ * <p>It doesn't copy commits of the roots' logs, but references them by the root number and the position counted from the oldest commit:
+ *    such a position doesn't change when new commits are attached to the top of the log of the root.
+ *    This allows to {@link #update(List, int[]) update} the compound log after a refresh by joining only the changed top parts
+ *    of the roots' logs instead of the whole logs.</p>
+ */
+class CompoundLog extends AbstractList<TimedVcsCommit> implements RandomAccess {
+
+  @NotNull private final List<List<TimedVcsCommit>> myLogs;
+  // both arrays are ordered from the oldest commit to the newest one
+  @NotNull private final int[] myRoots;
+  @NotNull private final int[] myPositions;
+
+  private CompoundLog(@NotNull List<List<TimedVcsCommit>> logs, @NotNull int[] roots, @NotNull int[] positions) {
+    myLogs = logs;
+    myRoots = roots;
+    myPositions = positions;
+  }
+
+  /**
+   * Joins the given logs of all roots.
+   */
+  @NotNull
+  static CompoundLog join(@NotNull VcsLogMultiRepoJoiner joiner, @NotNull List<List<TimedVcsCommit>> logs) {
+    return join(joiner, logs, new int[0], new int[0], new int[logs.size()]);
+  }
+
+  /**
+   * Creates the compound log of the given new logs of the same roots.
+   *
+   * @param newLogs     new logs of the roots, in the same order as the logs this compound log was built from.
+   * @param keptCommits numbers of the oldest commits of each root which are the same in the old and in the new log.
+   */
+  @NotNull
+  CompoundLog update(@NotNull VcsLogMultiRepoJoiner joiner, @NotNull List<List<TimedVcsCommit>> newLogs, @NotNull int[] keptCommits) {
+    int[] counts = new int[newLogs.size()];
+    int reused = 0;
+    while (reused < myRoots.length && counts[myRoots[reused]] < keptCommits[myRoots[reused]]) {
+      counts[myRoots[reused]]++;
+      reused++;
+    }
+
+    // new commits must not be placed below older reused ones, otherwise the compound log wouldn't be ordered by time
+    long minNewTime = Long.MAX_VALUE;
+    for (int i = 0; i < newLogs.size(); i++) {
+      List<TimedVcsCommit> log = newLogs.get(i);
+      for (int j = 0; j < log.size() - counts[i]; j++) {
+        minNewTime = Math.min(minNewTime, log.get(j).getAuthorTime());
+      }
+    }
+    while (reused > 0 && getCommit(reused - 1).getAuthorTime() > minNewTime) {
+      reused--;
+      counts[myRoots[reused]]--;
+    }
+
+    int[] roots = new int[reused];
+    int[] positions = new int[reused];
+    System.arraycopy(myRoots, 0, roots, 0, reused);
+    System.arraycopy(myPositions, 0, positions, 0, reused);
+    return join(joiner, newLogs, roots, positions, counts);
+  }
+
+  /**
+   * Joins the commits of the given logs which are above {@code counts} oldest commits of each log, and puts the result on top of
+   * the already joined bottom part.
+   */
+  @NotNull
+  private static CompoundLog join(@NotNull VcsLogMultiRepoJoiner joiner, @NotNull List<List<TimedVcsCommit>> logs,
+                                  @NotNull int[] bottomRoots, @NotNull int[] bottomPositions, @NotNull int[] counts) {
+    List<List<TimedVcsCommit>> tops = new ArrayList<List<TimedVcsCommit>>(logs.size());
+    for (int i = 0; i < logs.size(); i++) {
+      List<TimedVcsCommit> log = logs.get(i);
+      tops.add(log.subList(0, log.size() - counts[i]));
+    }
+    int[] sources = joiner.joinSources(tops);
+
+    int size = bottomRoots.length + sources.length;
+    int[] roots = new int[size];
+    int[] positions = new int[size];
+    System.arraycopy(bottomRoots, 0, roots, 0, bottomRoots.length);
+    System.arraycopy(bottomPositions, 0, positions, 0, bottomPositions.length);
+    for (int i = 0; i < sources.length; i++) {
+      int root = sources[sources.length - 1 - i];
+      roots[bottomRoots.length + i] = root;
+      positions[bottomRoots.length + i] = counts[root]++;
+    }
+    return new CompoundLog(logs, roots, positions);
+  }
+
+  @Override
+  public TimedVcsCommit get(int index) {
+    return getCommit(myRoots.length - 1 - index);
+  }
+
+  @NotNull
+  private TimedVcsCommit getCommit(int oldestFirstIndex) {
+    List<TimedVcsCommit> log = myLogs.get(myRoots[oldestFirstIndex]);
+    return log.get(log.size() - 1 - myPositions[oldestFirstIndex]);
+  }
+
+  @Override
+  public int size() {
+    return myRoots.length;
+  }
+}
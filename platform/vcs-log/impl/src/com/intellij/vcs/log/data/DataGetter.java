@@ -28,7 +28,9 @@ import java.util.Map;
  * <ul>
  *   <li>it tries to get it from the cache;</li>
  *   <li>if it fails, it tries to get it from the VCS, and additionally loads several commits around the requested one,
- *       to avoid querying the VCS if user investigates details of nearby commits.</li>
+ *       to avoid querying the VCS if user investigates details of nearby commits.
+ *       If the user scrolls, more commits are loaded ahead in the scroll direction, and commits which are already cached
+ *       are not requested again, so fast scrolling produces few larger queries instead of many small ones.</li>
  *   <li>The loading happens asynchronously: a fake {@link LoadingDetails} object is returned </li>
  * </ul>
  *
@@ -38,6 +40,8 @@ public abstract class DataGetter<T extends VcsShortCommitDetails> implements Dis
 
   private static final int UP_PRELOAD_COUNT = 20;
   private static final int DOWN_PRELOAD_COUNT = 40;
+  private static final int READ_AHEAD_COUNT = 100;
+  private static final int READ_BEHIND_COUNT = 10;
   private static final int MAX_LOADING_TASKS = 10;
 
   @NotNull protected final VcsLogDataHolder myDataHolder;
@@ -49,6 +53,11 @@ public abstract class DataGetter<T extends VcsShortCommitDetails> implements Dis
    */
   private long myCurrentTaskIndex = 0;
 
+  /**
+   * The row of the last commit which details were requested to be loaded; used to detect the scroll direction.
+   */
+  private int myLastRequestedRow = -1;
+
   @NotNull private final QueueProcessor<TaskDescriptor> myLoader = new QueueProcessor<TaskDescriptor>(new DetailsLoadingTask());
   @NotNull private final Collection<Runnable> myLoadingFinishedListeners = new ArrayList<Runnable>();
 
@@ -134,17 +143,33 @@ public abstract class DataGetter<T extends VcsShortCommitDetails> implements Dis
   @NotNull 
   private TaskDescriptor runLoadAroundCommitData(@NotNull Node node) {
     int rowIndex = node.getRowIndex();
+    int upCount = UP_PRELOAD_COUNT;
+    int downCount = DOWN_PRELOAD_COUNT;
+    if (myLastRequestedRow >= 0 && rowIndex > myLastRequestedRow) {
+      upCount = READ_BEHIND_COUNT;
+      downCount = READ_AHEAD_COUNT;
+    }
+    else if (myLastRequestedRow >= 0 && rowIndex < myLastRequestedRow) {
+      upCount = READ_AHEAD_COUNT;
+      downCount = READ_BEHIND_COUNT;
+    }
+    myLastRequestedRow = rowIndex;
+
     List<Node> nodes = new ArrayList<Node>();
     long taskNumber = myCurrentTaskIndex++;
-    for (int i = rowIndex - UP_PRELOAD_COUNT; i < rowIndex + DOWN_PRELOAD_COUNT; i++) {
+    for (int i = rowIndex - upCount; i < rowIndex + downCount; i++) {
       Node commitNode = getCommitNodeInRow(i);
       if (commitNode != null) {
-        nodes.add(commitNode);
         Hash hash = commitNode.getCommitHash();
+        T cached = myCache.get(hash);
+        if (cached != null && !(cached instanceof LoadingDetails)) {
+          continue; // already loaded, no need to query it once more
+        }
+        nodes.add(commitNode);
 
         // fill the cache with temporary "Loading" values to avoid producing queries for each commit that has not been cached yet,
         // even if it will be loaded within a previous query
-        if (!myCache.isKeyCached(hash)) {
+        if (cached == null) {
           myCache.put(hash, (T)new LoadingDetails(hash, taskNumber, commitNode.getBranch().getRepositoryRoot()));
         }
       }
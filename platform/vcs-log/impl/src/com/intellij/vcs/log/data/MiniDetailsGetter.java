@@ -6,10 +6,12 @@ import com.intellij.vcs.log.VcsLogProvider;
 import com.intellij.vcs.log.VcsShortCommitDetails;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /**
+ * Reads short details of commits from the {@link VcsCommitDetailsStorage persistent cache} if possible,
+ * and queries the VCS only for commits which details were never read before.
+ *
  * @author Kirill Likhodedov
  */
 public class MiniDetailsGetter extends DataGetter<VcsShortCommitDetails> {
@@ -22,7 +24,29 @@ public class MiniDetailsGetter extends DataGetter<VcsShortCommitDetails> {
   @Override
   protected List<? extends VcsShortCommitDetails> readDetails(@NotNull VcsLogProvider logProvider, @NotNull VirtualFile root,
                                                   @NotNull List<String> hashes) throws VcsException {
-    return logProvider.readShortDetails(root, hashes);
+    VcsCommitDetailsStorage storage = myDataHolder.getDetailsStorage();
+    if (storage == null) {
+      return logProvider.readShortDetails(root, hashes);
+    }
+
+    List<VcsShortCommitDetails> result = storage.get(root, hashes);
+    if (result.size() == hashes.size()) {
+      return result;
+    }
+    Set<String> storedHashes = new HashSet<String>();
+    for (VcsShortCommitDetails details : result) {
+      storedHashes.add(details.getHash().asString());
+    }
+    List<String> notStoredHashes = new ArrayList<String>();
+    for (String hash : hashes) {
+      if (!storedHashes.contains(hash)) {
+        notStoredHashes.add(hash);
+      }
+    }
+    List<? extends VcsShortCommitDetails> details = logProvider.readShortDetails(root, notStoredHashes);
+    storage.put(details);
+    result.addAll(details);
+    return result;
   }
 
 }
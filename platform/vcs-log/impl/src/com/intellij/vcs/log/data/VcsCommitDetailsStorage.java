@@ -0,0 +1,173 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorIntegerDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.PersistentHashMap;
+import com.intellij.vcs.log.Hash;
+import com.intellij.vcs.log.VcsShortCommitDetails;
+import com.intellij.vcs.log.VcsUser;
+import com.intellij.vcs.log.impl.HashImpl;
+import com.intellij.vcs.log.impl.VcsShortCommitDetailsImpl;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>Persistent cache of {@link VcsShortCommitDetails short commit details} keyed by the {@link VcsLogHashMap commit index},
+ *    so that the details of once shown commits are not requested from the VCS again, even after restart.</p>
+ *
+ * <p>Commit details are immutable, so the cache is never invalidated: it is only dropped together with the log storage.</p>
+ */
+public class VcsCommitDetailsStorage implements Disposable {
+
+  private static final Logger LOG = Logger.getInstance(VcsCommitDetailsStorage.class);
+
+  @NotNull private final VcsLogHashMap myHashMap;
+  @NotNull private final VcsUserRegistry myUserRegistry;
+  @NotNull private final PersistentHashMap<Integer, DetailsRecord> myDetails;
+
+  public VcsCommitDetailsStorage(@NotNull File file, @NotNull VcsLogHashMap hashMap, @NotNull VcsUserRegistry userRegistry)
+    throws IOException {
+    myHashMap = hashMap;
+    myUserRegistry = userRegistry;
+    FileUtil.createParentDirs(file);
+    myDetails = new PersistentHashMap<Integer, DetailsRecord>(file, EnumeratorIntegerDescriptor.INSTANCE, new DetailsExternalizer());
+  }
+
+  /**
+   * Returns the stored details of the given commits which belong to the given root; commits which details are not stored are skipped.
+   */
+  @NotNull
+  public synchronized List<VcsShortCommitDetails> get(@NotNull VirtualFile root, @NotNull Collection<String> hashes) {
+    List<VcsShortCommitDetails> result = new ArrayList<VcsShortCommitDetails>();
+    try {
+      for (String hashString : hashes) {
+        Hash hash = HashImpl.build(hashString);
+        int index = myHashMap.findCommitIndex(hash);
+        DetailsRecord record = index == VcsLogHashMap.NO_INDEX ? null : myDetails.get(index);
+        if (record != null) {
+          result.add(createDetails(hash, root, record));
+        }
+      }
+    }
+    catch (IOException e) {
+      LOG.warn("Couldn't read the stored commit details", e);
+    }
+    return result;
+  }
+
+  public synchronized void put(@NotNull Collection<? extends VcsShortCommitDetails> details) {
+    try {
+      for (VcsShortCommitDetails detail : details) {
+        int[] parents = new int[detail.getParents().size()];
+        for (int i = 0; i < parents.length; i++) {
+          parents[i] = myHashMap.getCommitIndex(detail.getParents().get(i));
+        }
+        VcsUser author = detail.getAuthor();
+        myDetails.put(myHashMap.getCommitIndex(detail.getHash()),
+                      new DetailsRecord(parents, detail.getAuthorTime(), detail.getSubject(), author.getName(), author.getEmail()));
+      }
+    }
+    catch (IOException e) {
+      LOG.warn("Couldn't store commit details", e);
+    }
+  }
+
+  public synchronized void flush() {
+    myDetails.force();
+  }
+
+  @Override
+  public synchronized void dispose() {
+    flush();
+    try {
+      myDetails.close();
+    }
+    catch (IOException e) {
+      LOG.warn(e);
+    }
+  }
+
+  @NotNull
+  private VcsShortCommitDetails createDetails(@NotNull Hash hash, @NotNull VirtualFile root, @NotNull DetailsRecord record)
+    throws IOException {
+    List<Hash> parents = new ArrayList<Hash>(record.parents.length);
+    for (int parent : record.parents) {
+      parents.add(myHashMap.getHash(parent));
+    }
+    VcsUser author = myUserRegistry.createUser(record.authorName, record.authorEmail);
+    return new VcsShortCommitDetailsImpl(hash, parents, record.time, root, record.subject, author);
+  }
+
+  private static class DetailsRecord {
+    @NotNull private final int[] parents;
+    private final long time;
+    @NotNull private final String subject;
+    @NotNull private final String authorName;
+    @Nullable private final String authorEmail;
+
+    private DetailsRecord(@NotNull int[] parents, long time, @NotNull String subject, @NotNull String authorName,
+                          @Nullable String authorEmail) {
+      this.parents = parents;
+      this.time = time;
+      this.subject = subject;
+      this.authorName = authorName;
+      this.authorEmail = authorEmail;
+    }
+  }
+
+  private static class DetailsExternalizer implements DataExternalizer<DetailsRecord> {
+    @Override
+    public void save(DataOutput out, DetailsRecord value) throws IOException {
+      DataInputOutputUtil.writeINT(out, value.parents.length);
+      for (int parent : value.parents) {
+        DataInputOutputUtil.writeINT(out, parent);
+      }
+      out.writeLong(value.time);
+      IOUtil.writeString(value.subject, out);
+      IOUtil.writeString(value.authorName, out);
+      IOUtil.writeString(value.authorEmail, out);
+    }
+
+    @Override
+    public DetailsRecord read(DataInput in) throws IOException {
+      int[] parents = new int[DataInputOutputUtil.readINT(in)];
+      for (int i = 0; i < parents.length; i++) {
+        parents[i] = DataInputOutputUtil.readINT(in);
+      }
+      long time = in.readLong();
+      String subject = IOUtil.readString(in);
+      String authorName = IOUtil.readString(in);
+      String authorEmail = IOUtil.readString(in);
+      return new DetailsRecord(parents, time, subject, authorName, authorEmail);
+    }
+  }
+}
@@ -16,6 +16,7 @@
 package com.intellij.vcs.log.data;
 
 import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Attachment;
 import com.intellij.openapi.diagnostic.Logger;
@@ -23,8 +24,10 @@ import com.intellij.openapi.progress.BackgroundTaskQueue;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Condition;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.Consumer;
@@ -35,9 +38,12 @@ import com.intellij.util.containers.HashSet;
 import com.intellij.util.messages.Topic;
 import com.intellij.util.ui.UIUtil;
 import com.intellij.vcs.log.*;
+import gnu.trove.TIntHashSet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -59,7 +65,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
  *
  * <p><b>Initialization:</b><ul>
  *    <li>Initially the first part of the log is loaded and is shown to the user.</li>
- *    <li>Right after that, the whole log is loaded in the background. We need the whole log for two reasons:
+ *    <li>Right after that, the whole log is loaded in the background: the recent commits are attached to the log saved
+ *        in the {@link VcsLogStorage} in the previous session, or, if this is not possible, the whole log is read from the VCS.
+ *        We need the whole log for two reasons:
  *        we don't want to hang for a minute if user decides to go to an old commit or even scroll;
  *        we need the whole log to properly perform the optimized refresh procedure.</li>
  *    <li>Once the whole log information is loaded, we don't rebuild the graphical log, because users rarely need old commits while
@@ -84,7 +92,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
  *
  * @author Kirill Likhodedov
  */
-public class VcsLogDataHolder implements Disposable {
+public class VcsLogDataHolder implements Disposable.Parent {
 
   public static final Topic<Runnable> REFRESH_COMPLETED = Topic.create("Vcs.Log.Completed", Runnable.class);
 
@@ -103,9 +111,15 @@ public class VcsLogDataHolder implements Disposable {
    */
   public static final int MORE_DETAILS_LOADING_STEP_MULTIPLIER = 10;
 
+  /**
+   * Number of commits which details are read from the VCS at once for indexing or for showing filtered commits.
+   */
+  private static final int INDEXING_BATCH_SIZE = 200;
+
   @NotNull private final Project myProject;
   @NotNull private final VcsLogObjectsFactory myFactory;
   @NotNull private final Map<VirtualFile, VcsLogProvider> myLogProviders;
+  @NotNull private final List<VirtualFile> myRoots;
   @NotNull private final BackgroundTaskQueue myDataLoaderQueue;
   @NotNull private final MiniDetailsGetter myMiniDetailsGetter;
   @NotNull private final CommitDetailsGetter myDetailsGetter;
@@ -113,6 +127,26 @@ public class VcsLogDataHolder implements Disposable {
   @NotNull private final VcsLogMultiRepoJoiner myMultiRepoJoiner;
   @NotNull private final VcsLogSettings mySettings;
 
+  /**
+   * Persistent storage of the whole log structure; null if it couldn't be opened.
+   */
+  @Nullable private final VcsLogStorage myLogStorage;
+
+  /**
+   * Index of commit metadata used to filter the log without querying the VCS; null if it couldn't be opened.
+   */
+  @Nullable private final VcsLogIndex myIndex;
+
+  /**
+   * Persistent cache of short details of commits once read from the VCS; null if it couldn't be opened.
+   */
+  @Nullable private final VcsCommitDetailsStorage myDetailsStorage;
+
+  /**
+   * Checks if commits are being indexed in the background to avoid starting several indexing processes.
+   */
+  private final AtomicBoolean myIndexingInProgress = new AtomicBoolean(false);
+
   /**
    * Current user name, as specified in the VCS settings.
    * It can be configured differently for different roots => store in a map.
@@ -160,6 +194,7 @@ public class VcsLogDataHolder implements Disposable {
                           @NotNull Map<VirtualFile, VcsLogProvider> logProviders, @NotNull VcsLogSettings settings) {
     myProject = project;
     myLogProviders = logProviders;
+    myRoots = new ArrayList<VirtualFile>(logProviders.keySet());
     myDataLoaderQueue = new BackgroundTaskQueue(project, "Loading history...");
     myMiniDetailsGetter = new MiniDetailsGetter(this, logProviders);
     myDetailsGetter = new CommitDetailsGetter(this, logProviders);
@@ -168,6 +203,76 @@ public class VcsLogDataHolder implements Disposable {
     myFactory = ServiceManager.getService(myProject, VcsLogObjectsFactory.class);
     mySettings = settings;
     myUserRegistry = new VcsUserRegistry();
+    myLogStorage = createLogStorage(project);
+    if (myLogStorage != null) {
+      Disposer.register(this, myLogStorage);
+    }
+    myIndex = myLogStorage == null ? null : createIndex(project, myLogStorage);
+    if (myIndex != null) {
+      Disposer.register(this, myIndex);
+    }
+    myDetailsStorage = myLogStorage == null ? null : createDetailsStorage(project, myLogStorage, myUserRegistry);
+    if (myDetailsStorage != null) {
+      Disposer.register(this, myDetailsStorage);
+    }
+  }
+
+  @Nullable
+  private static VcsLogStorage createLogStorage(@NotNull Project project) {
+    File storageDir = VcsLogStorage.getStorageDir(project);
+    try {
+      return new VcsLogStorage(storageDir);
+    }
+    catch (IOException e) {
+      LOG.info("Couldn't open the log storage, recreating it", e);
+      FileUtil.delete(storageDir);
+      try {
+        return new VcsLogStorage(storageDir);
+      }
+      catch (IOException e1) {
+        LOG.warn("Couldn't open the log storage, the log will be read from the VCS each time", e1);
+        return null;
+      }
+    }
+  }
+
+  @Nullable
+  private static VcsLogIndex createIndex(@NotNull Project project, @NotNull VcsLogStorage logStorage) {
+    File indexDir = new File(VcsLogStorage.getStorageDir(project), "index");
+    try {
+      return new VcsLogIndex(indexDir, logStorage.getHashMap());
+    }
+    catch (IOException e) {
+      LOG.info("Couldn't open the log index, recreating it", e);
+      FileUtil.delete(indexDir);
+      try {
+        return new VcsLogIndex(indexDir, logStorage.getHashMap());
+      }
+      catch (IOException e1) {
+        LOG.warn("Couldn't open the log index, filters will be applied by the VCS", e1);
+        return null;
+      }
+    }
+  }
+
+  @Nullable
+  private static VcsCommitDetailsStorage createDetailsStorage(@NotNull Project project, @NotNull VcsLogStorage logStorage,
+                                                              @NotNull VcsUserRegistry userRegistry) {
+    File detailsFile = new File(new File(VcsLogStorage.getStorageDir(project), "details"), "short-details");
+    try {
+      return new VcsCommitDetailsStorage(detailsFile, logStorage.getHashMap(), userRegistry);
+    }
+    catch (IOException e) {
+      LOG.info("Couldn't open the commit details cache, recreating it", e);
+      FileUtil.delete(detailsFile.getParentFile());
+      try {
+        return new VcsCommitDetailsStorage(detailsFile, logStorage.getHashMap(), userRegistry);
+      }
+      catch (IOException e1) {
+        LOG.warn("Couldn't open the commit details cache, details will be read from the VCS each time", e1);
+        return null;
+      }
+    }
   }
 
   public void initialize(@NotNull final Consumer<VcsLogDataHolder> onInitialized) {
@@ -239,18 +344,33 @@ public class VcsLogDataHolder implements Disposable {
               myUserRegistry.addUser(user);
             }
           };
+          if (myLogStorage != null) {
+            myLogStorage.loadUsers(myUserRegistry);
+          }
           Map<VirtualFile, List<TimedVcsCommit>> logs = ContainerUtil.newHashMap();
           Map<VirtualFile, Collection<VcsRef>> refs = ContainerUtil.newHashMap();
           for (Map.Entry<VirtualFile, VcsLogProvider> entry : myLogProviders.entrySet()) {
             VirtualFile root = entry.getKey();
             VcsLogProvider logProvider = entry.getValue();
-            logs.put(root, logProvider.readAllHashes(root, userRegistry));
-            refs.put(root, logProvider.readAllRefs(root));
+            List<TimedVcsCommit> restoredLog = restoreSavedLog(root);
+            if (restoredLog != null) {
+              logs.put(root, restoredLog);
+              refs.put(root, myLogData.getRefs(root));
+            }
+            else {
+              List<TimedVcsCommit> log = logProvider.readAllHashes(root, userRegistry);
+              Collection<VcsRef> rootRefs = logProvider.readAllRefs(root);
+              logs.put(root, saveLog(root, null, log, rootRefs));
+              refs.put(root, rootRefs);
+            }
           }
+          saveUsers();
+          flushStorages();
           DataPack existingDataPack = myLogData.getDataPack();
           // keep existing data pack: we don't want to rebuild the graph,
           // we just make the whole log structure available for our cunning refresh procedure of if user requests the whole graph
-          myLogData = new LogData(logs, refs, myLogData.getTopCommits(), existingDataPack, true);
+          myLogData = new LogData(logs, refs, null, myLogData.getTopCommits(), existingDataPack, true);
+          startIndexing();
         }
         finally {
           myEntireLogLoadWaiter.countDown();
@@ -259,6 +379,148 @@ public class VcsLogDataHolder implements Disposable {
     }, "Loading log structure...");
   }
 
+  /**
+   * Attaches the recent commits which have been just read from the VCS to the log saved in the previous session.
+   * Returns null if there is no saved log, or if the recent commits can't be attached to it (e.g. if too many commits were made since
+   * the log was saved): in that case the whole log should be read from the VCS.
+   */
+  @Nullable
+  private List<TimedVcsCommit> restoreSavedLog(@NotNull VirtualFile root) {
+    if (myLogStorage == null) {
+      return null;
+    }
+    Pair<List<TimedVcsCommit>, Set<Hash>> savedLog = myLogStorage.load(root);
+    if (savedLog == null) {
+      return null;
+    }
+    Collection<VcsRef> refs = myLogData.getRefs(root);
+    try {
+      List<TimedVcsCommit> log = myLogJoiner.addCommits(savedLog.first, savedLog.second, myLogData.getLog(root), refs).getFirst();
+      return saveLog(root, savedLog.first, log, refs);
+    }
+    catch (IllegalStateException e) {
+      LOG.info("Couldn't attach recent commits to the saved log of " + root, e);
+      return null;
+    }
+  }
+
+  /**
+   * Saves the log of the given root to the persistent storage, and returns its compact representation to be kept in memory instead.
+   * If the log can't be saved, it is returned as is.
+   */
+  @NotNull
+  private List<TimedVcsCommit> saveLog(@NotNull VirtualFile root, @Nullable List<TimedVcsCommit> previousLog,
+                                       @NotNull List<TimedVcsCommit> log, @NotNull Collection<VcsRef> refs) {
+    if (myLogStorage == null) {
+      return log;
+    }
+    try {
+      return previousLog == null ? myLogStorage.save(root, log, refs) : myLogStorage.update(root, previousLog, log, refs);
+    }
+    catch (IOException e) {
+      LOG.warn("Couldn't save the log of " + root, e);
+      return log;
+    }
+  }
+
+  /**
+   * Indexes commits of the whole log which have not been indexed yet. Details are read from the VCS in batches in a pooled thread,
+   * so that the log loading queue is not blocked.
+   */
+  private void startIndexing() {
+    if (myIndex == null || myLogStorage == null || !myIndexingInProgress.compareAndSet(false, true)) {
+      return;
+    }
+    final Map<VirtualFile, List<TimedVcsCommit>> logs = myLogData.getLogs();
+    ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          for (Map.Entry<VirtualFile, List<TimedVcsCommit>> entry : logs.entrySet()) {
+            if (!indexRoot(entry.getKey(), entry.getValue())) {
+              return;
+            }
+          }
+        }
+        finally {
+          myIndexingInProgress.set(false);
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns false if indexing was interrupted.
+   */
+  private boolean indexRoot(@NotNull VirtualFile root, @NotNull List<TimedVcsCommit> log) {
+    int[] commits = VcsLogStorage.getCommitIndices(log);
+    if (commits == null || myIndex == null || myLogStorage == null) {
+      return true;
+    }
+    VcsLogProvider logProvider = myLogProviders.get(root);
+    List<String> batch = new ArrayList<String>(INDEXING_BATCH_SIZE);
+    try {
+      for (int i = 0; i <= commits.length; i++) {
+        if (i < commits.length && !myIndex.isIndexed(commits[i])) {
+          batch.add(myLogStorage.getHashMap().getHash(commits[i]).asString());
+        }
+        if (batch.size() == INDEXING_BATCH_SIZE || i == commits.length && !batch.isEmpty()) {
+          if (Disposer.isDisposed(this)) {
+            return false;
+          }
+          myIndex.index(logProvider.readMetadata(root, batch));
+          batch.clear();
+        }
+      }
+      myIndex.flush();
+      return true;
+    }
+    catch (VcsException e) {
+      LOG.info("Couldn't index commits of " + root, e);
+      return false;
+    }
+    catch (IOException e) {
+      LOG.warn("Couldn't index commits of " + root, e);
+      return false;
+    }
+  }
+
+  void indexDetails(@NotNull List<? extends VcsCommitMetadata> details) {
+    if (myIndex != null) {
+      try {
+        myIndex.index(details);
+      }
+      catch (IOException e) {
+        LOG.warn("Couldn't index commit details", e);
+      }
+    }
+  }
+
+  /**
+   * Returns the persistent cache of commit details, or null if it is not available.
+   */
+  @Nullable
+  VcsCommitDetailsStorage getDetailsStorage() {
+    return myDetailsStorage;
+  }
+
+  private void saveUsers() {
+    if (myLogStorage != null) {
+      try {
+        myLogStorage.saveUsers(myUserRegistry.getUsers());
+      }
+      catch (IOException e) {
+        LOG.warn("Couldn't save users", e);
+      }
+    }
+  }
+
+  private void flushStorages() {
+    if (myDetailsStorage != null) {
+      myDetailsStorage.flush();
+    }
+  }
+
   /**
    * Show the full log tree to the user.
    * Initially only the top part of the log is shown to avoid memory and performance problems.
@@ -290,9 +552,9 @@ public class VcsLogDataHolder implements Disposable {
 //          throw new RuntimeException(e);
 //        }
 
-        List<TimedVcsCommit> compoundLog = myMultiRepoJoiner.join(myLogData.myLogsByRoot.values());
+        CompoundLog compoundLog = joinLogs(myLogData, myLogData.getLogs());
         DataPack fullDataPack = DataPack.build(compoundLog, myLogData.getAllRefs(), indicator);
-        myLogData = new LogData(myLogData.getLogs(), myLogData.getRefs(), myLogData.getTopCommits(), fullDataPack, true);
+        myLogData = new LogData(myLogData.getLogs(), myLogData.getRefs(), compoundLog, myLogData.getTopCommits(), fullDataPack, true);
         myFullLogShowing = true;
         invokeAndWait(new Runnable() {
           @Override
@@ -324,7 +586,7 @@ public class VcsLogDataHolder implements Disposable {
 
       Pair<List<TimedVcsCommit>, Integer> joinResult = myLogJoiner.addCommits(myLogData.getLog(root), myLogData.getRefs(root),
                                                                               info.firstBlockCommits, info.newRefs);
-      List<TimedVcsCommit> refreshedLog = joinResult.getFirst();
+      List<TimedVcsCommit> refreshedLog = saveLog(root, myLogData.getLog(root), joinResult.getFirst(), info.newRefs);
       int newCommitsCount = joinResult.getSecond();
       // the value can significantly increase if user keeps IDEA open for a long time, and frequently receives many new commits,
       // but it is expected: we can work with long logs. A limit can be added in future if this becomes a problem.
@@ -334,13 +596,13 @@ public class VcsLogDataHolder implements Disposable {
       refsByRoot.put(root, info.newRefs);
     }
 
-    List<TimedVcsCommit> compoundLog = myMultiRepoJoiner.join(logsToBuild.values());
+    CompoundLog compoundLog = joinLogs(myLogData, logsToBuild);
     List<TimedVcsCommit> topPartOfTheLog = compoundLog.subList(0, topCommitCount);
 
     List<TimedVcsCommit> logToBuild = myFullLogShowing ? compoundLog : topPartOfTheLog; // keep looking at the full log after refresh
     DataPack dataPack = DataPack.build(logToBuild, collectAllRefs(refsByRoot), indicator);
 
-    myLogData = new LogData(logsToBuild, refsByRoot, topPartOfTheLog, dataPack, true);
+    myLogData = new LogData(logsToBuild, refsByRoot, compoundLog, topPartOfTheLog, dataPack, true);
 
     handleOnSuccessInEdt(onSuccess, dataPack);
   }
@@ -377,16 +639,37 @@ public class VcsLogDataHolder implements Disposable {
 
     if (myLogData != null && myLogData.isFullLogReady()) {
       // reuse the skeleton, since it didn't change, because it is not a refresh
-      myLogData = new LogData(myLogData.getLogs(), myLogData.getRefs(), compoundLog, dataPack, true);
+      myLogData = new LogData(myLogData.getLogs(), myLogData.getRefs(), myLogData.getCompoundLog(), compoundLog, dataPack, true);
     }
     else {
       // full skeleton was not retrieved yet => use commits that we've got from the VCS
-      myLogData = new LogData(logsToBuild, refsByRoot, compoundLog, dataPack, false);
+      myLogData = new LogData(logsToBuild, refsByRoot, null, compoundLog, dataPack, false);
     }
 
     handleOnSuccessInEdt(onSuccess, dataPack);
   }
 
+  /**
+   * Joins the logs of all roots. If the compound log of the previous log data is available,
+   * only the parts of the logs which have changed since then are joined.
+   */
+  @NotNull
+  private CompoundLog joinLogs(@Nullable LogData previousData, @NotNull Map<VirtualFile, List<TimedVcsCommit>> logsByRoot) {
+    List<List<TimedVcsCommit>> logs = new ArrayList<List<TimedVcsCommit>>(myRoots.size());
+    for (VirtualFile root : myRoots) {
+      logs.add(logsByRoot.get(root));
+    }
+    CompoundLog previousLog = previousData == null ? null : previousData.getCompoundLog();
+    if (previousLog == null) {
+      return CompoundLog.join(myMultiRepoJoiner, logs);
+    }
+    int[] keptCommits = new int[myRoots.size()];
+    for (int i = 0; i < myRoots.size(); i++) {
+      keptCommits[i] = VcsLogStorage.getCommonOldestCommitsCount(previousData.getLog(myRoots.get(i)), logs.get(i));
+    }
+    return previousLog.update(myMultiRepoJoiner, logs, keptCommits);
+  }
+
   private Set<Map.Entry<VirtualFile, RecentCommitsInfo>> collectInfoFromVcs(boolean ordered, int commitsCount) throws VcsException {
     Map<VirtualFile, RecentCommitsInfo> infoByRoot = ContainerUtil.newHashMap();
     for (Map.Entry<VirtualFile, VcsLogProvider> entry : myLogProviders.entrySet()) {
@@ -397,6 +680,7 @@ public class VcsLogDataHolder implements Disposable {
       Collection<VcsRef> newRefs = logProvider.readAllRefs(root);
       storeTopCommitsDetailsInCache(firstBlockDetails);
       storeUsers(firstBlockDetails);
+      indexDetails(firstBlockDetails);
       List<TimedVcsCommit> firstBlockCommits = getCommitsFromDetails(firstBlockDetails);
 
       infoByRoot.put(root, new RecentCommitsInfo(firstBlockCommits, newRefs));
@@ -424,7 +708,11 @@ public class VcsLogDataHolder implements Disposable {
         Collection<List<TimedVcsCommit>> logs = ContainerUtil.newArrayList();
         final Map<Hash, VcsFullCommitDetails> allDetails = ContainerUtil.newHashMap();
         for (Map.Entry<VirtualFile, VcsLogProvider> entry : myLogProviders.entrySet()) {
-          List<? extends VcsFullCommitDetails> details = entry.getValue().getFilteredDetails(entry.getKey(), filters);
+          List<? extends VcsFullCommitDetails> details = filterWithIndex(entry.getKey(), filters);
+          if (details == null) { // the index is not ready yet, or can't handle these filters
+            details = entry.getValue().getFilteredDetails(entry.getKey(), filters);
+            indexDetails(details);
+          }
           logs.add(getCommitsFromDetails(details));
           for (VcsFullCommitDetails detail : details) {
             allDetails.put(detail.getHash(), detail);
@@ -464,6 +752,98 @@ public class VcsLogDataHolder implements Disposable {
     }, "Looking for more results...");
   }
 
+  /**
+   * Finds commits of the given root matching the given filters with the help of the index,
+   * checks the found candidates against their metadata, and reads full details only of the commits which actually match
+   * (and are not cached).
+   * Returns null if the filters can't be applied by the index, or if not all commits of the root have been indexed yet.
+   */
+  @Nullable
+  private List<VcsFullCommitDetails> filterWithIndex(@NotNull VirtualFile root,
+                                                     @NotNull final Collection<VcsLogFilter> filters) throws VcsException {
+    LogData logData = myLogData;
+    if (myIndex == null || myLogStorage == null || !logData.isFullLogReady()) {
+      return null;
+    }
+    int[] commits = VcsLogStorage.getCommitIndices(logData.getLog(root));
+    if (commits == null) {
+      return null;
+    }
+
+    List<Hash> hashes = ContainerUtil.newArrayList();
+    try {
+      TIntHashSet candidates = myIndex.filter(root, myUserRegistry.getUsers(), filters);
+      if (candidates == null || !myIndex.isIndexed(commits)) {
+        return null;
+      }
+      for (int commit : commits) {
+        if (candidates.contains(commit)) {
+          hashes.add(myLogStorage.getHashMap().getHash(commit));
+        }
+      }
+    }
+    catch (IOException e) {
+      LOG.warn("Couldn't filter commits with the index", e);
+      return null;
+    }
+
+    Map<Hash, VcsCommitMetadata> metadata = ContainerUtil.newHashMap();
+    List<String> hashesToRead = ContainerUtil.newArrayList();
+    for (Hash hash : hashes) {
+      VcsFullCommitDetails cachedDetails = myTopCommitsDetailsCache.get(hash);
+      if (cachedDetails != null) {
+        metadata.put(hash, cachedDetails);
+      }
+      else {
+        hashesToRead.add(hash.asString());
+      }
+    }
+    VcsLogProvider logProvider = myLogProviders.get(root);
+    for (int i = 0; i < hashesToRead.size(); i += INDEXING_BATCH_SIZE) {
+      List<String> batch = hashesToRead.subList(i, Math.min(i + INDEXING_BATCH_SIZE, hashesToRead.size()));
+      for (VcsCommitMetadata data : logProvider.readMetadata(root, batch)) {
+        metadata.put(data.getHash(), data);
+      }
+    }
+
+    // the index only selects candidates, so check the filters once more
+    List<Hash> matching = ContainerUtil.newArrayList();
+    Map<Hash, VcsFullCommitDetails> details = ContainerUtil.newHashMap();
+    List<String> detailsToRead = ContainerUtil.newArrayList();
+    for (Hash hash : hashes) {
+      final VcsCommitMetadata data = metadata.get(hash);
+      if (data != null && !ContainerUtil.exists(filters, new Condition<VcsLogFilter>() {
+        @Override
+        public boolean value(VcsLogFilter filter) {
+          return !((VcsLogDetailsFilter)filter).matches(data);
+        }
+      })) {
+        matching.add(hash);
+        if (data instanceof VcsFullCommitDetails) {
+          details.put(hash, (VcsFullCommitDetails)data);
+        }
+        else {
+          detailsToRead.add(hash.asString());
+        }
+      }
+    }
+    for (int i = 0; i < detailsToRead.size(); i += INDEXING_BATCH_SIZE) {
+      List<String> batch = detailsToRead.subList(i, Math.min(i + INDEXING_BATCH_SIZE, detailsToRead.size()));
+      for (VcsFullCommitDetails detail : logProvider.readFullDetails(root, batch)) {
+        details.put(detail.getHash(), detail);
+      }
+    }
+
+    List<VcsFullCommitDetails> result = ContainerUtil.newArrayList();
+    for (Hash hash : matching) {
+      VcsFullCommitDetails detail = details.get(hash);
+      if (detail != null) {
+        result.add(detail);
+      }
+    }
+    return result;
+  }
+
   @NotNull
   public Map<VirtualFile, VcsUser> getCurrentUser() {
     return myCurrentUser;
@@ -701,6 +1081,12 @@ public class VcsLogDataHolder implements Disposable {
     return myMiniDetailsGetter;
   }
 
+  @Override
+  public void beforeTreeDispose() {
+    // the storages are disposed before this holder, so they are flushed while still open
+    flushStorages();
+  }
+
   @Override
   public void dispose() {
     myDataLoaderQueue.clear();
@@ -778,15 +1164,17 @@ public class VcsLogDataHolder implements Disposable {
   private static class LogData {
     @NotNull private final Map<VirtualFile, List<TimedVcsCommit>> myLogsByRoot;
     @NotNull private final Map<VirtualFile, Collection<VcsRef>> myRefsByRoot;
+    @Nullable private final CompoundLog myCompoundLog;
     @NotNull private final List<TimedVcsCommit> myCompoundTopCommits;
     @NotNull private final DataPack myDataPack;
     private final boolean myFullLog;
 
     private LogData(@NotNull Map<VirtualFile, List<TimedVcsCommit>> logsByRoot,
-                    @NotNull Map<VirtualFile, Collection<VcsRef>> refsByRoot, @NotNull List<TimedVcsCommit> compoundTopCommits,
-                    @NotNull DataPack dataPack, boolean fullLog) {
+                    @NotNull Map<VirtualFile, Collection<VcsRef>> refsByRoot, @Nullable CompoundLog compoundLog,
+                    @NotNull List<TimedVcsCommit> compoundTopCommits, @NotNull DataPack dataPack, boolean fullLog) {
       myLogsByRoot = logsByRoot;
       myRefsByRoot = refsByRoot;
+      myCompoundLog = compoundLog;
       myCompoundTopCommits = compoundTopCommits;
       myDataPack = dataPack;
       myFullLog = fullLog;
@@ -830,6 +1218,14 @@ public class VcsLogDataHolder implements Disposable {
       return myRefsByRoot;
     }
 
+    /**
+     * Returns the joined logs of all roots, if it has already been built for these logs.
+     */
+    @Nullable
+    public CompoundLog getCompoundLog() {
+      return myCompoundLog;
+    }
+
     public int getTopCommitsCount() {
       return myCompoundTopCommits.size();
     }
@@ -1,16 +1,16 @@
 package com.intellij.vcs.log.data;
 
-import com.intellij.vcs.log.VcsFullCommitDetails;
+import com.intellij.vcs.log.VcsCommitMetadata;
 import com.intellij.vcs.log.VcsLogFilter;
 import org.jetbrains.annotations.NotNull;
 
 /**
- * Filter which needs {@link VcsFullCommitDetails} to work.
+ * Filter which needs {@link VcsCommitMetadata} to work.
  *
  * @see VcsLogGraphFilter
  */
 public interface VcsLogDetailsFilter extends VcsLogFilter {
 
-  boolean matches(@NotNull VcsFullCommitDetails details);
+  boolean matches(@NotNull VcsCommitMetadata details);
 
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.containers.SLRUMap;
+import com.intellij.util.io.KeyDescriptor;
+import com.intellij.util.io.Page;
+import com.intellij.util.io.PersistentBTreeEnumerator;
+import com.intellij.vcs.log.Hash;
+import com.intellij.vcs.log.impl.HashImpl;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Persistently enumerates commit hashes: each hash gets an int index which doesn't change between IDE sessions,
+ * so that the log structure can be stored as plain int arrays.
+ * <p/>
+ * Recently used hashes are cached in memory, so that showing the visible part of the log doesn't hit the disk.
+ */
+public class VcsLogHashMap implements Disposable {
+
+  private static final Logger LOG = Logger.getInstance(VcsLogHashMap.class);
+  private static final int HASH_CACHE_SIZE = 20000;
+
+  /**
+   * Returned by {@link #findCommitIndex(Hash)} for hashes which were never enumerated.
+   */
+  public static final int NO_INDEX = 0;
+
+  @NotNull private final HashEnumerator myPersistentEnumerator;
+  @NotNull private final SLRUMap<Integer, Hash> myHashCache = new SLRUMap<Integer, Hash>(HASH_CACHE_SIZE, HASH_CACHE_SIZE);
+
+  public VcsLogHashMap(@NotNull File storageFile) throws IOException {
+    myPersistentEnumerator = new HashEnumerator(storageFile);
+  }
+
+  public int getCommitIndex(@NotNull Hash hash) throws IOException {
+    int index = myPersistentEnumerator.enumerate(hash);
+    synchronized (myHashCache) {
+      myHashCache.put(index, hash);
+    }
+    return index;
+  }
+
+  /**
+   * Returns the index of the given hash, or {@link #NO_INDEX} if the hash was never enumerated; unlike {@link #getCommitIndex(Hash)},
+   * doesn't add the hash to the storage.
+   */
+  public int findCommitIndex(@NotNull Hash hash) throws IOException {
+    int index = myPersistentEnumerator.tryEnumerate(hash);
+    if (index != NO_INDEX) {
+      synchronized (myHashCache) {
+        myHashCache.put(index, hash);
+      }
+    }
+    return index;
+  }
+
+  @NotNull
+  public Hash getHash(int commitIndex) throws IOException {
+    Hash hash;
+    synchronized (myHashCache) {
+      hash = myHashCache.get(commitIndex);
+    }
+    if (hash != null) {
+      return hash;
+    }
+    hash = myPersistentEnumerator.valueOf(commitIndex);
+    if (hash == null) {
+      throw new IOException("No hash is stored for index " + commitIndex);
+    }
+    synchronized (myHashCache) {
+      myHashCache.put(commitIndex, hash);
+    }
+    return hash;
+  }
+
+  public void flush() {
+    myPersistentEnumerator.force();
+  }
+
+  @Override
+  public void dispose() {
+    synchronized (myHashCache) {
+      myHashCache.clear();
+    }
+    try {
+      myPersistentEnumerator.close();
+    }
+    catch (IOException e) {
+      LOG.warn(e);
+    }
+  }
+
+  private static class HashEnumerator extends PersistentBTreeEnumerator<Hash> {
+    public HashEnumerator(@NotNull File file) throws IOException {
+      super(file, new MyHashKeyDescriptor(), Page.PAGE_SIZE);
+    }
+
+    @Override
+    public int tryEnumerate(Hash value) throws IOException {
+      return super.tryEnumerate(value);
+    }
+  }
+
+  private static class MyHashKeyDescriptor implements KeyDescriptor<Hash> {
+    @Override
+    public void save(DataOutput out, Hash value) throws IOException {
+      out.writeUTF(value.asString());
+    }
+
+    @Override
+    public Hash read(DataInput in) throws IOException {
+      return HashImpl.build(in.readUTF());
+    }
+
+    @Override
+    public int getHashCode(Hash value) {
+      return value.hashCode();
+    }
+
+    @Override
+    public boolean isEqual(Hash val1, Hash val2) {
+      return val1.equals(val2);
+    }
+  }
+}
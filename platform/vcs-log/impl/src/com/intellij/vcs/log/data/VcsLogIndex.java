@@ -0,0 +1,294 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Processor;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorIntegerDescriptor;
+import com.intellij.util.io.PersistentHashMap;
+import com.intellij.util.io.PersistentStringEnumerator;
+import com.intellij.vcs.log.VcsCommitMetadata;
+import com.intellij.vcs.log.VcsLogFilter;
+import com.intellij.vcs.log.VcsUser;
+import com.intellij.vcs.log.ui.filter.VcsLogTextFilter;
+import gnu.trove.TIntHashSet;
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TIntObjectHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.Collection;
+
+/**
+ * <p>Persistent index of commit metadata, which lets apply user and text filters to the whole log locally,
+ *    instead of querying the VCS each time a filter changes.</p>
+ *
+ * <p>For each commit the author and the trigrams of the commit message are indexed.
+ *    The index is filled from commit details which are read from the VCS anyway (e.g. recent commits on refresh),
+ *    and in the background from details read specifically for indexing.</p>
+ *
+ * <p>Trigrams only select candidates: the text filter should be checked once more on the details of the found commits.</p>
+ */
+public class VcsLogIndex implements Disposable {
+
+  private static final Logger LOG = Logger.getInstance(VcsLogIndex.class);
+
+  private static final int VERSION = 2;
+  private static final int NO_USER = 0;
+
+  @NotNull private final VcsLogHashMap myHashMap;
+  @NotNull private final PersistentStringEnumerator myUsers;
+  @NotNull private final PersistentHashMap<Integer, Integer> myAuthors;
+  @NotNull private final PersistentHashMap<Integer, TIntHashSet> myCommitsByAuthor;
+  @NotNull private final PersistentHashMap<Integer, TIntHashSet> myCommitsByTrigram;
+  @NotNull private final TIntHashSet myIndexedCommits = new TIntHashSet();
+
+  public VcsLogIndex(@NotNull File indexDir, @NotNull VcsLogHashMap hashMap) throws IOException {
+    myHashMap = hashMap;
+    checkVersion(indexDir);
+    myUsers = new PersistentStringEnumerator(new File(indexDir, "users"));
+    myAuthors = new PersistentHashMap<Integer, Integer>(new File(indexDir, "authors"), EnumeratorIntegerDescriptor.INSTANCE,
+                                                        EnumeratorIntegerDescriptor.INSTANCE);
+    myCommitsByAuthor = new PersistentHashMap<Integer, TIntHashSet>(new File(indexDir, "commits-by-author"),
+                                                                    EnumeratorIntegerDescriptor.INSTANCE, new IntSetExternalizer());
+    myCommitsByTrigram = new PersistentHashMap<Integer, TIntHashSet>(new File(indexDir, "commits-by-trigram"),
+                                                                     EnumeratorIntegerDescriptor.INSTANCE, new IntSetExternalizer());
+    myAuthors.processKeysWithExistingMapping(new Processor<Integer>() {
+      @Override
+      public boolean process(Integer commit) {
+        myIndexedCommits.add(commit);
+        return true;
+      }
+    });
+  }
+
+  private static void checkVersion(@NotNull File indexDir) throws IOException {
+    File versionFile = new File(indexDir, "version");
+    if (versionFile.exists()) {
+      DataInputStream in = new DataInputStream(new FileInputStream(versionFile));
+      try {
+        if (in.readInt() == VERSION) {
+          return;
+        }
+      }
+      finally {
+        in.close();
+      }
+    }
+    FileUtil.delete(indexDir);
+    FileUtil.createDirectory(indexDir);
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(versionFile));
+    try {
+      out.writeInt(VERSION);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  public synchronized boolean isIndexed(int commit) {
+    return myIndexedCommits.contains(commit);
+  }
+
+  public synchronized boolean isIndexed(@NotNull int[] commits) {
+    for (int commit : commits) {
+      if (!myIndexedCommits.contains(commit)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public synchronized void index(@NotNull Collection<? extends VcsCommitMetadata> details) throws IOException {
+    // posting lists are collected for the whole batch, to append to each of them only once
+    TIntObjectHashMap<TIntHashSet> commitsByAuthor = new TIntObjectHashMap<TIntHashSet>();
+    TIntObjectHashMap<TIntHashSet> commitsByTrigram = new TIntObjectHashMap<TIntHashSet>();
+    TIntIntHashMap authors = new TIntIntHashMap();
+    for (VcsCommitMetadata detail : details) {
+      int commit = myHashMap.getCommitIndex(detail.getHash());
+      if (myIndexedCommits.contains(commit) || authors.containsKey(commit)) {
+        continue;
+      }
+      int author = myUsers.enumerate(getUserKey(detail.getAuthor()));
+      authors.put(commit, author);
+      addValue(commitsByAuthor, author, commit);
+      for (int trigram : getTrigrams(detail.getFullMessage()).toArray()) {
+        addValue(commitsByTrigram, trigram, commit);
+      }
+    }
+
+    append(myCommitsByAuthor, commitsByAuthor);
+    append(myCommitsByTrigram, commitsByTrigram);
+    for (int commit : authors.keys()) {
+      myAuthors.put(commit, authors.get(commit));
+      myIndexedCommits.add(commit);
+    }
+  }
+
+  /**
+   * Returns indices of commits which can match the given filters, or null if the filters can't be checked by the index
+   * (e.g. the branch filter, or a text shorter than a trigram).
+   *
+   * @param users all known users: those who match user filters are looked up in the index.
+   */
+  @Nullable
+  public synchronized TIntHashSet filter(@NotNull VirtualFile root, @NotNull Collection<VcsUser> users,
+                                         @NotNull Collection<VcsLogFilter> filters) throws IOException {
+    TIntHashSet userCommits = null;
+    TIntHashSet textCommits = null;
+    for (VcsLogFilter filter : filters) {
+      if (filter instanceof VcsLogUserFilter) {
+        if (userCommits == null) {
+          userCommits = new TIntHashSet();
+        }
+        for (VcsUser user : users) {
+          if (((VcsLogUserFilter)filter).matches(user, root)) {
+            // filtering must not add users to the index: users who haven't authored any indexed commit are just skipped
+            int author = myUsers.tryEnumerate(getUserKey(user));
+            if (author != NO_USER) {
+              userCommits.addAll(getCommits(myCommitsByAuthor, author).toArray());
+            }
+          }
+        }
+      }
+      else if (filter instanceof VcsLogTextFilter) {
+        TIntHashSet trigrams = getTrigrams(((VcsLogTextFilter)filter).getText());
+        if (trigrams.isEmpty()) {
+          return null;
+        }
+        for (int trigram : trigrams.toArray()) {
+          textCommits = intersect(textCommits, getCommits(myCommitsByTrigram, trigram));
+        }
+      }
+      else {
+        return null;
+      }
+    }
+    if (userCommits == null) {
+      return textCommits;
+    }
+    return textCommits == null ? userCommits : intersect(userCommits, textCommits);
+  }
+
+  public synchronized void flush() {
+    myUsers.force();
+    myAuthors.force();
+    myCommitsByAuthor.force();
+    myCommitsByTrigram.force();
+  }
+
+  @Override
+  public synchronized void dispose() {
+    try {
+      myUsers.close();
+      myAuthors.close();
+      myCommitsByAuthor.close();
+      myCommitsByTrigram.close();
+    }
+    catch (IOException e) {
+      LOG.warn(e);
+    }
+  }
+
+  /**
+   * Users are distinguished by both the name and the email, as different people can have the same name.
+   */
+  @NotNull
+  private static String getUserKey(@NotNull VcsUser user) {
+    return user.getName() + "\n" + user.getEmail();
+  }
+
+  @NotNull
+  private static TIntHashSet getTrigrams(@NotNull String text) {
+    String lowerCaseText = text.toLowerCase();
+    TIntHashSet trigrams = new TIntHashSet();
+    for (int i = 0; i + 3 <= lowerCaseText.length(); i++) {
+      // exact for the first 1024 characters of the Unicode, which covers most of the texts; collisions only add extra candidates
+      trigrams.add((lowerCaseText.charAt(i) & 0x3FF) << 20 | (lowerCaseText.charAt(i + 1) & 0x3FF) << 10 |
+                   (lowerCaseText.charAt(i + 2) & 0x3FF));
+    }
+    return trigrams;
+  }
+
+  @NotNull
+  private static TIntHashSet intersect(@Nullable TIntHashSet set1, @NotNull TIntHashSet set2) {
+    if (set1 == null) {
+      return set2;
+    }
+    TIntHashSet result = new TIntHashSet();
+    for (int value : set1.toArray()) {
+      if (set2.contains(value)) {
+        result.add(value);
+      }
+    }
+    return result;
+  }
+
+  private static void addValue(@NotNull TIntObjectHashMap<TIntHashSet> map, int key, int value) {
+    TIntHashSet values = map.get(key);
+    if (values == null) {
+      values = new TIntHashSet();
+      map.put(key, values);
+    }
+    values.add(value);
+  }
+
+  @NotNull
+  private static TIntHashSet getCommits(@NotNull PersistentHashMap<Integer, TIntHashSet> map, int key) throws IOException {
+    TIntHashSet commits = map.get(key);
+    return commits == null ? new TIntHashSet() : commits;
+  }
+
+  private static void append(@NotNull PersistentHashMap<Integer, TIntHashSet> map,
+                             @NotNull TIntObjectHashMap<TIntHashSet> values) throws IOException {
+    for (int key : values.keys()) {
+      final int[] commits = values.get(key).toArray();
+      map.appendData(key, new PersistentHashMap.ValueDataAppender() {
+        @Override
+        public void append(DataOutput out) throws IOException {
+          for (int commit : commits) {
+            DataInputOutputUtil.writeINT(out, commit);
+          }
+        }
+      });
+    }
+  }
+
+  private static class IntSetExternalizer implements DataExternalizer<TIntHashSet> {
+    @Override
+    public void save(DataOutput out, TIntHashSet value) throws IOException {
+      for (int commit : value.toArray()) {
+        DataInputOutputUtil.writeINT(out, commit);
+      }
+    }
+
+    @Override
+    public TIntHashSet read(DataInput in) throws IOException {
+      TIntHashSet result = new TIntHashSet();
+      DataInputStream stream = (DataInputStream)in;
+      while (stream.available() > 0) {
+        result.add(DataInputOutputUtil.readINT(stream));
+      }
+      return result;
+    }
+  }
+}
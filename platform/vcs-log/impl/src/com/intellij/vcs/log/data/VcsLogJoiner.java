@@ -32,7 +32,11 @@ import java.util.*;
  * @author Kirill Likhodedov
  */
 public class VcsLogJoiner {
-  private final static int BOUND_SAVED_LOG = 10000;
+  /**
+   * Only this many top commits of the saved log are examined and can be changed by {@link #addCommits(List, Collection, List, Collection)},
+   * the rest of the saved log is always kept as is.
+   */
+  final static int BOUND_SAVED_LOG = 10000;
 
   /**
    * Attaches the block of latest commits, which was read from the VCS, to the existing log structure.
@@ -48,7 +52,18 @@ public class VcsLogJoiner {
                                                            @NotNull Collection<VcsRef> previousRefs,
                                                            @NotNull List<? extends TimedVcsCommit> firstBlock,
                                                            @NotNull Collection<VcsRef> newRefs) {
-    Set<Hash> previousRefsHashes = toHashes(previousRefs);
+    return addCommits(savedLog, toHashes(previousRefs), firstBlock, newRefs);
+  }
+
+  /**
+   * Same as {@link #addCommits(List, Collection, List, Collection)}, but previous references are given only by the hashes they point to,
+   * as it is the case when the log is restored from the {@link VcsLogStorage}.
+   */
+  @NotNull
+  public Pair<List<TimedVcsCommit>, Integer> addCommits(@NotNull List<TimedVcsCommit> savedLog,
+                                                           @NotNull Set<Hash> previousRefsHashes,
+                                                           @NotNull List<? extends TimedVcsCommit> firstBlock,
+                                                           @NotNull Collection<VcsRef> newRefs) {
     Set<Hash> newRefsHashes = toHashes(newRefs);
     Pair<Integer, Set<Hash>> redCommitsAndSavedRedIndex =
       getRedCommitsAndSavedRedIndex(savedLog, previousRefsHashes, firstBlock, newRefsHashes);
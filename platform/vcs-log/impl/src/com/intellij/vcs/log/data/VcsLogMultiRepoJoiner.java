@@ -1,6 +1,5 @@
 package com.intellij.vcs.log.data;
 
-import com.intellij.util.containers.ContainerUtil;
 import com.intellij.vcs.log.TimedVcsCommit;
 import org.jetbrains.annotations.NotNull;
 
@@ -13,46 +12,55 @@ class VcsLogMultiRepoJoiner {
 
   @NotNull
   public List<TimedVcsCommit> join(@NotNull Collection<List<TimedVcsCommit>> logsFromRepos) {
-    int size = 0;
-    for (List<? extends TimedVcsCommit> repo : logsFromRepos) {
-      size += repo.size();
+    List<List<TimedVcsCommit>> logs = new ArrayList<List<TimedVcsCommit>>(logsFromRepos);
+    int[] sources = joinSources(logs);
+    List<TimedVcsCommit> result = new ArrayList<TimedVcsCommit>(sources.length);
+    int[] positions = new int[logs.size()];
+    for (int source : sources) {
+      result.add(logs.get(source).get(positions[source]++));
     }
-    List<TimedVcsCommit> result = new ArrayList<TimedVcsCommit>(size);
+    return result;
+  }
 
-    Map<TimedVcsCommit, Iterator<? extends TimedVcsCommit>> nextCommits = ContainerUtil.newHashMap();
-    for (List<? extends TimedVcsCommit> log : logsFromRepos) {
-      Iterator<? extends TimedVcsCommit> iterator = log.iterator();
-      if (iterator.hasNext()) {
-        nextCommits.put(iterator.next(), iterator);
-      }
+  /**
+   * Joins the given logs the same way as {@link #join(Collection)} does, but instead of commits returns the index of the log
+   * which each commit of the joined log comes from.
+   */
+  @NotNull
+  public int[] joinSources(@NotNull List<? extends List<? extends TimedVcsCommit>> logs) {
+    int size = 0;
+    for (List<? extends TimedVcsCommit> log : logs) {
+      size += log.size();
     }
+    int[] result = new int[size];
 
-    while (!nextCommits.isEmpty()) {
-      TimedVcsCommit lastCommit = findLatestCommit(nextCommits.keySet());
-      Iterator<? extends TimedVcsCommit> iterator = nextCommits.get(lastCommit);
-      result.add(lastCommit);
-      nextCommits.remove(lastCommit);
-
-      if (iterator.hasNext()) {
-        nextCommits.put(iterator.next(), iterator);
-      }
+    List<Iterator<? extends TimedVcsCommit>> iterators = new ArrayList<Iterator<? extends TimedVcsCommit>>(logs.size());
+    TimedVcsCommit[] nextCommits = new TimedVcsCommit[logs.size()];
+    for (int i = 0; i < logs.size(); i++) {
+      Iterator<? extends TimedVcsCommit> iterator = logs.get(i).iterator();
+      iterators.add(iterator);
+      nextCommits[i] = iterator.hasNext() ? iterator.next() : null;
     }
 
+    for (int i = 0; i < size; i++) {
+      int latest = findLatestCommit(nextCommits);
+      result[i] = latest;
+      Iterator<? extends TimedVcsCommit> iterator = iterators.get(latest);
+      nextCommits[latest] = iterator.hasNext() ? iterator.next() : null;
+    }
     return result;
   }
 
-  @NotNull
-  private static TimedVcsCommit findLatestCommit(@NotNull Set<TimedVcsCommit> commits) {
-    long maxTimeStamp = 0;
-    TimedVcsCommit lastCommit = null;
-    for (TimedVcsCommit commit : commits) {
-      if (commit.getAuthorTime() > maxTimeStamp) {
-        maxTimeStamp = commit.getAuthorTime();
-        lastCommit = commit;
+  private static int findLatestCommit(@NotNull TimedVcsCommit[] commits) {
+    int latest = -1;
+    for (int i = 0; i < commits.length; i++) {
+      TimedVcsCommit commit = commits[i];
+      if (commit != null && (latest == -1 || commit.getAuthorTime() > commits[latest].getAuthorTime())) {
+        latest = i;
       }
     }
-    assert lastCommit != null;
-    return lastCommit;
+    assert latest != -1;
+    return latest;
   }
 
 }
@@ -0,0 +1,415 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.vcs.log.Hash;
+import com.intellij.vcs.log.TimedVcsCommit;
+import com.intellij.vcs.log.VcsRef;
+import com.intellij.vcs.log.VcsUser;
+import com.intellij.vcs.log.impl.TimedVcsCommitImpl;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntHashSet;
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * <p>Stores the whole log structure of each root on disk, so that it is not re-read from the VCS on each start:
+ *    only the recent commits are read and {@link VcsLogJoiner attached} to the stored log.</p>
+ *
+ * <p>Commits are stored as indices of {@link VcsLogHashMap}, parents of each commit as a packed int array.
+ *    The log is kept in memory in the same form, commit objects are created only when they are requested.</p>
+ *
+ * <p>Not thread-safe: all modifications are expected to be made from the log loading queue.</p>
+ */
+public class VcsLogStorage implements Disposable {
+
+  private static final Logger LOG = Logger.getInstance(VcsLogStorage.class);
+
+  private static final int VERSION = 1;
+  private static final String LOG_FILE_EXTENSION = ".log";
+  private static final String USERS_FILE = "users";
+
+  @NotNull private final File myStorageDir;
+  @NotNull private final VcsLogHashMap myHashMap;
+
+  public VcsLogStorage(@NotNull File storageDir) throws IOException {
+    myStorageDir = storageDir;
+    FileUtil.createDirectory(storageDir);
+    myHashMap = new VcsLogHashMap(new File(storageDir, "hashes"));
+    Disposer.register(this, myHashMap);
+  }
+
+  @NotNull
+  public VcsLogHashMap getHashMap() {
+    return myHashMap;
+  }
+
+  /**
+   * Returns {@link VcsLogHashMap hash indices} of commits of the given log in the log order,
+   * or null if the log was not produced by this storage.
+   */
+  @Nullable
+  public static int[] getCommitIndices(@NotNull List<TimedVcsCommit> log) {
+    if (!(log instanceof IndexedLog)) {
+      return null;
+    }
+    int[] commits = ((IndexedLog)log).myCommits;
+    int[] result = new int[commits.length];
+    for (int i = 0; i < commits.length; i++) {
+      result[i] = commits[commits.length - 1 - i];
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of the oldest commits which are the same in both logs.
+   * If the logs were not produced by this storage, they are not compared, and 0 is returned.
+   */
+  public static int getCommonOldestCommitsCount(@NotNull List<TimedVcsCommit> log1, @NotNull List<TimedVcsCommit> log2) {
+    if (log1 == log2) {
+      return log1.size();
+    }
+    if (!(log1 instanceof IndexedLog) || !(log2 instanceof IndexedLog)) {
+      return 0;
+    }
+    int[] commits1 = ((IndexedLog)log1).myCommits;
+    int[] commits2 = ((IndexedLog)log2).myCommits;
+    int count = 0;
+    while (count < commits1.length && count < commits2.length && commits1[count] == commits2[count]) {
+      count++;
+    }
+    return count;
+  }
+
+  @NotNull
+  public static File getStorageDir(@NotNull Project project) {
+    return new File(new File(PathManager.getSystemPath(), "vcs-log"), FileUtil.sanitizeFileName(project.getName()) + "." +
+                                                                      project.getLocationHash());
+  }
+
+  /**
+   * Reads the log and the references which were saved for the given root.
+   * Returns null if nothing was saved or if the stored data is not readable.
+   */
+  @Nullable
+  public Pair<List<TimedVcsCommit>, Set<Hash>> load(@NotNull VirtualFile root) {
+    File file = getLogFile(root);
+    if (!file.exists()) {
+      return null;
+    }
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+        if (in.readInt() != VERSION) {
+          return null;
+        }
+        int[] refIndices = new int[DataInputOutputUtil.readINT(in)];
+        Set<Hash> refs = new HashSet<Hash>(refIndices.length);
+        for (int i = 0; i < refIndices.length; i++) {
+          refIndices[i] = DataInputOutputUtil.readINT(in);
+          refs.add(myHashMap.getHash(refIndices[i]));
+        }
+
+        int commitsCount = DataInputOutputUtil.readINT(in);
+        IndexedLogBuilder builder = new IndexedLogBuilder(commitsCount);
+        for (int i = 0; i < commitsCount; i++) {
+          int commit = DataInputOutputUtil.readINT(in);
+          long time = in.readLong();
+          int parentsCount = DataInputOutputUtil.readINT(in);
+          builder.startCommit(commit, time);
+          for (int j = 0; j < parentsCount; j++) {
+            builder.addParent(DataInputOutputUtil.readINT(in));
+          }
+        }
+        return Pair.<List<TimedVcsCommit>, Set<Hash>>create(builder.build(refIndices), refs);
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Couldn't read the saved log of " + root, e);
+      FileUtil.delete(file);
+      return null;
+    }
+  }
+
+  /**
+   * Saves the given log and references of the root, replacing the log saved before.
+   *
+   * @return the same log in the compact indexed form, which should be used instead of the passed list.
+   */
+  @NotNull
+  public List<TimedVcsCommit> save(@NotNull VirtualFile root, @NotNull List<TimedVcsCommit> log,
+                                   @NotNull Collection<VcsRef> refs) throws IOException {
+    IndexedLogBuilder builder = new IndexedLogBuilder(log.size());
+    appendCommits(builder, log);
+    return write(root, builder.build(enumerateRefs(refs)));
+  }
+
+  /**
+   * Saves the log which was produced by {@link VcsLogJoiner#addCommits(List, Collection, List, Collection) attaching new commits}
+   * to the previously saved log. Only the top part of the log, which the joiner could have changed, is re-enumerated;
+   * if neither the log nor the references have changed, nothing is written.
+   *
+   * @return the new log in the compact indexed form, which should be used instead of the passed list.
+   */
+  @NotNull
+  public List<TimedVcsCommit> update(@NotNull VirtualFile root, @NotNull List<TimedVcsCommit> previousLog,
+                                     @NotNull List<TimedVcsCommit> newLog, @NotNull Collection<VcsRef> refs) throws IOException {
+    if (!(previousLog instanceof IndexedLog)) {
+      return save(root, newLog, refs);
+    }
+    IndexedLog previous = (IndexedLog)previousLog;
+    int[] refIndices = enumerateRefs(refs);
+    int topCount = Math.min(previous.size(), VcsLogJoiner.BOUND_SAVED_LOG + 1);
+    if (previous.size() == newLog.size() && Arrays.equals(previous.myRefs, refIndices) && sameTopCommits(previous, newLog, topCount)) {
+      return previous;
+    }
+
+    int keptCount = previous.size() - topCount;
+    if (keptCount > newLog.size() ||
+        keptCount > 0 && !sameCommit(previous.get(previous.size() - keptCount), newLog.get(newLog.size() - keptCount))) {
+      LOG.warn("The bottom part of the log has changed unexpectedly, saving the whole log");
+      return save(root, newLog, refs);
+    }
+
+    IndexedLogBuilder builder = new IndexedLogBuilder(newLog.size());
+    previous.copyOldestCommits(builder, keptCount);
+    appendCommits(builder, newLog.subList(0, newLog.size() - keptCount));
+    return write(root, builder.build(refIndices));
+  }
+
+  private static boolean sameTopCommits(@NotNull List<TimedVcsCommit> log1, @NotNull List<TimedVcsCommit> log2, int count) {
+    for (int i = 0; i < count; i++) {
+      if (!sameCommit(log1.get(i), log2.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean sameCommit(@NotNull TimedVcsCommit commit1, @NotNull TimedVcsCommit commit2) {
+    // hashes are compared by their string representation, since the log may contain different Hash implementations
+    return commit1.getHash().asString().equals(commit2.getHash().asString());
+  }
+
+  public void loadUsers(@NotNull VcsUserRegistry userRegistry) {
+    File file = new File(myStorageDir, USERS_FILE);
+    if (!file.exists()) {
+      return;
+    }
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+        int count = DataInputOutputUtil.readINT(in);
+        for (int i = 0; i < count; i++) {
+          userRegistry.createUser(in.readUTF(), in.readUTF());
+        }
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Couldn't read the saved users", e);
+      FileUtil.delete(file);
+    }
+  }
+
+  public void saveUsers(@NotNull Collection<VcsUser> users) throws IOException {
+    File file = new File(myStorageDir, USERS_FILE);
+    File tempFile = new File(myStorageDir, USERS_FILE + ".tmp");
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+    try {
+      DataInputOutputUtil.writeINT(out, users.size());
+      for (VcsUser user : users) {
+        out.writeUTF(user.getName());
+        out.writeUTF(user.getEmail());
+      }
+    }
+    finally {
+      out.close();
+    }
+    replace(tempFile, file);
+  }
+
+  @Override
+  public void dispose() {
+  }
+
+  private void appendCommits(@NotNull IndexedLogBuilder builder, @NotNull List<TimedVcsCommit> commits) throws IOException {
+    // the log is stored from the oldest commit to the newest one, so that new commits are just appended
+    for (ListIterator<TimedVcsCommit> iterator = commits.listIterator(commits.size()); iterator.hasPrevious(); ) {
+      TimedVcsCommit commit = iterator.previous();
+      builder.startCommit(myHashMap.getCommitIndex(commit.getHash()), commit.getAuthorTime());
+      for (Hash parent : commit.getParents()) {
+        builder.addParent(myHashMap.getCommitIndex(parent));
+      }
+    }
+  }
+
+  @NotNull
+  private int[] enumerateRefs(@NotNull Collection<VcsRef> refs) throws IOException {
+    TIntHashSet refIndices = new TIntHashSet(refs.size());
+    for (VcsRef ref : refs) {
+      refIndices.add(myHashMap.getCommitIndex(ref.getCommitHash()));
+    }
+    int[] result = refIndices.toArray();
+    Arrays.sort(result);
+    return result;
+  }
+
+  @NotNull
+  private IndexedLog write(@NotNull VirtualFile root, @NotNull IndexedLog log) throws IOException {
+    // the log references hash indices, so they should be on disk before the log is
+    myHashMap.flush();
+
+    File file = getLogFile(root);
+    File tempFile = new File(file.getPath() + ".tmp");
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+    try {
+      out.writeInt(VERSION);
+      log.write(out);
+    }
+    finally {
+      out.close();
+    }
+    replace(tempFile, file);
+    return log;
+  }
+
+  private static void replace(@NotNull File source, @NotNull File target) throws IOException {
+    FileUtil.delete(target);
+    FileUtil.rename(source, target);
+  }
+
+  @NotNull
+  private File getLogFile(@NotNull VirtualFile root) {
+    String name = FileUtil.sanitizeFileName(root.getName()) + "." + Integer.toHexString(root.getPath().hashCode());
+    return new File(myStorageDir, name + LOG_FILE_EXTENSION);
+  }
+
+  private class IndexedLogBuilder {
+    @NotNull private final TIntArrayList myCommits;
+    @NotNull private final TLongArrayList myTimes;
+    @NotNull private final TIntArrayList myParentStarts;
+    @NotNull private final TIntArrayList myParents;
+
+    IndexedLogBuilder(int expectedSize) {
+      myCommits = new TIntArrayList(expectedSize);
+      myTimes = new TLongArrayList(expectedSize);
+      myParentStarts = new TIntArrayList(expectedSize + 1);
+      myParents = new TIntArrayList(expectedSize + expectedSize / 8);
+    }
+
+    void startCommit(int commit, long time) {
+      myCommits.add(commit);
+      myTimes.add(time);
+      myParentStarts.add(myParents.size());
+    }
+
+    void addParent(int parent) {
+      myParents.add(parent);
+    }
+
+    @NotNull
+    IndexedLog build(@NotNull int[] refs) {
+      myParentStarts.add(myParents.size());
+      return new IndexedLog(myCommits.toNativeArray(), myTimes.toNativeArray(), myParentStarts.toNativeArray(),
+                            myParents.toNativeArray(), refs);
+    }
+  }
+
+  /**
+   * The log of a single root, ordered from the newest commit to the oldest one as all logs are.
+   * Internally the commits are stored in the reverse order.
+   */
+  private class IndexedLog extends AbstractList<TimedVcsCommit> implements RandomAccess {
+    @NotNull private final int[] myCommits;
+    @NotNull private final long[] myTimes;
+    @NotNull private final int[] myParentStarts;
+    @NotNull private final int[] myParents;
+    @NotNull private final int[] myRefs;
+
+    IndexedLog(@NotNull int[] commits, @NotNull long[] times, @NotNull int[] parentStarts, @NotNull int[] parents, @NotNull int[] refs) {
+      myCommits = commits;
+      myTimes = times;
+      myParentStarts = parentStarts;
+      myParents = parents;
+      myRefs = refs;
+    }
+
+    @Override
+    public TimedVcsCommit get(int index) {
+      int i = myCommits.length - 1 - index;
+      try {
+        Hash hash = myHashMap.getHash(myCommits[i]);
+        List<Hash> parents = new ArrayList<Hash>(myParentStarts[i + 1] - myParentStarts[i]);
+        for (int p = myParentStarts[i]; p < myParentStarts[i + 1]; p++) {
+          parents.add(myHashMap.getHash(myParents[p]));
+        }
+        return new TimedVcsCommitImpl(hash, parents, myTimes[i]);
+      }
+      catch (IOException e) {
+        throw new IllegalStateException("Couldn't read commit #" + index + " of the saved log", e);
+      }
+    }
+
+    @Override
+    public int size() {
+      return myCommits.length;
+    }
+
+    void copyOldestCommits(@NotNull IndexedLogBuilder builder, int count) {
+      for (int i = 0; i < count; i++) {
+        builder.startCommit(myCommits[i], myTimes[i]);
+        for (int p = myParentStarts[i]; p < myParentStarts[i + 1]; p++) {
+          builder.addParent(myParents[p]);
+        }
+      }
+    }
+
+    void write(@NotNull DataOutput out) throws IOException {
+      DataInputOutputUtil.writeINT(out, myRefs.length);
+      for (int ref : myRefs) {
+        DataInputOutputUtil.writeINT(out, ref);
+      }
+      DataInputOutputUtil.writeINT(out, myCommits.length);
+      for (int i = 0; i < myCommits.length; i++) {
+        DataInputOutputUtil.writeINT(out, myCommits[i]);
+        out.writeLong(myTimes[i]);
+        DataInputOutputUtil.writeINT(out, myParentStarts[i + 1] - myParentStarts[i]);
+        for (int p = myParentStarts[i]; p < myParentStarts[i + 1]; p++) {
+          DataInputOutputUtil.writeINT(out, myParents[p]);
+        }
+      }
+    }
+  }
+}
@@ -1,7 +1,7 @@
 package com.intellij.vcs.log.data;
 
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.vcs.log.VcsFullCommitDetails;
+import com.intellij.vcs.log.VcsCommitMetadata;
 import com.intellij.vcs.log.VcsUser;
 import org.jetbrains.annotations.NotNull;
 
@@ -24,9 +24,9 @@ public abstract class VcsLogUserFilter implements VcsLogDetailsFilter {
     }
 
     @Override
-    public boolean matches(@NotNull VcsFullCommitDetails detail) {
-      return detail.getAuthor().getName().toLowerCase().contains(myUser.toLowerCase()) ||
-             detail.getAuthor().getEmail().toLowerCase().contains(myUser.toLowerCase());
+    public boolean matches(@NotNull VcsUser author, @NotNull VirtualFile root) {
+      return author.getName().toLowerCase().contains(myUser.toLowerCase()) ||
+             author.getEmail().toLowerCase().contains(myUser.toLowerCase());
     }
 
     @NotNull
@@ -49,9 +49,9 @@ public abstract class VcsLogUserFilter implements VcsLogDetailsFilter {
     }
 
     @Override
-    public boolean matches(@NotNull VcsFullCommitDetails details) {
-      VcsUser meInThisRoot = myMeData.get(details.getRoot());
-      return meInThisRoot != null && meInThisRoot.equals(details.getAuthor());
+    public boolean matches(@NotNull VcsUser author, @NotNull VirtualFile root) {
+      VcsUser meInThisRoot = myMeData.get(root);
+      return meInThisRoot != null && meInThisRoot.equals(author);
     }
 
     @NotNull
@@ -61,6 +61,16 @@ public abstract class VcsLogUserFilter implements VcsLogDetailsFilter {
     }
   }
 
+  @Override
+  public boolean matches(@NotNull VcsCommitMetadata details) {
+    return matches(details.getAuthor(), details.getRoot());
+  }
+
+  /**
+   * Checks if commits made by the given author in the given root match this filter.
+   */
+  public abstract boolean matches(@NotNull VcsUser author, @NotNull VirtualFile root);
+
   /**
    * Returns the user name selected in the filter for the given root.
    * If it is a name-as-text filter, of course, values don't differ per root. The difference appears if the special "me" filter is used.
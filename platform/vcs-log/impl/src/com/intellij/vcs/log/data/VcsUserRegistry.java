@@ -19,6 +19,7 @@ import com.intellij.util.containers.Interner;
 import com.intellij.vcs.log.VcsUser;
 import com.intellij.vcs.log.impl.VcsUserImpl;
 
+import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -28,15 +29,15 @@ public class VcsUserRegistry {
 
   private final Interner<VcsUser> myUserMap = new Interner<VcsUser>();
 
-  public VcsUser createUser(String name, String email) {
+  public synchronized VcsUser createUser(String name, String email) {
     return myUserMap.intern(new VcsUserImpl(name, email));
   }
 
-  public void addUser(VcsUser user) {
+  public synchronized void addUser(VcsUser user) {
     myUserMap.intern(user);
   }
 
-  public Set<VcsUser> getUsers() {
-    return myUserMap.getValues();
+  public synchronized Set<VcsUser> getUsers() {
+    return new HashSet<VcsUser>(myUserMap.getValues());
   }
 }
@@ -18,12 +18,7 @@ import java.util.List;
 /**
  * @author Kirill Likhodedov
  */
-public class VcsFullCommitDetailsImpl extends VcsShortCommitDetailsImpl implements VcsFullCommitDetails {
-
-  @NotNull private final String myFullMessage;
-
-  @NotNull private final VcsUser myCommitter;
-  private final long myCommitTime;
+public class VcsFullCommitDetailsImpl extends VcsCommitMetadataImpl implements VcsFullCommitDetails {
 
   @NotNull private final Collection<LightChange> myChanges;
 
@@ -31,10 +26,7 @@ public class VcsFullCommitDetailsImpl extends VcsShortCommitDetailsImpl implemen
                                   @NotNull String subject, @NotNull VcsUser author, @NotNull String message,
                                   @NotNull VcsUser committer, long commitTime,
                                   @NotNull List<Change> changes, @NotNull final ContentRevisionFactory contentRevisionFactory) {
-    super(hash, parents, authorTime, root, subject, author);
-    myCommitter = committer;
-    myCommitTime = commitTime;
-    myFullMessage = message;
+    super(hash, parents, authorTime, root, subject, author, message, committer, commitTime);
     myChanges = ContainerUtil.map(changes, new Function<Change, LightChange>() {
       @Override
       public LightChange fun(Change change) {
@@ -43,12 +35,6 @@ public class VcsFullCommitDetailsImpl extends VcsShortCommitDetailsImpl implemen
     });
   }
 
-  @Override
-  @NotNull
-  public final String getFullMessage() {
-    return myFullMessage;
-  }
-
   @Override
   @NotNull
   public final Collection<Change> getChanges() {
@@ -60,17 +46,6 @@ public class VcsFullCommitDetailsImpl extends VcsShortCommitDetailsImpl implemen
     });
   }
 
-  @NotNull
-  @Override
-  public VcsUser getCommitter() {
-    return myCommitter;
-  }
-
-  @Override
-  public long getCommitTime() {
-    return myCommitTime;
-  }
-
   private static class LightChange {
 
     private ContentRevisionFactory myContentRevisionFactory;
@@ -46,6 +46,17 @@ public class VcsLogObjectsFactoryImpl implements VcsLogObjectsFactory {
     return new VcsShortCommitDetailsImpl(hash, parents, timeStamp, root, subject, author);
   }
 
+  @NotNull
+  @Override
+  public VcsCommitMetadata createCommitMetadata(@NotNull Hash hash, @NotNull List<Hash> parents, long authorTime, @NotNull VirtualFile root,
+                                                @NotNull String subject, @NotNull String authorName, @NotNull String authorEmail,
+                                                @NotNull String message, @NotNull String committerName,
+                                                @NotNull String committerEmail, long commitTime) {
+    VcsUser author = createUser(authorName, authorEmail);
+    VcsUser committer = createUser(committerName, committerEmail);
+    return new VcsCommitMetadataImpl(hash, parents, authorTime, root, subject, author, message, committer, commitTime);
+  }
+
   @NotNull
   @Override
   public VcsFullCommitDetails createFullDetails(@NotNull Hash hash, @NotNull List<Hash> parents, long authorTime, @NotNull VirtualFile root,
@@ -15,7 +15,7 @@
  */
 package com.intellij.vcs.log.ui.filter;
 
-import com.intellij.vcs.log.VcsFullCommitDetails;
+import com.intellij.vcs.log.VcsCommitMetadata;
 import com.intellij.vcs.log.data.VcsLogDetailsFilter;
 import org.jetbrains.annotations.NotNull;
 
@@ -28,7 +28,7 @@ public class VcsLogTextFilter implements VcsLogDetailsFilter {
   }
 
   @Override
-  public boolean matches(@NotNull VcsFullCommitDetails details) {
+  public boolean matches(@NotNull VcsCommitMetadata details) {
     return details.getFullMessage().toLowerCase().contains(myText.toLowerCase());
   }
 
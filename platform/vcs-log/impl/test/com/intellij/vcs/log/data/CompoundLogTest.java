@@ -0,0 +1,120 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.vcs.log.TimedVcsCommit;
+import com.intellij.vcs.log.VcsRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.intellij.vcs.log.parser.CommitParser.log;
+import static org.junit.Assert.assertEquals;
+
+public class CompoundLogTest {
+
+  private final VirtualFile myRoot1 = new LightVirtualFile("root1");
+  private final VirtualFile myRoot2 = new LightVirtualFile("root2");
+  private final VcsLogMultiRepoJoiner myJoiner = new VcsLogMultiRepoJoiner();
+  private File myStorageDir;
+  private VcsLogStorage myStorage;
+
+  @Before
+  public void setUp() throws IOException {
+    myStorageDir = FileUtil.createTempDirectory("vcs-log-storage", null);
+    myStorage = new VcsLogStorage(myStorageDir);
+  }
+
+  @After
+  public void tearDown() {
+    Disposer.dispose(myStorage);
+    FileUtil.delete(myStorageDir);
+  }
+
+  @Test
+  public void joinIsTheSameAsJoinOfMultiRepoJoiner() {
+    List<TimedVcsCommit> first = log("6|-a2|-a0", "3|-a1|-a0", "1|-a0|-");
+    List<TimedVcsCommit> second = log("4|-b1|-b0", "2|-b0|-");
+    List<List<TimedVcsCommit>> logs = Arrays.asList(first, second);
+    assertEquals(toStr(myJoiner.join(logs)), toStr(CompoundLog.join(myJoiner, logs)));
+  }
+
+  @Test
+  public void updateJoinsOnlyNewCommits() throws IOException {
+    List<TimedVcsCommit> first = save(myRoot1, log("6|-a2|-a1", "3|-a1|-a0", "1|-a0|-"));
+    List<TimedVcsCommit> second = save(myRoot2, log("4|-b1|-b0", "2|-b0|-"));
+    CompoundLog compoundLog = CompoundLog.join(myJoiner, Arrays.asList(first, second));
+
+    List<TimedVcsCommit> newFirst = myStorage.update(myRoot1, first, log("8|-a3|-a2", "6|-a2|-a1", "3|-a1|-a0", "1|-a0|-"),
+                                                     Collections.<VcsRef>emptyList());
+    List<List<TimedVcsCommit>> newLogs = Arrays.asList(newFirst, second);
+    CompoundLog updated = compoundLog.update(myJoiner, newLogs, new int[]{VcsLogStorage.getCommonOldestCommitsCount(first, newFirst),
+      VcsLogStorage.getCommonOldestCommitsCount(second, second)});
+    assertEquals(toStr(myJoiner.join(newLogs)), toStr(updated));
+  }
+
+  @Test
+  public void updateRejoinsChangedCommits() throws IOException {
+    List<TimedVcsCommit> first = save(myRoot1, log("6|-a2|-a1", "3|-a1|-a0", "1|-a0|-"));
+    List<TimedVcsCommit> second = save(myRoot2, log("5|-b2|-b1", "4|-b1|-b0", "2|-b0|-"));
+    CompoundLog compoundLog = CompoundLog.join(myJoiner, Arrays.asList(first, second));
+
+    // the top commit of the first root is amended and gets older than the top commits of the second root
+    List<TimedVcsCommit> newFirst = myStorage.update(myRoot1, first, log("7|-a4|-a3", "3|-a3|-a1", "3|-a1|-a0", "1|-a0|-"),
+                                                     Collections.<VcsRef>emptyList());
+    List<TimedVcsCommit> newSecond = myStorage.update(myRoot2, second, log("9|-b3|-b2", "5|-b2|-b1", "4|-b1|-b0", "2|-b0|-"),
+                                                      Collections.<VcsRef>emptyList());
+    List<List<TimedVcsCommit>> newLogs = Arrays.asList(newFirst, newSecond);
+    CompoundLog updated = compoundLog.update(myJoiner, newLogs, new int[]{VcsLogStorage.getCommonOldestCommitsCount(first, newFirst),
+      VcsLogStorage.getCommonOldestCommitsCount(second, newSecond)});
+    assertEquals(toStr(myJoiner.join(newLogs)), toStr(updated));
+  }
+
+  @Test
+  public void logsNotProducedByTheStorageAreJoinedCompletely() {
+    List<TimedVcsCommit> first = log("6|-a2|-a1", "3|-a1|-a0", "1|-a0|-");
+    List<TimedVcsCommit> second = log("4|-b1|-b0", "2|-b0|-");
+    CompoundLog compoundLog = CompoundLog.join(myJoiner, Arrays.asList(first, second));
+
+    List<TimedVcsCommit> newFirst = log("5|-a3|-a1", "3|-a1|-a0", "1|-a0|-");
+    assertEquals(0, VcsLogStorage.getCommonOldestCommitsCount(first, newFirst));
+    List<List<TimedVcsCommit>> newLogs = Arrays.asList(newFirst, second);
+    assertEquals(toStr(myJoiner.join(newLogs)), toStr(compoundLog.update(myJoiner, newLogs, new int[]{0, second.size()})));
+  }
+
+  private List<TimedVcsCommit> save(VirtualFile root, List<TimedVcsCommit> log) throws IOException {
+    return myStorage.save(root, log, Collections.<VcsRef>emptyList());
+  }
+
+
+  private static String toStr(List<TimedVcsCommit> log) {
+    StringBuilder s = new StringBuilder();
+    for (TimedVcsCommit commit : log) {
+      s.append(commit.getHash().asString()).append(' ');
+    }
+    return s.toString();
+  }
+}
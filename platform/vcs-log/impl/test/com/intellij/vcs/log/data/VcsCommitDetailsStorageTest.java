@@ -0,0 +1,99 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.vcs.log.Hash;
+import com.intellij.vcs.log.VcsShortCommitDetails;
+import com.intellij.vcs.log.impl.HashImpl;
+import com.intellij.vcs.log.impl.VcsShortCommitDetailsImpl;
+import com.intellij.vcs.log.impl.VcsUserImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VcsCommitDetailsStorageTest {
+
+  private final VirtualFile myRoot = new LightVirtualFile("root");
+  private File myStorageDir;
+  private VcsLogHashMap myHashMap;
+  private VcsCommitDetailsStorage myStorage;
+
+  @Before
+  public void setUp() throws IOException {
+    myStorageDir = FileUtil.createTempDirectory("vcs-log-details", null);
+    myHashMap = new VcsLogHashMap(new File(myStorageDir, "hashes"));
+    myStorage = new VcsCommitDetailsStorage(new File(myStorageDir, "details"), myHashMap, new VcsUserRegistry());
+  }
+
+  @After
+  public void tearDown() {
+    Disposer.dispose(myStorage);
+    Disposer.dispose(myHashMap);
+    FileUtil.delete(myStorageDir);
+  }
+
+  @Test
+  public void detailsSurviveReopening() throws IOException {
+    myStorage.put(Arrays.asList(details("a1", "Initial commit"), details("a2", "Second commit", "a1")));
+    Disposer.dispose(myStorage);
+    myStorage = new VcsCommitDetailsStorage(new File(myStorageDir, "details"), myHashMap, new VcsUserRegistry());
+
+    List<VcsShortCommitDetails> stored = myStorage.get(myRoot, Arrays.asList("a2", "a1"));
+    assertEquals(2, stored.size());
+    VcsShortCommitDetails second = stored.get(0);
+    assertEquals("a2", second.getHash().asString());
+    assertEquals("Second commit", second.getSubject());
+    assertEquals(Collections.singletonList(HashImpl.build("a1")), second.getParents());
+    assertEquals(new VcsUserImpl("Alice", "alice@example.com"), second.getAuthor());
+    assertEquals(1000L, second.getAuthorTime());
+    assertEquals(myRoot, second.getRoot());
+  }
+
+  @Test
+  public void unknownCommitsAreSkipped() {
+    myStorage.put(Collections.singletonList(details("a1", "Initial commit")));
+    assertEquals(1, myStorage.get(myRoot, Arrays.asList("a1", "b1")).size());
+    assertTrue(myStorage.get(myRoot, Collections.singletonList("b2")).isEmpty());
+  }
+
+  @Test
+  public void lookingUpUnknownCommitsDoesNotEnumerateThem() throws IOException {
+    myStorage.get(myRoot, Collections.singletonList("b1"));
+    assertEquals(VcsLogHashMap.NO_INDEX, myHashMap.findCommitIndex(HashImpl.build("b1")));
+  }
+
+  private VcsShortCommitDetails details(String hash, String subject, String... parents) {
+    Hash[] parentHashes = new Hash[parents.length];
+    for (int i = 0; i < parents.length; i++) {
+      parentHashes[i] = HashImpl.build(parents[i]);
+    }
+    return new VcsShortCommitDetailsImpl(HashImpl.build(hash), Arrays.asList(parentHashes), 1000L, myRoot, subject,
+                                         new VcsUserImpl("Alice", "alice@example.com"));
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.changes.Change;
+import com.intellij.openapi.vcs.changes.ContentRevision;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.vcs.log.*;
+import com.intellij.vcs.log.impl.HashImpl;
+import com.intellij.vcs.log.impl.VcsFullCommitDetailsImpl;
+import com.intellij.vcs.log.impl.VcsUserImpl;
+import com.intellij.vcs.log.ui.filter.VcsLogTextFilter;
+import gnu.trove.TIntHashSet;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class VcsLogIndexTest {
+
+  private static final VcsUser ALICE = new VcsUserImpl("Alice", "alice@example.com");
+  private static final VcsUser BOB = new VcsUserImpl("Bob", "bob@example.com");
+  private static final VcsUser ANOTHER_BOB = new VcsUserImpl("Bob", "bob@example.org");
+
+  private final VirtualFile myRoot = new LightVirtualFile("root");
+  private File myStorageDir;
+  private VcsLogHashMap myHashMap;
+  private VcsLogIndex myIndex;
+
+  @Before
+  public void setUp() throws IOException {
+    myStorageDir = FileUtil.createTempDirectory("vcs-log-index", null);
+    myHashMap = new VcsLogHashMap(new File(myStorageDir, "hashes"));
+    myIndex = new VcsLogIndex(new File(myStorageDir, "index"), myHashMap);
+  }
+
+  @After
+  public void tearDown() {
+    Disposer.dispose(myIndex);
+    Disposer.dispose(myHashMap);
+    FileUtil.delete(myStorageDir);
+  }
+
+  @Test
+  public void filterByUserAndText() throws IOException {
+    myIndex.index(Arrays.asList(details("a1", ALICE, "Fix the parser"),
+                                details("a2", BOB, "Refactor the PARSER"),
+                                details("a3", ALICE, "Update docs")));
+    reopen();
+
+    assertEquals(hashes("a1", "a3"), filter(new VcsLogUserFilter.ByName("alice")));
+    assertEquals(hashes("a1", "a2"), filter(new VcsLogTextFilter("parser")));
+    assertEquals(hashes("a1"), filter(new VcsLogUserFilter.ByName("ALICE"), new VcsLogTextFilter("parser")));
+    assertEquals(hashes(), filter(new VcsLogTextFilter("compiler")));
+    assertNull("Texts shorter than a trigram are not indexed", filter(new VcsLogTextFilter("fi")));
+  }
+
+  @Test
+  public void usersWithTheSameNameAreDistinguishedByEmail() throws IOException {
+    myIndex.index(Arrays.asList(details("a1", BOB, "Fix the parser"),
+                                details("a2", ANOTHER_BOB, "Refactor the parser")));
+    reopen();
+
+    assertEquals(hashes("a1", "a2"), filter(new VcsLogUserFilter.ByName("bob")));
+    assertEquals(hashes("a2"), myIndex.filter(myRoot, Collections.singletonList(ANOTHER_BOB),
+                                              Collections.<VcsLogFilter>singletonList(new VcsLogUserFilter.ByName("bob"))));
+  }
+
+  @Test
+  public void filteringByUnknownUserFindsNothing() throws IOException {
+    myIndex.index(Collections.singletonList(details("a1", ALICE, "Initial")));
+    VcsUser carol = new VcsUserImpl("Carol", "carol@example.com");
+    List<VcsLogFilter> filters = Collections.<VcsLogFilter>singletonList(new VcsLogUserFilter.ByName("carol"));
+    assertEquals(hashes(), myIndex.filter(myRoot, Arrays.asList(ALICE, carol), filters));
+    reopen();
+    assertEquals(hashes(), myIndex.filter(myRoot, Arrays.asList(ALICE, carol), filters));
+  }
+
+  @Test
+  public void indexedCommits() throws IOException {
+    myIndex.index(Collections.singletonList(details("a1", ALICE, "Initial")));
+    reopen();
+    assertTrue(myIndex.isIndexed(myHashMap.getCommitIndex(HashImpl.build("a1"))));
+    assertFalse(myIndex.isIndexed(new int[]{myHashMap.getCommitIndex(HashImpl.build("a1")),
+      myHashMap.getCommitIndex(HashImpl.build("a2"))}));
+  }
+
+  private void reopen() throws IOException {
+    Disposer.dispose(myIndex);
+    myIndex = new VcsLogIndex(new File(myStorageDir, "index"), myHashMap);
+  }
+
+  private TIntHashSet filter(@NotNull VcsLogFilter... filters) throws IOException {
+    return myIndex.filter(myRoot, Arrays.asList(ALICE, BOB, ANOTHER_BOB), Arrays.asList(filters));
+  }
+
+  @NotNull
+  private TIntHashSet hashes(@NotNull String... hashes) throws IOException {
+    TIntHashSet result = new TIntHashSet();
+    for (String hash : hashes) {
+      result.add(myHashMap.getCommitIndex(HashImpl.build(hash)));
+    }
+    return result;
+  }
+
+  @NotNull
+  private VcsFullCommitDetails details(@NotNull String hash, @NotNull VcsUser author, @NotNull String message) {
+    return new VcsFullCommitDetailsImpl(HashImpl.build(hash), Collections.<Hash>emptyList(), 0, myRoot, message, author, message,
+                                        author, 0, Collections.<Change>emptyList(), new ContentRevisionFactory() {
+      @NotNull
+      @Override
+      public ContentRevision createRevision(@NotNull VirtualFile file, @NotNull Hash hash) {
+        throw new UnsupportedOperationException();
+      }
+
+      @NotNull
+      @Override
+      public ContentRevision createRevision(@NotNull VirtualFile root, @NotNull String path, @NotNull Hash hash) {
+        throw new UnsupportedOperationException();
+      }
+    });
+  }
+}
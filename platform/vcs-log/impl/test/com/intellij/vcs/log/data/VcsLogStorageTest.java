@@ -0,0 +1,163 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.vcs.log.Hash;
+import com.intellij.vcs.log.TimedVcsCommit;
+import com.intellij.vcs.log.VcsRef;
+import com.intellij.vcs.log.VcsRefType;
+import com.intellij.vcs.log.impl.VcsRefImpl;
+import com.intellij.vcs.log.parser.CommitParser;
+import com.intellij.vcs.log.parser.SimpleHash;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class VcsLogStorageTest {
+
+  private final VirtualFile myRoot = new LightVirtualFile("root");
+  private File myStorageDir;
+  private VcsLogStorage myStorage;
+
+  @Before
+  public void setUp() throws IOException {
+    myStorageDir = FileUtil.createTempDirectory("vcs-log-storage", null);
+    myStorage = new VcsLogStorage(myStorageDir);
+  }
+
+  @After
+  public void tearDown() {
+    Disposer.dispose(myStorage);
+    FileUtil.delete(myStorageDir);
+  }
+
+  @Test
+  public void saveAndLoad() throws IOException {
+    List<TimedVcsCommit> log = CommitParser.log("5|-a5|-a3 a4", "4|-a4|-a1", "3|-a3|-a2", "2|-a2|-a1", "1|-a1|-");
+    List<TimedVcsCommit> savedLog = myStorage.save(myRoot, log, refs("a5", "a4"));
+    assertEquals(toStr(log), toStr(savedLog));
+
+    Pair<List<TimedVcsCommit>, Set<Hash>> loaded = reopen().load(myRoot);
+    assertNotNull(loaded);
+    assertEquals(toStr(log), toStr(loaded.first));
+    assertEquals(ContainerUtil.newHashSet("a4", "a5"), toStrings(loaded.second));
+    assertEquals(5L, loaded.first.get(0).getAuthorTime());
+  }
+
+  @Test
+  public void updateKeepsTheBottomOfTheLog() throws IOException {
+    int count = VcsLogJoiner.BOUND_SAVED_LOG + 100;
+    List<String> commits = new ArrayList<String>();
+    for (int i = count; i > 1; i--) {
+      commits.add(commit(i, i - 1));
+    }
+    commits.add("1|-1|-");
+    List<TimedVcsCommit> log = CommitParser.log(ArrayUtil.toStringArray(commits));
+    List<TimedVcsCommit> savedLog = myStorage.save(myRoot, log, refs(Integer.toHexString(count)));
+
+    // the top commit is amended, and a new commit is made on top of it
+    List<String> newCommits = new ArrayList<String>();
+    newCommits.add(commit(count + 2, count + 1));
+    newCommits.add(commit(count + 1, count - 1));
+    newCommits.addAll(commits.subList(1, commits.size()));
+    List<TimedVcsCommit> newLog = CommitParser.log(ArrayUtil.toStringArray(newCommits));
+    List<TimedVcsCommit> updatedLog = myStorage.update(myRoot, savedLog, newLog, refs(Integer.toHexString(count + 2)));
+    assertEquals(toStr(newLog), toStr(updatedLog));
+
+    Pair<List<TimedVcsCommit>, Set<Hash>> loaded = reopen().load(myRoot);
+    assertNotNull(loaded);
+    assertEquals(toStr(newLog), toStr(loaded.first));
+    assertEquals(Collections.singleton(Integer.toHexString(count + 2)), toStrings(loaded.second));
+  }
+
+  @Test
+  public void unchangedLogIsNotRewritten() throws IOException {
+    List<TimedVcsCommit> log = CommitParser.log("3|-a3|-a2", "2|-a2|-a1", "1|-a1|-");
+    List<TimedVcsCommit> savedLog = myStorage.save(myRoot, log, refs("a3"));
+    assertSame(savedLog, myStorage.update(myRoot, savedLog, log, refs("a3")));
+    assertNotSame(savedLog, myStorage.update(myRoot, savedLog, log, refs("a3", "a2")));
+  }
+
+  @NotNull
+  private VcsLogStorage reopen() throws IOException {
+    Disposer.dispose(myStorage);
+    myStorage = new VcsLogStorage(myStorageDir);
+    return myStorage;
+  }
+
+  @NotNull
+  private static String commit(int hash, int parent) {
+    return hash + "|-" + Integer.toHexString(hash) + "|-" + Integer.toHexString(parent);
+  }
+
+  @NotNull
+  private static String toStr(@NotNull List<TimedVcsCommit> log) {
+    StringBuilder s = new StringBuilder();
+    for (TimedVcsCommit commit : log) {
+      s.append(commit.getHash().asString()).append(toStrings(commit.getParents())).append('\n');
+    }
+    return s.toString();
+  }
+
+  @NotNull
+  private static Collection<String> toStrings(@NotNull Collection<Hash> hashes) {
+    Collection<String> result = hashes instanceof Set ? new HashSet<String>() : new ArrayList<String>();
+    for (Hash hash : hashes) {
+      result.add(hash.asString());
+    }
+    return result;
+  }
+
+  @NotNull
+  private static Collection<VcsRef> refs(@NotNull String... hashes) {
+    Collection<VcsRef> refs = new ArrayList<VcsRef>();
+    for (String hash : hashes) {
+      refs.add(new VcsRefImpl(new SimpleHash(hash), hash, new VcsRefType() {
+        @Override
+        public boolean isBranch() {
+          return true;
+        }
+
+        @NotNull
+        @Override
+        public Color getBackgroundColor() {
+          return Color.WHITE;
+        }
+      }, new LightVirtualFile("root")));
+    }
+    return refs;
+  }
+}
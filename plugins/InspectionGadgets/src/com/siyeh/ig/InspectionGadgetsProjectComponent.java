@@ -15,14 +15,18 @@
  */
 package com.siyeh.ig;
 
-import com.intellij.openapi.components.ProjectComponent;
+import com.intellij.openapi.components.DeferredProjectComponent;
+import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.Project;
 import com.intellij.util.Consumer;
 import com.siyeh.ig.telemetry.InspectionGadgetsTelemetry;
 import com.siyeh.ig.telemetry.TelemetryToolWindow;
 import org.jetbrains.annotations.NotNull;
 
-public class InspectionGadgetsProjectComponent implements ProjectComponent {
+/**
+ * Only builds the telemetry tool window, which nothing else depends on, so it is done after the project is shown.
+ */
+public class InspectionGadgetsProjectComponent implements DeferredProjectComponent, DumbAware {
   private final Project project;
 
   public InspectionGadgetsProjectComponent(Project project) {
@@ -60,7 +60,6 @@ import java.io.*;
 import java.nio.charset.Charset;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static git4idea.history.GitLogParser.GitLogOption.*;
@@ -533,12 +532,41 @@ public class GitHistoryUtils {
     });
   }
 
+  @NotNull
+  public static List<? extends VcsCommitMetadata> readCommitMetadata(final Project project, final VirtualFile root,
+                                                                     List<String> hashes) throws VcsException {
+    GitSimpleHandler h = new GitSimpleHandler(project, root, GitCommand.LOG);
+    GitLogParser parser = new GitLogParser(project, GitLogParser.NameStatus.NONE, HASH, PARENTS, COMMIT_TIME, AUTHOR_NAME,
+                                           AUTHOR_EMAIL, AUTHOR_TIME, COMMITTER_NAME, COMMITTER_EMAIL, SUBJECT, BODY, RAW_BODY);
+    h.setStdoutSuppressed(true);
+    // same as readMiniDetails: no changes are needed, so no --name-status, which is the most expensive part of the output
+    h.addParameters("--no-walk");
+    h.addParameters(parser.getPretty(), "--encoding=UTF-8");
+    h.addParameters(new ArrayList<String>(hashes));
+
+    String output = h.run();
+    List<GitLogRecord> records = parser.parse(output);
+
+    final VcsLogObjectsFactory factory = vcsObjectsFactory(project);
+    return ContainerUtil.map(records, new Function<GitLogRecord, VcsCommitMetadata>() {
+      @Override
+      public VcsCommitMetadata fun(GitLogRecord record) {
+        List<Hash> parents = new SmartList<Hash>();
+        for (String parent : record.getParentsHashes()) {
+          parents.add(HashImpl.build(parent));
+        }
+        return factory.createCommitMetadata(HashImpl.build(record.getHash()), parents, record.getAuthorTimeStamp(), root,
+                                            record.getSubject(), record.getAuthorName(), record.getAuthorEmail(),
+                                            record.getFullMessage(), record.getCommitterName(), record.getCommitterEmail(),
+                                            record.getLongTimeStamp());
+      }
+    });
+  }
+
   @NotNull
   public static List<TimedVcsCommit> readAllHashes(@NotNull final Project project,
                                                    @NotNull VirtualFile root,
                                                    @NotNull final Consumer<VcsUser> userRegistry) throws VcsException {
-    final int COMMIT_BUFFER = 1000;
-
     GitLineHandler h = new GitLineHandler(project, root, GitCommand.LOG);
     final GitLogParser parser = new GitLogParser(project, GitLogParser.NameStatus.NONE, HASH, PARENTS, AUTHOR_TIME,
                                                  AUTHOR_NAME, AUTHOR_EMAIL);
@@ -550,33 +578,25 @@ public class GitHistoryUtils {
     h.endOptions();
 
     final List<TimedVcsCommit> commits = ContainerUtil.newArrayList();
+    final VcsLogObjectsFactory factory = vcsObjectsFactory(project);
+    // records are converted as soon as they are read, so neither the output nor the intermediate records are kept in memory
+    final GitLogParser.RecordReader reader = parser.new RecordReader(new Consumer<GitLogRecord>() {
+      @Override
+      public void consume(GitLogRecord record) {
+        commits.add(convert(project, record));
+        userRegistry.consume(factory.createUser(record.getAuthorName(), record.getAuthorEmail()));
+      }
+    });
 
-    final StringBuilder record = new StringBuilder();
-    final AtomicInteger records = new AtomicInteger();
     final Ref<VcsException> ex = new Ref<VcsException>();
     h.addLineListener(new GitLineHandlerListener() {
       @Override
       public void onLineAvailable(String line, Key outputType) {
+        if (!ProcessOutputTypes.STDOUT.equals(outputType) || !ex.isNull()) {
+          return;
+        }
         try {
-          int recordEnd = line.indexOf(GitLogParser.RECORD_END);
-          String afterParseRemainder;
-          if (recordEnd == line.length() - 1) { // ends with
-            record.append(line);
-            afterParseRemainder = "";
-          }
-          else if (recordEnd == -1) { // record doesn't end on this line => just appending, no parsing
-            record.append(line);
-            afterParseRemainder = null;
-          }
-          else { // record ends in the middle of this line
-            record.append(line.substring(0, recordEnd + 1));
-            afterParseRemainder = line.substring(recordEnd + 1);
-          }
-          if (afterParseRemainder != null && records.incrementAndGet() > COMMIT_BUFFER) { // null means can't parse now
-            commits.addAll(parseCommit(project, parser, record, userRegistry));
-            record.setLength(0);
-            record.append(afterParseRemainder);
-          }
+          reader.appendLine(line);
         }
         catch (Exception e) {
           ex.set(new VcsException(e));
@@ -586,7 +606,7 @@ public class GitHistoryUtils {
       @Override
       public void processTerminated(int exitCode) {
         try {
-          commits.addAll(parseCommit(project, parser, record, userRegistry));
+          reader.finish();
         }
         catch (Exception e) {
           ex.set(new VcsException(e));
@@ -605,22 +625,6 @@ public class GitHistoryUtils {
     return commits;
   }
 
-  private static List<TimedVcsCommit> parseCommit(final Project project, GitLogParser parser, StringBuilder record,
-                                                  final Consumer<VcsUser> userRegistry) {
-    List<GitLogRecord> rec = parser.parse(record.toString());
-    return ContainerUtil.mapNotNull(rec, new Function<GitLogRecord, TimedVcsCommit>() {
-      @Override
-      public TimedVcsCommit fun(GitLogRecord record) {
-        if (record == null) {
-          return null;
-        }
-        TimedVcsCommit commit = convert(project, record);
-        userRegistry.consume(vcsObjectsFactory(project).createUser(record.getAuthorName(), record.getAuthorEmail()));
-        return commit;
-      }
-    });
-  }
-
   @NotNull
   private static TimedVcsCommit convert(Project project, GitLogRecord rec) {
     VcsLogObjectsFactory factory = vcsObjectsFactory(project);
@@ -17,6 +17,7 @@ package git4idea.history;
 
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.Consumer;
 import com.intellij.util.Function;
 import git4idea.GitFormatException;
 import git4idea.GitVcs;
@@ -24,10 +25,7 @@ import git4idea.config.GitVersionSpecialty;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -40,7 +38,8 @@ import java.util.regex.Pattern;
  * 1. Pass options you want to have in the output to the constructor using the {@link GitLogOption} enum constants.
  * 2. Get the custom format pattern for 'git log' by calling {@link #getPretty()}
  * 3. Call the command and retrieve the output.
- * 4. Parse the output via {@link #parse(String)} or {@link #parseOneRecord(String)} (if you want the output to be parsed line by line).</p>
+ * 4. Parse the output via {@link #parse(String)} or {@link #parseOneRecord(String)} (if you want the output to be parsed line by line).
+ *    Large outputs without names of changed files should be read by a {@link RecordReader} while 'git log' is still running.</p>
  *
  * <p>The class is package visible, since it's used only in GitHistoryUtils - the class which retrieve various pieced of history information
  * in different formats from 'git log'</p>
@@ -65,6 +64,9 @@ public class GitLogParser {
   public static final String RECORD_START_GIT = "%x01";
   private static final String ITEMS_SEPARATOR_GIT = "%x02";
   private static final String RECORD_END_GIT = "%x03";
+  private static final char RECORD_START_CHAR = '\u0001';
+  private static final char ITEMS_SEPARATOR_CHAR = '\u0002';
+  private static final char RECORD_END_CHAR = '\u0003';
 
   private final String myFormat;  // pretty custom format generated in the constructor
   private final GitLogOption[] myOptions;
@@ -159,6 +161,18 @@ public class GitLogParser {
    */
   @NotNull
   List<GitLogRecord> parse(@NotNull String output) {
+    if (myNameStatusOption == NameStatus.NONE) {
+      final List<GitLogRecord> res = new ArrayList<GitLogRecord>();
+      RecordReader reader = new RecordReader(new Consumer<GitLogRecord>() {
+        @Override
+        public void consume(GitLogRecord record) {
+          res.add(record);
+        }
+      });
+      reader.append(output);
+      reader.finish();
+      return res;
+    }
     // Here is what git log returns for --pretty=tformat:^%H#%s$
     // ^2c815939f45fbcfda9583f84b14fe9d393ada790#sample commit$
     //
@@ -257,6 +271,97 @@ public class GitLogParser {
     return res;
   }
 
+  @NotNull
+  private GitLogRecord createRecord(@NotNull Map<GitLogOption, String> options) {
+    return new GitLogRecord(options, Collections.<String>emptyList(), Collections.<GitLogStatusInfo>emptyList(), mySupportsRawBody);
+  }
+
+  /**
+   * <p>Reads records from the 'git log' output which is given chunk by chunk (e.g. line by line as it comes from the process),
+   *    and passes each record to the consumer as soon as it is complete.</p>
+   *
+   * <p>Unlike {@link #parse(String)} it neither needs the whole output in memory, nor splits it into intermediate strings:
+   *    only the values of the record being read are buffered.</p>
+   *
+   * <p>Names of changed files are not supported: the reader may be used only with {@link NameStatus#NONE}.</p>
+   */
+  class RecordReader {
+    @NotNull private final Consumer<GitLogRecord> myConsumer;
+    @NotNull private final StringBuilder myValue = new StringBuilder();
+    @Nullable private Map<GitLogOption, String> myRecord; // null between records
+    private int myOptionIndex;
+
+    RecordReader(@NotNull Consumer<GitLogRecord> consumer) {
+      assert myNameStatusOption == NameStatus.NONE : "Names of changed files can't be read by the RecordReader";
+      myConsumer = consumer;
+    }
+
+    /**
+     * Reads a line of the output. Line separators are stripped by line handlers, so it is restored if the record continues.
+     */
+    void appendLine(@NotNull String line) {
+      append(line);
+      if (myRecord != null) {
+        myValue.append('\n');
+      }
+    }
+
+    void append(@NotNull CharSequence text) {
+      int valueStart = 0;
+      for (int i = 0; i < text.length(); i++) {
+        char c = text.charAt(i);
+        if (c != RECORD_START_CHAR && c != ITEMS_SEPARATOR_CHAR && c != RECORD_END_CHAR) {
+          continue;
+        }
+        if (myRecord != null) {
+          myValue.append(text, valueStart, i);
+        }
+        valueStart = i + 1;
+
+        if (c == RECORD_START_CHAR) {
+          myRecord = new EnumMap<GitLogOption, String>(GitLogOption.class);
+          myOptionIndex = 0;
+          myValue.setLength(0);
+        }
+        else if (myRecord != null) {
+          finishValue(myRecord);
+          if (c == RECORD_END_CHAR) {
+            finishRecord(myRecord);
+          }
+        }
+      }
+      if (myRecord != null) {
+        myValue.append(text, valueStart, text.length());
+      }
+    }
+
+    /**
+     * Checks that the output didn't end in the middle of a record.
+     * @throws GitFormatException if the last record is not complete.
+     */
+    void finish() {
+      if (myRecord != null) {
+        throwGFE("Unexpected end of the record", myValue.toString());
+      }
+    }
+
+    private void finishValue(@NotNull Map<GitLogOption, String> record) {
+      if (myOptionIndex < myOptions.length) { // extra values are ignored
+        record.put(myOptions[myOptionIndex], myValue.toString());
+      }
+      myOptionIndex++;
+      myValue.setLength(0);
+    }
+
+    private void finishRecord(@NotNull Map<GitLogOption, String> record) {
+      for (; myOptionIndex < myOptions.length; myOptionIndex++) { // options which were not returned are set to blank string
+        record.put(myOptions[myOptionIndex], "");
+      }
+      myRecord = null;
+      myConsumer.consume(createRecord(record));
+    }
+  }
+
   private static void assertNotNull(String value, String valueName, String line) {
     if (value == null) {
       throwGFE("Unexpectedly null " + valueName + " in ", line);
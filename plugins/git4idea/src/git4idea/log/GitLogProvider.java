@@ -94,6 +94,12 @@ public class GitLogProvider implements VcsLogProvider {
     return GitHistoryUtils.readMiniDetails(myProject, root, hashes);
   }
 
+  @NotNull
+  @Override
+  public List<? extends VcsCommitMetadata> readMetadata(@NotNull VirtualFile root, @NotNull List<String> hashes) throws VcsException {
+    return GitHistoryUtils.readCommitMetadata(myProject, root, hashes);
+  }
+
   @NotNull
   @Override
   public List<? extends VcsFullCommitDetails> readFullDetails(@NotNull VirtualFile root, @NotNull List<String> hashes) throws VcsException {
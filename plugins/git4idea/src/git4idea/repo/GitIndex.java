@@ -0,0 +1,241 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.repo;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>The content of the Git index file ({@code .git/index}): the list of entries with their object hashes and cached stat data.</p>
+ *
+ * <p>Only index versions 2 and 3 are supported. {@link #read(File)} returns null for other versions and for split indexes,
+ *    so that the caller can fall back to Git.</p>
+ */
+public class GitIndex {
+
+  private static final Logger LOG = Logger.getInstance(GitIndex.class);
+
+  private static final int SIGNATURE = 0x44495243; // "DIRC"
+  private static final int SPLIT_INDEX_EXTENSION = 0x6c696e6b; // "link"
+  private static final int HASH_LENGTH = 20;
+  private static final int ENTRY_HEADER_LENGTH = 62;
+
+  private static final int FLAG_ASSUME_VALID = 0x8000;
+  private static final int FLAG_EXTENDED = 0x4000;
+  private static final int FLAG_STAGE_MASK = 0x3000;
+  private static final int FLAG_NAME_MASK = 0xfff;
+  private static final int EXTENDED_FLAG_SKIP_WORKTREE = 0x4000;
+  private static final int EXTENDED_FLAG_INTENT_TO_ADD = 0x2000;
+
+  @NotNull private final List<Entry> myEntries;
+  private final long myTimestamp;
+
+  private GitIndex(@NotNull List<Entry> entries, long timestamp) {
+    myEntries = entries;
+    myTimestamp = timestamp;
+  }
+
+  /**
+   * Entries sorted by path, as they are stored in the index.
+   */
+  @NotNull
+  public List<Entry> getEntries() {
+    return myEntries;
+  }
+
+  /**
+   * Modification time of the index file in milliseconds.
+   * Entries modified in the same second (or later) are "racily clean": their stat data can't be trusted.
+   */
+  public long getTimestamp() {
+    return myTimestamp;
+  }
+
+  /**
+   * True if the entry was modified in the same second as the index was written (or later), so its stat data can't prove that
+   * the file is unchanged: the file could have been modified once more after Git had recorded it.
+   */
+  public boolean isRacilyClean(@NotNull Entry entry) {
+    return entry.getModificationTime() >= myTimestamp / 1000;
+  }
+
+  @Nullable
+  public static GitIndex read(@NotNull File indexFile) throws IOException {
+    if (!indexFile.isFile()) {
+      return new GitIndex(Collections.<Entry>emptyList(), 0);
+    }
+    long timestamp = indexFile.lastModified();
+    byte[] data = FileUtil.loadFileBytes(indexFile);
+    if (data.length < 12 + HASH_LENGTH || readInt(data, 0) != SIGNATURE) {
+      throw new IOException("Incorrect index file header: " + indexFile);
+    }
+    int version = readInt(data, 4);
+    if (version != 2 && version != 3) {
+      LOG.info("Unsupported index version " + version + ": " + indexFile);
+      return null;
+    }
+    int count = readInt(data, 8);
+    List<Entry> entries = new ArrayList<Entry>(count);
+    int pos = 12;
+    for (int i = 0; i < count; i++) {
+      int flags = readShort(data, pos + ENTRY_HEADER_LENGTH - 2);
+      int extendedFlags = 0;
+      int nameStart = pos + ENTRY_HEADER_LENGTH;
+      if ((flags & FLAG_EXTENDED) != 0) {
+        extendedFlags = readShort(data, nameStart);
+        nameStart += 2;
+      }
+      int nameLength = flags & FLAG_NAME_MASK;
+      if (nameLength == FLAG_NAME_MASK) { // the name is too long to store its length in flags
+        nameLength = 0;
+        while (data[nameStart + nameLength] != 0) {
+          nameLength++;
+        }
+      }
+      if (nameStart + nameLength > data.length - HASH_LENGTH) {
+        throw new IOException("Unexpected end of the index file: " + indexFile);
+      }
+      String path = new String(data, nameStart, nameLength, "UTF-8");
+      entries.add(new Entry(path, toHex(data, pos + 40), readInt(data, pos + 24), readInt(data, pos + 36) & 0xffffffffL,
+                            readInt(data, pos + 8), (flags & FLAG_STAGE_MASK) >> 12,
+                            (flags & FLAG_ASSUME_VALID) != 0 || (extendedFlags & EXTENDED_FLAG_SKIP_WORKTREE) != 0,
+                            (extendedFlags & EXTENDED_FLAG_INTENT_TO_ADD) != 0));
+      // entries are padded with 1-8 NUL bytes to the multiple of 8
+      int entryLength = nameStart - pos + nameLength;
+      pos += (entryLength + 8) & ~7;
+    }
+
+    while (pos + 8 <= data.length - HASH_LENGTH) {
+      if (readInt(data, pos) == SPLIT_INDEX_EXTENSION) {
+        LOG.info("Split index is not supported: " + indexFile);
+        return null;
+      }
+      pos += 8 + readInt(data, pos + 4);
+    }
+    return new GitIndex(entries, timestamp);
+  }
+
+  private static int readInt(@NotNull byte[] data, int pos) {
+    return ((data[pos] & 0xff) << 24) | ((data[pos + 1] & 0xff) << 16) | ((data[pos + 2] & 0xff) << 8) | (data[pos + 3] & 0xff);
+  }
+
+  private static int readShort(@NotNull byte[] data, int pos) {
+    return ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+  }
+
+  @NotNull
+  private static String toHex(@NotNull byte[] bytes, int offset) {
+    StringBuilder sb = new StringBuilder(2 * HASH_LENGTH);
+    for (int i = offset; i < offset + HASH_LENGTH; i++) {
+      sb.append(Character.forDigit((bytes[i] >> 4) & 15, 16)).append(Character.forDigit(bytes[i] & 15, 16));
+    }
+    return sb.toString();
+  }
+
+  public static class Entry {
+    @NotNull private final String myPath;
+    @NotNull private final String myHash;
+    private final int myMode;
+    private final long mySize;
+    private final int myModificationTime;
+    private final int myStage;
+    private final boolean myAssumedUnchanged;
+    private final boolean myIntentToAdd;
+
+    private Entry(@NotNull String path, @NotNull String hash, int mode, long size, int modificationTime, int stage,
+                  boolean assumedUnchanged, boolean intentToAdd) {
+      myPath = path;
+      myHash = hash;
+      myMode = mode;
+      mySize = size;
+      myModificationTime = modificationTime;
+      myStage = stage;
+      myAssumedUnchanged = assumedUnchanged;
+      myIntentToAdd = intentToAdd;
+    }
+
+    /**
+     * Path relative to the repository root, with '/' as a separator.
+     */
+    @NotNull
+    public String getPath() {
+      return myPath;
+    }
+
+    @NotNull
+    public String getHash() {
+      return myHash;
+    }
+
+    public boolean isRegularFile() {
+      return (myMode & 0170000) == 0100000;
+    }
+
+    /**
+     * True for regular files with the executable mode (100755).
+     */
+    public boolean isExecutable() {
+      return isRegularFile() && (myMode & 0100) != 0;
+    }
+
+    /**
+     * Checks if the given length and modification time (in seconds) of the working tree file match the stat data cached in the entry.
+     */
+    public boolean matchesStat(long length, long modificationTime) {
+      return (length & 0xffffffffL) == mySize && modificationTime == myModificationTime;
+    }
+
+    /**
+     * Size of the file in the working tree when it was last checked by Git (truncated to 32 bits).
+     */
+    public long getSize() {
+      return mySize;
+    }
+
+    /**
+     * Modification time of the file in the working tree in seconds, when it was last checked by Git.
+     */
+    public int getModificationTime() {
+      return myModificationTime;
+    }
+
+    /**
+     * 0 for normal entries, 1-3 for unmerged ones.
+     */
+    public int getStage() {
+      return myStage;
+    }
+
+    /**
+     * True if Git doesn't check the working tree file, because of the "assume unchanged" or "skip worktree" flag.
+     */
+    public boolean isAssumedUnchanged() {
+      return myAssumedUnchanged;
+    }
+
+    public boolean isIntentToAdd() {
+      return myIntentToAdd;
+    }
+  }
+}
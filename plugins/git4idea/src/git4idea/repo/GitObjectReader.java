@@ -0,0 +1,762 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.repo;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * <p>Reads Git objects (commits, trees and blobs) directly from the {@code .git/objects} folder, without calling the Git executable.
+ *    Both loose objects and pack files (version 2 indexes, with offset and reference deltas) are supported.</p>
+ *
+ * <p>The reader is not a full replacement of Git: if an object can't be found (e.g. it is stored in an alternate object database,
+ *    or the pack index has an unsupported format) {@code null} is returned, and the caller should fall back to the Git command line.
+ *    {@link IOException} is thrown if the object is found, but can't be read, or if the object database is inconsistent.</p>
+ *
+ * <p>Pack indexes are read once and then kept in memory, until the set of pack files changes. Pack files are opened once per request
+ *    and kept open until the request completes. The reader is thread-safe.</p>
+ */
+public class GitObjectReader {
+
+  private static final Logger LOG = Logger.getInstance(GitObjectReader.class);
+
+  private static final int HASH_LENGTH = 20;
+  private static final int MAX_DELTA_DEPTH = 10000;
+  private static final int MAX_DEFLATE_RATIO = 1032; // deflate can't compress better than that
+  private static final int MAX_DELTA_COPY_SIZE = 0xffffff;
+
+  private static final int OBJ_COMMIT = 1;
+  private static final int OBJ_TREE = 2;
+  private static final int OBJ_BLOB = 3;
+  private static final int OBJ_TAG = 4;
+  private static final int OBJ_OFS_DELTA = 6;
+  private static final int OBJ_REF_DELTA = 7;
+
+  private static final String DIRECTORY_MODE = "40000";
+
+  private static final String[] TYPE_NAMES = {null, "commit", "tree", "blob", "tag"};
+
+  @NotNull private final File myObjectsDir;
+  @NotNull private final File myPackDir;
+
+  private final Object myPacksLock = new Object();
+  @NotNull private List<PackFile> myPacks = ContainerUtil.emptyList();
+  private long myPackDirTimestamp = -1;
+
+  private final Object myTreeLock = new Object();
+  @Nullable private String myLastTreeCommit;
+  @Nullable private Map<String, String> myLastTree;
+
+  public GitObjectReader(@NotNull File gitDir) {
+    myObjectsDir = new File(gitDir, "objects");
+    myPackDir = new File(myObjectsDir, "pack");
+  }
+
+  /**
+   * Returns the content of the file at the given path (relative to the repository root, with '/' as separator)
+   * in the given commit, or null if it can't be read without Git.
+   */
+  @Nullable
+  public byte[] readFileContent(@NotNull String commitHash, @NotNull String relativePath) throws IOException {
+    ReadSession session = new ReadSession();
+    try {
+      return readFileContent(session, commitHash, relativePath);
+    }
+    finally {
+      session.close();
+    }
+  }
+
+  @Nullable
+  private static byte[] readFileContent(@NotNull ReadSession session, @NotNull String commitHash, @NotNull String relativePath)
+    throws IOException {
+    GitObject commit = session.readObject(commitHash);
+    if (commit == null || commit.type != OBJ_COMMIT) {
+      return null;
+    }
+    String treeHash = getTreeHash(commit.data);
+    if (treeHash == null) {
+      throw new IOException("Tree not found in commit " + commitHash);
+    }
+    String objectHash = treeHash;
+    for (String name : StringUtil.split(relativePath, "/")) {
+      GitObject tree = session.readObject(objectHash);
+      if (tree == null) {
+        return null;
+      }
+      if (tree.type != OBJ_TREE) {
+        throw new IOException(objectHash + " is not a tree");
+      }
+      objectHash = findTreeEntry(tree.data, name);
+      if (objectHash == null) {
+        return null; // no such file: Git will report the proper error
+      }
+    }
+    GitObject blob = session.readObject(objectHash);
+    return blob != null && blob.type == OBJ_BLOB ? blob.data : null;
+  }
+
+  /**
+   * Returns hashes of all files (and submodules) in the given commit by their paths relative to the repository root,
+   * or null if the commit can't be read without Git.
+   * The result for the last requested commit is cached, since it is usually HEAD which is requested again and again.
+   */
+  @Nullable
+  public Map<String, String> readTree(@NotNull String commitHash) throws IOException {
+    synchronized (myTreeLock) {
+      if (commitHash.equals(myLastTreeCommit)) {
+        return myLastTree;
+      }
+    }
+    Map<String, String> files;
+    ReadSession session = new ReadSession();
+    try {
+      files = readTree(session, commitHash);
+    }
+    finally {
+      session.close();
+    }
+    if (files == null) {
+      return null;
+    }
+    synchronized (myTreeLock) {
+      myLastTreeCommit = commitHash;
+      myLastTree = files;
+    }
+    return files;
+  }
+
+  @Nullable
+  private static Map<String, String> readTree(@NotNull ReadSession session, @NotNull String commitHash) throws IOException {
+    GitObject commit = session.readObject(commitHash);
+    if (commit == null || commit.type != OBJ_COMMIT) {
+      return null;
+    }
+    String treeHash = getTreeHash(commit.data);
+    if (treeHash == null) {
+      throw new IOException("Tree not found in commit " + commitHash);
+    }
+    Map<String, String> files = new HashMap<String, String>();
+    if (!collectFiles(session, treeHash, "", files)) {
+      return null;
+    }
+    return Collections.unmodifiableMap(files);
+  }
+
+  private static boolean collectFiles(@NotNull ReadSession session, @NotNull String treeHash, @NotNull String prefix,
+                                      @NotNull Map<String, String> files) throws IOException {
+    GitObject tree = session.readObject(treeHash);
+    if (tree == null) {
+      return false;
+    }
+    if (tree.type != OBJ_TREE) {
+      throw new IOException(treeHash + " is not a tree");
+    }
+    byte[] data = tree.data;
+    int pos = 0;
+    while (pos < data.length) {
+      int modeEnd = indexOf(data, (byte)' ', pos);
+      int nameEnd = modeEnd < 0 ? -1 : indexOf(data, (byte)0, modeEnd + 1);
+      if (nameEnd < 0 || nameEnd + HASH_LENGTH >= data.length + 1) {
+        throw new IOException("Incorrect tree entry at " + pos + " in " + treeHash);
+      }
+      String path = prefix + new String(data, modeEnd + 1, nameEnd - modeEnd - 1, "UTF-8");
+      String hash = toHex(data, nameEnd + 1);
+      if (modeEnd - pos == DIRECTORY_MODE.length() && data[pos] == DIRECTORY_MODE.charAt(0)) {
+        if (!collectFiles(session, hash, path + "/", files)) {
+          return false;
+        }
+      }
+      else {
+        files.put(path, hash);
+      }
+      pos = nameEnd + 1 + HASH_LENGTH;
+    }
+    return true;
+  }
+
+  @Nullable
+  GitObject readObject(@NotNull String hash) throws IOException {
+    ReadSession session = new ReadSession();
+    try {
+      return session.readObject(hash);
+    }
+    finally {
+      session.close();
+    }
+  }
+
+  @Nullable
+  private GitObject readLooseObject(@NotNull String hash) throws IOException {
+    File file = new File(new File(myObjectsDir, hash.substring(0, 2)), hash.substring(2));
+    if (!file.isFile()) {
+      return null;
+    }
+    byte[] bytes = inflate(FileUtil.loadFileBytes(file));
+    int headerEnd = indexOf(bytes, (byte)0, 0);
+    int space = indexOf(bytes, (byte)' ', 0);
+    if (headerEnd < 0 || space < 0 || space > headerEnd) {
+      throw new IOException("Incorrect header of the loose object " + hash);
+    }
+    int type = Arrays.asList(TYPE_NAMES).indexOf(new String(bytes, 0, space, "US-ASCII"));
+    if (type <= 0) {
+      throw new IOException("Unknown type of the loose object " + hash);
+    }
+    String size = new String(bytes, space + 1, headerEnd - space - 1, "US-ASCII");
+    if (!size.equals(String.valueOf(bytes.length - headerEnd - 1))) {
+      throw new IOException("Size mismatch of the loose object " + hash + ": expected " + size + ", actual " + (bytes.length - headerEnd - 1));
+    }
+    return new GitObject(type, Arrays.copyOfRange(bytes, headerEnd + 1, bytes.length));
+  }
+
+  @NotNull
+  private static PackEntry readPackEntry(@NotNull RandomAccessFile file, @NotNull File packFile, long offset) throws IOException {
+    long fileLength = file.length();
+    if (offset < 0 || offset >= fileLength) {
+      throw new IOException("Offset " + offset + " is out of " + packFile);
+    }
+    file.seek(offset);
+    InputStream in = new BufferedInputStream(new RandomAccessFileInputStream(file));
+
+    int c = readByte(in);
+    int type = (c >> 4) & 7;
+    long size = c & 15;
+    int shift = 4;
+    while ((c & 0x80) != 0) {
+      if (shift > 56) {
+        throw new IOException("Incorrect object size at " + offset + " in " + packFile);
+      }
+      c = readByte(in);
+      size |= (long)(c & 0x7f) << shift;
+      shift += 7;
+    }
+
+    long baseOffset = -1;
+    byte[] baseHash = null;
+    if (type == OBJ_OFS_DELTA) {
+      c = readByte(in);
+      long distance = c & 0x7f;
+      while ((c & 0x80) != 0) {
+        if (distance > (Long.MAX_VALUE >> 7)) {
+          throw new IOException("Incorrect delta base offset at " + offset + " in " + packFile);
+        }
+        c = readByte(in);
+        distance = ((distance + 1) << 7) | (c & 0x7f);
+      }
+      if (distance <= 0 || distance > offset) {
+        throw new IOException("Incorrect delta base distance " + distance + " at " + offset + " in " + packFile);
+      }
+      baseOffset = offset - distance;
+    }
+    else if (type == OBJ_REF_DELTA) {
+      baseHash = new byte[HASH_LENGTH];
+      new DataInputStream(in).readFully(baseHash);
+    }
+    else if (type < OBJ_COMMIT || type > OBJ_TAG) {
+      throw new IOException("Unknown object type " + type + " at " + offset + " in " + packFile);
+    }
+    if (size > Integer.MAX_VALUE || size > (fileLength - offset) * MAX_DEFLATE_RATIO) {
+      throw new IOException("Incorrect object size " + size + " at " + offset + " in " + packFile);
+    }
+
+    Inflater inflater = new Inflater();
+    try {
+      byte[] data = new byte[(int)size];
+      new DataInputStream(new InflaterInputStream(in, inflater)).readFully(data);
+      return new PackEntry(type, data, baseOffset, baseHash);
+    }
+    finally {
+      inflater.end();
+    }
+  }
+
+  @NotNull
+  private static byte[] applyDelta(@NotNull byte[] base, @NotNull byte[] delta) throws IOException {
+    int[] position = {0};
+    long baseSize = readVarInt(delta, position);
+    if (baseSize != base.length) {
+      throw new IOException("Delta base size mismatch: expected " + baseSize + ", actual " + base.length);
+    }
+    long resultSize = readVarInt(delta, position);
+    int pos = position[0];
+    // each opcode byte produces at most MAX_DELTA_COPY_SIZE bytes, so larger sizes can only come from a corrupted delta
+    if (resultSize > Integer.MAX_VALUE || resultSize > (long)(delta.length - pos) * MAX_DELTA_COPY_SIZE) {
+      throw new IOException("Incorrect delta result size: " + resultSize);
+    }
+    byte[] result = new byte[(int)resultSize];
+    int resultPos = 0;
+    while (pos < delta.length) {
+      int op = delta[pos++] & 0xff;
+      if ((op & 0x80) != 0) { // copy from the base
+        long copyOffset = 0;
+        int copySize = 0;
+        for (int i = 0; i < 4; i++) {
+          if ((op & (1 << i)) != 0) {
+            copyOffset |= (long)readDeltaByte(delta, pos++) << (8 * i);
+          }
+        }
+        for (int i = 0; i < 3; i++) {
+          if ((op & (0x10 << i)) != 0) {
+            copySize |= readDeltaByte(delta, pos++) << (8 * i);
+          }
+        }
+        if (copySize == 0) {
+          copySize = 0x10000;
+        }
+        if (copyOffset + copySize > base.length) {
+          throw new IOException("Delta copies " + copySize + " bytes from " + copyOffset + " out of the base of " + base.length + " bytes");
+        }
+        if (resultPos + copySize > result.length) {
+          throw new IOException("Delta result exceeds the expected size " + result.length);
+        }
+        System.arraycopy(base, (int)copyOffset, result, resultPos, copySize);
+        resultPos += copySize;
+      }
+      else if (op != 0) { // insert the following bytes
+        if (pos + op > delta.length) {
+          throw new IOException("Delta inserts " + op + " bytes beyond its end");
+        }
+        if (resultPos + op > result.length) {
+          throw new IOException("Delta result exceeds the expected size " + result.length);
+        }
+        System.arraycopy(delta, pos, result, resultPos, op);
+        pos += op;
+        resultPos += op;
+      }
+      else {
+        throw new IOException("Unexpected delta opcode 0");
+      }
+    }
+    if (resultPos != result.length) {
+      throw new IOException("Delta result size mismatch: expected " + result.length + ", actual " + resultPos);
+    }
+    return result;
+  }
+
+  private static int readDeltaByte(@NotNull byte[] delta, int pos) throws IOException {
+    if (pos >= delta.length) {
+      throw new IOException("Unexpected end of the delta");
+    }
+    return delta[pos] & 0xff;
+  }
+
+  private static long readVarInt(@NotNull byte[] data, @NotNull int[] position) throws IOException {
+    long value = 0;
+    int shift = 0;
+    int c;
+    do {
+      if (shift > 56) {
+        throw new IOException("Incorrect delta header");
+      }
+      c = readDeltaByte(data, position[0]++);
+      value |= (long)(c & 0x7f) << shift;
+      shift += 7;
+    }
+    while ((c & 0x80) != 0);
+    return value;
+  }
+
+  @NotNull
+  private List<PackFile> getPacks() {
+    synchronized (myPacksLock) {
+      long timestamp = myPackDir.lastModified();
+      if (timestamp != myPackDirTimestamp) {
+        myPackDirTimestamp = timestamp;
+        myPacks = readPackIndexes(myPackDir);
+      }
+      return myPacks;
+    }
+  }
+
+  @NotNull
+  private static List<PackFile> readPackIndexes(@NotNull File packDir) {
+    File[] indexFiles = packDir.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith("pack-") && name.endsWith(".idx");
+      }
+    });
+    if (indexFiles == null) {
+      return ContainerUtil.emptyList();
+    }
+    List<PackFile> packs = new ArrayList<PackFile>(indexFiles.length);
+    for (File indexFile : indexFiles) {
+      File packFile = new File(packDir, FileUtil.getNameWithoutExtension(indexFile) + ".pack");
+      if (!packFile.isFile()) {
+        continue;
+      }
+      try {
+        PackFile pack = PackFile.read(indexFile, packFile);
+        if (pack != null) {
+          packs.add(pack);
+        }
+      }
+      catch (IOException e) {
+        LOG.info("Couldn't read the pack index " + indexFile, e);
+      }
+    }
+    return packs;
+  }
+
+  @Nullable
+  private static String getTreeHash(@NotNull byte[] commit) throws IOException {
+    for (String line : readHeaders(commit)) {
+      if (line.startsWith("tree ")) {
+        return line.substring("tree ".length()).trim();
+      }
+    }
+    return null;
+  }
+
+  @NotNull
+  private static List<String> readHeaders(@NotNull byte[] commit) throws IOException {
+    int headersEnd = 0;
+    while (headersEnd < commit.length && !(commit[headersEnd] == '\n' && (headersEnd == 0 || commit[headersEnd - 1] == '\n'))) {
+      headersEnd++;
+    }
+    return StringUtil.split(new String(commit, 0, headersEnd, "UTF-8"), "\n");
+  }
+
+  @Nullable
+  private static String findTreeEntry(@NotNull byte[] tree, @NotNull String name) throws IOException {
+    byte[] nameBytes = name.getBytes("UTF-8");
+    int pos = 0;
+    while (pos < tree.length) {
+      int nameStart = indexOf(tree, (byte)' ', pos) + 1;
+      int nameEnd = indexOf(tree, (byte)0, nameStart);
+      if (nameStart <= 0 || nameEnd < 0 || nameEnd + HASH_LENGTH >= tree.length + 1) {
+        throw new IOException("Incorrect tree entry at " + pos);
+      }
+      if (nameEnd - nameStart == nameBytes.length && regionMatches(tree, nameStart, nameBytes)) {
+        return toHex(tree, nameEnd + 1);
+      }
+      pos = nameEnd + 1 + HASH_LENGTH;
+    }
+    return null;
+  }
+
+  @NotNull
+  private static byte[] inflate(@NotNull byte[] compressed) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 2);
+      byte[] buffer = new byte[8192];
+      while (!inflater.finished()) {
+        int count = inflater.inflate(buffer);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Unexpected end of the compressed data");
+        }
+        out.write(buffer, 0, count);
+      }
+      return out.toByteArray();
+    }
+    catch (DataFormatException e) {
+      throw new IOException(e);
+    }
+    finally {
+      inflater.end();
+    }
+  }
+
+  private static int readByte(@NotNull InputStream in) throws IOException {
+    int c = in.read();
+    if (c < 0) {
+      throw new EOFException();
+    }
+    return c;
+  }
+
+  private static int indexOf(@NotNull byte[] bytes, byte b, int from) {
+    for (int i = from; i < bytes.length; i++) {
+      if (bytes[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean regionMatches(@NotNull byte[] bytes, int offset, @NotNull byte[] region) {
+    for (int i = 0; i < region.length; i++) {
+      if (bytes[offset + i] != region[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Nullable
+  private static byte[] parseHash(@NotNull String hash) {
+    if (hash.length() != 2 * HASH_LENGTH) {
+      return null;
+    }
+    byte[] id = new byte[HASH_LENGTH];
+    for (int i = 0; i < HASH_LENGTH; i++) {
+      int high = Character.digit(hash.charAt(2 * i), 16);
+      int low = Character.digit(hash.charAt(2 * i + 1), 16);
+      if (high < 0 || low < 0) {
+        return null;
+      }
+      id[i] = (byte)((high << 4) | low);
+    }
+    return id;
+  }
+
+  @NotNull
+  private static String toHex(@NotNull byte[] bytes, int offset) {
+    StringBuilder sb = new StringBuilder(2 * HASH_LENGTH);
+    for (int i = offset; i < offset + HASH_LENGTH; i++) {
+      sb.append(Character.forDigit((bytes[i] >> 4) & 15, 16)).append(Character.forDigit(bytes[i] & 15, 16));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Reads objects for a single request, keeping the pack files open until the request completes.
+   */
+  private class ReadSession implements Closeable {
+    @NotNull private final Map<PackFile, RandomAccessFile> myOpenFiles = new HashMap<PackFile, RandomAccessFile>();
+
+    @Nullable
+    GitObject readObject(@NotNull String hash) throws IOException {
+      byte[] id = parseHash(hash);
+      if (id == null) {
+        return null;
+      }
+      GitObject object = readLooseObject(hash);
+      if (object != null) {
+        return object;
+      }
+      for (PackFile pack : getPacks()) {
+        long offset = pack.findOffset(id);
+        if (offset >= 0) {
+          return readPackedObject(pack, offset);
+        }
+      }
+      return null;
+    }
+
+    @NotNull
+    private GitObject readPackedObject(@NotNull PackFile pack, long offset) throws IOException {
+      RandomAccessFile file = getFile(pack);
+      // deltas are collected from the requested object down to the base, and then applied in the reverse order
+      List<byte[]> deltas = new ArrayList<byte[]>();
+      long currentOffset = offset;
+      for (int depth = 0; depth < MAX_DELTA_DEPTH; depth++) {
+        PackEntry entry = readPackEntry(file, pack.myPackFile, currentOffset);
+        if (entry.type == OBJ_OFS_DELTA) {
+          deltas.add(entry.data);
+          currentOffset = entry.baseOffset;
+        }
+        else if (entry.type == OBJ_REF_DELTA) {
+          deltas.add(entry.data);
+          //noinspection ConstantConditions
+          long baseOffset = pack.findOffset(entry.baseHash);
+          if (baseOffset < 0) {
+            // thin packs are not expected in a repository
+            throw new IOException("Delta base " + toHex(entry.baseHash, 0) + " not found in " + pack.myPackFile);
+          }
+          currentOffset = baseOffset;
+        }
+        else {
+          byte[] data = entry.data;
+          for (int i = deltas.size() - 1; i >= 0; i--) {
+            data = applyDelta(data, deltas.get(i));
+          }
+          return new GitObject(entry.type, data);
+        }
+      }
+      throw new IOException("Delta chain is too long at " + offset + " in " + pack.myPackFile);
+    }
+
+    @NotNull
+    private RandomAccessFile getFile(@NotNull PackFile pack) throws IOException {
+      RandomAccessFile file = myOpenFiles.get(pack);
+      if (file == null) {
+        file = new RandomAccessFile(pack.myPackFile, "r");
+        myOpenFiles.put(pack, file);
+      }
+      return file;
+    }
+
+    @Override
+    public void close() {
+      for (RandomAccessFile file : myOpenFiles.values()) {
+        try {
+          file.close();
+        }
+        catch (IOException e) {
+          LOG.info("Couldn't close " + file, e);
+        }
+      }
+      myOpenFiles.clear();
+    }
+  }
+
+  private static class RandomAccessFileInputStream extends InputStream {
+    @NotNull private final RandomAccessFile myFile;
+
+    private RandomAccessFileInputStream(@NotNull RandomAccessFile file) {
+      myFile = file;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return myFile.read();
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+      return myFile.read(b, off, len);
+    }
+  }
+
+  static class GitObject {
+    final int type;
+    @NotNull final byte[] data;
+
+    GitObject(int type, @NotNull byte[] data) {
+      this.type = type;
+      this.data = data;
+    }
+  }
+
+  private static class PackEntry {
+    private final int type;
+    @NotNull private final byte[] data;
+    private final long baseOffset;
+    @Nullable private final byte[] baseHash;
+
+    private PackEntry(int type, @NotNull byte[] data, long baseOffset, @Nullable byte[] baseHash) {
+      this.type = type;
+      this.data = data;
+      this.baseOffset = baseOffset;
+      this.baseHash = baseHash;
+    }
+  }
+
+  /**
+   * Version 2 pack index: a fan-out table by the first byte of hash, sorted hashes, CRCs, 4-byte offsets and 8-byte large offsets.
+   */
+  private static class PackFile {
+    private static final int IDX_SIGNATURE = 0xff744f63;
+
+    @NotNull private final File myPackFile;
+    @NotNull private final int[] myFanOut;
+    @NotNull private final byte[] myHashes;
+    @NotNull private final int[] myOffsets;
+    @NotNull private final long[] myLargeOffsets;
+
+    private PackFile(@NotNull File packFile, @NotNull int[] fanOut, @NotNull byte[] hashes, @NotNull int[] offsets,
+                     @NotNull long[] largeOffsets) {
+      myPackFile = packFile;
+      myFanOut = fanOut;
+      myHashes = hashes;
+      myOffsets = offsets;
+      myLargeOffsets = largeOffsets;
+    }
+
+    @Nullable
+    static PackFile read(@NotNull File indexFile, @NotNull File packFile) throws IOException {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+      try {
+        if (in.readInt() != IDX_SIGNATURE || in.readInt() != 2) {
+          LOG.info("Unsupported pack index version: " + indexFile);
+          return null;
+        }
+        int[] fanOut = new int[256];
+        for (int i = 0; i < fanOut.length; i++) {
+          fanOut[i] = in.readInt();
+          if (fanOut[i] < (i == 0 ? 0 : fanOut[i - 1])) {
+            throw new IOException("Incorrect fan-out table in " + indexFile);
+          }
+        }
+        int count = fanOut[255];
+        // each object takes at least 28 bytes in the index: a hash, a CRC and an offset
+        if ((long)count * (HASH_LENGTH + 8) > indexFile.length()) {
+          throw new IOException("Incorrect object count " + count + " in " + indexFile);
+        }
+        byte[] hashes = new byte[count * HASH_LENGTH];
+        in.readFully(hashes);
+        in.skipBytes(count * 4); // CRC32 of packed objects
+        int[] offsets = new int[count];
+        int largeOffsetsCount = 0;
+        for (int i = 0; i < count; i++) {
+          offsets[i] = in.readInt();
+          if (offsets[i] < 0) {
+            largeOffsetsCount = Math.max(largeOffsetsCount, (offsets[i] & 0x7fffffff) + 1);
+          }
+        }
+        if ((long)largeOffsetsCount * 8 > indexFile.length()) {
+          throw new IOException("Incorrect large offset index in " + indexFile);
+        }
+        long[] largeOffsets = new long[largeOffsetsCount];
+        for (int i = 0; i < largeOffsetsCount; i++) {
+          largeOffsets[i] = in.readLong();
+          if (largeOffsets[i] < 0) {
+            throw new IOException("Incorrect large offset " + largeOffsets[i] + " in " + indexFile);
+          }
+        }
+        return new PackFile(packFile, fanOut, hashes, offsets, largeOffsets);
+      }
+      finally {
+        in.close();
+      }
+    }
+
+    long findOffset(@NotNull byte[] id) {
+      int firstByte = id[0] & 0xff;
+      int low = firstByte == 0 ? 0 : myFanOut[firstByte - 1];
+      int high = myFanOut[firstByte] - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int cmp = compare(mid, id);
+        if (cmp < 0) {
+          low = mid + 1;
+        }
+        else if (cmp > 0) {
+          high = mid - 1;
+        }
+        else {
+          int offset = myOffsets[mid];
+          return offset >= 0 ? offset : myLargeOffsets[offset & 0x7fffffff];
+        }
+      }
+      return -1;
+    }
+
+    private int compare(int index, @NotNull byte[] id) {
+      int start = index * HASH_LENGTH;
+      for (int i = 0; i < HASH_LENGTH; i++) {
+        int diff = (myHashes[start + i] & 0xff) - (id[i] & 0xff);
+        if (diff != 0) {
+          return diff;
+        }
+      }
+      return 0;
+    }
+  }
+}
@@ -68,6 +68,12 @@ public interface GitRepository extends Repository {
   @NotNull
   GitUntrackedFilesHolder getUntrackedFilesHolder();
 
+  /**
+   * Returns the reader of Git objects stored in this repository, which lets read some data without calling Git.
+   */
+  @NotNull
+  GitObjectReader getObjectReader();
+
 
   @NotNull
   GitRepoInfo getInfo();
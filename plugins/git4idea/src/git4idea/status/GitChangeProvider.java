@@ -17,6 +17,7 @@ package git4idea.status;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.io.FileUtil;
@@ -25,6 +26,7 @@ import com.intellij.openapi.vcs.changes.*;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.PairProcessor;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import com.intellij.util.containers.Convertor;
 import git4idea.GitContentRevision;
 import git4idea.GitRevisionNumber;
@@ -35,8 +37,11 @@ import git4idea.commands.Git;
 import git4idea.config.GitVersion;
 import git4idea.config.GitVersionSpecialty;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Git repository change provider
@@ -44,12 +49,16 @@ import java.util.*;
 public class GitChangeProvider implements ChangeProvider {
 
   private static final Logger PROFILE_LOG = Logger.getInstance("#GitStatus");
+  private static final int MAX_SIMULTANEOUS_STATUS_TASKS = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+  private static final long WAIT_TIMEOUT_MS = 50;
 
   @NotNull private final Project myProject;
   @NotNull private final Git myGit;
   @NotNull private final ChangeListManager myChangeListManager;
   @NotNull private final FileDocumentManager myFileDocumentManager;
   @NotNull private final ProjectLevelVcsManager myVcsManager;
+  @NotNull private final BoundedTaskExecutor myStatusExecutor = new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE,
+                                                                                         MAX_SIMULTANEOUS_STATUS_TASKS);
 
   public GitChangeProvider(@NotNull Project project, @NotNull Git git, ChangeListManager changeListManager,
                            @NotNull FileDocumentManager fileDocumentManager, @NotNull ProjectLevelVcsManager vcsManager) {
@@ -76,16 +85,14 @@ public class GitChangeProvider implements ChangeProvider {
     final Collection<VirtualFile> affected = dirtyScope.getAffectedContentRoots();
     Collection<VirtualFile> roots = GitUtil.gitRootsForPaths(affected);
 
+    Map<VirtualFile, Future<GitChangesCollector>> collectors = startCollecting(vcs, dirtyScope, roots);
     try {
       final MyNonChangedHolder holder = new MyNonChangedHolder(myProject, dirtyScope.getDirtyFilesNoExpand(), addGate,
                                                                myFileDocumentManager, myVcsManager);
       for (VirtualFile root : roots) {
-        debug("checking root: " + root.getPath());
-        GitChangesCollector collector = isNewGitChangeProviderAvailable()
-                                        ? GitNewChangesCollector.collect(myProject, myGit, myChangeListManager, myVcsManager,
-                                                                         vcs, dirtyScope, root)
-                                        : GitOldChangesCollector.collect(myProject, myChangeListManager, myVcsManager,
-                                                                         vcs, dirtyScope, root);
+        GitChangesCollector collector = collectors.containsKey(root)
+                                        ? waitFor(collectors.get(root), progress)
+                                        : collect(vcs, dirtyScope, root);
         final Collection<Change> changes = collector.getChanges();
         holder.changed(changes);
         for (Change file : changes) {
@@ -104,6 +111,77 @@ public class GitChangeProvider implements ChangeProvider {
       // most probably the error happened because git is not configured
       vcs.getExecutableValidator().showNotificationOrThrow(e);
     }
+    finally {
+      for (Future<GitChangesCollector> future : collectors.values()) {
+        future.cancel(false); // no-op for the processed roots, the rest are not needed after an error
+      }
+    }
+  }
+
+  /**
+   * Starts collecting changes of all roots but the first one on pooled threads: each root is processed by a separate Git process,
+   * so roots are processed in parallel, while the builder is fed in the calling thread root by root.
+   */
+  @NotNull
+  private Map<VirtualFile, Future<GitChangesCollector>> startCollecting(@NotNull final GitVcs vcs, @NotNull final VcsDirtyScope dirtyScope,
+                                                                        @NotNull Collection<VirtualFile> roots) {
+    Map<VirtualFile, Future<GitChangesCollector>> collectors = new HashMap<VirtualFile, Future<GitChangesCollector>>();
+    boolean first = true;
+    for (final VirtualFile root : roots) {
+      if (first) {
+        first = false;
+        continue;
+      }
+      collectors.put(root, myStatusExecutor.submit(new Callable<GitChangesCollector>() {
+        @Override
+        public GitChangesCollector call() throws VcsException {
+          return collect(vcs, dirtyScope, root);
+        }
+      }));
+    }
+    return collectors;
+  }
+
+  @NotNull
+  private GitChangesCollector collect(@NotNull GitVcs vcs, @NotNull VcsDirtyScope dirtyScope, @NotNull VirtualFile root)
+    throws VcsException {
+    debug("checking root: " + root.getPath());
+    return isNewGitChangeProviderAvailable()
+           ? GitNewChangesCollector.collect(myProject, myGit, myChangeListManager, myVcsManager, vcs, dirtyScope, root)
+           : GitOldChangesCollector.collect(myProject, myChangeListManager, myVcsManager, vcs, dirtyScope, root);
+  }
+
+  @NotNull
+  private static GitChangesCollector waitFor(@NotNull Future<GitChangesCollector> future, @Nullable ProgressIndicator progress)
+    throws VcsException {
+    try {
+      while (true) {
+        if (progress != null) {
+          progress.checkCanceled();
+        }
+        try {
+          return future.get(WAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException ignored) {
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      throw new ProcessCanceledException();
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof VcsException) {
+        throw (VcsException)cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error)cause;
+      }
+      throw new VcsException(cause);
+    }
   }
 
   public static void appendNestedVcsRootsToDirt(final VcsDirtyScope dirtyScope, GitVcs vcs, final ProjectLevelVcsManager vcsManager) {
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.status;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.FilePathImpl;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.vcsUtil.VcsFileUtil;
+import git4idea.repo.GitIndex;
+import git4idea.repo.GitRepository;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * <p>Narrows dirty directories down to the files which may actually be changed, so that 'git status' is not called on the whole
+ *    directory (which may be the whole root after a large VFS refresh).</p>
+ *
+ * <p>The {@link GitIndex Git index} is read directly: a file may be changed, if its index entry differs from HEAD (staged changes),
+ *    if it is unmerged, or if its length, timestamp or executable bit differ from the stat data cached in the index.
+ *    Only files with the same length but a different timestamp are hashed.
+ *    The rest of the files are known to be unchanged, which is what 'git status' would find out as well.</p>
+ */
+class GitIndexChangesDetector {
+
+  private static final Logger LOG = Logger.getInstance(GitIndexChangesDetector.class);
+
+  /**
+   * If there are more files to hash, their stat data in the index is probably outdated (e.g. after checkout by an external tool),
+   * and 'git status' on the whole directory is better: it would also refresh the index.
+   */
+  private static final int MAX_FILES_TO_HASH = 1000;
+
+  @NotNull private final GitRepository myRepository;
+  @NotNull private final VirtualFile myRoot;
+  private int myHashedFiles;
+
+  private GitIndexChangesDetector(@NotNull GitRepository repository, @NotNull VirtualFile root) {
+    myRepository = repository;
+    myRoot = root;
+  }
+
+  /**
+   * Returns the dirty paths with directories replaced by the files under them which may be changed,
+   * or null if it can't be found out without Git.
+   */
+  @Nullable
+  static Collection<FilePath> narrow(@NotNull GitRepository repository, @NotNull VirtualFile root, @Nullable String head,
+                                     @NotNull Collection<FilePath> dirtyPaths) {
+    Set<String> dirtyDirectories = new HashSet<String>();
+    List<FilePath> result = new ArrayList<FilePath>();
+    for (FilePath path : dirtyPaths) {
+      if (path.isDirectory()) {
+        String relativePath = VcsFileUtil.relativePath(root, path);
+        dirtyDirectories.add(".".equals(relativePath) ? "" : relativePath);
+      }
+      else {
+        result.add(path);
+      }
+    }
+    if (dirtyDirectories.isEmpty()) {
+      return dirtyPaths;
+    }
+
+    try {
+      Collection<String> candidates = new GitIndexChangesDetector(repository, root).findCandidates(head, dirtyDirectories);
+      if (candidates == null) {
+        return null;
+      }
+      File rootFile = VfsUtilCore.virtualToIoFile(root);
+      for (String candidate : candidates) {
+        result.add(new FilePathImpl(new File(rootFile, candidate), false));
+      }
+      return result;
+    }
+    catch (IOException e) {
+      LOG.info("Couldn't read the Git index or HEAD of " + root, e);
+      return null;
+    }
+  }
+
+  @Nullable
+  private Collection<String> findCandidates(@Nullable String head, @NotNull Set<String> dirtyDirectories) throws IOException {
+    GitIndex index = GitIndex.read(new File(VfsUtilCore.virtualToIoFile(myRepository.getGitDir()), "index"));
+    if (index == null) {
+      return null;
+    }
+    Map<String, String> headFiles = head == null ? Collections.<String, String>emptyMap() : myRepository.getObjectReader().readTree(head);
+    if (headFiles == null) {
+      return null;
+    }
+
+    Set<String> candidates = new HashSet<String>();
+    Set<String> indexedPaths = new HashSet<String>();
+    for (GitIndex.Entry entry : index.getEntries()) {
+      String path = entry.getPath();
+      if (!isUnder(path, dirtyDirectories)) {
+        continue;
+      }
+      indexedPaths.add(path);
+      if (entry.getStage() != 0 || entry.isIntentToAdd() || !entry.getHash().equals(headFiles.get(path))) {
+        candidates.add(path);
+      }
+      else if (!entry.isAssumedUnchanged() && mayBeModified(index, entry)) {
+        if (myHashedFiles > MAX_FILES_TO_HASH) {
+          return null;
+        }
+        candidates.add(path);
+      }
+    }
+    for (String path : headFiles.keySet()) {
+      if (!indexedPaths.contains(path) && isUnder(path, dirtyDirectories)) { // deleted from the index
+        candidates.add(path);
+      }
+    }
+    return candidates;
+  }
+
+  private static boolean isUnder(@NotNull String path, @NotNull Set<String> directories) {
+    if (directories.contains("")) {
+      return true;
+    }
+    for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+      if (directories.contains(path.substring(0, slash))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean mayBeModified(@NotNull GitIndex index, @NotNull GitIndex.Entry entry) {
+    if (!entry.isRegularFile()) {
+      return true; // symlinks and submodules are left to Git
+    }
+    VirtualFile file = myRoot.findFileByRelativePath(entry.getPath());
+    if (file == null || file.isDirectory()) {
+      return true;
+    }
+    File ioFile = VfsUtilCore.virtualToIoFile(file);
+    // Git ignores the executable bit on Windows (core.fileMode is false there)
+    if (!SystemInfo.isWindows && ioFile.canExecute() != entry.isExecutable()) {
+      return true;
+    }
+    long length = file.getLength();
+    if ((length & 0xffffffffL) != entry.getSize()) {
+      return true;
+    }
+    if (entry.matchesStat(length, file.getTimeStamp() / 1000) && !index.isRacilyClean(entry)) {
+      return false;
+    }
+    // the same length, but the timestamp is different or the entry is racily clean => compare the content
+    myHashedFiles++;
+    if (myHashedFiles > MAX_FILES_TO_HASH) {
+      return true;
+    }
+    try {
+      return !entry.getHash().equals(hashBlob(FileUtil.loadFileBytes(ioFile)));
+    }
+    catch (IOException e) {
+      LOG.info("Couldn't read " + file, e);
+      return true;
+    }
+  }
+
+  @NotNull
+  private static String hashBlob(@NotNull byte[] content) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(("blob " + content.length + "\0").getBytes("US-ASCII"));
+      byte[] hash = digest.digest(content);
+      StringBuilder sb = new StringBuilder(2 * hash.length);
+      for (byte b : hash) {
+        sb.append(Character.forDigit((b >> 4) & 15, 16)).append(Character.forDigit(b & 15, 16));
+      }
+      return sb.toString();
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
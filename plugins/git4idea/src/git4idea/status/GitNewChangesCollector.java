@@ -95,16 +95,33 @@ class GitNewChangesCollector extends GitChangesCollector {
 
     Collection<FilePath> dirtyPaths = dirtyPaths(true);
     if (!dirtyPaths.isEmpty()) {
-      collectChanges(dirtyPaths);
+      VcsRevisionNumber head = getHead();
+      Collection<FilePath> pathsToCheck = narrowDirtyPaths(dirtyPaths, head);
+      if (!pathsToCheck.isEmpty()) {
+        collectChanges(pathsToCheck, head);
+      }
       collectUnversionedFiles();
     }
   }
 
+  /**
+   * Replaces dirty directories by the files which may be changed according to the Git index, if it is possible.
+   */
+  @NotNull
+  private Collection<FilePath> narrowDirtyPaths(@NotNull Collection<FilePath> dirtyPaths, @NotNull VcsRevisionNumber head) {
+    if (myRepository == null) {
+      return dirtyPaths;
+    }
+    String headRevision = head == VcsRevisionNumber.NULL ? null : head.asString();
+    Collection<FilePath> narrowedPaths = GitIndexChangesDetector.narrow(myRepository, myVcsRoot, headRevision, dirtyPaths);
+    return narrowedPaths != null ? narrowedPaths : dirtyPaths;
+  }
+
   // calls 'git status' and parses the output, feeding myChanges.
-  private void collectChanges(Collection<FilePath> dirtyPaths) throws VcsException {
+  private void collectChanges(@NotNull Collection<FilePath> dirtyPaths, @NotNull VcsRevisionNumber head) throws VcsException {
     GitSimpleHandler handler = statusHandler(dirtyPaths);
     String output = handler.run();
-    parseOutput(output, handler);
+    parseOutput(output, handler, head);
   }
 
   private void collectUnversionedFiles() throws VcsException {
@@ -141,9 +158,7 @@ class GitNewChangesCollector extends GitChangesCollector {
    * See <a href=http://www.kernel.org/pub/software/scm/git/docs/git-status.html#_output">Git man</a> for details.
    */
   // handler is here for debugging purposes in the case of parse error
-  private void parseOutput(@NotNull String output, @NotNull GitHandler handler) throws VcsException {
-    VcsRevisionNumber head = getHead();
-
+  private void parseOutput(@NotNull String output, @NotNull GitHandler handler, @NotNull VcsRevisionNumber head) throws VcsException {
     final String[] split = output.split("\u0000");
 
     for (int pos = 0; pos < split.length; pos++) {
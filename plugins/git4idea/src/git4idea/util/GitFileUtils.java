@@ -30,7 +30,9 @@ import git4idea.commands.GitSimpleHandler;
 import git4idea.repo.GitRepository;
 import git4idea.repo.GitRepositoryManager;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -209,7 +211,9 @@ public class GitFileUtils {
   }
 
   /**
-   * Get file content for the specific revision
+   * Get file content for the specific revision.
+   * If the revision is a commit hash, the content is read directly from the Git object database if possible,
+   * otherwise 'git show' is called.
    *
    * @param project      the project
    * @param root         the vcs root
@@ -219,12 +223,32 @@ public class GitFileUtils {
    * @throws VcsException if there is a problem with running git
    */
   public static byte[] getFileContent(Project project, VirtualFile root, String revisionOrBranch, String relativePath) throws VcsException {
+    byte[] content = readFileContentWithoutGit(project, root, revisionOrBranch, relativePath);
+    if (content != null) {
+      return content;
+    }
     GitBinaryHandler h = new GitBinaryHandler(project, root, GitCommand.SHOW);
     h.setSilent(true);
     h.addParameters(revisionOrBranch + ":" + relativePath);
     return h.run();
   }
 
+  @Nullable
+  private static byte[] readFileContentWithoutGit(@NotNull Project project, @NotNull VirtualFile root, @NotNull String revision,
+                                                  @NotNull String relativePath) {
+    GitRepository repository = GitUtil.getRepositoryManager(project).getRepositoryForRoot(root);
+    if (repository == null) {
+      return null;
+    }
+    try {
+      return repository.getObjectReader().readFileContent(revision, relativePath);
+    }
+    catch (IOException e) {
+      LOG.info("Couldn't read " + relativePath + " at " + revision + " from the Git object database", e);
+      return null;
+    }
+  }
+
   public static String stripFileProtocolPrefix(String path) {
     final String FILE_PROTOCOL = "file://";
     if (path.startsWith(FILE_PROTOCOL)) {
@@ -22,6 +22,7 @@ import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vcs.changes.Change;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.util.Consumer;
 import com.intellij.util.containers.ContainerUtil;
 import git4idea.GitUtil;
 import git4idea.test.GitTest;
@@ -146,6 +147,23 @@ public class GitLogParserTest extends GitTest {
     assertAllRecords(actualRecords, expectedRecords, nameStatusOption);
   }
 
+  @Test
+  public void readAllWithoutNameStatusLineByLine() throws VcsException {
+    myParser = new GitLogParser(myProject, NameStatus.NONE, GIT_LOG_OPTIONS);
+    final List<GitLogRecord> actualRecords = new ArrayList<GitLogRecord>();
+    GitLogParser.RecordReader reader = myParser.new RecordReader(new Consumer<GitLogRecord>() {
+      @Override
+      public void consume(GitLogRecord record) {
+        actualRecords.add(record);
+      }
+    });
+    for (String line : StringUtil.splitByLines(prepareOutputForAllRecords(GitTestLogRecord.NameStatusOption.NONE), false)) {
+      reader.appendLine(line);
+    }
+    reader.finish();
+    assertAllRecords(actualRecords, ALL_RECORDS, GitTestLogRecord.NameStatusOption.NONE);
+  }
+
   @Test
   public void parseOneRecordWithoutNameStatus() throws VcsException {
     myParser = new GitLogParser(myProject, GIT_LOG_OPTIONS);
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.repo;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GitIndexTest {
+
+  private static final String HASH_1 = "0123456789abcdef0123456789abcdef01234567";
+  private static final String HASH_2 = "fedcba9876543210fedcba9876543210fedcba98";
+
+  private static final int MODE_FILE = 0100644;
+  private static final int MODE_EXECUTABLE = 0100755;
+  private static final int MODE_SYMLINK = 0120000;
+
+  private static final int FLAG_ASSUME_VALID = 0x8000;
+  private static final int EXTENDED_FLAG_SKIP_WORKTREE = 0x4000;
+  private static final int EXTENDED_FLAG_INTENT_TO_ADD = 0x2000;
+
+  private File myIndexFile;
+
+  @Before
+  public void setUp() throws IOException {
+    myIndexFile = FileUtil.createTempFile("index", null);
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.delete(myIndexFile);
+  }
+
+  @Test
+  public void readsVersion2Entries() throws IOException {
+    IndexBuilder builder = new IndexBuilder(2);
+    builder.add("dir/file.txt", HASH_1, MODE_FILE, 42, 1000, 0, 0);
+    builder.add("run.sh", HASH_2, MODE_EXECUTABLE, 7, 2000, 0, 0);
+    builder.add("link", HASH_2, MODE_SYMLINK, 3, 2000, 0, 0);
+    List<GitIndex.Entry> entries = read(builder);
+
+    assertEquals(3, entries.size());
+    GitIndex.Entry file = entries.get(0);
+    assertEquals("dir/file.txt", file.getPath());
+    assertEquals(HASH_1, file.getHash());
+    assertEquals(42, file.getSize());
+    assertEquals(1000, file.getModificationTime());
+    assertEquals(0, file.getStage());
+    assertTrue(file.isRegularFile());
+    assertFalse(file.isExecutable());
+    assertFalse(file.isAssumedUnchanged());
+    assertFalse(file.isIntentToAdd());
+
+    GitIndex.Entry script = entries.get(1);
+    assertEquals("run.sh", script.getPath());
+    assertTrue(script.isRegularFile());
+    assertTrue(script.isExecutable());
+
+    GitIndex.Entry link = entries.get(2);
+    assertFalse(link.isRegularFile());
+    assertFalse(link.isExecutable());
+  }
+
+  @Test
+  public void readsStagesAndAssumeValidFlag() throws IOException {
+    IndexBuilder builder = new IndexBuilder(2);
+    builder.add("conflict.txt", HASH_1, MODE_FILE, 1, 1000, 2 << 12, 0);
+    builder.add("unchanged.txt", HASH_2, MODE_FILE, 1, 1000, FLAG_ASSUME_VALID, 0);
+    List<GitIndex.Entry> entries = read(builder);
+
+    assertEquals(2, entries.get(0).getStage());
+    assertFalse(entries.get(0).isAssumedUnchanged());
+    assertEquals(0, entries.get(1).getStage());
+    assertTrue(entries.get(1).isAssumedUnchanged());
+  }
+
+  @Test
+  public void readsVersion3ExtendedFlags() throws IOException {
+    IndexBuilder builder = new IndexBuilder(3);
+    builder.add("a.txt", HASH_1, MODE_FILE, 1, 1000, 0, 0);
+    builder.add("b.txt", HASH_2, MODE_FILE, 1, 1000, 0, EXTENDED_FLAG_SKIP_WORKTREE);
+    builder.add("c.txt", HASH_1, MODE_FILE, 0, 0, 0, EXTENDED_FLAG_INTENT_TO_ADD);
+    builder.add("d.txt", HASH_2, MODE_FILE, 5, 1000, 0, 0);
+    List<GitIndex.Entry> entries = read(builder);
+
+    assertEquals(4, entries.size());
+    assertEquals("a.txt", entries.get(0).getPath());
+    assertFalse(entries.get(0).isAssumedUnchanged());
+    assertEquals("b.txt", entries.get(1).getPath());
+    assertTrue(entries.get(1).isAssumedUnchanged());
+    assertFalse(entries.get(1).isIntentToAdd());
+    assertEquals("c.txt", entries.get(2).getPath());
+    assertTrue(entries.get(2).isIntentToAdd());
+    assertEquals("d.txt", entries.get(3).getPath());
+    assertEquals(HASH_2, entries.get(3).getHash());
+    assertEquals(5, entries.get(3).getSize());
+  }
+
+  @Test
+  public void readsLongNames() throws IOException {
+    String longName = StringUtil.repeat("a", 5000);
+    IndexBuilder builder = new IndexBuilder(2);
+    builder.add(longName, HASH_1, MODE_FILE, 1, 1000, 0, 0);
+    builder.add("z.txt", HASH_2, MODE_FILE, 1, 1000, 0, 0);
+    List<GitIndex.Entry> entries = read(builder);
+
+    assertEquals(longName, entries.get(0).getPath());
+    assertEquals("z.txt", entries.get(1).getPath());
+  }
+
+  @Test
+  public void unsupportedVersionIsNotRead() throws IOException {
+    IndexBuilder builder = new IndexBuilder(4);
+    FileUtil.writeToFile(myIndexFile, builder.build(null));
+    assertNull(GitIndex.read(myIndexFile));
+  }
+
+  @Test
+  public void splitIndexIsNotRead() throws IOException {
+    IndexBuilder builder = new IndexBuilder(2);
+    builder.add("a.txt", HASH_1, MODE_FILE, 1, 1000, 0, 0);
+    FileUtil.writeToFile(myIndexFile, builder.build("link"));
+    assertNull(GitIndex.read(myIndexFile));
+  }
+
+  @Test
+  public void entriesModifiedWithIndexAreRacilyClean() throws IOException {
+    long indexTime = 1400000000;
+    IndexBuilder builder = new IndexBuilder(2);
+    builder.add("old.txt", HASH_1, MODE_FILE, 10, (int)indexTime - 1, 0, 0);
+    builder.add("racy.txt", HASH_1, MODE_FILE, 10, (int)indexTime, 0, 0);
+    builder.add("newer.txt", HASH_1, MODE_FILE, 10, (int)indexTime + 1, 0, 0);
+    FileUtil.writeToFile(myIndexFile, builder.build(null));
+    assertTrue(myIndexFile.setLastModified(indexTime * 1000 + 500));
+    GitIndex index = GitIndex.read(myIndexFile);
+    assertNotNull(index);
+
+    List<GitIndex.Entry> entries = index.getEntries();
+    assertFalse(index.isRacilyClean(entries.get(0)));
+    assertTrue(index.isRacilyClean(entries.get(1)));
+    assertTrue(index.isRacilyClean(entries.get(2)));
+  }
+
+  @Test
+  public void statDataIsComparedWithTruncatedSize() throws IOException {
+    IndexBuilder builder = new IndexBuilder(2);
+    builder.add("huge.bin", HASH_1, MODE_FILE, 5, 1000, 0, 0);
+    GitIndex.Entry entry = read(builder).get(0);
+
+    assertTrue(entry.matchesStat(5, 1000));
+    assertTrue(entry.matchesStat(0x100000005L, 1000));
+    assertFalse(entry.matchesStat(6, 1000));
+    assertFalse(entry.matchesStat(5, 1001));
+  }
+
+  private List<GitIndex.Entry> read(IndexBuilder builder) throws IOException {
+    FileUtil.writeToFile(myIndexFile, builder.build(null));
+    GitIndex index = GitIndex.read(myIndexFile);
+    assertNotNull(index);
+    return index.getEntries();
+  }
+
+  private static class IndexBuilder {
+    private final int myVersion;
+    private final ByteArrayOutputStream myEntries = new ByteArrayOutputStream();
+    private int myCount;
+
+    IndexBuilder(int version) {
+      myVersion = version;
+    }
+
+    void add(String path, String hash, int mode, int size, int modificationTime, int flags, int extendedFlags)
+      throws IOException {
+      DataOutputStream out = new DataOutputStream(myEntries);
+      int start = myEntries.size();
+      out.writeInt(modificationTime); // ctime
+      out.writeInt(0);
+      out.writeInt(modificationTime); // mtime
+      out.writeInt(0);
+      out.writeInt(0); // dev
+      out.writeInt(0); // ino
+      out.writeInt(mode);
+      out.writeInt(0); // uid
+      out.writeInt(0); // gid
+      out.writeInt(size);
+      for (int i = 0; i < hash.length(); i += 2) {
+        out.writeByte(Integer.parseInt(hash.substring(i, i + 2), 16));
+      }
+      byte[] name = path.getBytes("UTF-8");
+      int extended = extendedFlags != 0 ? 0x4000 : 0;
+      out.writeShort(flags | extended | Math.min(name.length, 0xfff));
+      if (extended != 0) {
+        out.writeShort(extendedFlags);
+      }
+      out.write(name);
+      int length = myEntries.size() - start;
+      int padding = ((length + 8) & ~7) - length;
+      out.write(new byte[padding]);
+      myCount++;
+    }
+
+    byte[] build(String extension) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeBytes("DIRC");
+      out.writeInt(myVersion);
+      out.writeInt(myCount);
+      out.write(myEntries.toByteArray());
+      if (extension != null) {
+        out.writeBytes(extension);
+        out.writeInt(HASH_1.length() / 2);
+        out.write(new byte[HASH_1.length() / 2]);
+      }
+      out.write(sha1(bytes.toByteArray()));
+      return bytes.toByteArray();
+    }
+  }
+
+  private static byte[] sha1(byte[] data) {
+    try {
+      return MessageDigest.getInstance("SHA-1").digest(data);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.repo;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.*;
+
+public class GitObjectReaderTest {
+
+  private static final int OBJ_COMMIT = 1;
+  private static final int OBJ_TREE = 2;
+  private static final int OBJ_BLOB = 3;
+  private static final int OBJ_OFS_DELTA = 6;
+  private static final int OBJ_REF_DELTA = 7;
+  private static final String[] TYPE_NAMES = {null, "commit", "tree", "blob"};
+
+  private File myGitDir;
+  private GitObjectReader myReader;
+
+  @Before
+  public void setUp() throws IOException {
+    myGitDir = FileUtil.createTempDirectory("git-objects", null);
+    myReader = new GitObjectReader(myGitDir);
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.delete(myGitDir);
+  }
+
+  @Test
+  public void readsLooseObjects() throws IOException {
+    String blob = writeLoose(OBJ_BLOB, bytes("content"));
+    String dir = writeLoose(OBJ_TREE, treeEntry("100644", "file.txt", blob));
+    String root = writeLoose(OBJ_TREE, concat(treeEntry("40000", "dir", dir), treeEntry("100755", "run.sh", blob)));
+    String commit = writeLoose(OBJ_COMMIT, commit(root));
+
+    assertArrayEquals(bytes("content"), myReader.readFileContent(commit, "dir/file.txt"));
+    assertNull(myReader.readFileContent(commit, "dir/missing.txt"));
+    Map<String, String> expected = new HashMap<String, String>();
+    expected.put("dir/file.txt", blob);
+    expected.put("run.sh", blob);
+    assertEquals(expected, myReader.readTree(commit));
+  }
+
+  @Test
+  public void readsPackedObjects() throws IOException {
+    PackBuilder pack = new PackBuilder();
+    String blob = pack.add(OBJ_BLOB, bytes("packed content"));
+    String tree = pack.add(OBJ_TREE, treeEntry("100644", "file.txt", blob));
+    String commit = pack.add(OBJ_COMMIT, commit(tree));
+    pack.write(false);
+
+    assertArrayEquals(bytes("packed content"), myReader.readFileContent(commit, "file.txt"));
+    assertEquals(Collections.singletonMap("file.txt", blob), myReader.readTree(commit));
+  }
+
+  @Test
+  public void appliesOffsetDeltas() throws IOException {
+    PackBuilder pack = new PackBuilder();
+    String base = pack.add(OBJ_BLOB, bytes("Hello, world!\n"));
+    String first = pack.addOffsetDelta(base, bytes("Hello, world!\nBye.\n"), delta(14, 19, copy(0, 14), insert("Bye.\n")));
+    String second = pack.addOffsetDelta(first, bytes("Bye.\nHello"), delta(19, 10, copy(14, 5), copy(0, 5)));
+    pack.write(false);
+
+    assertObject(OBJ_BLOB, "Hello, world!\nBye.\n", first);
+    assertObject(OBJ_BLOB, "Bye.\nHello", second);
+  }
+
+  @Test
+  public void appliesReferenceDeltas() throws IOException {
+    PackBuilder pack = new PackBuilder();
+    String base = pack.add(OBJ_BLOB, bytes("abcdef"));
+    String derived = pack.addReferenceDelta(base, bytes("defabc!"), delta(6, 7, copy(3, 3), copy(0, 3), insert("!")));
+    pack.write(false);
+
+    assertObject(OBJ_BLOB, "defabc!", derived);
+  }
+
+  @Test
+  public void readsLargeOffsetsFromIndex() throws IOException {
+    PackBuilder pack = new PackBuilder();
+    String base = pack.add(OBJ_BLOB, bytes("large"));
+    String derived = pack.addReferenceDelta(base, bytes("larger"), delta(5, 6, copy(0, 5), insert("r")));
+    pack.write(true);
+
+    assertObject(OBJ_BLOB, "large", base);
+    assertObject(OBJ_BLOB, "larger", derived);
+  }
+
+  @Test
+  public void unknownObjectIsNotFound() throws IOException {
+    PackBuilder pack = new PackBuilder();
+    pack.add(OBJ_BLOB, bytes("content"));
+    pack.write(false);
+
+    assertNull(myReader.readObject(hash(OBJ_BLOB, bytes("other content"))));
+  }
+
+  @Test(expected = IOException.class)
+  public void copyOutOfDeltaBaseIsReported() throws IOException {
+    PackBuilder pack = new PackBuilder();
+    String base = pack.add(OBJ_BLOB, bytes("short"));
+    String derived = pack.addOffsetDelta(base, bytes("shorter"), delta(5, 7, copy(3, 7)));
+    pack.write(false);
+
+    myReader.readObject(derived);
+  }
+
+  @Test(expected = IOException.class)
+  public void truncatedDeltaIsReported() throws IOException {
+    PackBuilder pack = new PackBuilder();
+    String base = pack.add(OBJ_BLOB, bytes("short"));
+    String derived = pack.addOffsetDelta(base, bytes("shorter"), delta(5, 7, new byte[]{(byte)0x91, 0}));
+    pack.write(false);
+
+    myReader.readObject(derived);
+  }
+
+  @Test(expected = IOException.class)
+  public void missingReferenceDeltaBaseIsReported() throws IOException {
+    PackBuilder pack = new PackBuilder();
+    String derived = pack.addReferenceDelta(hash(OBJ_BLOB, bytes("absent")), bytes("present"), delta(6, 7, insert("present")));
+    pack.write(false);
+
+    myReader.readObject(derived);
+  }
+
+  @Test(expected = IOException.class)
+  public void looseObjectSizeMismatchIsReported() throws IOException {
+    String hash = hash(OBJ_BLOB, bytes("content"));
+    File file = new File(new File(new File(myGitDir, "objects"), hash.substring(0, 2)), hash.substring(2));
+    FileUtil.writeToFile(file, deflate(bytes("blob 100\0content")));
+
+    myReader.readObject(hash);
+  }
+
+  private void assertObject(int type, String content, String hash) throws IOException {
+    GitObjectReader.GitObject object = myReader.readObject(hash);
+    assertNotNull(object);
+    assertEquals(type, object.type);
+    assertEquals(content, new String(object.data, "UTF-8"));
+  }
+
+  private String writeLoose(int type, byte[] data) throws IOException {
+    String hash = hash(type, data);
+    File file = new File(new File(new File(myGitDir, "objects"), hash.substring(0, 2)), hash.substring(2));
+    FileUtil.writeToFile(file, deflate(concat(header(type, data.length), data)));
+    return hash;
+  }
+
+  private class PackBuilder {
+    private final List<String> myHashes = new ArrayList<String>();
+    private final List<Long> myOffsets = new ArrayList<Long>();
+    private final List<Long> myCrcs = new ArrayList<Long>();
+    private final ByteArrayOutputStream myEntries = new ByteArrayOutputStream();
+
+    String add(int type, byte[] data) throws IOException {
+      return addEntry(hash(type, data), type, data.length, new byte[0], data);
+    }
+
+    String addOffsetDelta(String base, byte[] result, byte[] delta) throws IOException {
+      long distance = 12 + myEntries.size() - myOffsets.get(myHashes.indexOf(base));
+      return addEntry(hash(OBJ_BLOB, result), OBJ_OFS_DELTA, delta.length, encodeDistance(distance), delta);
+    }
+
+    String addReferenceDelta(String base, byte[] result, byte[] delta) throws IOException {
+      return addEntry(hash(OBJ_BLOB, result), OBJ_REF_DELTA, delta.length, parseHash(base), delta);
+    }
+
+    private String addEntry(String hash, int type, int size, byte[] base, byte[] data) throws IOException {
+      myHashes.add(hash);
+      myOffsets.add(12L + myEntries.size());
+      int start = myEntries.size();
+      int c = (type << 4) | (size & 15);
+      size >>>= 4;
+      while (size != 0) {
+        myEntries.write(c | 0x80);
+        c = size & 0x7f;
+        size >>>= 7;
+      }
+      myEntries.write(c);
+      myEntries.write(base);
+      myEntries.write(deflate(data));
+      CRC32 crc = new CRC32();
+      crc.update(myEntries.toByteArray(), start, myEntries.size() - start);
+      myCrcs.add(crc.getValue());
+      return hash;
+    }
+
+    void write(boolean largeOffsets) throws IOException {
+      ByteArrayOutputStream packBytes = new ByteArrayOutputStream();
+      DataOutputStream pack = new DataOutputStream(packBytes);
+      pack.writeBytes("PACK");
+      pack.writeInt(2);
+      pack.writeInt(myHashes.size());
+      pack.write(myEntries.toByteArray());
+      byte[] packHash = sha1(packBytes.toByteArray());
+      pack.write(packHash);
+
+      List<String> sorted = new ArrayList<String>(myHashes);
+      Collections.sort(sorted);
+      ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+      DataOutputStream index = new DataOutputStream(indexBytes);
+      index.writeInt(0xff744f63);
+      index.writeInt(2);
+      for (int i = 0; i < 256; i++) {
+        int count = 0;
+        for (String hash : sorted) {
+          if (Integer.parseInt(hash.substring(0, 2), 16) <= i) {
+            count++;
+          }
+        }
+        index.writeInt(count);
+      }
+      for (String hash : sorted) {
+        index.write(parseHash(hash));
+      }
+      for (String hash : sorted) {
+        index.writeInt((int)(long)myCrcs.get(myHashes.indexOf(hash)));
+      }
+      // Git itself moves only offsets beyond 2 GB to the large offset table, but any offset may be stored there
+      List<Long> largeOffsetTable = new ArrayList<Long>();
+      for (String hash : sorted) {
+        long offset = myOffsets.get(myHashes.indexOf(hash));
+        if (largeOffsets && largeOffsetTable.size() < sorted.size() - 1) {
+          index.writeInt(0x80000000 | largeOffsetTable.size());
+          largeOffsetTable.add(offset);
+        }
+        else {
+          index.writeInt((int)offset);
+        }
+      }
+      for (long offset : largeOffsetTable) {
+        index.writeLong(offset);
+      }
+      index.write(packHash);
+      index.write(sha1(indexBytes.toByteArray()));
+
+      File packDir = new File(new File(myGitDir, "objects"), "pack");
+      FileUtil.writeToFile(new File(packDir, "pack-1.pack"), packBytes.toByteArray());
+      FileUtil.writeToFile(new File(packDir, "pack-1.idx"), indexBytes.toByteArray());
+    }
+  }
+
+  private static byte[] encodeDistance(long distance) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    List<Integer> bytes = new ArrayList<Integer>();
+    bytes.add((int)(distance & 0x7f));
+    while ((distance >>= 7) != 0) {
+      distance--;
+      bytes.add((int)(0x80 | (distance & 0x7f)));
+    }
+    for (int i = bytes.size() - 1; i >= 0; i--) {
+      out.write(bytes.get(i));
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] delta(int baseSize, int resultSize, byte[]... ops) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeVarInt(out, baseSize);
+    writeVarInt(out, resultSize);
+    for (byte[] op : ops) {
+      out.write(op, 0, op.length);
+    }
+    return out.toByteArray();
+  }
+
+  private static void writeVarInt(ByteArrayOutputStream out, int value) {
+    while (value >= 0x80) {
+      out.write(0x80 | (value & 0x7f));
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static byte[] copy(int offset, int size) {
+    return new byte[]{(byte)0x91, (byte)offset, (byte)size};
+  }
+
+  private static byte[] insert(String data) throws IOException {
+    return concat(new byte[]{(byte)data.length()}, bytes(data));
+  }
+
+  private static byte[] treeEntry(String mode, String name, String hash) throws IOException {
+    return concat(bytes(mode + " " + name + "\0"), parseHash(hash));
+  }
+
+  private static byte[] commit(String tree) throws IOException {
+    return bytes("tree " + tree + "\nauthor A <a@example.com> 0 +0000\ncommitter A <a@example.com> 0 +0000\n\nMessage\n");
+  }
+
+  private static String hash(int type, byte[] data) throws IOException {
+    byte[] sha = sha1(concat(header(type, data.length), data));
+    StringBuilder sb = new StringBuilder();
+    for (byte b : sha) {
+      sb.append(String.format("%02x", b & 0xff));
+    }
+    return sb.toString();
+  }
+
+  private static byte[] header(int type, int size) throws IOException {
+    return bytes(TYPE_NAMES[type] + " " + size + "\0");
+  }
+
+  private static byte[] parseHash(String hash) {
+    byte[] result = new byte[hash.length() / 2];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = (byte)Integer.parseInt(hash.substring(2 * i, 2 * i + 2), 16);
+    }
+    return result;
+  }
+
+  private static byte[] sha1(byte[] data) {
+    try {
+      return MessageDigest.getInstance("SHA-1").digest(data);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static byte[] deflate(byte[] data) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DeflaterOutputStream deflater = new DeflaterOutputStream(out);
+    deflater.write(data);
+    deflater.close();
+    return out.toByteArray();
+  }
+
+  private static byte[] concat(byte[] first, byte[] second) {
+    byte[] result = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, result, first.length, second.length);
+    return result;
+  }
+
+  private static byte[] bytes(String s) throws IOException {
+    return s.getBytes("UTF-8");
+  }
+}
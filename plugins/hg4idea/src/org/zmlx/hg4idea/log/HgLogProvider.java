@@ -84,6 +84,12 @@ public class HgLogProvider implements VcsLogProvider {
     return HgHistoryUtil.readMiniDetails(myProject, root, hashes);
   }
 
+  @NotNull
+  @Override
+  public List<? extends VcsCommitMetadata> readMetadata(@NotNull VirtualFile root, @NotNull List<String> hashes) throws VcsException {
+    return HgHistoryUtil.readCommitMetadata(myProject, root, hashes);
+  }
+
   @NotNull
   @Override
   public List<? extends VcsFullCommitDetails> readFullDetails(@NotNull VirtualFile root, @NotNull List<String> hashes) throws VcsException {
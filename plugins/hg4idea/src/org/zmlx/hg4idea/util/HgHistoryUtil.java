@@ -138,6 +138,27 @@ public class HgHistoryUtil {
                              });
   }
 
+  @NotNull
+  public static List<? extends VcsCommitMetadata> readCommitMetadata(Project project, final VirtualFile root, List<String> hashes)
+    throws VcsException {
+    final VcsLogObjectsFactory factory = ServiceManager.getService(project, VcsLogObjectsFactory.class);
+    return ContainerUtil.map(getCommittedChangeList(project, root, -1, false, prepareHashes(hashes)),
+                             new Function<HgCommittedChangeList, VcsCommitMetadata>() {
+                               @Override
+                               public VcsCommitMetadata fun(HgCommittedChangeList record) {
+                                 HgRevisionNumber revNumber = (HgRevisionNumber)record.getRevisionNumber();
+                                 List<Hash> parents = new SmartList<Hash>();
+                                 for (HgRevisionNumber parent : revNumber.getParents()) {
+                                   parents.add(factory.createHash(parent.getChangeset()));
+                                 }
+                                 return factory.createCommitMetadata(factory.createHash(revNumber.getChangeset()), parents,
+                                                                     record.getCommitDate().getTime(), root, revNumber.getSubject(),
+                                                                     revNumber.getAuthor(), "", revNumber.getCommitMessage(),
+                                                                     record.getCommitterName(), "", record.getCommitDate().getTime());
+                               }
+                             });
+  }
+
   @NotNull
   public static List<TimedVcsCommit> readAllHashes(@NotNull Project project, @NotNull VirtualFile root,
                                                    @NotNull final Consumer<VcsUser> userRegistry) throws VcsException {